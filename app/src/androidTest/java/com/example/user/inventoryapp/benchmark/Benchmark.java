@@ -0,0 +1,89 @@
+package com.example.user.inventoryapp.benchmark;
+
+import java.util.Arrays;
+
+/**
+ * {@link Benchmark} times an operation the way JMH and the androidx benchmark library do:
+ * the operation is run a few times to warm up the caches and the JIT, and then timed
+ * over several runs. Only {@link Operation#run()} is timed, {@link Operation#setUp()}
+ * prepares the database for every run.
+ */
+final class Benchmark {
+
+    /**
+     * The operation that is measured.
+     */
+    abstract static class Operation {
+
+        // Called before every run, not timed
+        void setUp() {
+        }
+
+        // The timed part
+        abstract void run();
+    }
+
+    /**
+     * The times of the runs of a benchmark.
+     */
+    static final class Result {
+        final String name;
+        final int rows;
+
+        // The time of every run in nanoseconds, sorted
+        final long[] runNanos;
+
+        Result(String name, int rows, long[] runNanos) {
+            this.name = name;
+            this.rows = rows;
+            this.runNanos = runNanos;
+        }
+
+        long minimum() {
+            return runNanos[0];
+        }
+
+        long median() {
+            return runNanos[runNanos.length / 2];
+        }
+
+        long maximum() {
+            return runNanos[runNanos.length - 1];
+        }
+
+        @Override
+        public String toString() {
+            return name + " at " + rows + " rows: median " + median() / 1000 + " us, min " +
+                    minimum() / 1000 + " us, max " + maximum() / 1000 + " us, " + runNanos.length + " runs";
+        }
+    }
+
+    // Preventing someone from accidentally instantiating this class
+    private Benchmark() {
+    }
+
+    /**
+     * Warms up and times the operation.
+     *
+     * @param name       The name of the benchmark in the report
+     * @param rows       The number of products in the database
+     * @param warmupRuns The number of runs that are not timed
+     * @param runs       The number of timed runs
+     */
+    static Result measure(String name, int rows, int warmupRuns, int runs, Operation operation) {
+        for (int i = 0; i < warmupRuns; i++) {
+            operation.setUp();
+            operation.run();
+        }
+
+        long[] runNanos = new long[runs];
+        for (int i = 0; i < runs; i++) {
+            operation.setUp();
+            long start = System.nanoTime();
+            operation.run();
+            runNanos[i] = System.nanoTime() - start;
+        }
+        Arrays.sort(runNanos);
+        return new Result(name, rows, runNanos);
+    }
+}
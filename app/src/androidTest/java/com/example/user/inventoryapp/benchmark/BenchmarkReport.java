@@ -0,0 +1,103 @@
+package com.example.user.inventoryapp.benchmark;
+
+import android.content.Context;
+import android.os.Build;
+import android.util.Log;
+
+import com.example.user.inventoryapp.data.ProductDbHelper;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * {@link BenchmarkReport} collects the results of the benchmarks and writes them as JSON,
+ * in the layout of the androidx benchmark library, so the reports of two builds can be
+ * compared with the same tools:
+ * <pre>
+ * {"context": {...}, "benchmarks": [{"name": "bulkInsert", "params": {"rows": "1000"},
+ *   "metrics": {"timeNs": {"minimum": 1, "maximum": 3, "median": 2, "runs": [1, 2, 3]}}}]}
+ * </pre>
+ * The file is saved in the external files of the app, in benchmarks/, and can be pulled with adb.
+ */
+final class BenchmarkReport {
+
+    private static final String LOG_TAG = BenchmarkReport.class.getSimpleName();
+
+    private final List<Benchmark.Result> mResults = new ArrayList<>();
+
+    /**
+     * Adds a result to the report and logs it.
+     */
+    synchronized void add(Benchmark.Result result) {
+        Log.i(LOG_TAG, result.toString());
+        mResults.add(result);
+    }
+
+    /**
+     * Writes the report to benchmarks/name.json in the external files of the app.
+     *
+     * @return the file
+     */
+    synchronized File write(Context context, String name) throws IOException, JSONException {
+        File directory = new File(context.getExternalFilesDir(null), "benchmarks");
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Can not create " + directory);
+        }
+        File file = new File(directory, name + ".json");
+
+        Writer writer = new OutputStreamWriter(new FileOutputStream(file), Charset.forName("UTF-8"));
+        try {
+            writer.write(toJson().toString(2));
+        } finally {
+            writer.close();
+        }
+        Log.i(LOG_TAG, "Wrote " + mResults.size() + " results to " + file);
+        return file;
+    }
+
+    private JSONObject toJson() throws JSONException {
+        JSONObject build = new JSONObject()
+                .put("device", Build.DEVICE)
+                .put("model", Build.MODEL)
+                .put("sdkInt", Build.VERSION.SDK_INT)
+                .put("fingerprint", Build.FINGERPRINT);
+
+        JSONObject context = new JSONObject()
+                .put("build", build)
+                .put("databaseVersion", ProductDbHelper.DATABASE_VERSION)
+                .put("timestamp", System.currentTimeMillis());
+
+        JSONArray benchmarks = new JSONArray();
+        for (Benchmark.Result result : mResults) {
+            JSONArray runs = new JSONArray();
+            for (long nanos : result.runNanos) {
+                runs.put(nanos);
+            }
+
+            JSONObject time = new JSONObject()
+                    .put("minimum", result.minimum())
+                    .put("maximum", result.maximum())
+                    .put("median", result.median())
+                    .put("runs", runs);
+
+            benchmarks.put(new JSONObject()
+                    .put("name", result.name)
+                    .put("params", new JSONObject().put("rows", String.valueOf(result.rows)))
+                    .put("metrics", new JSONObject().put("timeNs", time)));
+        }
+
+        return new JSONObject()
+                .put("context", context)
+                .put("benchmarks", benchmarks);
+    }
+}
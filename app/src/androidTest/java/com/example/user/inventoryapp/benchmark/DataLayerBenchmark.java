@@ -0,0 +1,385 @@
+package com.example.user.inventoryapp.benchmark;
+
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.os.Bundle;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.example.user.inventoryapp.data.ProductContract.LocationEntry;
+import com.example.user.inventoryapp.data.ProductContract.ProductEntry;
+import com.example.user.inventoryapp.data.ProductContract.StockEntry;
+import com.example.user.inventoryapp.data.ProductContract.SummaryEntry;
+import com.example.user.inventoryapp.data.ProductDbHelper;
+import com.example.user.inventoryapp.data.ProductProvider;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Benchmarks of the operations of the {@link ProductProvider} on databases of
+ * 1k, 10k and 100k products. The results are logged and written by {@link BenchmarkReport}
+ * to benchmarks/data-layer.json in the external files of the app, to be compared between builds.
+ * <p>
+ * The benchmarks take a few minutes, so run them on their own, on a release-like build:
+ * <pre>
+ * ./gradlew connectedAndroidTest \
+ *     -Pandroid.testInstrumentationRunnerArguments.package=com.example.user.inventoryapp.benchmark
+ * </pre>
+ */
+@RunWith(AndroidJUnit4.class)
+public class DataLayerBenchmark {
+
+    private static final String TEST_DB = "benchmark.db";
+
+    // The sizes of the catalog every operation is measured at
+    private static final int[] SIZES = {1000, 10000, 100000};
+
+    // The runs of the operations that touch one row, and of the ones that touch all of the rows
+    private static final int SINGLE_ROW_RUNS = 500;
+    private static final int SINGLE_ROW_WARMUP_RUNS = 50;
+    private static final int ALL_ROWS_RUNS = 5;
+    private static final int ALL_ROWS_WARMUP_RUNS = 1;
+
+    // The columns of the list in MainActivity
+    private static final String[] LIST_PROJECTION = {
+            ProductEntry._ID,
+            ProductEntry.COLUMN_PRODUCT_NAME,
+            ProductEntry.COLUMN_PRODUCT_QUANTITY,
+            ProductEntry.COLUMN_PRODUCT_PRICE_CENTS,
+            ProductEntry.COLUMN_PRODUCT_CURRENCY,
+            ProductEntry.COLUMN_PRODUCT_PHOTO_URI};
+
+    // The number of products read by queryByIdRepeated, which all fit in the cache of the provider
+    private static final int REPEATED_PRODUCTS = 20;
+
+    private static final BenchmarkReport sReport = new BenchmarkReport();
+
+    private final Random mRandom = new Random(42);
+
+    private Context mContext;
+
+    private ProductDbHelper mDbHelper;
+
+    private ProductProvider mProvider;
+
+    @Before
+    public void setUp() {
+        mContext = InstrumentationRegistry.getTargetContext();
+    }
+
+    @After
+    public void tearDown() {
+        closeDatabase();
+        mContext.deleteDatabase(TEST_DB);
+    }
+
+    @AfterClass
+    public static void writeReport() throws Exception {
+        sReport.write(InstrumentationRegistry.getTargetContext(), "data-layer");
+    }
+
+    @Test
+    public void insert() {
+        for (int rows : SIZES) {
+            openDatabase(rows);
+            final ContentValues values = product(0);
+
+            // The same product is inserted again and again, so it can not have a code
+            values.remove(ProductEntry.COLUMN_PRODUCT_SKU);
+            sReport.add(Benchmark.measure("insert", rows, SINGLE_ROW_WARMUP_RUNS, SINGLE_ROW_RUNS,
+                    new Benchmark.Operation() {
+                        @Override
+                        void run() {
+                            mProvider.insert(ProductEntry.CONTENT_URI, values);
+                        }
+                    }));
+        }
+    }
+
+    @Test
+    public void bulkInsert() {
+        for (final int rows : SIZES) {
+            final ContentValues[] products = products(rows);
+            sReport.add(Benchmark.measure("bulkInsert", rows, ALL_ROWS_WARMUP_RUNS, ALL_ROWS_RUNS,
+                    new Benchmark.Operation() {
+                        @Override
+                        void setUp() {
+                            openDatabase(0);
+                        }
+
+                        @Override
+                        void run() {
+                            assertEquals(rows, mProvider.bulkInsert(ProductEntry.CONTENT_URI, products));
+                        }
+                    }));
+        }
+    }
+
+    @Test
+    public void updateSingleRow() {
+        for (final int rows : SIZES) {
+            openDatabase(rows);
+            final ContentValues values = new ContentValues();
+            sReport.add(Benchmark.measure("updateSingleRow", rows, SINGLE_ROW_WARMUP_RUNS, SINGLE_ROW_RUNS,
+                    new Benchmark.Operation() {
+                        @Override
+                        void run() {
+                            values.put(ProductEntry.COLUMN_PRODUCT_QUANTITY, mRandom.nextInt(100));
+                            mProvider.update(ContentUris.withAppendedId(ProductEntry.CONTENT_URI,
+                                    randomId(rows)), values, null, null);
+                        }
+                    }));
+        }
+    }
+
+    @Test
+    public void queryFullList() {
+        for (final int rows : SIZES) {
+            openDatabase(rows);
+            sReport.add(Benchmark.measure("queryFullList", rows, ALL_ROWS_WARMUP_RUNS, ALL_ROWS_RUNS,
+                    new Benchmark.Operation() {
+                        @Override
+                        void run() {
+                            // Read every value, like a list that is scrolled to the end
+                            Cursor cursor = mProvider.query(ProductEntry.CONTENT_URI, LIST_PROJECTION,
+                                    null, null, null);
+                            try {
+                                int columns = cursor.getColumnCount();
+                                while (cursor.moveToNext()) {
+                                    for (int column = 0; column < columns; column++) {
+                                        cursor.getString(column);
+                                    }
+                                }
+                                assertEquals(rows, cursor.getCount());
+                            } finally {
+                                cursor.close();
+                            }
+                        }
+                    }));
+        }
+    }
+
+    @Test
+    public void querySummary() {
+        for (final int rows : SIZES) {
+            openDatabase(rows);
+            sReport.add(Benchmark.measure("querySummary", rows, SINGLE_ROW_WARMUP_RUNS, SINGLE_ROW_RUNS,
+                    new Benchmark.Operation() {
+                        @Override
+                        void run() {
+                            // The totals of the dashboard, kept by the triggers of the products
+                            Cursor cursor = mProvider.query(SummaryEntry.CONTENT_URI, null,
+                                    null, null, null);
+                            try {
+                                assertTrue(cursor.moveToFirst());
+                                assertEquals(rows, cursor.getInt(
+                                        cursor.getColumnIndexOrThrow(SummaryEntry.COLUMN_SKU_COUNT)));
+                            } finally {
+                                cursor.close();
+                            }
+                        }
+                    }));
+        }
+    }
+
+    @Test
+    public void sellBySku() {
+        for (final int rows : SIZES) {
+            openDatabase(rows);
+            final Bundle extras = new Bundle();
+            sReport.add(Benchmark.measure("sellBySku", rows, SINGLE_ROW_WARMUP_RUNS, SINGLE_ROW_RUNS,
+                    new Benchmark.Operation() {
+                        @Override
+                        void run() {
+                            // A scan at the till: find the product by its code and sell it,
+                            // or restock it if it is sold out
+                            long id = randomId(rows);
+                            extras.putInt(ProductEntry.KEY_QUANTITY_DELTA, id % 100 == 1 ? 1 : -1);
+                            Bundle result = mProvider.call(ProductEntry.METHOD_SELL_BY_SKU,
+                                    sku((int) id - 1), extras);
+                            assertEquals(id, result.getLong(ProductEntry.KEY_PRODUCT_ID));
+                        }
+                    }));
+        }
+    }
+
+    @Test
+    public void transfer() {
+        for (final int rows : SIZES) {
+            openDatabase(rows);
+            ContentValues location = new ContentValues();
+            location.put(LocationEntry.COLUMN_LOCATION_NAME, "Back room");
+            final long backRoomId = ContentUris.parseId(mProvider.insert(LocationEntry.CONTENT_URI, location));
+            final ContentValues values = new ContentValues();
+            sReport.add(Benchmark.measure("transfer", rows, SINGLE_ROW_WARMUP_RUNS, SINGLE_ROW_RUNS,
+                    new Benchmark.Operation() {
+                        @Override
+                        void run() {
+                            // Move a unit to the back room and back, so the main location
+                            // never runs out
+                            long id = randomId(rows);
+                            boolean toBackRoom = mRandom.nextBoolean();
+                            values.put(StockEntry.KEY_FROM_LOCATION_ID,
+                                    toBackRoom ? LocationEntry.MAIN_LOCATION_ID : backRoomId);
+                            values.put(StockEntry.KEY_TO_LOCATION_ID,
+                                    toBackRoom ? backRoomId : LocationEntry.MAIN_LOCATION_ID);
+                            values.put(StockEntry.COLUMN_QUANTITY, 1);
+                            mProvider.update(ProductEntry.buildTransferUri(id), values, null, null);
+                        }
+                    }));
+        }
+    }
+
+    @Test
+    public void queryById() {
+        for (final int rows : SIZES) {
+            openDatabase(rows);
+            sReport.add(Benchmark.measure("queryById", rows, SINGLE_ROW_WARMUP_RUNS, SINGLE_ROW_RUNS,
+                    new Benchmark.Operation() {
+                        @Override
+                        void run() {
+                            Cursor cursor = mProvider.query(ContentUris.withAppendedId(
+                                    ProductEntry.CONTENT_URI, randomId(rows)), LIST_PROJECTION,
+                                    null, null, null);
+                            try {
+                                assertEquals(1, cursor.getCount());
+                            } finally {
+                                cursor.close();
+                            }
+                        }
+                    }));
+        }
+    }
+
+    @Test
+    public void queryByIdRepeated() {
+        for (final int rows : SIZES) {
+            openDatabase(rows);
+
+            // A few products opened again and again, like the items scanned at a till
+            final long[] ids = new long[REPEATED_PRODUCTS];
+            for (int i = 0; i < ids.length; i++) {
+                ids[i] = randomId(rows);
+            }
+            sReport.add(Benchmark.measure("queryByIdRepeated", rows, SINGLE_ROW_WARMUP_RUNS, SINGLE_ROW_RUNS,
+                    new Benchmark.Operation() {
+                        @Override
+                        void run() {
+                            Cursor cursor = mProvider.query(ContentUris.withAppendedId(
+                                    ProductEntry.CONTENT_URI, ids[mRandom.nextInt(ids.length)]),
+                                    LIST_PROJECTION, null, null, null);
+                            try {
+                                assertEquals(1, cursor.getCount());
+                            } finally {
+                                cursor.close();
+                            }
+                        }
+                    }));
+        }
+    }
+
+    @Test
+    public void deleteAll() {
+        for (final int rows : SIZES) {
+            sReport.add(Benchmark.measure("deleteAll", rows, ALL_ROWS_WARMUP_RUNS, ALL_ROWS_RUNS,
+                    new Benchmark.Operation() {
+                        @Override
+                        void setUp() {
+                            openDatabase(rows);
+                        }
+
+                        @Override
+                        void run() {
+                            assertEquals(rows, mProvider.delete(ProductEntry.CONTENT_URI, null, null));
+                        }
+                    }));
+        }
+    }
+
+    @Test
+    public void purgeDeleted() {
+        for (final int rows : SIZES) {
+            sReport.add(Benchmark.measure("purgeDeleted", rows, ALL_ROWS_WARMUP_RUNS, ALL_ROWS_RUNS,
+                    new Benchmark.Operation() {
+                        @Override
+                        void setUp() {
+                            openDatabase(rows);
+
+                            // Delete all of the products, and move the delete before the undo window
+                            mProvider.delete(ProductEntry.CONTENT_URI, null, null);
+                            mDbHelper.getWritableDatabase().execSQL("UPDATE " + ProductEntry.TABLE_NAME +
+                                    " SET " + ProductEntry.COLUMN_DELETED_AT + " = 0");
+                        }
+
+                        @Override
+                        void run() {
+                            Bundle result = mProvider.call(ProductEntry.METHOD_PURGE_DELETED, null, null);
+                            assertEquals(rows, result.getInt(ProductEntry.KEY_PURGED_COUNT));
+                        }
+                    }));
+        }
+    }
+
+    // Creates a new database with the number of products, and a provider for it
+    private void openDatabase(int rows) {
+        closeDatabase();
+        mContext.deleteDatabase(TEST_DB);
+
+        mDbHelper = new ProductDbHelper(mContext, TEST_DB);
+        mProvider = new ProductProvider();
+        mProvider.attachInfo(mContext, null);
+        mProvider.setDbHelper(mDbHelper);
+
+        if (rows > 0) {
+            mProvider.bulkInsert(ProductEntry.CONTENT_URI, products(rows));
+        }
+    }
+
+    private void closeDatabase() {
+        if (mDbHelper != null) {
+            mDbHelper.close();
+            mDbHelper = null;
+        }
+    }
+
+    // Returns the id of a random product of a new database with the number of products
+    private long randomId(int rows) {
+        return mRandom.nextInt(rows) + 1;
+    }
+
+    private static ContentValues[] products(int count) {
+        ContentValues[] products = new ContentValues[count];
+        for (int i = 0; i < count; i++) {
+            products[i] = product(i);
+        }
+        return products;
+    }
+
+    private static ContentValues product(int i) {
+        ContentValues values = new ContentValues();
+        values.put(ProductEntry.COLUMN_PRODUCT_NAME, "Product " + i);
+        values.put(ProductEntry.COLUMN_PRODUCT_SKU, sku(i));
+        values.put(ProductEntry.COLUMN_PRODUCT_QUANTITY, i % 100);
+        values.put(ProductEntry.COLUMN_PRODUCT_PRICE_CENTS, i);
+        values.put(ProductEntry.COLUMN_SUPPLIER_NAME, "Supplier " + (i % 50));
+        values.put(ProductEntry.COLUMN_SUPPLIER_EMAIL, "orders@supplier" + (i % 50) + ".com");
+        return values;
+    }
+
+    // The code of the product, like the 13 digits of an EAN barcode
+    private static String sku(int i) {
+        return String.format(Locale.ROOT, "%013d", i);
+    }
+}
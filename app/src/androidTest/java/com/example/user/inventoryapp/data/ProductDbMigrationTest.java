@@ -0,0 +1,804 @@
+package com.example.user.inventoryapp.data;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteConstraintException;
+import android.database.sqlite.SQLiteDatabase;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Upgrades populated databases of every released schema version to the current version,
+ * and checks that no product is lost and that the schema equals the one of a fresh install.
+ * The schemas are frozen copies of the released ones, they must not follow the code.
+ */
+@RunWith(AndroidJUnit4.class)
+public class ProductDbMigrationTest {
+
+    private static final String LOG_TAG = ProductDbMigrationTest.class.getSimpleName();
+
+    private static final String TEST_DB = "migration-test.db";
+    private static final String FRESH_DB = "migration-fresh.db";
+
+    // The number of products in the upgraded databases
+    private static final int ROW_COUNT = 200;
+
+    // The number of products in the database of the timing test
+    private static final int LARGE_ROW_COUNT = 100000;
+
+    // Version 1: the products table
+    private static final String[] SCHEMA_1 = {
+            "CREATE TABLE products (_id INTEGER PRIMARY KEY AUTOINCREMENT," +
+                    "product_name TEXT NOT NULL,quantity INTEGER NOT NULL DEFAULT 0," +
+                    "price REAL NOT NULL,photo_uri TEXT NOT NULL DEFAULT 'no image'," +
+                    "supplier_name TEXT,supplier_email TEXT);"
+    };
+
+    // Version 2: plus the full-text search table
+    private static final String[] SCHEMA_2 = concat(SCHEMA_1,
+            "CREATE VIRTUAL TABLE products_fts USING fts4(product_name, supplier_name, supplier_email);",
+            "CREATE TRIGGER products_fts_insert AFTER INSERT ON products" +
+                    " BEGIN INSERT INTO products_fts (docid, product_name, supplier_name, supplier_email)" +
+                    " VALUES (new._id, new.product_name, new.supplier_name, new.supplier_email); END;",
+            "CREATE TRIGGER products_fts_update" +
+                    " AFTER UPDATE OF product_name, supplier_name, supplier_email ON products" +
+                    " BEGIN UPDATE products_fts SET product_name = new.product_name," +
+                    " supplier_name = new.supplier_name, supplier_email = new.supplier_email" +
+                    " WHERE docid = old._id; END;",
+            "CREATE TRIGGER products_fts_delete AFTER DELETE ON products" +
+                    " BEGIN DELETE FROM products_fts WHERE docid = old._id; END;");
+
+    // Version 3: plus the indexes of the list
+    private static final String[] SCHEMA_3 = concat(SCHEMA_2,
+            "CREATE INDEX products_name_index ON products (product_name COLLATE NOCASE);",
+            "CREATE INDEX products_quantity_index ON products (quantity);",
+            "CREATE INDEX products_price_index ON products (price);",
+            "CREATE INDEX products_supplier_index ON products (supplier_name);");
+
+    private static final String[] SCHEMA_4 = concat(SCHEMA_3,
+            "CREATE TABLE pending_deltas (_id INTEGER PRIMARY KEY AUTOINCREMENT," +
+                    "product_id INTEGER NOT NULL,delta INTEGER NOT NULL);");
+
+    private static final String[] SCHEMA_5 = concat(SCHEMA_4,
+            "CREATE TABLE stock_movements (_id INTEGER PRIMARY KEY AUTOINCREMENT," +
+                    "product_id INTEGER NOT NULL,delta INTEGER NOT NULL," +
+                    "reason TEXT NOT NULL,timestamp INTEGER NOT NULL);",
+            "CREATE INDEX stock_movements_product_index ON stock_movements (product_id, timestamp);",
+            "CREATE TABLE product_daily_stock (product_id INTEGER NOT NULL," +
+                    "day INTEGER NOT NULL,units_sold INTEGER NOT NULL DEFAULT 0," +
+                    "units_received INTEGER NOT NULL DEFAULT 0,PRIMARY KEY (product_id, day));",
+            "CREATE INDEX product_daily_stock_day_index ON product_daily_stock (day);",
+            "CREATE TABLE daily_stock (day INTEGER PRIMARY KEY," +
+                    "units_sold INTEGER NOT NULL DEFAULT 0,units_received INTEGER NOT NULL DEFAULT 0);",
+            "CREATE TRIGGER stock_movements_no_update BEFORE UPDATE ON stock_movements" +
+                    " BEGIN SELECT RAISE(ABORT, 'stock movements can not be changed'); END;",
+            "CREATE TRIGGER stock_movements_rollup AFTER INSERT ON stock_movements BEGIN" +
+                    " INSERT OR IGNORE INTO product_daily_stock (product_id, day)" +
+                    " VALUES (new.product_id, new.timestamp / 86400000);" +
+                    " UPDATE product_daily_stock SET" +
+                    " units_sold = units_sold + (CASE WHEN new.reason = 'sale' THEN -new.delta ELSE 0 END)," +
+                    " units_received = units_received + (CASE WHEN new.reason = 'restock' THEN new.delta ELSE 0 END)" +
+                    " WHERE product_id = new.product_id AND day = new.timestamp / 86400000;" +
+                    " INSERT OR IGNORE INTO daily_stock (day) VALUES (new.timestamp / 86400000);" +
+                    " UPDATE daily_stock SET" +
+                    " units_sold = units_sold + (CASE WHEN new.reason = 'sale' THEN -new.delta ELSE 0 END)," +
+                    " units_received = units_received + (CASE WHEN new.reason = 'restock' THEN new.delta ELSE 0 END)" +
+                    " WHERE day = new.timestamp / 86400000; END;");
+
+    private static final String[] SCHEMA_6 = concat(SCHEMA_5,
+            "CREATE TABLE reorder_rules (product_id INTEGER PRIMARY KEY,threshold INTEGER NOT NULL);",
+            "CREATE TABLE low_stock_alerts (product_id INTEGER PRIMARY KEY," +
+                    "quantity INTEGER NOT NULL,threshold INTEGER NOT NULL);",
+            "CREATE TRIGGER low_stock_quantity AFTER UPDATE OF quantity ON products" +
+                    " WHEN new.quantity != old.quantity BEGIN" +
+                    " UPDATE low_stock_alerts SET quantity = new.quantity WHERE product_id = new._id;" +
+                    " INSERT OR IGNORE INTO low_stock_alerts (product_id, quantity, threshold)" +
+                    " SELECT new._id, new.quantity, threshold FROM reorder_rules" +
+                    " WHERE product_id = new._id AND new.quantity <= threshold AND old.quantity > threshold;" +
+                    " DELETE FROM low_stock_alerts WHERE product_id = new._id AND new.quantity > threshold;" +
+                    " END;",
+            "CREATE TRIGGER low_stock_rule_insert AFTER INSERT ON reorder_rules BEGIN" +
+                    " INSERT OR IGNORE INTO low_stock_alerts (product_id, quantity, threshold)" +
+                    " SELECT _id, quantity, new.threshold FROM products" +
+                    " WHERE _id = new.product_id AND quantity <= new.threshold; END;",
+            "CREATE TRIGGER low_stock_rule_update AFTER UPDATE OF threshold ON reorder_rules" +
+                    " BEGIN UPDATE low_stock_alerts SET threshold = new.threshold" +
+                    " WHERE product_id = new.product_id;" +
+                    " INSERT OR IGNORE INTO low_stock_alerts (product_id, quantity, threshold)" +
+                    " SELECT _id, quantity, new.threshold FROM products WHERE _id = new.product_id" +
+                    " AND quantity <= new.threshold AND quantity > old.threshold;" +
+                    " DELETE FROM low_stock_alerts WHERE product_id = new.product_id" +
+                    " AND quantity > new.threshold; END;",
+            "CREATE TRIGGER low_stock_rule_delete AFTER DELETE ON reorder_rules" +
+                    " BEGIN DELETE FROM low_stock_alerts WHERE product_id = old.product_id; END;",
+            "CREATE TRIGGER low_stock_product_delete AFTER DELETE ON products" +
+                    " BEGIN DELETE FROM reorder_rules WHERE product_id = old._id; END;");
+
+    // Version 7: the suppliers in their own table, with the tables of versions 4 to 6 unchanged
+    private static final String[] SCHEMA_7 = concat(new String[]{
+                    "CREATE TABLE suppliers (_id INTEGER PRIMARY KEY AUTOINCREMENT," +
+                            "supplier_name TEXT NOT NULL DEFAULT '',supplier_email TEXT NOT NULL DEFAULT '');",
+                    "CREATE UNIQUE INDEX suppliers_identity_index ON suppliers (supplier_name, supplier_email);",
+                    "CREATE TABLE products (_id INTEGER PRIMARY KEY AUTOINCREMENT," +
+                            "product_name TEXT NOT NULL,quantity INTEGER NOT NULL DEFAULT 0," +
+                            "price REAL NOT NULL,photo_uri TEXT NOT NULL DEFAULT 'no image'," +
+                            "supplier_id INTEGER REFERENCES suppliers (_id) ON DELETE SET NULL);",
+                    "CREATE INDEX products_name_index ON products (product_name COLLATE NOCASE);",
+                    "CREATE INDEX products_quantity_index ON products (quantity);",
+                    "CREATE INDEX products_price_index ON products (price);",
+                    "CREATE INDEX products_supplier_index ON products (supplier_id);",
+                    "CREATE VIRTUAL TABLE products_fts USING fts4(product_name, supplier_name, supplier_email);",
+                    "CREATE TRIGGER products_fts_insert AFTER INSERT ON products" +
+                            " BEGIN INSERT INTO products_fts (docid, product_name, supplier_name, supplier_email)" +
+                            " VALUES (new._id, new.product_name," +
+                            " (SELECT supplier_name FROM suppliers WHERE _id = new.supplier_id)," +
+                            " (SELECT supplier_email FROM suppliers WHERE _id = new.supplier_id)); END;",
+                    "CREATE TRIGGER products_fts_update AFTER UPDATE OF product_name, supplier_id ON products" +
+                            " BEGIN UPDATE products_fts SET product_name = new.product_name," +
+                            " supplier_name = (SELECT supplier_name FROM suppliers WHERE _id = new.supplier_id)," +
+                            " supplier_email = (SELECT supplier_email FROM suppliers WHERE _id = new.supplier_id)" +
+                            " WHERE docid = old._id; END;",
+                    "CREATE TRIGGER products_fts_delete AFTER DELETE ON products" +
+                            " BEGIN DELETE FROM products_fts WHERE docid = old._id; END;",
+                    "CREATE TRIGGER suppliers_fts_update" +
+                            " AFTER UPDATE OF supplier_name, supplier_email ON suppliers" +
+                            " BEGIN UPDATE products_fts SET supplier_name = new.supplier_name," +
+                            " supplier_email = new.supplier_email" +
+                            " WHERE docid IN (SELECT _id FROM products WHERE supplier_id = new._id); END;"},
+            Arrays.copyOfRange(SCHEMA_6, SCHEMA_3.length, SCHEMA_6.length));
+
+    // Version 8: the prices in cents with their currency. The search table and the tables
+    // of the later versions are the ones of version 7, which start after its indexes of the products.
+    private static final String[] SCHEMA_8 = concat(new String[]{
+                    "CREATE TABLE suppliers (_id INTEGER PRIMARY KEY AUTOINCREMENT," +
+                            "supplier_name TEXT NOT NULL DEFAULT '',supplier_email TEXT NOT NULL DEFAULT '');",
+                    "CREATE UNIQUE INDEX suppliers_identity_index ON suppliers (supplier_name, supplier_email);",
+                    "CREATE TABLE products (_id INTEGER PRIMARY KEY AUTOINCREMENT," +
+                            "product_name TEXT NOT NULL,quantity INTEGER NOT NULL DEFAULT 0," +
+                            "price_cents INTEGER NOT NULL,currency TEXT NOT NULL," +
+                            "photo_uri TEXT NOT NULL DEFAULT 'no image'," +
+                            "supplier_id INTEGER REFERENCES suppliers (_id) ON DELETE SET NULL);",
+                    "CREATE INDEX products_name_index ON products (product_name COLLATE NOCASE);",
+                    "CREATE INDEX products_quantity_index ON products (quantity);",
+                    "CREATE INDEX products_price_index ON products (price_cents);",
+                    "CREATE INDEX products_supplier_index ON products (supplier_id);"},
+            Arrays.copyOfRange(SCHEMA_7, 7, SCHEMA_7.length));
+
+    // Version 9: the summary of the inventory and its triggers
+    private static final String[] SCHEMA_9 = concat(SCHEMA_8,
+            "CREATE TABLE inventory_summary (currency TEXT PRIMARY KEY," +
+                    "sku_count INTEGER NOT NULL DEFAULT 0,total_units INTEGER NOT NULL DEFAULT 0," +
+                    "total_value_cents INTEGER NOT NULL DEFAULT 0," +
+                    "out_of_stock_count INTEGER NOT NULL DEFAULT 0," +
+                    "low_stock_count INTEGER NOT NULL DEFAULT 0);",
+            "CREATE TRIGGER inventory_summary_insert AFTER INSERT ON products BEGIN INSERT" +
+                    " OR IGNORE INTO inventory_summary (currency) VALUES (new.currency); " +
+                    "UPDATE inventory_summary SET sku_count = sku_count + 1, " +
+                    "total_units = total_units + new.quantity, " +
+                    "total_value_cents = total_value_cents + new.quantity * new.price_cents, " +
+                    "out_of_stock_count = out_of_stock_count + (new.quantity = 0), " +
+                    "low_stock_count = low_stock_count + EXISTS (SELECT 1 FROM reorder_rules" +
+                    " WHERE product_id = new._id AND new.quantity <= threshold)" +
+                    " WHERE currency = new.currency; END;",
+            "CREATE TRIGGER inventory_summary_update AFTER UPDATE OF quantity, " +
+                    "price_cents, currency ON products WHEN new.quantity != old.quantity" +
+                    " OR new.price_cents != old.price_cents OR new.currency != old.currency" +
+                    " BEGIN UPDATE inventory_summary SET sku_count = sku_count - 1, " +
+                    "total_units = total_units - old.quantity, " +
+                    "total_value_cents = total_value_cents - old.quantity * old.price_cents, " +
+                    "out_of_stock_count = out_of_stock_count - (old.quantity = 0), " +
+                    "low_stock_count = low_stock_count - EXISTS (SELECT 1 FROM reorder_rules" +
+                    " WHERE product_id = old._id AND old.quantity <= threshold)" +
+                    " WHERE currency = old.currency; INSERT" +
+                    " OR IGNORE INTO inventory_summary (currency) VALUES (new.currency); " +
+                    "UPDATE inventory_summary SET sku_count = sku_count + 1, " +
+                    "total_units = total_units + new.quantity, " +
+                    "total_value_cents = total_value_cents + new.quantity * new.price_cents, " +
+                    "out_of_stock_count = out_of_stock_count + (new.quantity = 0), " +
+                    "low_stock_count = low_stock_count + EXISTS (SELECT 1 FROM reorder_rules" +
+                    " WHERE product_id = new._id AND new.quantity <= threshold)" +
+                    " WHERE currency = new.currency; DELETE FROM inventory_summary" +
+                    " WHERE currency = old.currency AND sku_count = 0; END;",
+            "CREATE TRIGGER inventory_summary_delete BEFORE DELETE ON products" +
+                    " BEGIN UPDATE inventory_summary SET sku_count = sku_count - 1, " +
+                    "total_units = total_units - old.quantity, " +
+                    "total_value_cents = total_value_cents - old.quantity * old.price_cents, " +
+                    "out_of_stock_count = out_of_stock_count - (old.quantity = 0), " +
+                    "low_stock_count = low_stock_count - EXISTS (SELECT 1 FROM reorder_rules" +
+                    " WHERE product_id = old._id AND old.quantity <= threshold)" +
+                    " WHERE currency = old.currency; DELETE FROM inventory_summary" +
+                    " WHERE currency = old.currency AND sku_count = 0; END;",
+            "CREATE TRIGGER inventory_summary_rule_insert AFTER INSERT ON reorder_rules" +
+                    " BEGIN UPDATE inventory_summary SET low_stock_count = low_stock_count + 1" +
+                    " WHERE currency = (SELECT currency FROM products WHERE _id = new.product_id" +
+                    " AND quantity <= new.threshold); END;",
+            "CREATE TRIGGER inventory_summary_rule_update AFTER UPDATE OF threshold ON reorder_rules" +
+                    " BEGIN UPDATE inventory_summary SET low_stock_count = low_stock_count +" +
+                    " (SELECT (quantity <= new.threshold) - (quantity <= old.threshold) FROM products" +
+                    " WHERE _id = new.product_id)" +
+                    " WHERE currency = (SELECT currency FROM products WHERE _id = new.product_id); END;",
+            "CREATE TRIGGER inventory_summary_rule_delete AFTER DELETE ON reorder_rules" +
+                    " BEGIN UPDATE inventory_summary SET low_stock_count = low_stock_count - 1" +
+                    " WHERE currency = (SELECT currency FROM products WHERE _id = old.product_id" +
+                    " AND quantity <= old.threshold); END;");
+
+    // Version 10: the SKU or EAN code of the products
+    private static final String[] SCHEMA_10 = concat(SCHEMA_9,
+            "ALTER TABLE products ADD COLUMN sku TEXT;",
+            "CREATE UNIQUE INDEX products_sku_index ON products (sku);");
+
+    // Version 11: the locations and the stock of the products per location
+    private static final String[] SCHEMA_11 = concat(SCHEMA_10,
+            "CREATE TABLE locations (_id INTEGER PRIMARY KEY AUTOINCREMENT," +
+                    "location_name TEXT NOT NULL UNIQUE);",
+            "INSERT INTO locations (_id, location_name) VALUES (1, 'Main stockroom');",
+            "CREATE TABLE product_stock (" +
+                    "product_id INTEGER NOT NULL REFERENCES products (_id) ON DELETE CASCADE," +
+                    "location_id INTEGER NOT NULL REFERENCES locations (_id)," +
+                    "quantity INTEGER NOT NULL DEFAULT 0 CHECK (quantity >= 0)," +
+                    "PRIMARY KEY (product_id, location_id));",
+            "CREATE INDEX product_stock_location_index ON product_stock (location_id, product_id);",
+            "CREATE TRIGGER product_stock_insert AFTER INSERT ON products BEGIN" +
+                    " INSERT INTO product_stock (product_id, location_id, quantity)" +
+                    " VALUES (new._id, 1, new.quantity); END;",
+            "CREATE TRIGGER product_stock_update AFTER UPDATE OF quantity ON products" +
+                    " WHEN new.quantity != old.quantity BEGIN" +
+                    " UPDATE product_stock SET quantity = quantity + new.quantity - old.quantity" +
+                    " WHERE product_id = new._id AND location_id = 1; END;",
+            "CREATE VIEW stock_totals AS SELECT product_id, SUM(quantity) AS total_quantity" +
+                    " FROM product_stock GROUP BY product_id;");
+
+    // Version 12: the products are deleted softly, and leave the summary until they are restored
+    private static final String[] SCHEMA_12 = concat(SCHEMA_11,
+            "ALTER TABLE products ADD COLUMN deleted_at INTEGER;",
+            "CREATE INDEX products_deleted_index ON products (deleted_at);",
+            "DROP TRIGGER inventory_summary_delete;",
+            "CREATE TRIGGER inventory_summary_delete BEFORE DELETE ON products" +
+                    " WHEN old.deleted_at IS NULL BEGIN UPDATE inventory_summary SET sku_count = sku_count - 1, " +
+                    "total_units = total_units - old.quantity, " +
+                    "total_value_cents = total_value_cents - old.quantity * old.price_cents, " +
+                    "out_of_stock_count = out_of_stock_count - (old.quantity = 0), " +
+                    "low_stock_count = low_stock_count - EXISTS (SELECT 1 FROM reorder_rules" +
+                    " WHERE product_id = old._id AND old.quantity <= threshold)" +
+                    " WHERE currency = old.currency; DELETE FROM inventory_summary" +
+                    " WHERE currency = old.currency AND sku_count = 0; END;",
+            "CREATE TRIGGER inventory_summary_soft_delete AFTER UPDATE OF deleted_at ON products" +
+                    " WHEN old.deleted_at IS NULL AND new.deleted_at IS NOT NULL BEGIN" +
+                    " UPDATE inventory_summary SET sku_count = sku_count - 1, " +
+                    "total_units = total_units - old.quantity, " +
+                    "total_value_cents = total_value_cents - old.quantity * old.price_cents, " +
+                    "out_of_stock_count = out_of_stock_count - (old.quantity = 0), " +
+                    "low_stock_count = low_stock_count - EXISTS (SELECT 1 FROM reorder_rules" +
+                    " WHERE product_id = old._id AND old.quantity <= threshold)" +
+                    " WHERE currency = old.currency; DELETE FROM inventory_summary" +
+                    " WHERE currency = old.currency AND sku_count = 0;" +
+                    " DELETE FROM low_stock_alerts WHERE product_id = old._id; END;",
+            "CREATE TRIGGER inventory_summary_restore AFTER UPDATE OF deleted_at ON products" +
+                    " WHEN old.deleted_at IS NOT NULL AND new.deleted_at IS NULL BEGIN INSERT" +
+                    " OR IGNORE INTO inventory_summary (currency) VALUES (new.currency); " +
+                    "UPDATE inventory_summary SET sku_count = sku_count + 1, " +
+                    "total_units = total_units + new.quantity, " +
+                    "total_value_cents = total_value_cents + new.quantity * new.price_cents, " +
+                    "out_of_stock_count = out_of_stock_count + (new.quantity = 0), " +
+                    "low_stock_count = low_stock_count + EXISTS (SELECT 1 FROM reorder_rules" +
+                    " WHERE product_id = new._id AND new.quantity <= threshold)" +
+                    " WHERE currency = new.currency; INSERT OR IGNORE INTO low_stock_alerts" +
+                    " (product_id, quantity, threshold) SELECT new._id, new.quantity, threshold" +
+                    " FROM reorder_rules WHERE product_id = new._id AND new.quantity <= threshold; END;");
+
+    // Version 13: the codes of the deleted products are moved aside
+    private static final String[] SCHEMA_13 = concat(SCHEMA_12,
+            "ALTER TABLE products ADD COLUMN deleted_sku TEXT;");
+
+    private Context mContext;
+
+    @Before
+    public void setUp() {
+        mContext = InstrumentationRegistry.getTargetContext();
+        mContext.deleteDatabase(TEST_DB);
+        mContext.deleteDatabase(FRESH_DB);
+    }
+
+    @After
+    public void tearDown() {
+        mContext.deleteDatabase(TEST_DB);
+        mContext.deleteDatabase(FRESH_DB);
+    }
+
+    @Test
+    public void upgradeFromVersion1() {
+        assertUpgrade(1, SCHEMA_1);
+    }
+
+    @Test
+    public void upgradeFromVersion2() {
+        assertUpgrade(2, SCHEMA_2);
+    }
+
+    @Test
+    public void upgradeFromVersion3() {
+        assertUpgrade(3, SCHEMA_3);
+    }
+
+    @Test
+    public void upgradeFromVersion4() {
+        assertUpgrade(4, SCHEMA_4);
+    }
+
+    @Test
+    public void upgradeFromVersion5() {
+        assertUpgrade(5, SCHEMA_5);
+    }
+
+    @Test
+    public void upgradeFromVersion6() {
+        assertUpgrade(6, SCHEMA_6);
+    }
+
+    @Test
+    public void upgradeFromVersion7() {
+        assertUpgrade(7, SCHEMA_7);
+    }
+
+    @Test
+    public void upgradeFromVersion8() {
+        assertUpgrade(8, SCHEMA_8);
+    }
+
+    @Test
+    public void upgradeFromVersion9() {
+        assertUpgrade(9, SCHEMA_9);
+    }
+
+    @Test
+    public void upgradeFromVersion10() {
+        assertUpgrade(10, SCHEMA_10);
+    }
+
+    @Test
+    public void upgradeFromVersion11() {
+        assertUpgrade(11, SCHEMA_11);
+    }
+
+    @Test
+    public void upgradeFromVersion12() {
+        assertUpgrade(12, SCHEMA_12);
+    }
+
+    @Test
+    public void upgradeFromVersion13() {
+        assertUpgrade(13, SCHEMA_13);
+    }
+
+    @Test
+    public void upgradeFromVersion12FreesTheCodesOfTheDeletedProducts() {
+        createDatabase(12, SCHEMA_12, ROW_COUNT);
+        SQLiteDatabase oldDb = mContext.openOrCreateDatabase(TEST_DB, Context.MODE_PRIVATE, null);
+        oldDb.execSQL("UPDATE products SET deleted_at = 1000 WHERE _id = 1;");
+        oldDb.close();
+
+        ProductDbHelper helper = new ProductDbHelper(mContext, TEST_DB);
+        SQLiteDatabase db = helper.getWritableDatabase();
+        assertEquals("null SKU0 \n", rowsOf(db, "SELECT sku, deleted_sku FROM products WHERE _id = 1"));
+        assertEquals("SKU1 null \n", rowsOf(db, "SELECT sku, deleted_sku FROM products WHERE _id = 2"));
+        helper.close();
+    }
+
+    @Test
+    public void deletedProductsLeaveTheSummary() {
+        createDatabase(11, SCHEMA_11, ROW_COUNT);
+
+        ProductDbHelper helper = new ProductDbHelper(mContext, TEST_DB);
+        SQLiteDatabase db = helper.getWritableDatabase();
+
+        // Product 11 has 10 items, so a rule above the quantity gives it an alert
+        db.execSQL("INSERT INTO reorder_rules (product_id, threshold) VALUES (11, 10);");
+        assertEquals(1, DatabaseUtils.queryNumEntries(db, "low_stock_alerts", "product_id = 11"));
+
+        // A deleted product leaves the summary and its alert goes, but its rows stay
+        db.execSQL("UPDATE products SET deleted_at = 1000 WHERE _id IN (11, 12);");
+        assertSummary(db);
+        assertEquals(0, DatabaseUtils.queryNumEntries(db, "low_stock_alerts", "product_id = 11"));
+        assertEquals(1, DatabaseUtils.queryNumEntries(db, "products_fts", "docid = 12"));
+
+        // A restored product comes back with its alert
+        db.execSQL("UPDATE products SET deleted_at = NULL WHERE _id = 11;");
+        assertSummary(db);
+        assertEquals(1, DatabaseUtils.queryNumEntries(db, "low_stock_alerts", "product_id = 11"));
+
+        // The purge finds the deleted products through the index, and does not count them twice
+        assertTrue(rowsOf(db, "EXPLAIN QUERY PLAN SELECT _id FROM products WHERE deleted_at <= 2000")
+                .contains("products_deleted_index"));
+        db.execSQL("DELETE FROM products WHERE deleted_at <= 2000;");
+        assertSummary(db);
+        assertEquals(0, DatabaseUtils.queryNumEntries(db, "products_fts", "docid = 12"));
+        assertEquals(0, DatabaseUtils.queryNumEntries(db, "product_stock", "product_id = 12"));
+        assertStock(db);
+        helper.close();
+    }
+
+    @Test
+    public void stockFollowsTheProducts() {
+        createDatabase(11, SCHEMA_11, ROW_COUNT);
+
+        ProductDbHelper helper = new ProductDbHelper(mContext, TEST_DB);
+        SQLiteDatabase db = helper.getWritableDatabase();
+        db.execSQL("INSERT INTO locations (location_name) VALUES ('Back room');");
+
+        // Product 11 has 10 items: 4 of them go to the back room, the total stays
+        db.execSQL("UPDATE product_stock SET quantity = 6 WHERE product_id = 11 AND location_id = 1;");
+        db.execSQL("INSERT INTO product_stock (product_id, location_id, quantity) VALUES (11, 2, 4);");
+        assertStock(db);
+
+        // A new total is counted at the main location, which can not give more than it has
+        db.execSQL("UPDATE products SET quantity = 5 WHERE _id = 11;");
+        assertEquals(1, DatabaseUtils.longForQuery(db,
+                "SELECT quantity FROM product_stock WHERE product_id = 11 AND location_id = 1", null));
+        try {
+            db.execSQL("UPDATE products SET quantity = 3 WHERE _id = 11;");
+            fail("The main location has only 1 item");
+        } catch (SQLiteConstraintException expected) {
+            // The quantity stays 5
+        }
+        assertStock(db);
+
+        // Deleting a product deletes its stock
+        db.execSQL("DELETE FROM products WHERE _id = 11;");
+        assertEquals(0, DatabaseUtils.queryNumEntries(db, "product_stock", "product_id = 11"));
+        assertStock(db);
+        helper.close();
+    }
+
+    @Test
+    public void skuIsUniqueAndOptional() {
+        createDatabase(10, SCHEMA_10, ROW_COUNT);
+
+        ProductDbHelper helper = new ProductDbHelper(mContext, TEST_DB);
+        SQLiteDatabase db = helper.getWritableDatabase();
+
+        // Products without a code can be many, two products with the same code can not
+        db.execSQL("UPDATE products SET sku = NULL WHERE _id IN (1, 2);");
+        ContentValues values = new ContentValues();
+        values.put("sku", "SKU3");
+        assertEquals(0, db.updateWithOnConflict("products", values, "_id = 1", null,
+                SQLiteDatabase.CONFLICT_IGNORE));
+        assertEquals(4, DatabaseUtils.longForQuery(db, "SELECT _id FROM products WHERE sku = 'SKU3'", null));
+
+        // A code is found through its index, not by a scan of the products
+        assertTrue(rowsOf(db, "EXPLAIN QUERY PLAN SELECT _id FROM products WHERE sku = 'SKU3'")
+                .contains("products_sku_index"));
+        helper.close();
+    }
+
+    @Test
+    public void upgradeFromVersion6MovesTheSuppliersIntoTheirTable() {
+        createDatabase(6, SCHEMA_6, ROW_COUNT);
+
+        // The last product was deleted, and the first one has no supplier
+        SQLiteDatabase old = mContext.openOrCreateDatabase(TEST_DB, Context.MODE_PRIVATE, null);
+        old.execSQL("DELETE FROM products WHERE _id = " + ROW_COUNT + ";");
+        old.execSQL("UPDATE products SET supplier_name = NULL, supplier_email = '' WHERE _id = 1;");
+        old.close();
+
+        ProductDbHelper helper = new ProductDbHelper(mContext, TEST_DB);
+        SQLiteDatabase db = helper.getWritableDatabase();
+
+        // Every pair of name and e-mail is one supplier
+        assertEquals(7, DatabaseUtils.queryNumEntries(db, "suppliers"));
+        assertEquals(0, DatabaseUtils.longForQuery(db,
+                "SELECT COUNT(*) FROM products WHERE _id = 1 AND supplier_id IS NOT NULL", null));
+
+        // The id of the deleted product is not given to a new product
+        db.execSQL("INSERT INTO products (product_name, price_cents, currency) VALUES ('New', 100, 'EUR');");
+        assertEquals(ROW_COUNT + 1, DatabaseUtils.longForQuery(db, "SELECT MAX(_id) FROM products", null));
+
+        // Renaming a supplier changes the search of its products
+        db.execSQL("UPDATE suppliers SET supplier_name = 'Renamed' WHERE supplier_name = 'Supplier 2';");
+        assertEquals(ROW_COUNT / 7 + (ROW_COUNT % 7 > 2 ? 1 : 0), DatabaseUtils.longForQuery(db,
+                "SELECT COUNT(*) FROM products_fts WHERE products_fts MATCH 'supplier_name:renamed'", null));
+
+        // Deleting a supplier keeps its products, without a supplier
+        db.execSQL("DELETE FROM suppliers WHERE supplier_name = 'Renamed';");
+        assertEquals(0, DatabaseUtils.longForQuery(db,
+                "SELECT COUNT(*) FROM products WHERE supplier_id NOT IN (SELECT _id FROM suppliers)", null));
+        assertEquals(0, DatabaseUtils.longForQuery(db,
+                "SELECT COUNT(*) FROM products_fts WHERE products_fts MATCH 'supplier_name:renamed'", null));
+        helper.close();
+    }
+
+    @Test
+    public void upgradeFromVersion4RecordsTheQuantitiesInTheLedger() {
+        createDatabase(4, SCHEMA_4, ROW_COUNT);
+
+        ProductDbHelper helper = new ProductDbHelper(mContext, TEST_DB);
+        SQLiteDatabase db = helper.getWritableDatabase();
+
+        // Every quantity is the sum of the movements of its product
+        assertEquals(0, DatabaseUtils.longForQuery(db, "SELECT COUNT(*) FROM products" +
+                " WHERE quantity != (SELECT IFNULL(SUM(delta), 0) FROM stock_movements" +
+                " WHERE product_id = products._id)", null));
+
+        // The initial quantities are not sales
+        assertEquals(0, DatabaseUtils.longForQuery(db,
+                "SELECT IFNULL(SUM(units_sold), 0) FROM daily_stock", null));
+        helper.close();
+    }
+
+    @Test
+    public void lowStockAlertFollowsTheQuantity() {
+        createDatabase(5, SCHEMA_5, ROW_COUNT);
+
+        ProductDbHelper helper = new ProductDbHelper(mContext, TEST_DB);
+        SQLiteDatabase db = helper.getWritableDatabase();
+
+        // Product 11 has 10 items, above its threshold
+        db.execSQL("INSERT INTO reorder_rules (product_id, threshold) VALUES (11, 5);");
+        assertEquals(0, DatabaseUtils.queryNumEntries(db, "low_stock_alerts"));
+
+        // Selling down to the threshold adds the alert, selling more updates it
+        db.execSQL("UPDATE products SET quantity = 5 WHERE _id = 11;");
+        db.execSQL("UPDATE products SET quantity = 3 WHERE _id = 11;");
+        assertEquals(3, DatabaseUtils.longForQuery(db,
+                "SELECT quantity FROM low_stock_alerts WHERE product_id = 11", null));
+
+        // A restock above the threshold removes it
+        db.execSQL("UPDATE products SET quantity = 8 WHERE _id = 11;");
+        assertEquals(0, DatabaseUtils.queryNumEntries(db, "low_stock_alerts"));
+
+        // Raising the threshold above the quantity adds it again, deleting the product removes it
+        db.execSQL("UPDATE reorder_rules SET threshold = 10 WHERE product_id = 11;");
+        assertEquals(1, DatabaseUtils.queryNumEntries(db, "low_stock_alerts"));
+        db.execSQL("DELETE FROM products WHERE _id = 11;");
+        assertEquals(0, DatabaseUtils.queryNumEntries(db, "low_stock_alerts"));
+        assertEquals(0, DatabaseUtils.queryNumEntries(db, "reorder_rules"));
+        helper.close();
+    }
+
+    @Test
+    public void summaryFollowsTheProducts() {
+        createDatabase(9, SCHEMA_9, ROW_COUNT);
+
+        ProductDbHelper helper = new ProductDbHelper(mContext, TEST_DB);
+        SQLiteDatabase db = helper.getWritableDatabase();
+        assertSummary(db);
+
+        // Product 11 has 10 items: a rule above the quantity makes it low on stock,
+        // and selling or restocking it moves it in and out
+        db.execSQL("INSERT INTO reorder_rules (product_id, threshold) VALUES (11, 10);");
+        assertEquals(1, DatabaseUtils.longForQuery(db, "SELECT low_stock_count FROM inventory_summary", null));
+        db.execSQL("UPDATE products SET quantity = 0 WHERE _id = 11;");
+        assertSummary(db);
+        db.execSQL("UPDATE products SET quantity = 30 WHERE _id = 11;");
+        db.execSQL("UPDATE reorder_rules SET threshold = 40 WHERE product_id = 11;");
+        assertSummary(db);
+
+        // A new price changes the value, a new currency moves the product to another row
+        db.execSQL("UPDATE products SET price_cents = 99999 WHERE _id = 12;");
+        db.execSQL("UPDATE products SET currency = 'USD' WHERE _id = 13;");
+        assertEquals(2, DatabaseUtils.queryNumEntries(db, "inventory_summary"));
+        assertSummary(db);
+
+        // Deleting the low product removes it and its rule, and the empty row of its currency goes
+        db.execSQL("DELETE FROM products WHERE _id IN (11, 13);");
+        assertEquals(0, DatabaseUtils.longForQuery(db, "SELECT low_stock_count FROM inventory_summary", null));
+        assertEquals(1, DatabaseUtils.queryNumEntries(db, "inventory_summary"));
+        assertSummary(db);
+
+        db.execSQL("DELETE FROM products;");
+        assertEquals(0, DatabaseUtils.queryNumEntries(db, "inventory_summary"));
+        helper.close();
+    }
+
+    @Test
+    public void upgradeLargeDatabaseFromVersion1() {
+        createDatabase(1, SCHEMA_1, LARGE_ROW_COUNT);
+
+        ProductDbHelper helper = new ProductDbHelper(mContext, TEST_DB);
+        SQLiteDatabase db = helper.getWritableDatabase();
+
+        long total = 0;
+        for (Map.Entry<String, Long> timing : helper.getMigrationTimings().entrySet()) {
+            Log.i(LOG_TAG, timing.getKey() + ": " + timing.getValue() + " ms");
+            total += timing.getValue();
+        }
+        Log.i(LOG_TAG, "Upgrade of " + LARGE_ROW_COUNT + " products took " + total +
+                " ms, the budget is " + ProductMigrations.STARTUP_BUDGET_MILLIS + " ms");
+
+        assertEquals(LARGE_ROW_COUNT, DatabaseUtils.queryNumEntries(db, "products"));
+        helper.close();
+    }
+
+    // Creates a database of the version, upgrades it, and checks the data and the schema
+    private void assertUpgrade(int version, String[] schema) {
+        createDatabase(version, schema, ROW_COUNT);
+
+        ProductDbHelper helper = new ProductDbHelper(mContext, TEST_DB);
+        SQLiteDatabase db = helper.getWritableDatabase();
+        assertEquals(ProductDbHelper.DATABASE_VERSION, db.getVersion());
+
+        // Every product kept its values. The prices of the versions before 8
+        // were typed in the currency of the device.
+        long centsPerUnit = 1;
+        for (int i = 0; i < Prices.fractionDigits(Prices.defaultCurrency()); i++) {
+            centsPerUnit *= 10;
+        }
+        Cursor cursor = db.rawQuery("SELECT products._id, product_name, quantity, supplier_name, price_cents" +
+                " FROM products LEFT JOIN suppliers ON suppliers._id = products.supplier_id" +
+                " ORDER BY products._id", null);
+        try {
+            assertEquals(ROW_COUNT, cursor.getCount());
+            int i = 0;
+            while (cursor.moveToNext()) {
+                assertEquals(i + 1, cursor.getLong(0));
+                assertEquals("Product " + i, cursor.getString(1));
+                assertEquals(i % 20, cursor.getInt(2));
+                assertEquals("Supplier " + (i % 7), cursor.getString(3));
+                assertEquals(version >= 8 ? i * 10 : Math.round((double) (i / 10f) * centsPerUnit),
+                        cursor.getLong(4));
+                i++;
+            }
+        } finally {
+            cursor.close();
+        }
+
+        // The old products can be found by the search
+        assertEquals(ROW_COUNT / 7 + (ROW_COUNT % 7 > 3 ? 1 : 0), DatabaseUtils.longForQuery(db,
+                "SELECT COUNT(*) FROM products_fts WHERE products_fts MATCH 'supplier_name:3'", null));
+
+        assertSummary(db);
+        assertStock(db);
+        assertEquals(freshSchema(), schemaOf(db));
+        helper.close();
+    }
+
+    // Checks that the summary holds the totals of the products that are not deleted,
+    // as if they were added up again
+    private static void assertSummary(SQLiteDatabase db) {
+        assertEquals(rowsOf(db, "SELECT currency, COUNT(*), SUM(quantity), SUM(quantity * price_cents)," +
+                        " SUM(quantity = 0), SUM(IFNULL(quantity <= threshold, 0))" +
+                        " FROM products LEFT JOIN reorder_rules ON product_id = products._id" +
+                        " WHERE deleted_at IS NULL GROUP BY currency ORDER BY currency"),
+                rowsOf(db, "SELECT currency, sku_count, total_units, total_value_cents," +
+                        " out_of_stock_count, low_stock_count FROM inventory_summary ORDER BY currency"));
+    }
+
+    // Checks that the quantity of every product is the total of its stock at the locations
+    private static void assertStock(SQLiteDatabase db) {
+        assertEquals(rowsOf(db, "SELECT _id, quantity FROM products ORDER BY _id"),
+                rowsOf(db, "SELECT product_id, total_quantity FROM stock_totals ORDER BY product_id"));
+    }
+
+    // Returns the values of the rows of the query, one line per row
+    private static String rowsOf(SQLiteDatabase db, String sql) {
+        StringBuilder rows = new StringBuilder();
+        Cursor cursor = db.rawQuery(sql, null);
+        try {
+            while (cursor.moveToNext()) {
+                for (int i = 0; i < cursor.getColumnCount(); i++) {
+                    rows.append(cursor.getString(i)).append(' ');
+                }
+                rows.append('\n');
+            }
+        } finally {
+            cursor.close();
+        }
+        return rows.toString();
+    }
+
+    // Creates the test database with the schema of the version, filled with products
+    private void createDatabase(int version, String[] schema, int rowCount) {
+        SQLiteDatabase db = mContext.openOrCreateDatabase(TEST_DB, Context.MODE_PRIVATE, null);
+        db.beginTransaction();
+        try {
+            for (String statement : schema) {
+                db.execSQL(statement);
+            }
+
+            // Since version 7 the products refer to the suppliers
+            ContentValues values = new ContentValues();
+            if (version >= 7) {
+                for (int i = 0; i < 7; i++) {
+                    values.put("supplier_name", "Supplier " + i);
+                    values.put("supplier_email", "orders@supplier" + i + ".com");
+                    db.insert("suppliers", null, values);
+                }
+                values.clear();
+            }
+
+            for (int i = 0; i < rowCount; i++) {
+                values.put("product_name", "Product " + i);
+                values.put("quantity", i % 20);
+                if (version >= 8) {
+                    values.put("price_cents", i * 10);
+                    values.put("currency", "EUR");
+                } else {
+                    values.put("price", i / 10f);
+                }
+                if (version >= 10) {
+                    values.put("sku", "SKU" + i);
+                }
+                if (version >= 7) {
+                    values.put("supplier_id", i % 7 + 1);
+                } else {
+                    values.put("supplier_name", "Supplier " + (i % 7));
+                    values.put("supplier_email", "orders@supplier" + (i % 7) + ".com");
+                }
+                db.insert("products", null, values);
+            }
+
+            db.setVersion(version);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        db.close();
+    }
+
+    // Returns the schema of a fresh install
+    private Map<String, String> freshSchema() {
+        ProductDbHelper helper = new ProductDbHelper(mContext, FRESH_DB);
+        try {
+            return schemaOf(helper.getWritableDatabase());
+        } finally {
+            helper.close();
+        }
+    }
+
+    // Returns the tables, indexes and triggers of the database, with the columns of the tables
+    private static Map<String, String> schemaOf(SQLiteDatabase db) {
+        Map<String, String> schema = new TreeMap<>();
+        Cursor objects = db.rawQuery("SELECT type, name FROM sqlite_master" +
+                " WHERE name NOT LIKE 'sqlite_%' AND name NOT LIKE 'android_%'", null);
+        try {
+            while (objects.moveToNext()) {
+                String type = objects.getString(0);
+                String name = objects.getString(1);
+                schema.put(name, type.equals("table") ? type + " " + columnsOf(db, name) : type);
+            }
+        } finally {
+            objects.close();
+        }
+        return schema;
+    }
+
+    // Returns the names, types, constraints and default values of the columns of the table
+    private static String columnsOf(SQLiteDatabase db, String table) {
+        StringBuilder columns = new StringBuilder();
+        Cursor cursor = db.rawQuery("PRAGMA table_info(" + table + ")", null);
+        try {
+            while (cursor.moveToNext()) {
+                columns.append(cursor.getString(cursor.getColumnIndex("name"))).append(' ')
+                        .append(cursor.getString(cursor.getColumnIndex("type"))).append(' ')
+                        .append(cursor.getInt(cursor.getColumnIndex("notnull"))).append(' ')
+                        .append(cursor.getString(cursor.getColumnIndex("dflt_value"))).append(' ')
+                        .append(cursor.getInt(cursor.getColumnIndex("pk"))).append(", ");
+            }
+        } finally {
+            cursor.close();
+        }
+        return columns.toString();
+    }
+
+    private static String[] concat(String[] first, String... second) {
+        String[] result = new String[first.length + second.length];
+        System.arraycopy(first, 0, result, 0, first.length);
+        System.arraycopy(second, 0, result, first.length, second.length);
+        return result;
+    }
+}
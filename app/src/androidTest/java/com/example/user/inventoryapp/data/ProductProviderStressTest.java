@@ -0,0 +1,348 @@
+package com.example.user.inventoryapp.data;
+
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.os.Bundle;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import com.example.user.inventoryapp.data.ProductContract.LocationEntry;
+import com.example.user.inventoryapp.data.ProductContract.ProductEntry;
+import com.example.user.inventoryapp.data.ProductContract.StockEntry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs readers that page through the products while writers sell and restock them,
+ * once with the rollback journal and once with write-ahead logging,
+ * and logs the percentiles of the read latency of both runs.
+ * Checks that the cache and the stock per location stay consistent under concurrent writes.
+ */
+@RunWith(AndroidJUnit4.class)
+public class ProductProviderStressTest {
+
+    private static final String LOG_TAG = ProductProviderStressTest.class.getSimpleName();
+
+    private static final String TEST_DB = "stress-test.db";
+
+    // The number of products in the database
+    private static final int PRODUCT_COUNT = 10000;
+
+    // The number of threads that read and write at the same time
+    private static final int READERS = 2;
+    private static final int WRITERS = 2;
+
+    // How long every run takes
+    private static final long DURATION_MILLIS = 5000;
+
+    // The number of rows read by one query, like one page of the list
+    private static final int PAGE_SIZE = 50;
+
+    private Context mContext;
+
+    @Before
+    public void setUp() {
+        mContext = InstrumentationRegistry.getTargetContext();
+        mContext.deleteDatabase(TEST_DB);
+    }
+
+    @After
+    public void tearDown() {
+        mContext.deleteDatabase(TEST_DB);
+    }
+
+    @Test
+    public void readLatencyWithAndWithoutWal() throws Exception {
+        ProductDbHelper.Options rollbackJournal = new ProductDbHelper.Options(false,
+                ProductDbHelper.Options.DEFAULT.cacheSizeKb, "FULL",
+                ProductDbHelper.Options.DEFAULT.walAutoCheckpointPages);
+
+        Result before = run(rollbackJournal);
+        mContext.deleteDatabase(TEST_DB);
+        Result after = run(ProductDbHelper.Options.DEFAULT);
+
+        Log.i(LOG_TAG, "Rollback journal: " + before);
+        Log.i(LOG_TAG, "Write-ahead log:  " + after);
+
+        assertTrue(before.mReads > 0 && after.mReads > 0);
+        assertTrue(before.mWrites > 0 && after.mWrites > 0);
+    }
+
+    @Test
+    public void cachedProductsFollowTheWrites() throws Exception {
+        final ProductDbHelper dbHelper = new ProductDbHelper(mContext, TEST_DB);
+        final ProductProvider provider = new ProductProvider();
+        provider.attachInfo(mContext, null);
+        provider.setDbHelper(dbHelper);
+
+        // Few products, so the readers open the same ones again and again
+        final int productCount = 20;
+        ContentValues[] products = new ContentValues[productCount];
+        for (int i = 0; i < productCount; i++) {
+            products[i] = new ContentValues();
+            products[i].put(ProductEntry.COLUMN_PRODUCT_NAME, "Product " + i);
+            products[i].put(ProductEntry.COLUMN_PRODUCT_QUANTITY, 1000);
+            products[i].put(ProductEntry.COLUMN_PRODUCT_PRICE_CENTS, 150);
+        }
+        provider.bulkInsert(ProductEntry.CONTENT_URI, products);
+
+        final long deadline = System.currentTimeMillis() + DURATION_MILLIS / 5;
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < READERS; i++) {
+            threads.add(new Thread() {
+                @Override
+                public void run() {
+                    Random random = new Random();
+                    while (System.currentTimeMillis() < deadline) {
+                        provider.query(ContentUris.withAppendedId(ProductEntry.CONTENT_URI,
+                                random.nextInt(productCount) + 1), null, null, null, null).close();
+                    }
+                }
+            });
+        }
+        for (int i = 0; i < WRITERS; i++) {
+            threads.add(new Thread() {
+                @Override
+                public void run() {
+                    Random random = new Random();
+                    Bundle extras = new Bundle();
+                    while (System.currentTimeMillis() < deadline) {
+                        extras.putInt(ProductEntry.KEY_QUANTITY_DELTA, random.nextBoolean() ? 1 : -1);
+                        provider.call(ProductEntry.METHOD_ADJUST_QUANTITY,
+                                String.valueOf(random.nextInt(productCount) + 1), extras);
+                    }
+                }
+            });
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        // Every product read through the cache has the quantity of the database
+        for (int id = 1; id <= productCount; id++) {
+            Cursor cursor = provider.query(ContentUris.withAppendedId(ProductEntry.CONTENT_URI, id),
+                    new String[]{ProductEntry.COLUMN_PRODUCT_QUANTITY}, null, null, null);
+            try {
+                cursor.moveToFirst();
+                assertEquals(DatabaseUtils.longForQuery(dbHelper.getReadableDatabase(),
+                        "SELECT quantity FROM products WHERE _id = " + id, null), cursor.getLong(0));
+            } finally {
+                cursor.close();
+            }
+        }
+
+        Bundle stats = provider.call(ProductEntry.METHOD_GET_CACHE_STATS, null, null);
+        Log.i(LOG_TAG, "Cache hits " + stats.getInt(ProductEntry.KEY_CACHE_HITS) +
+                ", misses " + stats.getInt(ProductEntry.KEY_CACHE_MISSES));
+        assertTrue(stats.getInt(ProductEntry.KEY_CACHE_HITS) > 0);
+        dbHelper.close();
+    }
+
+    @Test
+    public void transfersKeepTheTotals() throws Exception {
+        final ProductDbHelper dbHelper = new ProductDbHelper(mContext, TEST_DB);
+        final ProductProvider provider = new ProductProvider();
+        provider.attachInfo(mContext, null);
+        provider.setDbHelper(dbHelper);
+
+        final int productCount = 20;
+        ContentValues[] products = new ContentValues[productCount];
+        for (int i = 0; i < productCount; i++) {
+            products[i] = new ContentValues();
+            products[i].put(ProductEntry.COLUMN_PRODUCT_NAME, "Product " + i);
+            products[i].put(ProductEntry.COLUMN_PRODUCT_QUANTITY, 100);
+            products[i].put(ProductEntry.COLUMN_PRODUCT_PRICE_CENTS, 150);
+        }
+        provider.bulkInsert(ProductEntry.CONTENT_URI, products);
+
+        // Three stockrooms: the main one and two more
+        for (String name : new String[]{"Back room", "Warehouse"}) {
+            ContentValues location = new ContentValues();
+            location.put(LocationEntry.COLUMN_LOCATION_NAME, name);
+            provider.insert(LocationEntry.CONTENT_URI, location);
+        }
+        final int locationCount = 3;
+
+        // Half of the writers move units between the locations, the other half sells
+        // and restocks them at random locations
+        final long deadline = System.currentTimeMillis() + DURATION_MILLIS / 5;
+        final AtomicInteger transfers = new AtomicInteger();
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 2 * WRITERS; i++) {
+            final boolean transferring = i % 2 == 0;
+            threads.add(new Thread() {
+                @Override
+                public void run() {
+                    Random random = new Random();
+                    ContentValues values = new ContentValues();
+                    while (System.currentTimeMillis() < deadline) {
+                        long id = random.nextInt(productCount) + 1;
+                        long from = random.nextInt(locationCount) + 1;
+                        values.clear();
+                        if (transferring) {
+                            values.put(StockEntry.KEY_FROM_LOCATION_ID, from);
+                            values.put(StockEntry.KEY_TO_LOCATION_ID, from % locationCount + 1);
+                            values.put(StockEntry.COLUMN_QUANTITY, random.nextInt(5) + 1);
+                            transfers.addAndGet(provider.update(ProductEntry.buildTransferUri(id),
+                                    values, null, null));
+                        } else {
+                            values.put(StockEntry.COLUMN_LOCATION_ID, from);
+                            values.put(ProductEntry.KEY_QUANTITY_DELTA, random.nextBoolean() ? 1 : -1);
+                            provider.update(ProductEntry.buildStockUri(id), values, null, null);
+                        }
+                    }
+                }
+            });
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        Log.i(LOG_TAG, transfers.get() + " transfers");
+        assertTrue(transfers.get() > 0);
+
+        // The quantity of every product is the total of its locations, none of which is negative
+        for (int id = 1; id <= productCount; id++) {
+            Cursor cursor = provider.query(ProductEntry.buildStockUri(id), null, null, null, null);
+            try {
+                assertEquals(locationCount, cursor.getCount());
+                long total = 0;
+                while (cursor.moveToNext()) {
+                    long quantity = cursor.getLong(cursor.getColumnIndexOrThrow(StockEntry.COLUMN_QUANTITY));
+                    assertTrue(quantity >= 0);
+                    total += quantity;
+                }
+                assertEquals(DatabaseUtils.longForQuery(dbHelper.getReadableDatabase(),
+                        "SELECT quantity FROM products WHERE _id = " + id, null), total);
+            } finally {
+                cursor.close();
+            }
+        }
+        dbHelper.close();
+    }
+
+    // Fills a new database and runs the readers and writers against it
+    private Result run(ProductDbHelper.Options options) throws InterruptedException {
+        final ProductDbHelper dbHelper = new ProductDbHelper(mContext, TEST_DB, options);
+        final ProductProvider provider = new ProductProvider();
+        provider.attachInfo(mContext, null);
+        provider.setDbHelper(dbHelper);
+
+        ContentValues[] products = new ContentValues[PRODUCT_COUNT];
+        for (int i = 0; i < PRODUCT_COUNT; i++) {
+            products[i] = new ContentValues();
+            products[i].put(ProductEntry.COLUMN_PRODUCT_NAME, "Product " + i);
+            products[i].put(ProductEntry.COLUMN_PRODUCT_QUANTITY, 1000);
+            products[i].put(ProductEntry.COLUMN_PRODUCT_PRICE_CENTS, 150);
+        }
+        provider.bulkInsert(ProductEntry.CONTENT_URI, products);
+
+        final long deadline = System.currentTimeMillis() + DURATION_MILLIS;
+        final List<List<Long>> latencies = new ArrayList<>();
+        final AtomicInteger writes = new AtomicInteger();
+        List<Thread> threads = new ArrayList<>();
+
+        for (int i = 0; i < READERS; i++) {
+            final List<Long> readerLatencies = new ArrayList<>();
+            latencies.add(readerLatencies);
+            threads.add(new Thread() {
+                @Override
+                public void run() {
+                    Random random = new Random();
+                    while (System.currentTimeMillis() < deadline) {
+                        long afterId = random.nextInt(PRODUCT_COUNT - PAGE_SIZE);
+                        long start = System.nanoTime();
+                        Cursor cursor = provider.query(ProductEntry.buildPageUri(ProductEntry._ID,
+                                PAGE_SIZE, String.valueOf(afterId), afterId), null, null, null, null);
+                        cursor.getCount();
+                        cursor.close();
+                        readerLatencies.add(System.nanoTime() - start);
+                    }
+                }
+            });
+        }
+
+        for (int i = 0; i < WRITERS; i++) {
+            threads.add(new Thread() {
+                @Override
+                public void run() {
+                    Random random = new Random();
+                    Bundle extras = new Bundle();
+                    while (System.currentTimeMillis() < deadline) {
+                        extras.putInt(ProductEntry.KEY_QUANTITY_DELTA, random.nextBoolean() ? 1 : -1);
+                        provider.call(ProductEntry.METHOD_ADJUST_QUANTITY,
+                                String.valueOf(random.nextInt(PRODUCT_COUNT) + 1), extras);
+                        writes.incrementAndGet();
+                    }
+                }
+            });
+        }
+
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        dbHelper.close();
+
+        List<Long> all = new ArrayList<>();
+        for (List<Long> readerLatencies : latencies) {
+            all.addAll(readerLatencies);
+        }
+        Collections.sort(all);
+        return new Result(all, writes.get());
+    }
+
+    // The number of reads and writes of a run, and the percentiles of the read latency
+    private static class Result {
+        final int mReads;
+        final int mWrites;
+        final long mP50Micros;
+        final long mP95Micros;
+        final long mP99Micros;
+
+        Result(List<Long> sortedLatencies, int writes) {
+            mReads = sortedLatencies.size();
+            mWrites = writes;
+            mP50Micros = percentile(sortedLatencies, 50);
+            mP95Micros = percentile(sortedLatencies, 95);
+            mP99Micros = percentile(sortedLatencies, 99);
+        }
+
+        private static long percentile(List<Long> sortedNanos, int percent) {
+            if (sortedNanos.isEmpty()) {
+                return 0;
+            }
+            int index = Math.min(sortedNanos.size() - 1, sortedNanos.size() * percent / 100);
+            return sortedNanos.get(index) / 1000;
+        }
+
+        @Override
+        public String toString() {
+            return mReads + " reads, " + mWrites + " writes, read latency p50 " + mP50Micros +
+                    " us, p95 " + mP95Micros + " us, p99 " + mP99Micros + " us";
+        }
+    }
+}
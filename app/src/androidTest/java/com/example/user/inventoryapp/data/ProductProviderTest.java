@@ -0,0 +1,371 @@
+package com.example.user.inventoryapp.data;
+
+import android.content.ContentProviderOperation;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.content.Context;
+import android.content.OperationApplicationException;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.net.Uri;
+import android.os.Bundle;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.example.user.inventoryapp.data.ProductContract.DailyStockEntry;
+import com.example.user.inventoryapp.data.ProductContract.LocationEntry;
+import com.example.user.inventoryapp.data.ProductContract.ProductEntry;
+import com.example.user.inventoryapp.data.ProductContract.ReorderRuleEntry;
+import com.example.user.inventoryapp.data.ProductContract.StockEntry;
+import com.example.user.inventoryapp.data.ProductContract.StockMovementEntry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+/**
+ * Checks the writes of the {@link ProductProvider} that change more than one table,
+ * on a database of its own.
+ */
+@RunWith(AndroidJUnit4.class)
+public class ProductProviderTest {
+
+    private static final String TEST_DB = "provider-test.db";
+
+    private Context mContext;
+
+    private ProductDbHelper mDbHelper;
+
+    private ProductProvider mProvider;
+
+    @Before
+    public void setUp() {
+        mContext = InstrumentationRegistry.getTargetContext();
+        mContext.deleteDatabase(TEST_DB);
+
+        mDbHelper = new ProductDbHelper(mContext, TEST_DB);
+        mProvider = new ProductProvider();
+        mProvider.attachInfo(mContext, null);
+        mProvider.setDbHelper(mDbHelper);
+    }
+
+    @After
+    public void tearDown() {
+        mDbHelper.close();
+        mContext.deleteDatabase(TEST_DB);
+    }
+
+    @Test
+    public void sellsFromTheOtherLocations() {
+        long id = insertProduct("Boots", 5);
+        long backRoom = insertLocation("Back room");
+        long warehouse = insertLocation("Warehouse");
+
+        // All of the units are away from the main location: 3 in the back room, 2 in the warehouse
+        assertEquals(1, transfer(id, LocationEntry.MAIN_LOCATION_ID, backRoom, 3));
+        assertEquals(1, transfer(id, LocationEntry.MAIN_LOCATION_ID, warehouse, 2));
+
+        // The sale takes the units from the location with the most of them first
+        assertEquals(1, sell(id, 4));
+        assertEquals(0, stockAt(id, LocationEntry.MAIN_LOCATION_ID));
+        assertEquals(0, stockAt(id, backRoom));
+        assertEquals(1, stockAt(id, warehouse));
+
+        // More than the total can not be sold, and nothing is moved then
+        assertEquals(-1, sell(id, 2));
+        assertEquals(1, stockAt(id, warehouse));
+        assertEquals(0, sell(id, 1));
+    }
+
+    @Test
+    public void saleOfADeletedProductMovesNothing() {
+        long id = insertProduct("Boots", 5);
+        long backRoom = insertLocation("Back room");
+        assertEquals(1, transfer(id, LocationEntry.MAIN_LOCATION_ID, backRoom, 5));
+        assertEquals(1, mProvider.delete(ContentUris.withAppendedId(ProductEntry.CONTENT_URI, id), null, null));
+
+        assertEquals(-1, sell(id, 2));
+        assertEquals(0, stockAt(id, LocationEntry.MAIN_LOCATION_ID));
+        assertEquals(5, stockAt(id, backRoom));
+    }
+
+    @Test
+    public void editTakesTheUnitsFromTheOtherLocations() {
+        long id = insertProduct("Boots", 5);
+        long backRoom = insertLocation("Back room");
+        assertEquals(1, transfer(id, LocationEntry.MAIN_LOCATION_ID, backRoom, 4));
+
+        // The main location has 1 unit, so 2 of the 3 units removed come from the back room
+        ContentValues values = new ContentValues();
+        values.put(ProductEntry.COLUMN_PRODUCT_QUANTITY, 2);
+        assertEquals(1, mProvider.update(ContentUris.withAppendedId(ProductEntry.CONTENT_URI, id),
+                values, null, null));
+        assertEquals(0, stockAt(id, LocationEntry.MAIN_LOCATION_ID));
+        assertEquals(2, stockAt(id, backRoom));
+        assertEquals(2, totalOf(id));
+    }
+
+    @Test
+    public void lowStockFollowsTheReorderRules() {
+        long boots = insertProduct("Boots", 3);
+        insertProduct("Hats", 3);
+        ContentValues values = new ContentValues();
+        values.put(ProductEntry.COLUMN_REORDER_THRESHOLD, 3);
+        assertEquals(1, mProvider.update(ContentUris.withAppendedId(ProductEntry.CONTENT_URI, boots),
+                values, null, null));
+
+        // Only the product at its threshold is low, the one without a rule is not
+        Cursor cursor = mProvider.query(ProductEntry.CONTENT_URI, new String[]{ProductEntry._ID},
+                ReorderRuleEntry.LOW_STOCK_SELECTION, null, null);
+        try {
+            assertEquals(1, cursor.getCount());
+            cursor.moveToFirst();
+            assertEquals(boots, cursor.getLong(0));
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @Test
+    public void readsTheTotalsOfTheProducts() {
+        long boots = insertProduct("Boots", 5);
+        long hats = insertProduct("Hats", 2);
+        long backRoom = insertLocation("Back room");
+        assertEquals(1, transfer(boots, LocationEntry.MAIN_LOCATION_ID, backRoom, 3));
+
+        // The total adds up the locations of the product
+        assertEquals(5, totalOf(boots));
+        assertEquals(2, totalOf(hats));
+
+        // A deleted product has no total
+        assertEquals(1, mProvider.delete(ContentUris.withAppendedId(ProductEntry.CONTENT_URI, hats), null, null));
+        assertEquals(-1, totalOf(hats));
+    }
+
+    @Test
+    public void flushSellsTheUnitsThatAreLeft() {
+        long id = insertProduct("Boots", 3);
+        journal(id, -2);
+        journal(id, -2);
+        journal(id, -1);
+
+        // Three of the five units sold are on stock, the other two are reported
+        Bundle result = mProvider.call(ProductEntry.METHOD_FLUSH_DELTAS, null, null);
+        assertEquals(2, result.getInt(ProductEntry.KEY_REJECTED_UNITS));
+        assertEquals(0, result.getIntArray(ProductEntry.KEY_QUANTITIES)[0]);
+        assertEquals(0, stockAt(id, LocationEntry.MAIN_LOCATION_ID));
+
+        // The journal is empty after the flush
+        result = mProvider.call(ProductEntry.METHOD_FLUSH_DELTAS, null, null);
+        assertEquals(0, result.getLongArray(ProductEntry.KEY_PRODUCT_IDS).length);
+        assertEquals(0, result.getInt(ProductEntry.KEY_REJECTED_UNITS));
+    }
+
+    @Test
+    public void batchFailsOnADuplicateCode() {
+        long boots = insertProduct("Boots", 5);
+        long hats = insertProduct("Hats", 2);
+
+        // The second update gives the hats the code of the boots
+        ArrayList<ContentProviderOperation> operations = new ArrayList<>();
+        operations.add(ContentProviderOperation
+                .newUpdate(ContentUris.withAppendedId(ProductEntry.CONTENT_URI, boots))
+                .withValue(ProductEntry.COLUMN_PRODUCT_SKU, "12345")
+                .build());
+        operations.add(ContentProviderOperation
+                .newUpdate(ContentUris.withAppendedId(ProductEntry.CONTENT_URI, hats))
+                .withValue(ProductEntry.COLUMN_PRODUCT_SKU, "12345")
+                .build());
+        try {
+            mProvider.applyBatch(operations);
+            fail("The batch was applied with a duplicate code");
+        } catch (OperationApplicationException e) {
+            // Expected
+        }
+
+        // The first update was rolled back with the second one
+        assertEquals(0, DatabaseUtils.queryNumEntries(mDbHelper.getReadableDatabase(),
+                ProductEntry.TABLE_NAME, ProductEntry.COLUMN_PRODUCT_SKU + " IS NOT NULL"));
+    }
+
+    @Test
+    public void salesLeaveOutTheDeletedProducts() {
+        long boots = insertProduct("Boots", 5);
+        long hats = insertProduct("Hats", 2);
+        sell(boots, 2);
+        sell(hats, 1);
+        assertEquals(1, mProvider.delete(ContentUris.withAppendedId(ProductEntry.CONTENT_URI, hats), null, null));
+
+        // Only the boots are counted, per product and in the totals of the day
+        Uri salesUri = ProductEntry.SALES_URI.buildUpon()
+                .appendQueryParameter(ProductEntry.QUERY_PARAM_DAYS, "1").build();
+        Cursor cursor = mProvider.query(salesUri, null, null, null, null);
+        try {
+            assertEquals(1, cursor.getCount());
+            cursor.moveToFirst();
+            assertEquals(boots, cursor.getLong(cursor.getColumnIndexOrThrow(ProductEntry._ID)));
+        } finally {
+            cursor.close();
+        }
+        Uri dailyUri = ProductEntry.DAILY_SALES_URI.buildUpon()
+                .appendQueryParameter(ProductEntry.QUERY_PARAM_DAYS, "1").build();
+        cursor = mProvider.query(dailyUri, null, null, null, null);
+        try {
+            assertEquals(1, cursor.getCount());
+            cursor.moveToFirst();
+            assertEquals(2, cursor.getInt(cursor.getColumnIndexOrThrow(
+                    DailyStockEntry.COLUMN_UNITS_SOLD)));
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @Test
+    public void deletedProductsFreeTheirCode() {
+        long boots = insertProduct("Boots", 5, "BOOTS");
+        long hats = insertProduct("Hats", 2, "HATS");
+        assertEquals(2, mProvider.delete(ProductEntry.CONTENT_URI, null, null));
+
+        // A new product can take the code of a deleted one
+        long newBoots = insertProduct("New boots", 1, "BOOTS");
+        assertEquals("BOOTS", skuOf(newBoots));
+
+        // The undo gives the codes back, except the one that was taken
+        Bundle result = mProvider.call(ProductEntry.METHOD_UNDO_DELETE, null, null);
+        assertEquals(2, result.getInt(ProductEntry.KEY_RESTORED_COUNT));
+        assertNull(skuOf(boots));
+        assertEquals("HATS", skuOf(hats));
+        assertEquals("BOOTS", skuOf(newBoots));
+    }
+
+    @Test
+    public void sellsByANormalizedCode() {
+        long id = insertProduct("Boots", 5, "ab-123");
+
+        // The typed code is trimmed and upper cased, like the stored one
+        Bundle result = sellBySku("  Ab-123 ");
+        assertEquals(id, result.getLong(ProductEntry.KEY_PRODUCT_ID));
+        assertEquals("Boots", result.getString(ProductEntry.COLUMN_PRODUCT_NAME));
+        assertEquals(4, result.getInt(ProductEntry.COLUMN_PRODUCT_QUANTITY));
+    }
+
+    @Test
+    public void unknownCodeSellsNothing() {
+        insertProduct("Boots", 5, "AB-123");
+
+        Bundle result = sellBySku("AB-124");
+        assertEquals(-1, result.getLong(ProductEntry.KEY_PRODUCT_ID));
+        assertEquals(-1, result.getInt(ProductEntry.COLUMN_PRODUCT_QUANTITY));
+    }
+
+    @Test
+    public void codeOutOfStockWritesNothing() {
+        long id = insertProduct("Boots", 0, "AB-123");
+        long movements = DatabaseUtils.queryNumEntries(mDbHelper.getReadableDatabase(),
+                StockMovementEntry.TABLE_NAME);
+
+        // The product is found, but not sold
+        Bundle result = sellBySku("AB-123");
+        assertEquals(id, result.getLong(ProductEntry.KEY_PRODUCT_ID));
+        assertEquals(-1, result.getInt(ProductEntry.COLUMN_PRODUCT_QUANTITY));
+        assertEquals(0, totalOf(id));
+        assertEquals(movements, DatabaseUtils.queryNumEntries(mDbHelper.getReadableDatabase(),
+                StockMovementEntry.TABLE_NAME));
+    }
+
+    @Test
+    public void codeOfADeletedProductIsNotFound() {
+        long id = insertProduct("Boots", 5, "AB-123");
+        assertEquals(1, mProvider.delete(ContentUris.withAppendedId(ProductEntry.CONTENT_URI, id), null, null));
+
+        Bundle result = sellBySku("AB-123");
+        assertEquals(-1, result.getLong(ProductEntry.KEY_PRODUCT_ID));
+        assertEquals(5, stockAt(id, LocationEntry.MAIN_LOCATION_ID));
+    }
+
+    // Inserts a product with the quantity and returns its id
+    private long insertProduct(String name, int quantity) {
+        return insertProduct(name, quantity, null);
+    }
+
+    // Inserts a product with the quantity and the code, and returns its id
+    private long insertProduct(String name, int quantity, String sku) {
+        ContentValues values = new ContentValues();
+        values.put(ProductEntry.COLUMN_PRODUCT_NAME, name);
+        values.put(ProductEntry.COLUMN_PRODUCT_QUANTITY, quantity);
+        values.put(ProductEntry.COLUMN_PRODUCT_PRICE_CENTS, 1000);
+        if (sku != null) {
+            values.put(ProductEntry.COLUMN_PRODUCT_SKU, sku);
+        }
+        Uri uri = mProvider.insert(ProductEntry.CONTENT_URI, values);
+        return ContentUris.parseId(uri);
+    }
+
+    // Inserts a location and returns its id
+    private long insertLocation(String name) {
+        ContentValues values = new ContentValues();
+        values.put(LocationEntry.COLUMN_LOCATION_NAME, name);
+        return ContentUris.parseId(mProvider.insert(LocationEntry.CONTENT_URI, values));
+    }
+
+    // Moves units of the product between the locations, returns 1 if they were moved
+    private int transfer(long id, long fromLocationId, long toLocationId, int units) {
+        ContentValues values = new ContentValues();
+        values.put(StockEntry.KEY_FROM_LOCATION_ID, fromLocationId);
+        values.put(StockEntry.KEY_TO_LOCATION_ID, toLocationId);
+        values.put(StockEntry.COLUMN_QUANTITY, units);
+        return mProvider.update(ProductEntry.buildTransferUri(id), values, null, null);
+    }
+
+    // Sells units of the product and returns its new quantity, or -1 if they were not sold
+    private int sell(long id, int units) {
+        Bundle extras = new Bundle();
+        extras.putInt(ProductEntry.KEY_QUANTITY_DELTA, -units);
+        return mProvider.call(ProductEntry.METHOD_ADJUST_QUANTITY, String.valueOf(id), extras)
+                .getInt(ProductEntry.COLUMN_PRODUCT_QUANTITY);
+    }
+
+    // Sells one unit of the product with the code, like a scan at the till
+    private Bundle sellBySku(String code) {
+        return mProvider.call(ProductEntry.METHOD_SELL_BY_SKU, code, null);
+    }
+
+    // Adds a delta of the product to the journal of the provider
+    private void journal(long id, int delta) {
+        Bundle extras = new Bundle();
+        extras.putInt(ProductEntry.KEY_QUANTITY_DELTA, delta);
+        mProvider.call(ProductEntry.METHOD_JOURNAL_DELTA, String.valueOf(id), extras);
+    }
+
+    // Returns the total of the product read through the provider, or -1 if it has no row
+    private long totalOf(long id) {
+        Cursor cursor = mProvider.query(StockEntry.TOTALS_URI,
+                new String[]{StockEntry.COLUMN_TOTAL_QUANTITY},
+                StockEntry.COLUMN_PRODUCT_ID + " = ?", new String[]{String.valueOf(id)}, null);
+        try {
+            return cursor.moveToFirst() ? cursor.getLong(0) : -1;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    // Returns the code of the product, whether it is deleted or not
+    private String skuOf(long id) {
+        return DatabaseUtils.stringForQuery(mDbHelper.getReadableDatabase(),
+                "SELECT sku FROM products WHERE _id = " + id, null);
+    }
+
+    // Returns the units of the product at the location
+    private long stockAt(long id, long locationId) {
+        return DatabaseUtils.longForQuery(mDbHelper.getReadableDatabase(),
+                "SELECT IFNULL((SELECT quantity FROM product_stock WHERE product_id = " + id +
+                        " AND location_id = " + locationId + "), 0)", null);
+    }
+}
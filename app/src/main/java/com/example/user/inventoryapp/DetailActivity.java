@@ -9,30 +9,29 @@ import android.content.DialogInterface;
 import android.content.Intent;
 import android.content.Loader;
 import android.database.Cursor;
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.net.Uri;
 import android.os.Build;
 import android.os.Bundle;
 import android.support.v4.app.NavUtils;
 import android.support.v7.app.AppCompatActivity;
 import android.text.TextUtils;
-import android.util.Log;
 import android.view.Menu;
 import android.view.MenuItem;
 import android.view.MotionEvent;
 import android.view.View;
-import android.view.ViewTreeObserver;
 import android.widget.Button;
 import android.widget.EditText;
 import android.widget.ImageView;
+import android.widget.TextView;
 import android.widget.Toast;
 
+import com.example.user.inventoryapp.data.Prices;
 import com.example.user.inventoryapp.data.ProductContract.ProductEntry;
+import com.example.user.inventoryapp.data.ProductValidator;
+import com.example.user.inventoryapp.image.PhotoDecoder;
+import com.example.user.inventoryapp.image.ThumbnailLoader;
 
-import java.io.FileNotFoundException;
-import java.io.IOException;
-import java.io.InputStream;
+import java.util.Currency;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -55,8 +54,11 @@ public class DetailActivity extends AppCompatActivity implements LoaderManager.L
     // Request code intent that gets the image from the users' gallery
     private static final int PICK_IMAGE_REQUEST = 0;
 
-    // Stores the float value of product's price
-    float mProductPriceFloat;
+    // Stores the product's price in the minor unit of its currency, like cents
+    long mProductPriceCents;
+
+    // The currency of the product's price. New products get the currency of the device.
+    String mCurrency = Prices.defaultCurrency();
 
     // Stores the int value of product's quantity
     int mProductQuantityInt;
@@ -73,21 +75,33 @@ public class DetailActivity extends AppCompatActivity implements LoaderManager.L
     // Stores the Uri of the product's photo
     private Uri mProductPhotoUri;
 
+    // Stores the Uri of the photo that is saved in the database for the existing product
+    private Uri mSavedPhotoUri;
+
     // Boolean flag that keeps track of whether the product has been edited (true) or not (false)
     private boolean mProductHasChanged = false;
 
     // EditText field to enter product's name
     private EditText mProductNameEditText;
 
+    // EditText field to enter the SKU or the barcode of the product, which is optional
+    private EditText mProductSkuEditText;
+
     // EditText field to enter product's price
     private EditText mProductPriceEditText;
 
+    // TextView with the symbol of the currency of the price
+    private TextView mCurrencyTextView;
+
     // EditText field to enter product's quantity
     private EditText mProductQuantityEditText;
 
     // ImageView that holds the image of the product
     private ImageView mProductPhotoView;
 
+    // Decodes the photo of the product on a background thread and shows it in mProductPhotoView
+    private PhotoDecoder mPhotoDecoder;
+
     // EditText field to enter supplier for the product
     private EditText mSupplierNameEditText;
 
@@ -97,6 +111,9 @@ public class DetailActivity extends AppCompatActivity implements LoaderManager.L
     //EditText field to enter restock quantity
     private EditText mRestockQuantityEditText;
 
+    // EditText field to enter the quantity at which the product should be reordered, or nothing
+    private EditText mReorderThresholdEditText;
+
     // Button that increases product's quantity
     private Button mIncreaseQuantityButton;
 
@@ -147,7 +164,10 @@ public class DetailActivity extends AppCompatActivity implements LoaderManager.L
 
         // Find all relevant views that we will need to read user's input from
         mProductNameEditText = (EditText) findViewById(R.id.edit_product_name);
+        mProductSkuEditText = (EditText) findViewById(R.id.edit_product_sku);
         mProductPriceEditText = (EditText) findViewById(R.id.edit_product_price);
+        mCurrencyTextView = (TextView) findViewById(R.id.edit_price_currency);
+        mCurrencyTextView.setText(Currency.getInstance(mCurrency).getSymbol());
         mProductQuantityEditText = (EditText) findViewById(R.id.edit_product_quantity);
         mProductPhotoView = (ImageView) findViewById(R.id.edit_product_photo);
         mSupplierNameEditText = (EditText) findViewById(R.id.edit_suppliers_name);
@@ -155,13 +175,19 @@ public class DetailActivity extends AppCompatActivity implements LoaderManager.L
         mIncreaseQuantityButton = (Button) findViewById(R.id.increase_button);
         mDecreaseQuantityButton = (Button) findViewById(R.id.decrease_button);
         mRestockQuantityEditText = (EditText) findViewById(R.id.edit_restock_quantity);
+        mReorderThresholdEditText = (EditText) findViewById(R.id.edit_reorder_threshold);
+
+        // Setup the decoder of the product's photo
+        mPhotoDecoder = new PhotoDecoder(getContentResolver(), mProductPhotoView);
 
         // Attach onTouchListener to these views
         mProductNameEditText.setOnTouchListener(mTouchListener);
+        mProductSkuEditText.setOnTouchListener(mTouchListener);
         mProductPriceEditText.setOnTouchListener(mTouchListener);
         mProductQuantityEditText.setOnTouchListener(mTouchListener);
         mSupplierNameEditText.setOnTouchListener(mTouchListener);
         mSupplierEmailEditText.setOnTouchListener(mTouchListener);
+        mReorderThresholdEditText.setOnTouchListener(mTouchListener);
         mIncreaseQuantityButton.setOnTouchListener(mTouchListener);
         mDecreaseQuantityButton.setOnTouchListener(mTouchListener);
 
@@ -213,6 +239,14 @@ public class DetailActivity extends AppCompatActivity implements LoaderManager.L
         });
     }
 
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+
+        // Cancel the decode of the photo, so it does not finish on a destroyed activity
+        mPhotoDecoder.release();
+    }
+
     /**
      * Helper method that increases the quantity of the product by one
      **/
@@ -399,17 +433,8 @@ public class DetailActivity extends AppCompatActivity implements LoaderManager.L
                 !savedInstanceState.getString(STATE_URI).equals("")) {
             mProductPhotoUri = Uri.parse(savedInstanceState.getString(STATE_URI));
 
-            // Then start viewTreeObserver to get the ImageView object first and then set it a bitmap
-            ViewTreeObserver viewTreeObserver = mProductPhotoView.getViewTreeObserver();
-            viewTreeObserver.addOnGlobalLayoutListener(new ViewTreeObserver.OnGlobalLayoutListener() {
-                @Override
-                public void onGlobalLayout() {
-                    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
-                        mProductPhotoView.getViewTreeObserver().removeOnGlobalLayoutListener(this);
-                    }
-                    mProductPhotoView.setImageBitmap(getBitmapFromUri(mProductPhotoUri));
-                }
-            });
+            // Decode the photo on a background thread, once the ImageView has been measured
+            mPhotoDecoder.load(mProductPhotoUri);
         }
     }
 
@@ -466,60 +491,13 @@ public class DetailActivity extends AppCompatActivity implements LoaderManager.L
                     e.printStackTrace();
                 }
 
-                // Call helper method getBitmapFromUri to convert the uri to bitmap object
-                // and then assign the bitmap object to the mProductPhotoView
-                mProductPhotoView.setImageBitmap(getBitmapFromUri(mProductPhotoUri));
-            }
-        }
-    }
-
-    // Helper method that converts the photo Uri to bitmap object
-    private Bitmap getBitmapFromUri(Uri uri) {
-        if (uri == null || uri.toString().isEmpty())
-            return null;
-
-        // Get the dimensions of the View where we will visualizer the photo
-        int targetW = mProductPhotoView.getWidth();
-        int targetH = mProductPhotoView.getHeight();
-
-        InputStream input = null;
-        try {
-            input = this.getContentResolver().openInputStream(uri);
-
-            // Get the dimensions of the bitmap
-            BitmapFactory.Options bmOptions = new BitmapFactory.Options();
-            bmOptions.inJustDecodeBounds = true;
-            BitmapFactory.decodeStream(input, null, bmOptions);
-            input.close();
-
-            int photoW = bmOptions.outWidth;
-            int photoH = bmOptions.outHeight;
-
-            // Determine how much to scale down the image
-            int scaleFactor = Math.min(photoW / targetW, photoH / targetH);
-
-            // Decode the image file into a Bitmap sized to fill the View
-            bmOptions.inJustDecodeBounds = false;
-            bmOptions.inSampleSize = scaleFactor;
-            bmOptions.inPurgeable = true;
-
-            input = this.getContentResolver().openInputStream(uri);
-            Bitmap bitmap = BitmapFactory.decodeStream(input, null, bmOptions);
-            input.close();
-
-            return bitmap;
-
-        } catch (FileNotFoundException fne) {
-            Log.e(LOG_TAG, "Failed to load image.", fne);
-            return null;
-        } catch (Exception e) {
-            Log.e(LOG_TAG, "Failed to load image.", e);
-            return null;
-        } finally {
-            try {
-                input.close();
-            } catch (IOException ioe) {
+                // Decode the photo on a background thread at the size of the mProductPhotoView
+                mPhotoDecoder.load(mProductPhotoUri);
 
+                // Save the thumbnail for the product list now, so the list does not have to
+                // decode the full photo when it shows the product for the first time
+                int thumbnailSize = getResources().getDimensionPixelSize(R.dimen.preview_photo_dimen);
+                ThumbnailLoader.getInstance(this).prefetch(mProductPhotoUri, thumbnailSize, thumbnailSize);
             }
         }
     }
@@ -605,10 +583,12 @@ public class DetailActivity extends AppCompatActivity implements LoaderManager.L
 
         // Get the input from the EditText
         String productNameString = mProductNameEditText.getText().toString().trim();
+        String productSkuString = mProductSkuEditText.getText().toString();
         String productQuantityString = mProductQuantityEditText.getText().toString().trim();
         String productPriceString = mProductPriceEditText.getText().toString().trim();
         String supplierNameString = mSupplierNameEditText.getText().toString().trim();
         String supplierEmailString = mSupplierEmailEditText.getText().toString().trim();
+        String reorderThresholdString = mReorderThresholdEditText.getText().toString().trim();
 
         // Check if this is supposed to be a new product
         // and check if all the fields in the Detail Activity are empty
@@ -632,17 +612,29 @@ public class DetailActivity extends AppCompatActivity implements LoaderManager.L
             return;
         }
 
+        // The code is optional, but if there is one it must be a valid one
+        String productSku = ProductValidator.normalizeSku(productSkuString);
+        if (productSku == null && !TextUtils.isEmpty(productSkuString.trim())) {
+            Toast.makeText(this, getString(R.string.invalid_product_sku), Toast.LENGTH_LONG).show();
+            return;
+        }
+
         // Check for empty price field
         if (TextUtils.isEmpty(productPriceString)) {
             Toast.makeText(this, getString(R.string.enter_product_price), Toast.LENGTH_LONG).show();
             return;
 
         } else {
-            // If the price field is not empty then convert its string value to float
-            mProductPriceFloat = Float.parseFloat(productPriceString);
+            // If the price field is not empty then convert it to the minor unit of the currency
+            try {
+                mProductPriceCents = Prices.toMinorUnits(productPriceString, mCurrency);
+            } catch (NumberFormatException e) {
+                Toast.makeText(this, getString(R.string.enter_product_price), Toast.LENGTH_LONG).show();
+                return;
+            }
 
             // Now check if the price is a negative number
-            if (mProductPriceFloat <= 0) {
+            if (mProductPriceCents <= 0) {
 
                 // Then escape early and prompt the user to insert a positive value
                 Toast.makeText(this, getString(R.string.enter_positive_product_price), Toast.LENGTH_LONG).show();
@@ -717,12 +709,21 @@ public class DetailActivity extends AppCompatActivity implements LoaderManager.L
         // Create a new map of values, where column names are the keys
         ContentValues values = new ContentValues();
         values.put(ProductEntry.COLUMN_PRODUCT_NAME, productNameString);
+        values.put(ProductEntry.COLUMN_PRODUCT_SKU, productSku);
         values.put(ProductEntry.COLUMN_PRODUCT_QUANTITY, mProductQuantityInt);
-        values.put(ProductEntry.COLUMN_PRODUCT_PRICE, mProductPriceFloat);
+        values.put(ProductEntry.COLUMN_PRODUCT_PRICE_CENTS, mProductPriceCents);
+        values.put(ProductEntry.COLUMN_PRODUCT_CURRENCY, mCurrency);
         values.put(ProductEntry.COLUMN_PRODUCT_PHOTO_URI, mProductPhotoString);
         values.put(ProductEntry.COLUMN_SUPPLIER_NAME, supplierNameString);
         values.put(ProductEntry.COLUMN_SUPPLIER_EMAIL, supplierEmailString);
 
+        // An empty reorder threshold removes the low stock alert of the product
+        if (TextUtils.isEmpty(reorderThresholdString)) {
+            values.putNull(ProductEntry.COLUMN_REORDER_THRESHOLD);
+        } else {
+            values.put(ProductEntry.COLUMN_REORDER_THRESHOLD, Integer.parseInt(reorderThresholdString));
+        }
+
         // Check if we are creating new product or updating an existing one
         // Look at the uri passed from MainActivity, if it is null then we are inserting new product
         if (mCurrentProductUri == null) {
@@ -750,6 +751,9 @@ public class DetailActivity extends AppCompatActivity implements LoaderManager.L
             } else {
                 Toast.makeText(this, getString(R.string.update_product_successful), Toast.LENGTH_SHORT).show();
 
+                // If the product got a new photo, the thumbnails of the old one are not needed anymore
+                evictSavedPhoto(mProductPhotoUri);
+
                 // The update was successful so close this activity
                 finish();
             }
@@ -814,6 +818,9 @@ public class DetailActivity extends AppCompatActivity implements LoaderManager.L
         // If they are different from 0, then deletion was successfully.
         if (mRowsDeleted != 0) {
 
+            // The thumbnails of the photo of the deleted product are not needed anymore
+            evictSavedPhoto(null);
+
             // Show message to inform the user that the product was deleted
             Toast.makeText(this, getString(R.string.detail_delete_product_successful), Toast.LENGTH_SHORT).show();
         } else {
@@ -826,6 +833,15 @@ public class DetailActivity extends AppCompatActivity implements LoaderManager.L
         finish();
     }
 
+    // Helper method that removes the cached thumbnails of the photo saved in the database,
+    // unless the product still uses that photo
+    private void evictSavedPhoto(Uri currentPhotoUri) {
+        if (mSavedPhotoUri != null && !mSavedPhotoUri.toString().equals("no image") &&
+                !mSavedPhotoUri.equals(currentPhotoUri)) {
+            ThumbnailLoader.getInstance(this).evict(mSavedPhotoUri);
+        }
+    }
+
     // This method is called when the physical back button is pressed.
     @Override
     public void onBackPressed() {
@@ -896,11 +912,14 @@ public class DetailActivity extends AppCompatActivity implements LoaderManager.L
         String[] projection = {
                 ProductEntry._ID,
                 ProductEntry.COLUMN_PRODUCT_NAME,
+                ProductEntry.COLUMN_PRODUCT_SKU,
                 ProductEntry.COLUMN_PRODUCT_QUANTITY,
-                ProductEntry.COLUMN_PRODUCT_PRICE,
+                ProductEntry.COLUMN_PRODUCT_PRICE_CENTS,
+                ProductEntry.COLUMN_PRODUCT_CURRENCY,
                 ProductEntry.COLUMN_PRODUCT_PHOTO_URI,
                 ProductEntry.COLUMN_SUPPLIER_NAME,
-                ProductEntry.COLUMN_SUPPLIER_EMAIL};
+                ProductEntry.COLUMN_SUPPLIER_EMAIL,
+                ProductEntry.COLUMN_REORDER_THRESHOLD};
 
         // This loader will execute the ContentProvider's query method on a background thread
         return new CursorLoader(this,   // Parent activity context
@@ -922,16 +941,20 @@ public class DetailActivity extends AppCompatActivity implements LoaderManager.L
 
             // Find the column index of the attributes we are interested in displaying
             int productNameColumnIndex = cursor.getColumnIndex(ProductEntry.COLUMN_PRODUCT_NAME);
+            int productSkuColumnIndex = cursor.getColumnIndex(ProductEntry.COLUMN_PRODUCT_SKU);
             int productQuantityColumnIndex = cursor.getColumnIndex(ProductEntry.COLUMN_PRODUCT_QUANTITY);
-            int productPriceColumnIndex = cursor.getColumnIndex(ProductEntry.COLUMN_PRODUCT_PRICE);
+            int productPriceColumnIndex = cursor.getColumnIndex(ProductEntry.COLUMN_PRODUCT_PRICE_CENTS);
+            int currencyColumnIndex = cursor.getColumnIndex(ProductEntry.COLUMN_PRODUCT_CURRENCY);
             int productPhotoUriColumnIndex = cursor.getColumnIndex(ProductEntry.COLUMN_PRODUCT_PHOTO_URI);
             int supplierColumnIndex = cursor.getColumnIndex(ProductEntry.COLUMN_SUPPLIER_NAME);
             int supplierEmailColumnIndex = cursor.getColumnIndex(ProductEntry.COLUMN_SUPPLIER_EMAIL);
+            int reorderThresholdColumnIndex = cursor.getColumnIndex(ProductEntry.COLUMN_REORDER_THRESHOLD);
 
             // Extract out the value from the Cursor for the given column index
             String productName = cursor.getString(productNameColumnIndex);
             int productQuantity = cursor.getInt(productQuantityColumnIndex);
-            float productPrice = cursor.getFloat(productPriceColumnIndex);
+            long productPrice = cursor.getLong(productPriceColumnIndex);
+            mCurrency = cursor.getString(currencyColumnIndex);
             String productPhotoUri = cursor.getString(productPhotoUriColumnIndex);
             String supplierName = cursor.getString(supplierColumnIndex);
             String supplierEmail = cursor.getString(supplierEmailColumnIndex);
@@ -939,14 +962,22 @@ public class DetailActivity extends AppCompatActivity implements LoaderManager.L
             // Get the string value of the photo uri from the database
             // convert it to uri and assign it to the member variable
             mProductPhotoUri = Uri.parse(productPhotoUri);
+            mSavedPhotoUri = mProductPhotoUri;
 
             // Update the fields on the screen with the data from the cursor
             mProductNameEditText.setText(productName);
+            mProductSkuEditText.setText(cursor.isNull(productSkuColumnIndex)
+                    ? "" : cursor.getString(productSkuColumnIndex));
             mProductQuantityEditText.setText(Integer.toString(productQuantity));
-            mProductPriceEditText.setText(Float.toString(productPrice));
+            mProductPriceEditText.setText(Prices.toDecimalString(productPrice, mCurrency));
+            mCurrencyTextView.setText(Currency.getInstance(mCurrency).getSymbol());
             mSupplierNameEditText.setText(supplierName);
             mSupplierEmailEditText.setText(supplierEmail);
 
+            // A product without a reorder rule has an empty threshold
+            mReorderThresholdEditText.setText(cursor.isNull(reorderThresholdColumnIndex)
+                    ? "" : Integer.toString(cursor.getInt(reorderThresholdColumnIndex)));
+
             // Check if we are visualizing a dummy product,
             // this means that it will have no photo,
             // so the productPhotoUri should be equal to default value "no image"
@@ -957,10 +988,8 @@ public class DetailActivity extends AppCompatActivity implements LoaderManager.L
                 mProductPhotoView.setImageResource(R.drawable.add_photo_placeholder);
             } else {
 
-                // Call helper method getBitmapFromUri to convert the uri to bitmap object
-                // The argument should be uri that is why productPhotoUri is converted from string to uri
-                // When bitmap object is returned, set it as image on the mProductPhotoView
-                mProductPhotoView.setImageURI(mProductPhotoUri);
+                // Decode the photo on a background thread at the size of the mProductPhotoView
+                mPhotoDecoder.load(mProductPhotoUri);
             }
         }
     }
@@ -973,10 +1002,12 @@ public class DetailActivity extends AppCompatActivity implements LoaderManager.L
 
         // Set empty values to the field
         mProductNameEditText.setText("");
+        mProductSkuEditText.setText("");
         mProductQuantityEditText.setText("");
         mProductPriceEditText.setText("");
         mSupplierNameEditText.setText("");
         mSupplierEmailEditText.setText("");
+        mReorderThresholdEditText.setText("");
 
         // Set default drawable for the photo of the product
         mProductPhotoView.setImageResource(R.drawable.add_photo_placeholder);
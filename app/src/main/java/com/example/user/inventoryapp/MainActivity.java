@@ -2,28 +2,50 @@ package com.example.user.inventoryapp;
 
 import android.app.AlertDialog;
 import android.app.LoaderManager;
+import android.content.AsyncQueryHandler;
+import android.content.ContentResolver;
 import android.content.ContentUris;
 import android.content.ContentValues;
 import android.content.CursorLoader;
 import android.content.DialogInterface;
 import android.content.Intent;
 import android.content.Loader;
+import android.database.ContentObserver;
 import android.database.Cursor;
+import android.database.DatabaseUtils;
 import android.net.Uri;
+import android.os.Build;
+import android.os.Handler;
 import android.support.design.widget.FloatingActionButton;
+import android.support.design.widget.Snackbar;
 import android.support.v7.app.AppCompatActivity;
+import android.support.v7.view.ActionMode;
 import android.os.Bundle;
+import android.support.v4.content.ContextCompat;
+import android.support.v7.widget.DividerItemDecoration;
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
+import android.support.v7.widget.SearchView;
+import android.text.InputType;
+import android.text.TextUtils;
 import android.util.Log;
+import android.view.KeyEvent;
 import android.view.Menu;
 import android.view.MenuItem;
 import android.view.View;
-import android.widget.AdapterView;
-import android.widget.ListView;
+import android.view.inputmethod.EditorInfo;
+import android.widget.EditText;
+import android.widget.TextView;
 import android.widget.Toast;
 
+import com.example.user.inventoryapp.data.Prices;
 import com.example.user.inventoryapp.data.ProductContract.ProductEntry;
+import com.example.user.inventoryapp.data.ProductContract.ReorderRuleEntry;
+import com.example.user.inventoryapp.data.ProductContract.SummaryEntry;
+import com.example.user.inventoryapp.data.StockWriteQueue;
 
-public class MainActivity extends AppCompatActivity implements LoaderManager.LoaderCallbacks<Cursor> {
+public class MainActivity extends AppCompatActivity implements LoaderManager.LoaderCallbacks<Cursor>,
+        ProductCursorAdapter.OnProductClickListener {
 
     // Tag for the log messages
     public static final String LOG_TAG = MainActivity.class.getSimpleName();
@@ -31,9 +53,174 @@ public class MainActivity extends AppCompatActivity implements LoaderManager.Loa
     // Constants that holds the ID of the product Loader
     private static final int PRODUCT_LOADER = 1;
 
+    // Constants that holds the ID of the search Loader
+    private static final int SEARCH_LOADER = 2;
+
+    // Constants that holds the ID of the Loader of the dashboard
+    private static final int SUMMARY_LOADER = 3;
+
+    // The search starts when the user stops typing for this long, not on every key
+    private static final long SEARCH_DELAY_MILLIS = 300;
+
+    // The maximum number of products shown as search results
+    private static final int SEARCH_LIMIT = 100;
+
+    // Key of the searched text in the saved state and in the arguments of the search loader
+    private static final String KEY_SEARCH_TEXT = "search_text";
+
+    // Keys of the order and the filter of the list in the saved state
+    private static final String KEY_SORT_COLUMN = "sort_column";
+    private static final String KEY_LOW_STOCK_ONLY = "low_stock_only";
+
+    // Key of the ids of the selected products in the saved state
+    private static final String KEY_SELECTED_IDS = "selected_ids";
+
+    // When the user scrolls this close to the last loaded product, the next page is loaded
+    private static final int PREFETCH_DISTANCE = ProductPageLoader.PAGE_SIZE / 2;
+
+    // Request codes of the file pickers of the import and the export
+    private static final int IMPORT_CSV_REQUEST = 1;
+    private static final int EXPORT_CSV_REQUEST = 2;
+
+    // The columns that should be delivered by the content resolver for the list
+    private static final String[] PRODUCT_LIST_PROJECTION = {
+            ProductEntry._ID,
+            ProductEntry.COLUMN_PRODUCT_NAME,
+            ProductEntry.COLUMN_PRODUCT_QUANTITY,
+            ProductEntry.COLUMN_PRODUCT_PRICE_CENTS,
+            ProductEntry.COLUMN_PRODUCT_CURRENCY,
+            ProductEntry.COLUMN_PRODUCT_PHOTO_URI};
+
     // Member variable to store the ProductCursorAdapter object
     ProductCursorAdapter mCursorAdapter;
 
+    // The cursor of all of the products, wrapped so that single rows can be patched in memory
+    private ProductPatchCursor mPatchCursor;
+
+    // The loader that delivered the data of mPatchCursor
+    private Loader<Cursor> mPatchCursorLoader;
+
+    // The column the list is sorted by
+    private String mSortColumn = ProductEntry._ID;
+
+    // True if the list shows only the products with a low quantity
+    private boolean mLowStockOnly;
+
+    // The cursor with the search results, or null
+    private Cursor mSearchCursor;
+
+    // The text that is searched for, or null if the list shows all of the products
+    private String mSearchText;
+
+    // Shown when the list is empty
+    private TextView mEmptyView;
+
+    // The totals of the dashboard above the list
+    private TextView mUnitsTextView;
+    private TextView mValueTextView;
+    private TextView mLowStockTextView;
+    private TextView mOutOfStockTextView;
+
+    // Formats the values of the stock in the dashboard
+    private final PriceFormatter mPriceFormatter = new PriceFormatter();
+
+    // Starts the search after the user has stopped typing
+    private final Handler mSearchHandler = new Handler();
+    private String mPendingSearchText;
+    private final Runnable mSearchRunnable = new Runnable() {
+        @Override
+        public void run() {
+            search(mPendingSearchText);
+        }
+    };
+
+    // The action mode shown while products are selected, or null
+    private ActionMode mSelectionMode;
+
+    // Shows the number of the selected products and the actions on them
+    private final ActionMode.Callback mSelectionCallback = new ActionMode.Callback() {
+        @Override
+        public boolean onCreateActionMode(ActionMode mode, Menu menu) {
+            mode.getMenuInflater().inflate(R.menu.menu_product_selection, menu);
+            return true;
+        }
+
+        @Override
+        public boolean onPrepareActionMode(ActionMode mode, Menu menu) {
+            return false;
+        }
+
+        @Override
+        public boolean onActionItemClicked(ActionMode mode, MenuItem item) {
+            if (item.getItemId() == R.id.action_restock_selected) {
+                startRestock(mCursorAdapter.getSelectedIds());
+                mode.finish();
+                return true;
+            }
+            return false;
+        }
+
+        @Override
+        public void onDestroyActionMode(ActionMode mode) {
+            mSelectionMode = null;
+            mCursorAdapter.clearSelection();
+        }
+    };
+
+    // Reads single changed products on a background thread
+    private ProductPatchHandler mPatchHandler;
+
+    // Holds the sales that are not written to the database yet
+    private StockWriteQueue mStockWriteQueue;
+
+    // Shows the quantities of the queue in the list, before and after they are written
+    private final StockWriteQueue.Listener mStockListener = new StockWriteQueue.Listener() {
+        @Override
+        public void onPendingDeltaChanged(long id) {
+            mCursorAdapter.notifyProductChanged(id);
+        }
+
+        @Override
+        public void onStockFlushed(long[] ids, int[] quantities, int rejectedUnits) {
+            // Patch the new quantities at once, so the row does not show the old quantity
+            // until the provider's notification is read back. If the list is ordered or filtered
+            // by the quantity, the rows may move, so the pages are read again instead.
+            boolean requery = ids.length > 0 && isListByQuantity();
+            for (int i = 0; i < ids.length; i++) {
+                if (mPatchCursor != null && !requery) {
+                    ContentValues values = new ContentValues();
+                    values.put(ProductEntry.COLUMN_PRODUCT_QUANTITY, quantities[i]);
+                    mPatchCursor.patch(ids[i], values);
+                }
+                mCursorAdapter.notifyProductChanged(ids[i]);
+            }
+            if (requery) {
+                requeryProducts();
+            }
+
+            // Sales made while another device or screen sold the last units
+            if (rejectedUnits > 0) {
+                Toast.makeText(MainActivity.this, getResources().getQuantityString(
+                        R.plurals.sales_rejected, rejectedUnits, rejectedUnits), Toast.LENGTH_LONG).show();
+            }
+        }
+    };
+
+    // Observes the change URIs of the single products,
+    // so that a changed product is patched in the list instead of requerying the whole table
+    private final ContentObserver mProductChangeObserver = new ContentObserver(new Handler()) {
+        @Override
+        public void onChange(boolean selfChange) {
+            // Before API 16 the changed URI is not delivered
+            onChange(selfChange, null);
+        }
+
+        @Override
+        public void onChange(boolean selfChange, Uri uri) {
+            onProductChanged(uri);
+        }
+    };
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
@@ -51,44 +238,370 @@ public class MainActivity extends AppCompatActivity implements LoaderManager.Loa
             }
         });
 
-        // Find the ListView which will be populated with the product data
-        ListView productListView = (ListView) findViewById(R.id.list);
+        // Find the RecyclerView which will be populated with the product data
+        RecyclerView productListView = (RecyclerView) findViewById(R.id.list);
+        final LinearLayoutManager layoutManager = new LinearLayoutManager(this);
+        productListView.setLayoutManager(layoutManager);
+        productListView.setHasFixedSize(true);
 
-        // Find and set empty view on the ListView, so that it only shows when the list has 0 items.
-        View emptyView = findViewById(R.id.empty_view);
-        productListView.setEmptyView(emptyView);
+        // Separate the ListItems with a line
+        DividerItemDecoration divider = new DividerItemDecoration(this, DividerItemDecoration.VERTICAL);
+        divider.setDrawable(ContextCompat.getDrawable(this, R.drawable.list_divider));
+        productListView.addItemDecoration(divider);
 
         // Setup empty cursor adapter to create a list view from each row from DB ( cursor )
-        mCursorAdapter = new ProductCursorAdapter(this, null);
+        // Clicks on the ListItems call onProductClick()
+        mCursorAdapter = new ProductCursorAdapter(this, this);
 
-        // Attach cursor adapter to the ListView
+        // Attach cursor adapter to the RecyclerView
         productListView.setAdapter(mCursorAdapter);
 
-        // Set a listener on a ListItem (product) click
-        productListView.setOnItemClickListener(new AdapterView.OnItemClickListener() {
+        // Show the empty view only when the list has 0 items
+        mEmptyView = (TextView) findViewById(R.id.empty_view);
+        mCursorAdapter.registerAdapterDataObserver(new RecyclerView.AdapterDataObserver() {
             @Override
-            public void onItemClick(AdapterView<?> adapterView, View view, int position, long id) {
+            public void onChanged() {
+                updateEmptyViewVisibility();
+            }
 
-                // Create new intent to go to {@link DetailActivity}
-                Intent intent = new Intent(MainActivity.this, DetailActivity.class);
+            @Override
+            public void onItemRangeInserted(int positionStart, int itemCount) {
+                updateEmptyViewVisibility();
+            }
 
-                // Form the content URI that represents the specific product that was clicked on,
-                // by appending the "id" (passed as input to this method) onto the
-                // {@link ProductEntry#CONTENT_URI}.
-                // If the id passed for a particular ListItem (product) is 5
-                // The currentProductUri would be : content://com.example.user.inventoryapp/products/5
-                Uri currentProductUri = ContentUris.withAppendedId(ProductEntry.CONTENT_URI, id);
+            @Override
+            public void onItemRangeRemoved(int positionStart, int itemCount) {
+                updateEmptyViewVisibility();
+            }
+        });
+        updateEmptyViewVisibility();
 
-                // Set the URI on the data field of the intent
-                intent.setData(currentProductUri);
+        // The dashboard reads the summary the database keeps, so it does not scan the list
+        mUnitsTextView = (TextView) findViewById(R.id.dashboard_units);
+        mValueTextView = (TextView) findViewById(R.id.dashboard_value);
+        mLowStockTextView = (TextView) findViewById(R.id.dashboard_low_stock);
+        mOutOfStockTextView = (TextView) findViewById(R.id.dashboard_out_of_stock);
+        showSummary(null);
 
-                // Launch the {@link DetailActivity} to display the data for the current product.
-                startActivity(intent);
+        // Load the next page of products before the user scrolls to the end of the loaded ones.
+        // This is also called after a layout, so a first page that fits on the screen is followed.
+        productListView.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
+                // The search results are not paged
+                if (mSearchText != null) {
+                    return;
+                }
+                int totalItemCount = mCursorAdapter.getItemCount();
+                if (totalItemCount > 0 &&
+                        layoutManager.findLastVisibleItemPosition() >= totalItemCount - 1 - PREFETCH_DISTANCE) {
+                    Loader<Cursor> loader = getLoaderManager().getLoader(PRODUCT_LOADER);
+                    if (loader != null) {
+                        ((ProductPageLoader) loader).loadNextPage();
+                    }
+                }
             }
         });
 
+        // Prepare the handler that reads the changed products and start observing the changes
+        mPatchHandler = new ProductPatchHandler();
+        getContentResolver().registerContentObserver(ProductEntry.CHANGES_URI, true, mProductChangeObserver);
+
+        // Show the sales as soon as they are made, before they are written
+        mStockWriteQueue = StockWriteQueue.getInstance(this);
+        mStockWriteQueue.addListener(mStockListener);
+
+        // Restore the order and the filter the user has chosen
+        if (savedInstanceState != null) {
+            mSortColumn = savedInstanceState.getString(KEY_SORT_COLUMN, ProductEntry._ID);
+            mLowStockOnly = savedInstanceState.getBoolean(KEY_LOW_STOCK_ONLY);
+
+            // Select again the products that were selected
+            long[] selectedIds = savedInstanceState.getLongArray(KEY_SELECTED_IDS);
+            if (selectedIds != null) {
+                for (long id : selectedIds) {
+                    toggleSelection(id);
+                }
+            }
+        }
+        updateEmptyView();
+
         // Prepare the loader.  Either re-connect with an existing one, or start a new one.
         getLoaderManager().initLoader(PRODUCT_LOADER, null, this);
+        getLoaderManager().initLoader(SUMMARY_LOADER, null, this);
+
+        // Continue the search the user was doing before the activity was recreated
+        if (savedInstanceState != null) {
+            search(savedInstanceState.getString(KEY_SEARCH_TEXT));
+        }
+    }
+
+    // Called when a ListItem (product) is clicked
+    @Override
+    public void onProductClick(long id) {
+
+        // While products are selected, a click selects or unselects the product
+        if (mSelectionMode != null) {
+            toggleSelection(id);
+            return;
+        }
+
+        // Create new intent to go to {@link DetailActivity}
+        Intent intent = new Intent(MainActivity.this, DetailActivity.class);
+
+        // Form the content URI that represents the specific product that was clicked on,
+        // by appending the "id" (passed as input to this method) onto the
+        // {@link ProductEntry#CONTENT_URI}.
+        // If the id passed for a particular ListItem (product) is 5
+        // The currentProductUri would be : content://com.example.user.inventoryapp/products/5
+        Uri currentProductUri = ContentUris.withAppendedId(ProductEntry.CONTENT_URI, id);
+
+        // Set the URI on the data field of the intent
+        intent.setData(currentProductUri);
+
+        // Launch the {@link DetailActivity} to display the data for the current product.
+        startActivity(intent);
+    }
+
+    // Called when a ListItem (product) is long clicked, it starts the selection of products
+    @Override
+    public boolean onProductLongClick(long id) {
+        toggleSelection(id);
+        return true;
+    }
+
+    // Selects or unselects the product, and shows the number of the selected products.
+    // The selection ends when no product is selected anymore.
+    private void toggleSelection(long id) {
+        mCursorAdapter.setSelected(id, !mCursorAdapter.isSelected(id));
+
+        int selectedCount = mCursorAdapter.getSelectedIds().length;
+        if (selectedCount == 0) {
+            if (mSelectionMode != null) {
+                mSelectionMode.finish();
+            }
+            return;
+        }
+        if (mSelectionMode == null) {
+            mSelectionMode = startSupportActionMode(mSelectionCallback);
+        }
+        mSelectionMode.setTitle(getString(R.string.selected_products, selectedCount));
+    }
+
+    // Shows the restock orders of the products, or of the products at their reorder threshold
+    // if ids is null
+    private void startRestock(long[] ids) {
+        Intent intent = new Intent(this, RestockActivity.class);
+        if (ids != null) {
+            intent.putExtra(RestockActivity.EXTRA_PRODUCT_IDS, ids);
+        }
+        startActivity(intent);
+    }
+
+    @Override
+    protected void onSaveInstanceState(Bundle outState) {
+        super.onSaveInstanceState(outState);
+        outState.putString(KEY_SEARCH_TEXT, mSearchText);
+        outState.putString(KEY_SORT_COLUMN, mSortColumn);
+        outState.putBoolean(KEY_LOW_STOCK_ONLY, mLowStockOnly);
+        if (mSelectionMode != null) {
+            outState.putLongArray(KEY_SELECTED_IDS, mCursorAdapter.getSelectedIds());
+        }
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+
+        // Stop observing the changes of the single products
+        getContentResolver().unregisterContentObserver(mProductChangeObserver);
+        mStockWriteQueue.removeListener(mStockListener);
+        mPatchHandler.cancelOperation(ProductPatchHandler.TOKEN_PATCH);
+        mSearchHandler.removeCallbacks(mSearchRunnable);
+    }
+
+    // Shows the products that match the text, or all of the products if the text is empty
+    private void search(String text) {
+        mSearchHandler.removeCallbacks(mSearchRunnable);
+        text = text == null ? null : text.trim();
+
+        if (TextUtils.isEmpty(text)) {
+            if (mSearchText != null) {
+                mSearchText = null;
+                getLoaderManager().destroyLoader(SEARCH_LOADER);
+                updateEmptyView();
+                showCursor(mPatchCursor);
+            }
+            return;
+        }
+
+        if (text.equals(mSearchText)) {
+            return;
+        }
+        boolean wasSearching = mSearchText != null;
+        mSearchText = text;
+        updateEmptyView();
+
+        Bundle args = new Bundle();
+        args.putString(KEY_SEARCH_TEXT, text);
+        if (wasSearching) {
+            getLoaderManager().restartLoader(SEARCH_LOADER, args, this);
+        } else {
+            // Reconnect with the results that survived the recreation of the activity, if any
+            getLoaderManager().initLoader(SEARCH_LOADER, args, this);
+        }
+    }
+
+    // Shows a hint to add products, or that no product matches the search or the filter
+    private void updateEmptyView() {
+        if (mSearchText != null || mLowStockOnly) {
+            mEmptyView.setText(R.string.no_search_results);
+        } else {
+            mEmptyView.setText(R.string.empty_view_message);
+        }
+    }
+
+    // Shows the empty view if the list has no items
+    private void updateEmptyViewVisibility() {
+        mEmptyView.setVisibility(mCursorAdapter.getItemCount() == 0 ? View.VISIBLE : View.GONE);
+    }
+
+    // Shows the cursor in the list, rebinding only the rows that changed
+    private void showCursor(Cursor cursor) {
+        mCursorAdapter.swapCursor(cursor, snapshotOf(cursor));
+    }
+
+    // Returns the snapshot the loader made of the cursor, or null if the cursor is null
+    private static ProductListSnapshot snapshotOf(Cursor cursor) {
+        if (cursor instanceof ProductPatchCursor) {
+            cursor = ((ProductPatchCursor) cursor).getWrappedCursor();
+        }
+        return cursor == null ? null : ((ProductListSnapshot.Source) cursor).getSnapshot();
+    }
+
+    // Loads the list again with the order and the filter the user has chosen
+    private void reloadProducts() {
+        updateEmptyView();
+        getLoaderManager().restartLoader(PRODUCT_LOADER, null, this);
+    }
+
+    // Searches for the text after the user has stopped typing for a while
+    private void scheduleSearch(String text) {
+        mSearchHandler.removeCallbacks(mSearchRunnable);
+        mPendingSearchText = text;
+        mSearchHandler.postDelayed(mSearchRunnable, SEARCH_DELAY_MILLIS);
+    }
+
+    // Called when a single product has changed.
+    // Updates of a product are read and patched into the list, without requerying the whole list.
+    // Inserts and deletes are handled by the loader, because they change the rows of the list.
+    private void onProductChanged(Uri changeUri) {
+        if (changeUri == null) {
+            // We do not know which product has changed, so the whole list has to be queried again
+            requeryProducts();
+            return;
+        }
+
+        // Changes of many products are also notified on the list URI, so the loader handles them
+        long id = ProductEntry.getChangedProductId(changeUri);
+        if (id == -1) {
+            return;
+        }
+
+        if (ProductEntry.CHANGE_UPDATE.equals(changeUri.getQueryParameter(ProductEntry.QUERY_PARAM_CHANGE))) {
+            mPatchHandler.startQuery(ProductPatchHandler.TOKEN_PATCH, id,
+                    ContentUris.withAppendedId(ProductEntry.CONTENT_URI, id),
+                    PRODUCT_LIST_PROJECTION, null, null, null);
+
+            // The product may not match the search anymore, so search again.
+            // The search reads only a few indexed rows, so this is cheap.
+            Loader<Cursor> searchLoader = getLoaderManager().getLoader(SEARCH_LOADER);
+            if (searchLoader != null) {
+                searchLoader.onContentChanged();
+            }
+        }
+    }
+
+    // Returns true if the list is ordered or filtered by the quantity of the products
+    private boolean isListByQuantity() {
+        return mLowStockOnly || ProductEntry.COLUMN_PRODUCT_QUANTITY.equals(mSortColumn);
+    }
+
+    // Returns true if the new values of the product can change its position in the list,
+    // or whether it is in the list at all. The keyset of the next page is read from the
+    // loaded rows, so a patched row that moved could be loaded a second time.
+    private boolean movesInTheList(long id, ContentValues values) {
+        // The filter also depends on the reorder rule, which is not read with the row
+        if (mLowStockOnly) {
+            return true;
+        }
+        if (ProductEntry._ID.equals(mSortColumn)) {
+            return false;
+        }
+
+        // A row that is not loaded may move into the loaded pages
+        ProductListSnapshot snapshot = snapshotOf(mPatchCursor);
+        int position = snapshot == null ? -1 : snapshot.positionOf(id);
+        if (position < 0 || !mPatchCursor.moveToPosition(position)) {
+            return true;
+        }
+        String oldValue = mPatchCursor.getString(mPatchCursor.getColumnIndexOrThrow(mSortColumn));
+        return !TextUtils.equals(oldValue, values.getAsString(mSortColumn));
+    }
+
+    // Reads the loaded pages of the list again
+    private void requeryProducts() {
+        Loader<Cursor> loader = getLoaderManager().getLoader(PRODUCT_LOADER);
+        if (loader != null) {
+            loader.onContentChanged();
+        }
+    }
+
+    // Queries a single changed product and patches it into the list,
+    // and deletes all of the products away from the main thread
+    private class ProductPatchHandler extends AsyncQueryHandler {
+
+        // Token of the queries for a single changed product
+        static final int TOKEN_PATCH = 1;
+
+        // Token of the delete of all of the products
+        static final int TOKEN_DELETE_ALL = 2;
+
+        ProductPatchHandler() {
+            super(getContentResolver());
+        }
+
+        @Override
+        protected void onQueryComplete(int token, Object cookie, Cursor cursor) {
+            if (cursor == null) {
+                return;
+            }
+
+            // Copy the new values of the product and patch them into the list.
+            // Only the row of the product is bound again. A row that moves in the order
+            // or the filter of the list is not patched, the pages are read again instead.
+            if (cursor.moveToFirst() && mPatchCursor != null) {
+                ContentValues values = new ContentValues();
+                DatabaseUtils.cursorRowToContentValues(cursor, values);
+                long id = (Long) cookie;
+                if (movesInTheList(id, values)) {
+                    requeryProducts();
+                } else {
+                    mPatchCursor.patch(id, values);
+                    if (mSearchText == null) {
+                        mCursorAdapter.notifyProductChanged(id);
+                    }
+                }
+            }
+            cursor.close();
+        }
+
+        @Override
+        protected void onDeleteComplete(int token, Object cookie, int result) {
+            if (!isFinishing()) {
+                showDeleteAllResult(result);
+            }
+        }
     }
 
     @Override
@@ -96,11 +609,79 @@ public class MainActivity extends AppCompatActivity implements LoaderManager.Loa
         super.onStart();
     }
 
+    @Override
+    protected void onPause() {
+        super.onPause();
+
+        // Write the queued sales before the app may be killed in the background
+        mStockWriteQueue.flush();
+    }
+
     @Override
     public boolean onCreateOptionsMenu(Menu menu) {
         // Inflate the menu options from the res/menu/menu_main_activity.xml file.
         // This adds menu items to the app bar.
         getMenuInflater().inflate(R.menu.menu_main_activity, menu);
+
+        // Search while the user types, and show all of the products again when the search is closed
+        MenuItem searchItem = menu.findItem(R.id.action_search);
+        final SearchView searchView = (SearchView) searchItem.getActionView();
+        searchView.setQueryHint(getString(R.string.search_hint));
+
+        // Check the order and the filter of the list
+        switch (mSortColumn) {
+            case ProductEntry.COLUMN_PRODUCT_NAME:
+                menu.findItem(R.id.action_sort_name).setChecked(true);
+                break;
+            case ProductEntry.COLUMN_PRODUCT_QUANTITY:
+                menu.findItem(R.id.action_sort_quantity).setChecked(true);
+                break;
+            case ProductEntry.COLUMN_PRODUCT_PRICE_CENTS:
+                menu.findItem(R.id.action_sort_price).setChecked(true);
+                break;
+            default:
+                menu.findItem(R.id.action_sort_added).setChecked(true);
+                break;
+        }
+        menu.findItem(R.id.action_filter_low_stock).setChecked(mLowStockOnly);
+
+        // A new file can be created only with the document picker of API 19
+        menu.findItem(R.id.action_export_csv).setVisible(
+                Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT);
+
+        // Open the search again if the activity was recreated while searching
+        if (mSearchText != null) {
+            searchItem.expandActionView();
+            searchView.setQuery(mSearchText, false);
+            searchView.clearFocus();
+        }
+
+        searchView.setOnQueryTextListener(new SearchView.OnQueryTextListener() {
+            @Override
+            public boolean onQueryTextSubmit(String query) {
+                search(query);
+                searchView.clearFocus();
+                return true;
+            }
+
+            @Override
+            public boolean onQueryTextChange(String newText) {
+                scheduleSearch(newText);
+                return true;
+            }
+        });
+        searchItem.setOnActionExpandListener(new MenuItem.OnActionExpandListener() {
+            @Override
+            public boolean onMenuItemActionExpand(MenuItem item) {
+                return true;
+            }
+
+            @Override
+            public boolean onMenuItemActionCollapse(MenuItem item) {
+                search(null);
+                return true;
+            }
+        });
         return true;
     }
 
@@ -108,6 +689,46 @@ public class MainActivity extends AppCompatActivity implements LoaderManager.Loa
     public boolean onOptionsItemSelected(MenuItem item) {
         // User clicked on a menu option in the app bar overflow menu
         switch (item.getItemId()) {
+            // Respond to a click on one of the "Sort by" options
+            // Every order is read from an index of the products table
+            case R.id.action_sort_added:
+                setSortColumn(item, ProductEntry._ID);
+                return true;
+            case R.id.action_sort_name:
+                setSortColumn(item, ProductEntry.COLUMN_PRODUCT_NAME);
+                return true;
+            case R.id.action_sort_quantity:
+                setSortColumn(item, ProductEntry.COLUMN_PRODUCT_QUANTITY);
+                return true;
+            case R.id.action_sort_price:
+                setSortColumn(item, ProductEntry.COLUMN_PRODUCT_PRICE_CENTS);
+                return true;
+
+            // Respond to a click on the "Low stock only" menu option
+            case R.id.action_filter_low_stock:
+                mLowStockOnly = !mLowStockOnly;
+                item.setChecked(mLowStockOnly);
+                reloadProducts();
+                return true;
+
+            // Respond to a click on the "Quick sale" menu option
+            case R.id.action_quick_sale:
+                showQuickSaleDialog();
+                return true;
+
+            // Respond to a click on the "Restock low stock" menu option
+            case R.id.action_restock_low_stock:
+                startRestock(null);
+                return true;
+
+            // Respond to a click on the "Import from CSV" and "Export to CSV" menu options
+            case R.id.action_import_csv:
+                openCsvSelector();
+                return true;
+            case R.id.action_export_csv:
+                createCsvFile();
+                return true;
+
             // Respond to a click on the "Insert dummy data" menu option
             case R.id.action_insert_dummy_data:
                 // Call helper method insertDummyData
@@ -126,13 +747,74 @@ public class MainActivity extends AppCompatActivity implements LoaderManager.Loa
         return super.onOptionsItemSelected(item);
     }
 
+    // Sorts the list by the column, if it is not sorted by it already
+    private void setSortColumn(MenuItem item, String sortColumn) {
+        item.setChecked(true);
+        if (!sortColumn.equals(mSortColumn)) {
+            mSortColumn = sortColumn;
+            reloadProducts();
+        }
+    }
+
+    // Lets the user pick the CSV file to import
+    private void openCsvSelector() {
+        Intent intent;
+
+        // For older devices call ACTION_GET_CONTENT
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.KITKAT) {
+            intent = new Intent(Intent.ACTION_GET_CONTENT);
+        } else {
+            intent = new Intent(Intent.ACTION_OPEN_DOCUMENT);
+        }
+
+        // CSV files have different MIME types on different devices
+        intent.setType("*/*");
+        intent.addCategory(Intent.CATEGORY_OPENABLE);
+        startActivityForResult(Intent.createChooser(intent, getString(R.string.select_csv)), IMPORT_CSV_REQUEST);
+    }
+
+    // Lets the user choose where the CSV file of the export is saved
+    private void createCsvFile() {
+        Intent intent = new Intent(Intent.ACTION_CREATE_DOCUMENT);
+        intent.addCategory(Intent.CATEGORY_OPENABLE);
+        intent.setType("text/csv");
+        intent.putExtra(Intent.EXTRA_TITLE, "inventory.csv");
+        startActivityForResult(intent, EXPORT_CSV_REQUEST);
+    }
+
+    // Called after the user picked the file of the import or the export
+    @Override
+    public void onActivityResult(int requestCode, int resultCode, Intent resultData) {
+        super.onActivityResult(requestCode, resultCode, resultData);
+        if (resultCode != RESULT_OK || resultData == null || resultData.getData() == null) {
+            return;
+        }
+        Uri file = resultData.getData();
+
+        if (requestCode == IMPORT_CSV_REQUEST) {
+            // Keep the permission to read the file, so that an import that was stopped
+            // can continue after the app is started again
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+                try {
+                    getContentResolver().takePersistableUriPermission(file,
+                            Intent.FLAG_GRANT_READ_URI_PERMISSION);
+                } catch (SecurityException e) {
+                    Log.w(LOG_TAG, "No persistable permission for " + file);
+                }
+            }
+            ProductCsvService.startImport(this, file);
+        } else if (requestCode == EXPORT_CSV_REQUEST) {
+            ProductCsvService.startExport(this, file);
+        }
+    }
+
     // This method is called when "Insert Dummy Data" option is clicked
     private void insertDummyData() {
         // Create a new map of values, where column names are the keys
         ContentValues values = new ContentValues();
         values.put(ProductEntry.COLUMN_PRODUCT_NAME, "Dummy Product");
         values.put(ProductEntry.COLUMN_PRODUCT_QUANTITY, 10);
-        values.put(ProductEntry.COLUMN_PRODUCT_PRICE, 7.5);
+        values.put(ProductEntry.COLUMN_PRODUCT_PRICE_CENTS, Prices.toMinorUnits("7.5", Prices.defaultCurrency()));
         // I will use default value for photo uri,
         // and later in ProductProvider will check the string and for "no image" will give some drawable
         values.put(ProductEntry.COLUMN_PRODUCT_PHOTO_URI, "no image");
@@ -146,6 +828,57 @@ public class MainActivity extends AppCompatActivity implements LoaderManager.Loa
         Log.i(LOG_TAG, "Inserted dummy data from MainActivity. The new row Uri is: " + newUri);
     }
 
+    // Shows a dialog where codes are typed or scanned, each one selling a unit of its product.
+    // The dialog stays open for the next code, like a till.
+    private void showQuickSaleDialog() {
+        final EditText codeEditText = new EditText(this);
+        codeEditText.setSingleLine(true);
+        codeEditText.setHint(R.string.quick_sale_hint);
+        codeEditText.setInputType(InputType.TYPE_CLASS_TEXT | InputType.TYPE_TEXT_FLAG_CAP_CHARACTERS |
+                InputType.TYPE_TEXT_FLAG_NO_SUGGESTIONS);
+        codeEditText.setImeOptions(EditorInfo.IME_ACTION_DONE);
+
+        // Barcode scanners type the code and then Enter, which is the same as "Done"
+        codeEditText.setOnEditorActionListener(new TextView.OnEditorActionListener() {
+            @Override
+            public boolean onEditorAction(TextView view, int actionId, KeyEvent event) {
+                if (event != null && event.getAction() != KeyEvent.ACTION_DOWN) {
+                    return true;
+                }
+                final String code = view.getText().toString().trim();
+                view.setText("");
+                if (!TextUtils.isEmpty(code)) {
+                    mStockWriteQueue.sellBySku(code, new StockWriteQueue.SaleCallback() {
+                        @Override
+                        public void onSold(long id, String name, int quantity) {
+                            showQuickSaleResult(code, name, quantity);
+                        }
+                    });
+                }
+                return true;
+            }
+        });
+
+        AlertDialog.Builder builder = new AlertDialog.Builder(this);
+        builder.setTitle(R.string.action_quick_sale);
+        builder.setView(codeEditText);
+        builder.setNegativeButton(R.string.close, null);
+        builder.create().show();
+    }
+
+    // Tells the user which product was sold, or why the code did not sell anything
+    private void showQuickSaleResult(String code, String name, int quantity) {
+        String message;
+        if (name == null) {
+            message = getString(R.string.quick_sale_unknown_code, code);
+        } else if (quantity == -1) {
+            message = getString(R.string.quick_sale_out_of_stock, name);
+        } else {
+            message = getString(R.string.quick_sale_sold, name, quantity);
+        }
+        Toast.makeText(this, message, Toast.LENGTH_SHORT).show();
+    }
+
     // This method displays a confirmation dialog to prompt the user, if he wants to proceed with deleting
     private void showDeleteConfirmationDialog() {
         // Create new AlertDialog object
@@ -177,52 +910,147 @@ public class MainActivity extends AppCompatActivity implements LoaderManager.Loa
         alertDialog.show();
     }
 
-    // This method deletes all products from the database
+    // This method deletes all products from the database, on the thread of the handler.
+    // The products are only marked as deleted, so the delete can be undone for a while.
     private void deleteAllProducts() {
-        // This variable stores the number of rows deleted
-        int mRowsDeleted = 0;
-
-        // Now delete all rows from the database
-        mRowsDeleted = getContentResolver().delete(
+        mPatchHandler.startDelete(ProductPatchHandler.TOKEN_DELETE_ALL, null,
                 ProductEntry.CONTENT_URI,  // Select all database
                 null,                      // No additional arguments because we delete all of the rows
                 null
         );
+    }
 
-        // Check if all the rows were deleted and inform the user
-        if (mRowsDeleted != 0) {
-            //  Show message to inform the user that all products were deleted
-            Toast.makeText(this, getString(R.string.all_products_deleted), Toast.LENGTH_SHORT).show();
-        } else {
+    // Check if all the rows were deleted and inform the user, who can undo the delete
+    private void showDeleteAllResult(int rowsDeleted) {
+        if (rowsDeleted == 0) {
             Toast.makeText(this, getString(R.string.failed_deleting_all_products), Toast.LENGTH_SHORT).show();
+            return;
         }
+
+        Snackbar.make(findViewById(R.id.list), R.string.all_products_deleted, Snackbar.LENGTH_LONG)
+                .setAction(R.string.undo, new View.OnClickListener() {
+                    @Override
+                    public void onClick(View view) {
+                        undoDelete();
+                    }
+                })
+                .show();
     }
 
-    // Create the cursor loader
+    // Restores the products of the last delete on a background thread.
+    // The list and the dashboard are reloaded by the notifications of the provider.
+    private void undoDelete() {
+        final ContentResolver resolver = getContentResolver();
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                resolver.call(ProductEntry.CONTENT_URI, ProductEntry.METHOD_UNDO_DELETE, null, null);
+            }
+        }, "UndoDelete").start();
+    }
+
+    // Create the loader, that loads the products page by page,
+    // or the loader of the search results
     @Override
-    public Loader<Cursor> onCreateLoader(int i, Bundle bundle) {
-        // The columns that should be delivered by the content resolver
-        String[] projection = {
-                ProductEntry._ID,
-                ProductEntry.COLUMN_PRODUCT_NAME,
-                ProductEntry.COLUMN_PRODUCT_QUANTITY,
-                ProductEntry.COLUMN_PRODUCT_PRICE,
-                ProductEntry.COLUMN_PRODUCT_PHOTO_URI};
-
-        return new CursorLoader(this,     // Parent activity context (Main Activity)
-                ProductEntry.CONTENT_URI, // Provider content uri to query
-                projection,               // Columns to include in the resulting Cursor
-                null,                     // No selection clause
-                null,                     // No selection argument
-                null);                    // Default sort order
+    public Loader<Cursor> onCreateLoader(int id, Bundle bundle) {
+        if (id == SUMMARY_LOADER) {
+            // One row per currency, which is notified only when the totals change
+            return new CursorLoader(this, SummaryEntry.CONTENT_URI, null, null, null, null);
+        }
+        if (id == SEARCH_LOADER) {
+            // The results are compared with the list shown now,
+            // so only the rows that came or went are changed
+            return new ProductSearchLoader(this,
+                    bundle.getString(KEY_SEARCH_TEXT),
+                    SEARCH_LIMIT,
+                    PRODUCT_LIST_PROJECTION,
+                    mCursorAdapter.getSnapshot());
+        }
+
+        // The filter of the low stock uses the reorder rules of the products,
+        // like the dashboard and the alerts, through the primary key of the rules
+        String selection = mLowStockOnly ? ReorderRuleEntry.LOW_STOCK_SELECTION : null;
+
+        return new ProductPageLoader(this, // Parent activity context (Main Activity)
+                PRODUCT_LIST_PROJECTION,   // Columns to include in the resulting Cursor
+                mSortColumn,               // The order the user has chosen
+                selection,                 // The filter the user has chosen
+                null);
     }
 
     // Querying asynchronously the database has finished
     // Get the loader object and the data from the cursor
     @Override
     public void onLoadFinished(Loader<Cursor> loader, Cursor data) {
+        if (loader.getId() == SUMMARY_LOADER) {
+            showSummary(data);
+            return;
+        }
+        if (loader.getId() == SEARCH_LOADER) {
+            mSearchCursor = data;
+            if (mSearchText != null) {
+                showCursor(mSearchCursor);
+            }
+            return;
+        }
+
         // ProductCursorAdapter with the new data from the database delivered in cursor object
-        mCursorAdapter.swapCursor(data);
+        // Wrap it, so that single changed rows can be patched later.
+        // If only a new page was added, the patches of the loaded rows are still valid.
+        // The patches of a loader with another order or filter are not carried over.
+        ProductPatchCursor previous = mPatchCursor;
+        if (data == null) {
+            mPatchCursor = null;
+        } else if (previous != null && loader == mPatchCursorLoader && isSameContentVersion(previous, data)) {
+            mPatchCursor = new ProductPatchCursor(data, previous);
+        } else {
+            mPatchCursor = new ProductPatchCursor(data);
+        }
+        mPatchCursorLoader = loader;
+        if (mSearchText == null) {
+            showCursor(mPatchCursor);
+        }
+    }
+
+    // Shows the totals of the summary in the dashboard. The counts of all of the currencies
+    // are added up, but their values are shown one by one.
+    private void showSummary(Cursor summary) {
+        long units = 0;
+        int lowStock = 0;
+        int outOfStock = 0;
+        StringBuilder value = new StringBuilder();
+        if (summary != null && summary.moveToFirst()) {
+            int currencyColumnIndex = summary.getColumnIndex(SummaryEntry.COLUMN_CURRENCY);
+            int unitsColumnIndex = summary.getColumnIndex(SummaryEntry.COLUMN_TOTAL_UNITS);
+            int valueColumnIndex = summary.getColumnIndex(SummaryEntry.COLUMN_TOTAL_VALUE_CENTS);
+            int lowStockColumnIndex = summary.getColumnIndex(SummaryEntry.COLUMN_LOW_STOCK_COUNT);
+            int outOfStockColumnIndex = summary.getColumnIndex(SummaryEntry.COLUMN_OUT_OF_STOCK_COUNT);
+            do {
+                units += summary.getLong(unitsColumnIndex);
+                lowStock += summary.getInt(lowStockColumnIndex);
+                outOfStock += summary.getInt(outOfStockColumnIndex);
+                if (value.length() > 0) {
+                    value.append(getString(R.string.dashboard_value_separator));
+                }
+                value.append(mPriceFormatter.format(summary.getLong(valueColumnIndex),
+                        summary.getString(currencyColumnIndex)));
+            } while (summary.moveToNext());
+        } else {
+            value.append(mPriceFormatter.format(0, Prices.defaultCurrency()));
+        }
+
+        mUnitsTextView.setText(getString(R.string.dashboard_units, units));
+        mValueTextView.setText(value);
+        mLowStockTextView.setText(getString(R.string.dashboard_low_stock, lowStock));
+        mOutOfStockTextView.setText(getString(R.string.dashboard_out_of_stock, outOfStock));
+    }
+
+    // Returns true if the new data only adds rows to the data of the previous cursor
+    private static boolean isSameContentVersion(ProductPatchCursor previous, Cursor data) {
+        return previous.getWrappedCursor() instanceof ProductPageLoader.PageCursor &&
+                data instanceof ProductPageLoader.PageCursor &&
+                ((ProductPageLoader.PageCursor) previous.getWrappedCursor()).getContentVersion() ==
+                        ((ProductPageLoader.PageCursor) data).getContentVersion();
     }
 
     // This is called when the last Cursor provided to onLoadFinished()
@@ -230,7 +1058,28 @@ public class MainActivity extends AppCompatActivity implements LoaderManager.Loa
     // longer using it.
     @Override
     public void onLoaderReset(Loader<Cursor> loader) {
-        // Pass empty values for the adapter
-        mCursorAdapter.swapCursor(null);
+        if (loader.getId() == SUMMARY_LOADER) {
+            showSummary(null);
+            return;
+        }
+
+        // Pass empty values for the adapter, if it shows the cursor of this loader
+        if (loader.getId() == SEARCH_LOADER) {
+            if (mCursorAdapter.getCursor() == mSearchCursor) {
+                showCursor(null);
+            }
+            mSearchCursor = null;
+            return;
+        }
+
+        // A loader that was replaced by one with another order or filter does not own the list anymore
+        if (loader != mPatchCursorLoader) {
+            return;
+        }
+        if (mCursorAdapter.getCursor() == mPatchCursor) {
+            showCursor(null);
+        }
+        mPatchCursor = null;
+        mPatchCursorLoader = null;
     }
 }
@@ -0,0 +1,38 @@
+package com.example.user.inventoryapp;
+
+import com.example.user.inventoryapp.data.Prices;
+
+import java.math.BigDecimal;
+import java.text.NumberFormat;
+import java.util.Currency;
+import java.util.HashMap;
+
+/**
+ * {@link PriceFormatter} formats the prices stored in the minor unit of their currency
+ * for the locale of the device, like "$7.50" or "7,50 EUR".
+ * The format of every currency is created once. It is not thread safe, use it on one thread.
+ */
+public class PriceFormatter {
+
+    // The format of every currency that was formatted
+    private final HashMap<String, NumberFormat> mFormats = new HashMap<>();
+
+    /**
+     * Returns the price with the symbol and the decimals of its currency.
+     *
+     * @param minorUnits   The price in the minor unit of the currency, like cents
+     * @param currencyCode The ISO 4217 code of the currency
+     */
+    public String format(long minorUnits, String currencyCode) {
+        NumberFormat format = mFormats.get(currencyCode);
+        if (format == null) {
+            format = NumberFormat.getCurrencyInstance();
+            format.setCurrency(Currency.getInstance(currencyCode));
+            int digits = Prices.fractionDigits(currencyCode);
+            format.setMinimumFractionDigits(digits);
+            format.setMaximumFractionDigits(digits);
+            mFormats.put(currencyCode, format);
+        }
+        return format.format(BigDecimal.valueOf(minorUnits, Prices.fractionDigits(currencyCode)));
+    }
+}
@@ -0,0 +1,215 @@
+package com.example.user.inventoryapp;
+
+import android.app.IntentService;
+import android.app.NotificationChannel;
+import android.app.NotificationManager;
+import android.content.Context;
+import android.content.Intent;
+import android.content.SharedPreferences;
+import android.content.res.AssetFileDescriptor;
+import android.net.Uri;
+import android.os.Build;
+import android.os.SystemClock;
+import android.support.v4.app.NotificationCompat;
+import android.util.Log;
+
+import com.example.user.inventoryapp.csv.ProductCsvExporter;
+import com.example.user.inventoryapp.csv.ProductCsvImporter;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * {@link ProductCsvService} imports and exports the catalog of products as CSV files,
+ * in the foreground with a notification that shows the progress.
+ * The progress of an import is saved after every chunk. If the import is stopped,
+ * because the app was killed, the system starts it again and it continues from there.
+ */
+public class ProductCsvService extends IntentService {
+
+    // Tag for the log messages
+    private static final String LOG_TAG = ProductCsvService.class.getSimpleName();
+
+    // The actions of the service, the file is the data of the intent
+    public static final String ACTION_IMPORT = "com.example.user.inventoryapp.action.IMPORT_CSV";
+    public static final String ACTION_EXPORT = "com.example.user.inventoryapp.action.EXPORT_CSV";
+
+    // The ids of the notifications of the progress and of the result, and of their channel
+    private static final int NOTIFICATION_ID = 1;
+    private static final int RESULT_NOTIFICATION_ID = 2;
+    private static final String CHANNEL_ID = "csv_transfer";
+
+    // The notification is not updated more often than this
+    private static final long PROGRESS_INTERVAL_MILLIS = 500;
+
+    // The saved progress of the last import that did not finish
+    private static final String PREFS_IMPORT = "csv_import";
+    private static final String KEY_URI = "uri";
+    private static final String KEY_RECORDS_READ = "records_read";
+    private static final String KEY_PRODUCTS_IMPORTED = "products_imported";
+    private static final String KEY_RECORDS_REJECTED = "records_rejected";
+
+    private NotificationManager mNotificationManager;
+
+    private long mLastProgressTime;
+
+    public ProductCsvService() {
+        super(ProductCsvService.class.getSimpleName());
+
+        // If the app is killed, start the service again with the same intent
+        setIntentRedelivery(true);
+    }
+
+    /**
+     * Starts importing the products of the CSV file.
+     */
+    public static void startImport(Context context, Uri file) {
+        context.startService(new Intent(context, ProductCsvService.class)
+                .setAction(ACTION_IMPORT)
+                .setData(file));
+    }
+
+    /**
+     * Starts exporting all of the products to the CSV file.
+     */
+    public static void startExport(Context context, Uri file) {
+        context.startService(new Intent(context, ProductCsvService.class)
+                .setAction(ACTION_EXPORT)
+                .setData(file));
+    }
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        mNotificationManager = (NotificationManager) getSystemService(NOTIFICATION_SERVICE);
+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            mNotificationManager.createNotificationChannel(new NotificationChannel(CHANNEL_ID,
+                    getString(R.string.csv_channel_name), NotificationManager.IMPORTANCE_LOW));
+        }
+    }
+
+    // Runs on a background thread, one intent at a time
+    @Override
+    protected void onHandleIntent(Intent intent) {
+        if (intent == null || intent.getData() == null) {
+            return;
+        }
+
+        boolean importing = ACTION_IMPORT.equals(intent.getAction());
+        int title = importing ? R.string.csv_importing : R.string.csv_exporting;
+        startForeground(NOTIFICATION_ID, buildProgressNotification(title, 0, 0).build());
+        try {
+            String message = importing
+                    ? importProducts(intent.getData())
+                    : exportProducts(intent.getData());
+            showResult(message);
+        } catch (IOException | SecurityException e) {
+            Log.e(LOG_TAG, "Transfer of " + intent.getData() + " failed", e);
+            showResult(getString(importing ? R.string.csv_import_failed : R.string.csv_export_failed));
+        } finally {
+            stopForeground(true);
+        }
+    }
+
+    // Imports the file, continuing the saved progress if it is of the same file.
+    // Returns the message for the user.
+    private String importProducts(final Uri file) throws IOException {
+        final SharedPreferences prefs = getSharedPreferences(PREFS_IMPORT, MODE_PRIVATE);
+        ProductCsvImporter.Progress resumeFrom = null;
+        if (file.toString().equals(prefs.getString(KEY_URI, null))) {
+            resumeFrom = new ProductCsvImporter.Progress(prefs.getLong(KEY_RECORDS_READ, 0),
+                    prefs.getLong(KEY_PRODUCTS_IMPORTED, 0), prefs.getLong(KEY_RECORDS_REJECTED, 0), 0);
+            Log.i(LOG_TAG, "Continuing the import of " + file + " after record " + resumeFrom.recordsRead);
+        }
+
+        // The size of the file, for the progress bar, or -1 if it is not known
+        final long size = sizeOf(file);
+
+        InputStream in = getContentResolver().openInputStream(file);
+        if (in == null) {
+            throw new IOException("Can not open " + file);
+        }
+        ProductCsvImporter.Progress result = new ProductCsvImporter(getContentResolver()).importFrom(in,
+                resumeFrom, new ProductCsvImporter.Listener() {
+                    @Override
+                    public void onChunkImported(ProductCsvImporter.Progress progress) {
+                        prefs.edit()
+                                .putString(KEY_URI, file.toString())
+                                .putLong(KEY_RECORDS_READ, progress.recordsRead)
+                                .putLong(KEY_PRODUCTS_IMPORTED, progress.productsImported)
+                                .putLong(KEY_RECORDS_REJECTED, progress.recordsRejected)
+                                .apply();
+                        showProgress(R.string.csv_importing, progress.bytesRead, size);
+                    }
+                });
+
+        // The import is done, the next import of the file starts from the beginning
+        prefs.edit().clear().apply();
+        return getString(R.string.csv_import_done, result.productsImported, result.recordsRejected);
+    }
+
+    // Exports all of the products to the file. Returns the message for the user.
+    private String exportProducts(Uri file) throws IOException {
+        OutputStream out = getContentResolver().openOutputStream(file, "w");
+        if (out == null) {
+            throw new IOException("Can not open " + file);
+        }
+        long count = new ProductCsvExporter(getContentResolver()).export(out,
+                new ProductCsvExporter.Listener() {
+                    @Override
+                    public void onProductsExported(long count) {
+                        showProgress(R.string.csv_exporting, 0, 0);
+                    }
+                });
+        return getString(R.string.csv_export_done, count);
+    }
+
+    // Returns the size of the file in bytes, or -1 if it is not known
+    private long sizeOf(Uri file) {
+        try {
+            AssetFileDescriptor descriptor = getContentResolver().openAssetFileDescriptor(file, "r");
+            if (descriptor == null) {
+                return -1;
+            }
+            long size = descriptor.getLength();
+            descriptor.close();
+            return size;
+        } catch (IOException | SecurityException e) {
+            return -1;
+        }
+    }
+
+    // Updates the progress in the notification, but not more often than PROGRESS_INTERVAL_MILLIS
+    private void showProgress(int title, long done, long total) {
+        long now = SystemClock.elapsedRealtime();
+        if (now - mLastProgressTime < PROGRESS_INTERVAL_MILLIS) {
+            return;
+        }
+        mLastProgressTime = now;
+        mNotificationManager.notify(NOTIFICATION_ID, buildProgressNotification(title, done, total).build());
+    }
+
+    // Builds the notification of a running transfer. The progress is indeterminate
+    // if the total is not known.
+    private NotificationCompat.Builder buildProgressNotification(int title, long done, long total) {
+        boolean indeterminate = total <= 0;
+        return new NotificationCompat.Builder(this, CHANNEL_ID)
+                .setSmallIcon(android.R.drawable.stat_sys_download)
+                .setContentTitle(getString(title))
+                .setOngoing(true)
+                .setProgress(indeterminate ? 0 : 100,
+                        indeterminate ? 0 : (int) (done * 100 / total), indeterminate);
+    }
+
+    // Shows the result of the transfer in a notification the user can dismiss
+    private void showResult(String message) {
+        mNotificationManager.notify(RESULT_NOTIFICATION_ID, new NotificationCompat.Builder(this, CHANNEL_ID)
+                .setSmallIcon(android.R.drawable.stat_sys_download_done)
+                .setContentTitle(getString(R.string.app_name))
+                .setContentText(message)
+                .setAutoCancel(true)
+                .build());
+    }
+}
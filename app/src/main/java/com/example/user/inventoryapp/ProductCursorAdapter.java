@@ -1,165 +1,365 @@
 package com.example.user.inventoryapp;
 
-import android.content.ContentResolver;
-import android.content.ContentUris;
-import android.content.ContentValues;
 import android.content.Context;
 import android.database.Cursor;
 import android.net.Uri;
+import android.support.v7.util.DiffUtil;
+import android.support.v7.widget.RecyclerView;
+import android.util.LruCache;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
 import android.widget.Button;
-import android.widget.CursorAdapter;
 import android.widget.ImageView;
 import android.widget.TextView;
 import android.widget.Toast;
 
 import com.example.user.inventoryapp.data.ProductContract.ProductEntry;
+import com.example.user.inventoryapp.data.StockWriteQueue;
+import com.example.user.inventoryapp.image.ThumbnailLoader;
+
+import java.util.HashSet;
 
 /**
  * Created by Alexander Rashkov on 11.07.17.
  */
 
 /**
- * {@link ProductCursorAdapter} is an adapter for a list or grid view
+ * {@link ProductCursorAdapter} is an adapter for a RecyclerView
  * that uses a {@link Cursor} of product data as its data source. This adapter knows
  * how to create list items for each row of product data in the {@link Cursor}.
+ * When a new cursor arrives, only the rows that changed are bound again,
+ * using the differences computed by the loader in the {@link ProductListSnapshot}.
  */
-public class ProductCursorAdapter extends CursorAdapter {
+public class ProductCursorAdapter extends RecyclerView.Adapter<ProductCursorAdapter.ProductViewHolder> {
+
+    /**
+     * Listens for clicks on the list items.
+     */
+    public interface OnProductClickListener {
+        void onProductClick(long id);
+
+        // Returns true if the long click was handled
+        boolean onProductLongClick(long id);
+    }
+
+    // The number of formatted prices that are kept, a few screens of the list
+    private static final int PRICE_CACHE_SIZE = 100;
+
+    private final Context mContext;
+
+    // Loads the photos of the products on background threads
+    private final ThumbnailLoader mThumbnailLoader;
+
+    // The size of the preview photo in the ListItem, in pixels
+    private final int mThumbnailSize;
+
+    private final OnProductClickListener mProductClickListener;
+
+    // Holds the sales that are not written to the database yet
+    private final StockWriteQueue mStockWriteQueue;
+
+    // The ids of the selected products. They stay selected when the cursor changes.
+    private final HashSet<Long> mSelectedIds = new HashSet<>();
 
-    // This ImageView object will hold the reference to the ImageView that holds
-    // the photo of the product in the ListItem
-    ImageView mPhotoImageView;
+    // Formats the prices for the locale of the device
+    private final PriceFormatter mPriceFormatter = new PriceFormatter();
 
-    // This variable stores the uri of the product's photo
-    Uri mProductImageUri;
+    // The formatted prices of the products shown last, so binding a row again
+    // does not format the same price again
+    private final LruCache<Long, PriceText> mPriceTexts = new LruCache<>(PRICE_CACHE_SIZE);
+
+    // The cursor with the products, and the snapshot of its ids and values
+    private Cursor mCursor;
+    private ProductListSnapshot mSnapshot;
+
+    // The indices of the columns, read once per cursor
+    private int mNameColumnIndex;
+    private int mQuantityColumnIndex;
+    private int mPriceColumnIndex;
+    private int mCurrencyColumnIndex;
+    private int mPhotoColumnIndex;
+
+    // One listener for all of the ListItems, that finds the product through the ViewHolder
+    private final View.OnClickListener mItemClickListener = new View.OnClickListener() {
+        @Override
+        public void onClick(View v) {
+            ProductViewHolder holder = (ProductViewHolder) v.getTag();
+            mProductClickListener.onProductClick(holder.mId);
+        }
+    };
+
+    // One listener for the long clicks on all of the ListItems
+    private final View.OnLongClickListener mItemLongClickListener = new View.OnLongClickListener() {
+        @Override
+        public boolean onLongClick(View v) {
+            ProductViewHolder holder = (ProductViewHolder) v.getTag();
+            return mProductClickListener.onProductLongClick(holder.mId);
+        }
+    };
+
+    // One listener for all of the "Sale" buttons
+    private final View.OnClickListener mSaleClickListener = new View.OnClickListener() {
+        @Override
+        public void onClick(View v) {
+            ProductViewHolder holder = (ProductViewHolder) v.getTag();
+
+            // The row is being removed from the list
+            int position = holder.getAdapterPosition();
+            if (position == RecyclerView.NO_POSITION) {
+                return;
+            }
+
+            // Read the quantity now, with the sales that are not written yet, instead of the one
+            // of the last bind, so quick taps do not sell more than the list shows
+            mCursor.moveToPosition(position);
+            int quantity = mCursor.getInt(mQuantityColumnIndex) + mStockWriteQueue.getPendingDelta(holder.mId);
+            if (quantity <= 0) {
+                // Show a message to the UI to inform the user for the 0 quantity of this product
+                Toast.makeText(v.getContext(), R.string.out_of_stock, Toast.LENGTH_SHORT).show();
+                return;
+            }
+
+            // Queue the sale without waiting for the database. The row shows the new quantity
+            // at once, and the provider still never lets the quantity become negative.
+            mStockWriteQueue.add(holder.mId, -1);
+        }
+    };
 
     /**
      * Constructs a new {@link ProductCursorAdapter}.
      *
-     * @param context The context
-     * @param c       The cursor from which to get the data.
+     * @param context  The context
+     * @param listener Called when a ListItem is clicked
      */
-    public ProductCursorAdapter(Context context, Cursor c) {
-        super(context, c, 0 /* flags */);
+    public ProductCursorAdapter(Context context, OnProductClickListener listener) {
+        mContext = context;
+        mProductClickListener = listener;
+        mThumbnailLoader = ThumbnailLoader.getInstance(context);
+        mStockWriteQueue = StockWriteQueue.getInstance(context);
+        mThumbnailSize = context.getResources().getDimensionPixelSize(R.dimen.preview_photo_dimen);
+        setHasStableIds(true);
     }
 
     /**
-     * Makes a new blank list item view. No data is set (or bound) to the views yet.
+     * Shows the products of the new cursor. If the loader computed the differences
+     * from the snapshot shown now, only the changed rows are updated,
+     * otherwise the whole list is bound again.
+     * The adapter does not close the old cursor, the loader does.
      *
-     * @param context app context
-     * @param cursor  The cursor from which to get the data. The cursor is already
-     *                moved to the correct position.
-     * @param parent  The parent to which the new view is attached to
-     * @return the newly created list item view.
+     * @param cursor   The cursor with the products, or null
+     * @param snapshot The snapshot of the cursor, or null if the cursor is null
+     */
+    public void swapCursor(Cursor cursor, ProductListSnapshot snapshot) {
+        ProductListSnapshot oldSnapshot = mSnapshot;
+        mCursor = cursor;
+        mSnapshot = snapshot;
+
+        if (cursor != null) {
+            mNameColumnIndex = cursor.getColumnIndexOrThrow(ProductEntry.COLUMN_PRODUCT_NAME);
+            mQuantityColumnIndex = cursor.getColumnIndexOrThrow(ProductEntry.COLUMN_PRODUCT_QUANTITY);
+            mPriceColumnIndex = cursor.getColumnIndexOrThrow(ProductEntry.COLUMN_PRODUCT_PRICE_CENTS);
+            mCurrencyColumnIndex = cursor.getColumnIndexOrThrow(ProductEntry.COLUMN_PRODUCT_CURRENCY);
+            mPhotoColumnIndex = cursor.getColumnIndexOrThrow(ProductEntry.COLUMN_PRODUCT_PHOTO_URI);
+        }
+
+        // The rows did not change, for example when the last page turned out to be empty
+        if (snapshot != null && snapshot == oldSnapshot) {
+            return;
+        }
+
+        DiffUtil.DiffResult diff = snapshot == null ? null : snapshot.getDiffFrom(oldSnapshot);
+        if (diff != null) {
+            diff.dispatchUpdatesTo(this);
+        } else {
+            notifyDataSetChanged();
+        }
+    }
+
+    /**
+     * Returns the cursor shown in the list, or null.
      */
+    public Cursor getCursor() {
+        return mCursor;
+    }
+
+    /**
+     * Returns the snapshot of the cursor shown in the list, or null.
+     */
+    public ProductListSnapshot getSnapshot() {
+        return mSnapshot;
+    }
+
+    /**
+     * Binds the row of the product again, after its values were patched in the cursor.
+     */
+    public void notifyProductChanged(long id) {
+        if (mSnapshot == null) {
+            return;
+        }
+        int position = mSnapshot.positionOf(id);
+        if (position != -1) {
+            notifyItemChanged(position);
+        }
+    }
+
+    /**
+     * Selects or unselects the product, and shows it in its row.
+     */
+    public void setSelected(long id, boolean selected) {
+        if (selected ? mSelectedIds.add(id) : mSelectedIds.remove(id)) {
+            notifyProductChanged(id);
+        }
+    }
+
+    /**
+     * Returns true if the product is selected.
+     */
+    public boolean isSelected(long id) {
+        return mSelectedIds.contains(id);
+    }
+
+    /**
+     * Returns the ids of the selected products.
+     */
+    public long[] getSelectedIds() {
+        long[] ids = new long[mSelectedIds.size()];
+        int i = 0;
+        for (long id : mSelectedIds) {
+            ids[i++] = id;
+        }
+        return ids;
+    }
+
+    /**
+     * Unselects all of the products.
+     */
+    public void clearSelection() {
+        if (!mSelectedIds.isEmpty()) {
+            mSelectedIds.clear();
+            notifyDataSetChanged();
+        }
+    }
+
+    @Override
+    public int getItemCount() {
+        return mSnapshot == null ? 0 : mSnapshot.size();
+    }
+
     @Override
-    public View newView(Context context, Cursor cursor, ViewGroup parent) {
-        return LayoutInflater.from(context).inflate(R.layout.list_item, parent, false);
+    public long getItemId(int position) {
+        return mSnapshot.getId(position);
     }
 
     /**
-     * This method binds the product data (in the current row pointed by cursor) to the given
-     * list item layout.
-     *
-     * @param view    Existing view, returned earlier by newView() method
-     * @param context app context
-     * @param cursor  The cursor from which to get the data. The cursor is already moved to the
-     *                correct row.
+     * Makes a new blank list item view and finds its views once.
+     * No data is set (or bound) to the views yet.
+     */
+    @Override
+    public ProductViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
+        View view = LayoutInflater.from(mContext).inflate(R.layout.list_item, parent, false);
+        ProductViewHolder holder = new ProductViewHolder(view);
+
+        view.setTag(holder);
+        view.setOnClickListener(mItemClickListener);
+        view.setOnLongClickListener(mItemLongClickListener);
+        holder.mSaleButton.setTag(holder);
+        holder.mSaleButton.setOnClickListener(mSaleClickListener);
+        return holder;
+    }
+
+    /**
+     * This method binds the product data (in the row at the given position) to the given
+     * list item.
      */
     @Override
-    public void bindView(final View view, final Context context, Cursor cursor) {
-        // Get the id of the current ListItem
-        final int id = cursor.getInt(cursor.getColumnIndex(ProductEntry._ID));
-
-        // Find the TextView that will display product's name
-        // Get the string value for the product name from the cursor object
-        // Populate the productNameTextView
-        TextView productNameTextView = (TextView) view.findViewById(R.id.product_name);
-        final String productName = cursor.getString(cursor.getColumnIndex(ProductEntry.COLUMN_PRODUCT_NAME));
-        productNameTextView.setText(productName);
-
-        // Find the TextView that will display product's quantity
-        // Get the int value for the product quantity from the cursor object
-        // Convert the int value of productQuantity to string & Populate the quantityTextView
-        final TextView quantityTextView = (TextView) view.findViewById(R.id.quantity);
-        final int productQuantity = cursor.getInt(cursor.getColumnIndex(ProductEntry.COLUMN_PRODUCT_QUANTITY));
-        quantityTextView.setText(String.valueOf(productQuantity));
-
-        // Find the TextView that will display product's price
-        // Get the float value for the product price from the cursor object and then converted it to String
-        // Populate the priceTextView
-        TextView priceTextView = (TextView) view.findViewById(R.id.price);
-        String price = Float.toString(cursor.getFloat(cursor.getColumnIndex(ProductEntry.COLUMN_PRODUCT_PRICE)));
-        priceTextView.setText(price);
-
-        // Find the ImageView that will display product's preview picture
-        mPhotoImageView = (ImageView) view.findViewById(R.id.list_item_photo);
+    public void onBindViewHolder(ProductViewHolder holder, int position) {
+        mCursor.moveToPosition(position);
+
+        // The id of the product, used by the click listeners
+        holder.mId = mSnapshot.getId(position);
+        holder.itemView.setActivated(mSelectedIds.contains(holder.mId));
+
+        // Populate the TextViews of the name, the quantity and the price
+        holder.mNameTextView.setText(mCursor.getString(mNameColumnIndex));
+        int quantity = mCursor.getInt(mQuantityColumnIndex) + mStockWriteQueue.getPendingDelta(holder.mId);
+        holder.mQuantityTextView.setText(String.valueOf(quantity));
+        holder.mPriceTextView.setText(priceText(holder.mId));
 
         // First, get the string value for the image uri from the database,
         // and later if it is different from default string, convert it to uri
-        String productImageString = cursor.getString(cursor.getColumnIndex(ProductEntry.COLUMN_PRODUCT_PHOTO_URI));
+        String productImageString = mCursor.getString(mPhotoColumnIndex);
 
         // Check if productImageString is equal to the default value, set a drawable resource
         // This should work only when dummy data is inserted
         if (productImageString.equals("no image")) {
 
-            mPhotoImageView.setImageResource(R.drawable.ic_add_a_photo_white_36dp);
+            // The row may still be waiting for the photo of the product it displayed before
+            mThumbnailLoader.cancel(holder.mPhotoImageView);
+            holder.mPhotoImageView.setImageResource(R.drawable.ic_add_a_photo_white_36dp);
 
         } else {
 
-            // Convert into Uri the string of the products photo uri
-            mProductImageUri = Uri.parse(productImageString);
+            // Decode the photo on a background thread, downsampled to the size of the preview
+            mThumbnailLoader.load(Uri.parse(productImageString), holder.mPhotoImageView,
+                    mThumbnailSize, mThumbnailSize, R.drawable.ic_add_a_photo_white_36dp);
+        }
+    }
+
+    // Returns the formatted price of the product in the current row of the cursor.
+    // The price is formatted again only if it changed since the product was last shown.
+    private String priceText(long id) {
+        long cents = mCursor.getLong(mPriceColumnIndex);
+        String currency = mCursor.getString(mCurrencyColumnIndex);
 
-            // Visualize the photo using uri
-            mPhotoImageView.setImageURI(mProductImageUri);
+        PriceText priceText = mPriceTexts.get(id);
+        if (priceText == null) {
+            priceText = new PriceText();
+            mPriceTexts.put(id, priceText);
+        } else if (priceText.mCents == cents && priceText.mCurrency.equals(currency)) {
+            return priceText.mText;
         }
+        priceText.mCents = cents;
+        priceText.mCurrency = currency;
+        priceText.mText = mPriceFormatter.format(cents, currency);
+        return priceText.mText;
+    }
 
-        // Get the sale button view
-        Button saleButton = (Button) view.findViewById(R.id.sale_button);
-
-        // Attach a listener to "Sale" button to perform an update on the database
-        saleButton.setOnClickListener(new View.OnClickListener() {
-            @Override
-            public void onClick(View v) {
-                // Create  ContentResolver object to update the database
-                ContentResolver resolver = context.getContentResolver();
-
-                // Create ContentValues to select the right "key" to "value" pair to update
-                ContentValues values = new ContentValues();
-
-                // If the quantity of the products is more than 0, then we can reduce ot by one
-                // We do not want any negative values
-                if (productQuantity > 0) {
-
-                    // Create a new uri for this product ( ListItem)
-                    Uri CurrentProductUri = ContentUris.withAppendedId(ProductEntry.CONTENT_URI, id);
-
-                    // Present a new variable to send the reduced quantity to database
-                    int currentAvailableQuantity = productQuantity;
-                    currentAvailableQuantity -= 1;
-
-                    // Assign the new variable of the quantity as a contentValue,
-                    // that will be updated into the database
-                    values.put(ProductEntry.COLUMN_PRODUCT_QUANTITY, currentAvailableQuantity);
-
-                    // Perform an update on the database
-                    resolver.update(
-                            CurrentProductUri,
-                            values,
-                            null,
-                            null
-                    );
-
-                    // Notify all listener to Update the UI
-                    // Now the quantity of this product is reduced on the UI
-                    context.getContentResolver().notifyChange(CurrentProductUri, null);
-                } else {
-                    // Show a message to the UI to inform the user for the 0 quantity of this product
-                    Toast.makeText(v.getContext(), R.string.out_of_stock, Toast.LENGTH_SHORT).show();
-                }
-            }
-        });
+    /**
+     * Cancels loading the photo of a ListItem that is not displayed anymore.
+     */
+    @Override
+    public void onViewRecycled(ProductViewHolder holder) {
+        mThumbnailLoader.cancel(holder.mPhotoImageView);
+    }
+
+    // A price and its text
+    private static class PriceText {
+        long mCents;
+        String mCurrency;
+        String mText;
+    }
+
+    /**
+     * Holds the views of a ListItem, so they are found only once.
+     */
+    public static class ProductViewHolder extends RecyclerView.ViewHolder {
+        final TextView mNameTextView;
+        final TextView mQuantityTextView;
+        final TextView mPriceTextView;
+        final ImageView mPhotoImageView;
+        final Button mSaleButton;
+
+        // The id of the product shown in the ListItem
+        long mId;
+
+        ProductViewHolder(View view) {
+            super(view);
+            mNameTextView = (TextView) view.findViewById(R.id.product_name);
+            mQuantityTextView = (TextView) view.findViewById(R.id.quantity);
+            mPriceTextView = (TextView) view.findViewById(R.id.price);
+            mPhotoImageView = (ImageView) view.findViewById(R.id.list_item_photo);
+            mSaleButton = (Button) view.findViewById(R.id.sale_button);
+        }
     }
 }
@@ -0,0 +1,177 @@
+package com.example.user.inventoryapp;
+
+import android.database.Cursor;
+import android.support.v7.util.DiffUtil;
+
+import com.example.user.inventoryapp.data.ProductContract.ProductEntry;
+
+import java.util.HashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * {@link ProductListSnapshot} holds the id and a hash of the values of every row of a product
+ * cursor. It is made by the loaders on their background thread, together with the
+ * {@link DiffUtil.DiffResult} from the snapshot the loader delivered before. So when the new cursor
+ * arrives on the main thread, the list only has to apply the differences and rebind
+ * the changed rows.
+ */
+public final class ProductListSnapshot {
+
+    /**
+     * A cursor delivered by a loader that knows the snapshot of its rows.
+     */
+    public interface Source {
+        ProductListSnapshot getSnapshot();
+    }
+
+    // Gives every snapshot a number, so a diff can be matched with the snapshot it was made from
+    private static final AtomicInteger sNextSerial = new AtomicInteger();
+
+    private final int mSerial = sNextSerial.incrementAndGet();
+
+    private final long[] mIds;
+
+    private final int[] mHashes;
+
+    // The serial of the snapshot the diff was made from, or 0 if there is no diff
+    private final int mBaseSerial;
+
+    // The changes from the base snapshot to this one, or null
+    private final DiffUtil.DiffResult mDiff;
+
+    // The position of every id, built when it is needed the first time. Only used on the main thread.
+    private HashMap<Long, Integer> mPositions;
+
+    private ProductListSnapshot(long[] ids, int[] hashes, ProductListSnapshot base) {
+        mIds = ids;
+        mHashes = hashes;
+        if (base == null) {
+            mBaseSerial = 0;
+            mDiff = null;
+        } else {
+            mBaseSerial = base.mSerial;
+            mDiff = DiffUtil.calculateDiff(new Callback(base, this), false);
+        }
+    }
+
+    /**
+     * Reads the snapshot of all of the rows of the cursor. Call it on a background thread.
+     *
+     * @param cursor The cursor. It must contain the _id column.
+     * @param base   The snapshot to compute the differences from, or null
+     */
+    public static ProductListSnapshot of(Cursor cursor, ProductListSnapshot base) {
+        int count = cursor.getCount();
+        long[] ids = new long[count];
+        int[] hashes = new int[count];
+        read(cursor, ids, hashes, 0);
+        return new ProductListSnapshot(ids, hashes, base);
+    }
+
+    /**
+     * Returns the snapshot of the rows of the previous snapshot plus the rows of the page.
+     * Call it on a background thread.
+     *
+     * @param previous The snapshot of the rows before the page, that is also the base of the diff
+     * @param page     The cursor of the new rows. It must contain the _id column.
+     */
+    public static ProductListSnapshot append(ProductListSnapshot previous, Cursor page) {
+        int previousCount = previous.mIds.length;
+        long[] ids = new long[previousCount + page.getCount()];
+        int[] hashes = new int[ids.length];
+        System.arraycopy(previous.mIds, 0, ids, 0, previousCount);
+        System.arraycopy(previous.mHashes, 0, hashes, 0, previousCount);
+        read(page, ids, hashes, previousCount);
+        return new ProductListSnapshot(ids, hashes, previous);
+    }
+
+    // Reads the ids and the hashes of the rows of the cursor into the arrays, from the offset on
+    private static void read(Cursor cursor, long[] ids, int[] hashes, int offset) {
+        int idColumn = cursor.getColumnIndexOrThrow(ProductEntry._ID);
+        int columnCount = cursor.getColumnCount();
+
+        cursor.moveToPosition(-1);
+        int i = offset;
+        while (cursor.moveToNext()) {
+            ids[i] = cursor.getLong(idColumn);
+
+            int hash = 1;
+            for (int column = 0; column < columnCount; column++) {
+                String value = cursor.getString(column);
+                hash = 31 * hash + (value == null ? 0 : value.hashCode());
+            }
+            hashes[i] = hash;
+            i++;
+        }
+    }
+
+    /**
+     * Returns the number of rows.
+     */
+    public int size() {
+        return mIds.length;
+    }
+
+    /**
+     * Returns the id of the product at the position.
+     */
+    public long getId(int position) {
+        return mIds[position];
+    }
+
+    /**
+     * Returns the position of the product, or -1 if it is not in the snapshot.
+     */
+    public int positionOf(long id) {
+        if (mPositions == null) {
+            mPositions = new HashMap<>(mIds.length * 2);
+            for (int i = 0; i < mIds.length; i++) {
+                mPositions.put(mIds[i], i);
+            }
+        }
+        Integer position = mPositions.get(id);
+        return position == null ? -1 : position;
+    }
+
+    /**
+     * Returns the changes from the given snapshot to this one,
+     * or null if they were not computed from it.
+     */
+    public DiffUtil.DiffResult getDiffFrom(ProductListSnapshot base) {
+        if (base == null || base.mSerial != mBaseSerial) {
+            return null;
+        }
+        return mDiff;
+    }
+
+    // Compares the rows of two snapshots by id and by the hash of their values
+    private static class Callback extends DiffUtil.Callback {
+        private final ProductListSnapshot mOld;
+        private final ProductListSnapshot mNew;
+
+        Callback(ProductListSnapshot oldSnapshot, ProductListSnapshot newSnapshot) {
+            mOld = oldSnapshot;
+            mNew = newSnapshot;
+        }
+
+        @Override
+        public int getOldListSize() {
+            return mOld.mIds.length;
+        }
+
+        @Override
+        public int getNewListSize() {
+            return mNew.mIds.length;
+        }
+
+        @Override
+        public boolean areItemsTheSame(int oldItemPosition, int newItemPosition) {
+            return mOld.mIds[oldItemPosition] == mNew.mIds[newItemPosition];
+        }
+
+        @Override
+        public boolean areContentsTheSame(int oldItemPosition, int newItemPosition) {
+            return mOld.mHashes[oldItemPosition] == mNew.mHashes[newItemPosition];
+        }
+    }
+}
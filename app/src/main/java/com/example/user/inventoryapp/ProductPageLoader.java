@@ -0,0 +1,420 @@
+package com.example.user.inventoryapp;
+
+import android.content.AsyncTaskLoader;
+import android.content.Context;
+import android.database.AbstractCursor;
+import android.database.Cursor;
+
+import com.example.user.inventoryapp.data.ProductContract.ProductEntry;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+/**
+ * {@link ProductPageLoader} loads the product list page by page, instead of the whole table
+ * at once. The first result holds only the first page. Every time {@link #loadNextPage()} is
+ * called, the next page is read after the last row of the previous one (keyset pagination)
+ * and a new result is delivered, that holds the old pages plus the new one.
+ * When the products table changes, the pages that were already loaded are read again,
+ * one page per query.
+ * Every result carries a {@link ProductListSnapshot} with the differences from the previous result,
+ * computed here on the background thread.
+ */
+public class ProductPageLoader extends AsyncTaskLoader<Cursor> {
+
+    // The number of rows read with one query
+    public static final int PAGE_SIZE = 50;
+
+    // Observes the products table for inserts and deletes
+    private final ForceLoadContentObserver mObserver;
+
+    // The columns of the result. Always contains _id and the sort column.
+    private final String[] mProjection;
+
+    // The column the products are sorted by
+    private final String mSortColumn;
+
+    // Filters the products, or null to load all of them
+    private final String mSelection;
+    private final String[] mSelectionArgs;
+
+    // Counts the changes of the products table, so that a load knows if the pages are still valid
+    private volatile int mContentVersion;
+
+    // The last delivered result
+    private volatile PageCursor mCursor;
+
+    // The result for which the next page was already requested
+    private PageCursor mNextPageRequestedFor;
+
+    /**
+     * Constructs a new {@link ProductPageLoader}.
+     *
+     * @param context    The context
+     * @param projection The columns to include in the result
+     * @param sortColumn The column to sort the products by
+     */
+    public ProductPageLoader(Context context, String[] projection, String sortColumn) {
+        this(context, projection, sortColumn, null, null);
+    }
+
+    /**
+     * Constructs a new {@link ProductPageLoader} that loads only the products matching the selection.
+     *
+     * @param context       The context
+     * @param projection    The columns to include in the result
+     * @param sortColumn    The column to sort the products by
+     * @param selection     The filter of the products, or null to load all of them
+     * @param selectionArgs The arguments of the selection
+     */
+    public ProductPageLoader(Context context, String[] projection, String sortColumn,
+                             String selection, String[] selectionArgs) {
+        super(context);
+        mObserver = new ForceLoadContentObserver();
+        mSortColumn = sortColumn;
+        mSelection = selection;
+        mSelectionArgs = selectionArgs;
+
+        // Make sure the keyset of the last row can be read from the result
+        List<String> columns = new ArrayList<>(Arrays.asList(projection));
+        if (!columns.contains(ProductEntry._ID)) {
+            columns.add(ProductEntry._ID);
+        }
+        if (!columns.contains(sortColumn)) {
+            columns.add(sortColumn);
+        }
+        mProjection = columns.toArray(new String[columns.size()]);
+
+        // Start observing the products table, until the loader is reset
+        context.getContentResolver().registerContentObserver(ProductEntry.CONTENT_URI, true, mObserver);
+    }
+
+    /**
+     * Starts loading the next page, unless it is already loading
+     * or all of the products have been loaded.
+     */
+    public void loadNextPage() {
+        PageCursor cursor = mCursor;
+        if (cursor == null || !cursor.mHasMore || cursor == mNextPageRequestedFor) {
+            return;
+        }
+        mNextPageRequestedFor = cursor;
+        forceLoad();
+    }
+
+    @Override
+    public void onContentChanged() {
+        // The pages that were loaded so far are not valid anymore
+        mContentVersion++;
+        super.onContentChanged();
+    }
+
+    // Runs on a background thread
+    @Override
+    public Cursor loadInBackground() {
+        int contentVersion = mContentVersion;
+        PageCursor previous = mCursor;
+
+        // Append the next page if the previous result is still valid
+        if (previous != null && previous.mContentVersion == contentVersion) {
+            Cursor page = queryPage(previous.mLastKey, previous.mLastId);
+            if (page == null) {
+                return null;
+            }
+
+            // Fill the window of the page here, on the background thread
+            int pageCount = page.getCount();
+            List<Cursor> pages = new ArrayList<>(previous.mPages);
+            if (pageCount == 0) {
+                // There are no more rows, keep the old pages and stop loading new ones
+                page.close();
+                return new PageCursor(pages, previous.mLastKey, previous.mLastId, false, contentVersion,
+                        previous.mSnapshot);
+            }
+
+            // A row that was loaded before and moved after the keyset since then, for example
+            // a new quantity that was not read back yet, must not be in the list twice.
+            // The pages are read again instead.
+            if (!containsLoadedRow(previous.mSnapshot, page)) {
+                pages.add(page);
+                page.moveToLast();
+                return new PageCursor(pages, page.getString(page.getColumnIndexOrThrow(mSortColumn)),
+                        page.getLong(page.getColumnIndexOrThrow(ProductEntry._ID)), pageCount == PAGE_SIZE,
+                        contentVersion, ProductListSnapshot.append(previous.mSnapshot, page));
+            }
+            page.close();
+        }
+
+        // Otherwise read again as many rows as the previous result had, one page per query,
+        // so that no single query has to read and copy the whole list at once
+        int rowCount = previous == null ? PAGE_SIZE : Math.max(PAGE_SIZE, previous.getCount());
+        List<Cursor> pages = new ArrayList<>();
+        String lastKey = null;
+        long lastId = 0;
+        boolean hasMore = true;
+        int count = 0;
+        while (hasMore && count < rowCount) {
+            Cursor page = queryPage(lastKey, lastId);
+            if (page == null) {
+                for (Cursor loadedPage : pages) {
+                    loadedPage.close();
+                }
+                return null;
+            }
+
+            int pageCount = page.getCount();
+            hasMore = pageCount == PAGE_SIZE;
+            if (pageCount == 0 && !pages.isEmpty()) {
+                page.close();
+                break;
+            }
+            pages.add(page);
+            count += pageCount;
+
+            // Remember the keyset of the last row, to continue from it with the next page
+            if (page.moveToLast()) {
+                lastKey = page.getString(page.getColumnIndexOrThrow(mSortColumn));
+                lastId = page.getLong(page.getColumnIndexOrThrow(ProductEntry._ID));
+            }
+        }
+
+        // Read the ids and values of the rows, and compare them with the previous result
+        ProductListSnapshot snapshot = ProductListSnapshot.of(
+                new PageCursor(pages, lastKey, lastId, hasMore, contentVersion, null),
+                previous == null ? null : previous.mSnapshot);
+        return new PageCursor(pages, lastKey, lastId, hasMore, contentVersion, snapshot);
+    }
+
+    // Reads the page of rows after the keyset, or the first page if the key is null
+    private Cursor queryPage(String afterKey, long afterId) {
+        return getContext().getContentResolver().query(
+                ProductEntry.buildPageUri(mSortColumn, PAGE_SIZE, afterKey, afterId),
+                mProjection, mSelection, mSelectionArgs, null);
+    }
+
+    // Returns true if one of the rows of the page is already in the snapshot
+    private static boolean containsLoadedRow(ProductListSnapshot snapshot, Cursor page) {
+        HashSet<Long> loadedIds = new HashSet<>(snapshot.size() * 2);
+        for (int i = 0; i < snapshot.size(); i++) {
+            loadedIds.add(snapshot.getId(i));
+        }
+        int idColumn = page.getColumnIndexOrThrow(ProductEntry._ID);
+        page.moveToPosition(-1);
+        while (page.moveToNext()) {
+            if (loadedIds.contains(page.getLong(idColumn))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Runs on the main thread
+    @Override
+    public void deliverResult(Cursor cursor) {
+        PageCursor result = (PageCursor) cursor;
+        if (isReset()) {
+            // The loader is stopped, so the result is not needed
+            releasePages(result, null);
+            return;
+        }
+
+        PageCursor oldCursor = mCursor;
+        mCursor = result;
+        mNextPageRequestedFor = null;
+
+        if (isStarted()) {
+            super.deliverResult(result);
+        }
+
+        // Close the pages that are not used by the new result
+        if (oldCursor != null && oldCursor != result) {
+            releasePages(oldCursor, result);
+        }
+    }
+
+    @Override
+    protected void onStartLoading() {
+        if (mCursor != null) {
+            deliverResult(mCursor);
+        }
+        if (takeContentChanged() || mCursor == null) {
+            forceLoad();
+        }
+    }
+
+    @Override
+    protected void onStopLoading() {
+        // Attempt to cancel the current load task if possible
+        cancelLoad();
+    }
+
+    @Override
+    public void onCanceled(Cursor cursor) {
+        releasePages((PageCursor) cursor, mCursor);
+    }
+
+    @Override
+    protected void onReset() {
+        super.onReset();
+
+        // Ensure the loader is stopped
+        onStopLoading();
+        getContext().getContentResolver().unregisterContentObserver(mObserver);
+
+        releasePages(mCursor, null);
+        mCursor = null;
+        mNextPageRequestedFor = null;
+    }
+
+    // Closes the pages of the result that are not used by the result that is kept
+    private static void releasePages(PageCursor result, PageCursor keep) {
+        if (result == null) {
+            return;
+        }
+        for (Cursor page : result.mPages) {
+            if (keep == null || !keep.mPages.contains(page)) {
+                page.close();
+            }
+        }
+    }
+
+    /**
+     * {@link PageCursor} shows the loaded pages as one cursor.
+     * The pages are shared with the next result, so closing this cursor does not close them,
+     * the loader closes the pages when no result uses them anymore.
+     */
+    public static class PageCursor extends AbstractCursor implements ProductListSnapshot.Source {
+
+        // The loaded pages, in the order of the list
+        private final List<Cursor> mPages;
+
+        // The position of the first row of every page
+        private final int[] mPageStarts;
+
+        // The total number of rows of all of the pages
+        private final int mCount;
+
+        // The keyset of the last row, the next page starts after it
+        private final String mLastKey;
+        private final long mLastId;
+
+        // False if the last page was not full, so there are no more rows to load
+        private final boolean mHasMore;
+
+        // The version of the products table these pages were read from
+        private final int mContentVersion;
+
+        // The ids and the hashes of all of the rows
+        private final ProductListSnapshot mSnapshot;
+
+        // The page that holds the current row
+        private Cursor mCurrentPage;
+
+        PageCursor(List<Cursor> pages, String lastKey, long lastId, boolean hasMore, int contentVersion,
+                   ProductListSnapshot snapshot) {
+            mPages = Collections.unmodifiableList(pages);
+            mSnapshot = snapshot;
+            mLastKey = lastKey;
+            mLastId = lastId;
+            mHasMore = hasMore;
+            mContentVersion = contentVersion;
+
+            mPageStarts = new int[pages.size()];
+            int count = 0;
+            for (int i = 0; i < pages.size(); i++) {
+                mPageStarts[i] = count;
+                count += pages.get(i).getCount();
+            }
+            mCount = count;
+            mCurrentPage = pages.get(0);
+        }
+
+        /**
+         * Returns the version of the products table these pages were read from.
+         * Two results with the same version hold the same rows, apart from the new page.
+         */
+        public int getContentVersion() {
+            return mContentVersion;
+        }
+
+        @Override
+        public ProductListSnapshot getSnapshot() {
+            return mSnapshot;
+        }
+
+        @Override
+        public int getCount() {
+            return mCount;
+        }
+
+        @Override
+        public boolean onMove(int oldPosition, int newPosition) {
+            // Find the page of the new position with a binary search over the page starts
+            int index = Arrays.binarySearch(mPageStarts, newPosition);
+            if (index < 0) {
+                index = -index - 2;
+            }
+
+            // Skip the empty pages that start at the same position
+            while (index < mPages.size() - 1 && mPageStarts[index + 1] <= newPosition) {
+                index++;
+            }
+
+            mCurrentPage = mPages.get(index);
+            return mCurrentPage.moveToPosition(newPosition - mPageStarts[index]);
+        }
+
+        @Override
+        public String[] getColumnNames() {
+            return mPages.get(0).getColumnNames();
+        }
+
+        @Override
+        public String getString(int column) {
+            return mCurrentPage.getString(column);
+        }
+
+        @Override
+        public short getShort(int column) {
+            return mCurrentPage.getShort(column);
+        }
+
+        @Override
+        public int getInt(int column) {
+            return mCurrentPage.getInt(column);
+        }
+
+        @Override
+        public long getLong(int column) {
+            return mCurrentPage.getLong(column);
+        }
+
+        @Override
+        public float getFloat(int column) {
+            return mCurrentPage.getFloat(column);
+        }
+
+        @Override
+        public double getDouble(int column) {
+            return mCurrentPage.getDouble(column);
+        }
+
+        @Override
+        public byte[] getBlob(int column) {
+            return mCurrentPage.getBlob(column);
+        }
+
+        @Override
+        public int getType(int column) {
+            return mCurrentPage.getType(column);
+        }
+
+        @Override
+        public boolean isNull(int column) {
+            return mCurrentPage.isNull(column);
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package com.example.user.inventoryapp;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.CursorWrapper;
+
+import com.example.user.inventoryapp.data.ProductContract.ProductEntry;
+
+import java.util.HashMap;
+
+/**
+ * {@link ProductPatchCursor} wraps the cursor of the product list and lets single rows
+ * be replaced in memory. When one product changes, only that row is read again from the
+ * database and patched here, instead of querying and binding the whole list again.
+ * The patches are thrown away together with this cursor, on the next full query.
+ */
+public class ProductPatchCursor extends CursorWrapper {
+
+    // Index of the _id column, used to find the patch of the current row
+    private final int mIdColumnIndex;
+
+    // The new values of the changed rows, keyed by the id of the product
+    private final HashMap<Long, ContentValues> mPatches = new HashMap<>();
+
+    /**
+     * Constructs a new {@link ProductPatchCursor}.
+     *
+     * @param cursor The cursor with the product list. It must contain the _id column.
+     */
+    public ProductPatchCursor(Cursor cursor) {
+        super(cursor);
+        mIdColumnIndex = cursor.getColumnIndexOrThrow(ProductEntry._ID);
+    }
+
+    /**
+     * Constructs a new {@link ProductPatchCursor} that keeps the patches of the previous one.
+     * Use it when the new cursor holds the same rows as the old one, plus some new rows.
+     *
+     * @param cursor   The cursor with the product list. It must contain the _id column.
+     * @param previous The cursor whose patches are still valid
+     */
+    public ProductPatchCursor(Cursor cursor, ProductPatchCursor previous) {
+        this(cursor);
+        mPatches.putAll(previous.mPatches);
+    }
+
+    /**
+     * Replaces the values of a single product.
+     *
+     * @param id     The id of the product
+     * @param values The new values of the row, keyed by column name
+     */
+    public void patch(long id, ContentValues values) {
+        mPatches.put(id, values);
+    }
+
+    // Returns the new values of the current row, or null if the row was not patched
+    private ContentValues getCurrentPatch(int columnIndex) {
+        if (mPatches.isEmpty() || columnIndex == mIdColumnIndex) {
+            return null;
+        }
+
+        ContentValues patch = mPatches.get(super.getLong(mIdColumnIndex));
+        if (patch == null || !patch.containsKey(getColumnName(columnIndex))) {
+            return null;
+        }
+        return patch;
+    }
+
+    @Override
+    public String getString(int columnIndex) {
+        ContentValues patch = getCurrentPatch(columnIndex);
+        if (patch == null) {
+            return super.getString(columnIndex);
+        }
+        return patch.getAsString(getColumnName(columnIndex));
+    }
+
+    @Override
+    public short getShort(int columnIndex) {
+        ContentValues patch = getCurrentPatch(columnIndex);
+        if (patch == null) {
+            return super.getShort(columnIndex);
+        }
+        return patch.getAsShort(getColumnName(columnIndex));
+    }
+
+    @Override
+    public int getInt(int columnIndex) {
+        ContentValues patch = getCurrentPatch(columnIndex);
+        if (patch == null) {
+            return super.getInt(columnIndex);
+        }
+        return patch.getAsInteger(getColumnName(columnIndex));
+    }
+
+    @Override
+    public long getLong(int columnIndex) {
+        ContentValues patch = getCurrentPatch(columnIndex);
+        if (patch == null) {
+            return super.getLong(columnIndex);
+        }
+        return patch.getAsLong(getColumnName(columnIndex));
+    }
+
+    @Override
+    public float getFloat(int columnIndex) {
+        ContentValues patch = getCurrentPatch(columnIndex);
+        if (patch == null) {
+            return super.getFloat(columnIndex);
+        }
+        return patch.getAsFloat(getColumnName(columnIndex));
+    }
+
+    @Override
+    public double getDouble(int columnIndex) {
+        ContentValues patch = getCurrentPatch(columnIndex);
+        if (patch == null) {
+            return super.getDouble(columnIndex);
+        }
+        return patch.getAsDouble(getColumnName(columnIndex));
+    }
+
+    @Override
+    public boolean isNull(int columnIndex) {
+        ContentValues patch = getCurrentPatch(columnIndex);
+        if (patch == null) {
+            return super.isNull(columnIndex);
+        }
+        return patch.get(getColumnName(columnIndex)) == null;
+    }
+}
@@ -0,0 +1,76 @@
+package com.example.user.inventoryapp;
+
+import android.content.Context;
+import android.content.CursorLoader;
+import android.database.Cursor;
+import android.database.CursorWrapper;
+
+import com.example.user.inventoryapp.data.ProductContract.ProductEntry;
+
+/**
+ * {@link ProductSearchLoader} loads the products that match a search, like a {@link CursorLoader},
+ * and computes the differences from the list shown before on its background thread.
+ * The first result is compared with the snapshot given to the constructor,
+ * so that refining the search only changes the rows that came or went.
+ */
+public class ProductSearchLoader extends CursorLoader {
+
+    // The snapshot of the last delivered result, the next result is compared with it
+    private volatile ProductListSnapshot mLastSnapshot;
+
+    /**
+     * Constructs a new {@link ProductSearchLoader}.
+     *
+     * @param context    The context
+     * @param text       The text to search for
+     * @param limit      The maximum number of products to load
+     * @param projection The columns to include in the result. It must contain the _id column.
+     * @param base       The snapshot of the list shown now, or null
+     */
+    public ProductSearchLoader(Context context, String text, int limit, String[] projection,
+                               ProductListSnapshot base) {
+        super(context, ProductEntry.buildSearchUri(text, limit), projection,
+                null, null, null);         // The provider ranks the results
+        mLastSnapshot = base;
+    }
+
+    // Runs on a background thread
+    @Override
+    public Cursor loadInBackground() {
+        Cursor cursor = super.loadInBackground();
+        if (cursor == null) {
+            return null;
+        }
+        return new SearchCursor(cursor, ProductListSnapshot.of(cursor, mLastSnapshot));
+    }
+
+    // Runs on the main thread
+    @Override
+    public void deliverResult(Cursor cursor) {
+        if (cursor != null && !isReset()) {
+            mLastSnapshot = ((SearchCursor) cursor).getSnapshot();
+        }
+        super.deliverResult(cursor);
+    }
+
+    @Override
+    protected void onReset() {
+        super.onReset();
+        mLastSnapshot = null;
+    }
+
+    // The cursor of the search results, with their snapshot
+    private static class SearchCursor extends CursorWrapper implements ProductListSnapshot.Source {
+        private final ProductListSnapshot mSnapshot;
+
+        SearchCursor(Cursor cursor, ProductListSnapshot snapshot) {
+            super(cursor);
+            mSnapshot = snapshot;
+        }
+
+        @Override
+        public ProductListSnapshot getSnapshot() {
+            return mSnapshot;
+        }
+    }
+}
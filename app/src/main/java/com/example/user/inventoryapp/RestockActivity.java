@@ -0,0 +1,118 @@
+package com.example.user.inventoryapp;
+
+import android.app.LoaderManager;
+import android.content.CursorLoader;
+import android.content.Intent;
+import android.content.Loader;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Bundle;
+import android.support.v7.app.AppCompatActivity;
+import android.view.View;
+import android.widget.AdapterView;
+import android.widget.ListView;
+import android.widget.SimpleCursorAdapter;
+import android.widget.TextView;
+
+import com.example.user.inventoryapp.data.ProductContract.ProductEntry;
+
+/**
+ * {@link RestockActivity} shows one restock order per supplier, for the products selected
+ * in the list or for all of the products at or below their reorder threshold.
+ * The orders are computed by the provider with one GROUP BY query on the thread of the loader,
+ * and a click on an order sends it to the supplier in one e-mail.
+ */
+public class RestockActivity extends AppCompatActivity implements LoaderManager.LoaderCallbacks<Cursor> {
+
+    // Extra with the ids of the products to restock. Without it, the products that are
+    // at or below their reorder threshold are restocked.
+    public static final String EXTRA_PRODUCT_IDS = "product_ids";
+
+    // Constant that holds the ID of the orders Loader
+    private static final int RESTOCK_LOADER = 1;
+
+    // Shows the supplier and the size of every order
+    private SimpleCursorAdapter mAdapter;
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_restock);
+
+        mAdapter = new SimpleCursorAdapter(this, android.R.layout.simple_list_item_2, null,
+                new String[]{ProductEntry.COLUMN_SUPPLIER_NAME, ProductEntry.COLUMN_PRODUCT_COUNT},
+                new int[]{android.R.id.text1, android.R.id.text2}, 0);
+
+        // The second line tells how many products and units are ordered
+        mAdapter.setViewBinder(new SimpleCursorAdapter.ViewBinder() {
+            @Override
+            public boolean setViewValue(View view, Cursor cursor, int columnIndex) {
+                if (view.getId() != android.R.id.text2) {
+                    return false;
+                }
+                int productCount = cursor.getInt(columnIndex);
+                int units = cursor.getInt(cursor.getColumnIndexOrThrow(ProductEntry.COLUMN_ORDER_QUANTITY));
+                ((TextView) view).setText(getResources().getQuantityString(R.plurals.restock_order_summary,
+                        productCount, productCount, units));
+                return true;
+            }
+        });
+
+        ListView orderListView = (ListView) findViewById(R.id.restock_list);
+        orderListView.setEmptyView(findViewById(R.id.restock_empty_view));
+        orderListView.setAdapter(mAdapter);
+
+        // Send the order of the clicked supplier
+        orderListView.setOnItemClickListener(new AdapterView.OnItemClickListener() {
+            @Override
+            public void onItemClick(AdapterView<?> parent, View view, int position, long id) {
+                sendOrder((Cursor) mAdapter.getItem(position));
+            }
+        });
+
+        // Prepare the loader.  Either re-connect with an existing one, or start a new one.
+        getLoaderManager().initLoader(RESTOCK_LOADER, null, this);
+    }
+
+    // Creates an e-mail to the supplier with all of the products of its order
+    private void sendOrder(Cursor order) {
+        String supplierName = order.getString(order.getColumnIndexOrThrow(ProductEntry.COLUMN_SUPPLIER_NAME));
+        String supplierEmail = order.getString(order.getColumnIndexOrThrow(ProductEntry.COLUMN_SUPPLIER_EMAIL));
+        String orderLines = order.getString(order.getColumnIndexOrThrow(ProductEntry.COLUMN_ORDER_LINES));
+
+        // Create restock message to send as E-mail message
+        String restockMessage = getString(R.string.hello) + " " + supplierName + "\n" +
+                getString(R.string.i_would_like_to_order) + ":\n" + orderLines;
+
+        // Create an e-mail intent to send an e-mail to the supplier
+        Intent emailIntent = new Intent(Intent.ACTION_SENDTO);
+        emailIntent.setData(Uri.parse("mailto:" + supplierEmail));
+        emailIntent.putExtra(Intent.EXTRA_SUBJECT, getString(R.string.restock_order_subject));
+        emailIntent.putExtra(Intent.EXTRA_TEXT, restockMessage);
+
+        // Start the e-mail intent
+        startActivity(Intent.createChooser(emailIntent, "Send Email"));
+    }
+
+    // Create the loader of the orders
+    @Override
+    public Loader<Cursor> onCreateLoader(int id, Bundle bundle) {
+        long[] ids = getIntent().getLongArrayExtra(EXTRA_PRODUCT_IDS);
+        return new CursorLoader(this,
+                ProductEntry.buildRestockUri(ids), // The orders of the selected products
+                null,                              // The provider chooses the columns
+                null,                              // No selection clause
+                null,                              // No selection arguments
+                null);                             // Sorted by supplier
+    }
+
+    @Override
+    public void onLoadFinished(Loader<Cursor> loader, Cursor data) {
+        mAdapter.swapCursor(data);
+    }
+
+    @Override
+    public void onLoaderReset(Loader<Cursor> loader) {
+        mAdapter.swapCursor(null);
+    }
+}
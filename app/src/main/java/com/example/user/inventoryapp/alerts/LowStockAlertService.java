@@ -0,0 +1,21 @@
+package com.example.user.inventoryapp.alerts;
+
+import android.app.IntentService;
+import android.content.Intent;
+
+/**
+ * {@link LowStockAlertService} runs the check of the low stock alerts scheduled by
+ * {@link LowStockAlerts} with an alarm, on devices older than API 21.
+ */
+public class LowStockAlertService extends IntentService {
+
+    public LowStockAlertService() {
+        super(LowStockAlertService.class.getSimpleName());
+    }
+
+    // Runs on a background thread
+    @Override
+    protected void onHandleIntent(Intent intent) {
+        LowStockAlerts.showNewAlerts(getApplicationContext());
+    }
+}
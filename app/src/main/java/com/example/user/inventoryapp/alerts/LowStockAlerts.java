@@ -0,0 +1,122 @@
+package com.example.user.inventoryapp.alerts;
+
+import android.app.AlarmManager;
+import android.app.NotificationChannel;
+import android.app.NotificationManager;
+import android.app.PendingIntent;
+import android.app.job.JobInfo;
+import android.app.job.JobScheduler;
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.Intent;
+import android.os.Build;
+import android.os.Bundle;
+import android.os.SystemClock;
+import android.support.v4.app.NotificationCompat;
+
+import com.example.user.inventoryapp.MainActivity;
+import com.example.user.inventoryapp.R;
+import com.example.user.inventoryapp.data.ProductContract.ProductEntry;
+
+/**
+ * {@link LowStockAlerts} tells the user which products became low on stock, with one
+ * notification for all of them. The provider schedules a check when a product gets an alert,
+ * and the check runs a little later in the background, so the alerts of many sales,
+ * or of a whole import, are shown together.
+ * The check runs in a {@link LowStockJobService} from API 21, and in a
+ * {@link LowStockAlertService} started by an alarm on older devices.
+ */
+public final class LowStockAlerts {
+
+    // The id of the job of the check, and of its notification
+    private static final int JOB_ID = 17;
+    private static final int NOTIFICATION_ID = 17;
+
+    private static final String CHANNEL_ID = "low_stock";
+
+    // The alerts are collected for this long before they are shown
+    private static final long BATCH_DELAY_MILLIS = 30 * 1000;
+
+    // The system may postpone the check, but not for longer than this
+    private static final long MAX_DELAY_MILLIS = 5 * 60 * 1000;
+
+    // The number of products listed in the notification, the others are only counted
+    private static final int MAX_LINES = 5;
+
+    // Preventing someone from accidentally instantiating this class
+    private LowStockAlerts() {
+    }
+
+    /**
+     * Schedules the check of the new alerts. A check that is already scheduled is replaced.
+     */
+    public static void schedule(Context context) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+            JobScheduler scheduler = (JobScheduler) context.getSystemService(Context.JOB_SCHEDULER_SERVICE);
+            scheduler.schedule(new JobInfo.Builder(JOB_ID,
+                    new ComponentName(context, LowStockJobService.class))
+                    .setMinimumLatency(BATCH_DELAY_MILLIS)
+                    .setOverrideDeadline(MAX_DELAY_MILLIS)
+                    .build());
+        } else {
+            AlarmManager alarmManager = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
+            PendingIntent check = PendingIntent.getService(context, JOB_ID,
+                    new Intent(context, LowStockAlertService.class), PendingIntent.FLAG_UPDATE_CURRENT);
+            alarmManager.set(AlarmManager.ELAPSED_REALTIME,
+                    SystemClock.elapsedRealtime() + BATCH_DELAY_MILLIS, check);
+        }
+    }
+
+    /**
+     * Takes the new alerts from the provider and shows them in one notification.
+     * Runs on a background thread.
+     */
+    static void showNewAlerts(Context context) {
+        Bundle alerts = context.getContentResolver().call(ProductEntry.CONTENT_URI,
+                ProductEntry.METHOD_TAKE_LOW_STOCK_ALERTS, null, null);
+        if (alerts == null) {
+            return;
+        }
+
+        String[] names = alerts.getStringArray(ProductEntry.KEY_PRODUCT_NAMES);
+        int[] quantities = alerts.getIntArray(ProductEntry.KEY_QUANTITIES);
+        int[] thresholds = alerts.getIntArray(ProductEntry.KEY_THRESHOLDS);
+        if (names == null || names.length == 0) {
+            return;
+        }
+
+        NotificationManager notificationManager =
+                (NotificationManager) context.getSystemService(Context.NOTIFICATION_SERVICE);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            notificationManager.createNotificationChannel(new NotificationChannel(CHANNEL_ID,
+                    context.getString(R.string.low_stock_channel_name), NotificationManager.IMPORTANCE_DEFAULT));
+        }
+
+        String title = context.getResources().getQuantityString(R.plurals.low_stock_title,
+                names.length, names.length);
+
+        // List the first products, and count the rest
+        NotificationCompat.InboxStyle style = new NotificationCompat.InboxStyle().setBigContentTitle(title);
+        for (int i = 0; i < names.length && i < MAX_LINES; i++) {
+            style.addLine(context.getString(R.string.low_stock_line, names[i], quantities[i], thresholds[i]));
+        }
+        if (names.length > MAX_LINES) {
+            style.setSummaryText(context.getString(R.string.low_stock_more, names.length - MAX_LINES));
+        }
+
+        // Open the list of the products
+        Intent intent = new Intent(context, MainActivity.class)
+                .addFlags(Intent.FLAG_ACTIVITY_NEW_TASK | Intent.FLAG_ACTIVITY_CLEAR_TOP);
+
+        notificationManager.notify(NOTIFICATION_ID, new NotificationCompat.Builder(context, CHANNEL_ID)
+                .setSmallIcon(android.R.drawable.stat_notify_error)
+                .setContentTitle(title)
+                .setContentText(context.getString(R.string.low_stock_line, names[0], quantities[0], thresholds[0]))
+                .setStyle(style)
+                .setNumber(names.length)
+                .setContentIntent(PendingIntent.getActivity(context, NOTIFICATION_ID, intent,
+                        PendingIntent.FLAG_UPDATE_CURRENT))
+                .setAutoCancel(true)
+                .build());
+    }
+}
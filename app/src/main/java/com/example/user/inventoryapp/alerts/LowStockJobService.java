@@ -0,0 +1,35 @@
+package com.example.user.inventoryapp.alerts;
+
+import android.annotation.TargetApi;
+import android.app.job.JobParameters;
+import android.app.job.JobService;
+import android.os.Build;
+
+/**
+ * {@link LowStockJobService} runs the check of the low stock alerts scheduled by
+ * {@link LowStockAlerts} on API 21 and newer. The job is called on the main thread,
+ * so the check runs on its own thread.
+ */
+@TargetApi(Build.VERSION_CODES.LOLLIPOP)
+public class LowStockJobService extends JobService {
+
+    @Override
+    public boolean onStartJob(final JobParameters params) {
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                LowStockAlerts.showNewAlerts(getApplicationContext());
+                jobFinished(params, false);
+            }
+        }, LowStockJobService.class.getSimpleName()).start();
+
+        // The job is still running on the thread
+        return true;
+    }
+
+    @Override
+    public boolean onStopJob(JobParameters params) {
+        // The alerts stay in the database until they are shown, so the check can run again later
+        return true;
+    }
+}
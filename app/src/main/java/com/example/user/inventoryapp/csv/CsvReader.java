@@ -0,0 +1,127 @@
+package com.example.user.inventoryapp.csv;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.List;
+
+/**
+ * {@link CsvReader} reads the records of a CSV file (RFC 4180) one at a time, through a buffer
+ * of a fixed size, so a file of any length is read with the same memory.
+ * Fields can be quoted with double quotes, and quoted fields can contain commas, line breaks
+ * and doubled quotes. Empty lines are skipped.
+ */
+public class CsvReader implements Closeable {
+
+    // The number of characters read from the reader at once
+    private static final int BUFFER_SIZE = 16 * 1024;
+
+    // A longer field means the file is broken, for example a quote that is never closed
+    public static final int MAX_FIELD_LENGTH = 64 * 1024;
+
+    private final Reader mReader;
+
+    private final char[] mBuffer = new char[BUFFER_SIZE];
+
+    // The position of the next character in the buffer, and the end of the characters in it
+    private int mPosition;
+    private int mLimit;
+
+    // The field that is being read, reused for every field
+    private final StringBuilder mField = new StringBuilder();
+
+    // The number of records read so far
+    private long mRecordCount;
+
+    /**
+     * Constructs a new {@link CsvReader}. The reader does not have to be buffered.
+     */
+    public CsvReader(Reader reader) {
+        mReader = reader;
+    }
+
+    /**
+     * Reads the next record into the list of fields.
+     *
+     * @return false if there are no more records
+     * @throws IOException if the file can not be read or a field is not closed
+     */
+    public boolean readRecord(List<String> fields) throws IOException {
+        fields.clear();
+
+        // Skip the empty lines and the byte order mark of the file
+        int c = read();
+        while (c == '\r' || c == '\n' || c == '\uFEFF') {
+            c = read();
+        }
+        if (c == -1) {
+            return false;
+        }
+
+        mField.setLength(0);
+        boolean quoted = false;
+        while (true) {
+            if (quoted) {
+                if (c == -1) {
+                    throw new IOException("Unterminated quote in record " + (mRecordCount + 1));
+                }
+                if (c == '"') {
+                    c = read();
+                    if (c != '"') {
+                        // The closing quote, the character after it is read as unquoted
+                        quoted = false;
+                        continue;
+                    }
+                }
+                append(c);
+            } else if (c == -1 || c == '\n') {
+                fields.add(mField.toString());
+                break;
+            } else if (c == ',') {
+                fields.add(mField.toString());
+                mField.setLength(0);
+            } else if (c == '"' && mField.length() == 0) {
+                quoted = true;
+            } else if (c != '\r') {
+                append(c);
+            }
+            c = read();
+        }
+
+        mRecordCount++;
+        return true;
+    }
+
+    /**
+     * Returns the number of records read so far.
+     */
+    public long getRecordCount() {
+        return mRecordCount;
+    }
+
+    @Override
+    public void close() throws IOException {
+        mReader.close();
+    }
+
+    // Returns the next character, or -1 at the end of the file
+    private int read() throws IOException {
+        if (mPosition == mLimit) {
+            mLimit = mReader.read(mBuffer, 0, BUFFER_SIZE);
+            mPosition = 0;
+            if (mLimit <= 0) {
+                mLimit = 0;
+                return -1;
+            }
+        }
+        return mBuffer[mPosition++];
+    }
+
+    private void append(int c) throws IOException {
+        if (mField.length() == MAX_FIELD_LENGTH) {
+            throw new IOException("Field longer than " + MAX_FIELD_LENGTH +
+                    " characters in record " + (mRecordCount + 1));
+        }
+        mField.append((char) c);
+    }
+}
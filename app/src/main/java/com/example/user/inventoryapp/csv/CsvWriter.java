@@ -0,0 +1,87 @@
+package com.example.user.inventoryapp.csv;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * {@link CsvWriter} writes records to a CSV file (RFC 4180), field by field,
+ * so the records do not have to be collected in memory first.
+ * Only the fields that need it are quoted.
+ */
+public class CsvWriter implements Closeable {
+
+    private final Writer mWriter;
+
+    // True if the next field is the first one of its record
+    private boolean mFirstField = true;
+
+    /**
+     * Constructs a new {@link CsvWriter}. The writer should be buffered.
+     */
+    public CsvWriter(Writer writer) {
+        mWriter = writer;
+    }
+
+    /**
+     * Writes a whole record.
+     */
+    public void writeRecord(String... fields) throws IOException {
+        for (String field : fields) {
+            writeField(field);
+        }
+        endRecord();
+    }
+
+    /**
+     * Writes the next field of the record. A null field is written as an empty field.
+     */
+    public void writeField(String field) throws IOException {
+        if (!mFirstField) {
+            mWriter.write(',');
+        }
+        mFirstField = false;
+
+        if (field == null) {
+            return;
+        }
+        if (needsQuotes(field)) {
+            mWriter.write('"');
+            mWriter.write(field.replace("\"", "\"\""));
+            mWriter.write('"');
+        } else {
+            mWriter.write(field);
+        }
+    }
+
+    /**
+     * Ends the record, the next field starts a new one.
+     */
+    public void endRecord() throws IOException {
+        mWriter.write("\r\n");
+        mFirstField = true;
+    }
+
+    /**
+     * Writes the buffered records to the file.
+     */
+    public void flush() throws IOException {
+        mWriter.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        mWriter.close();
+    }
+
+    // Returns true if the field can not be written as it is
+    private static boolean needsQuotes(String field) {
+        for (int i = 0; i < field.length(); i++) {
+            char c = field.charAt(i);
+            if (c == ',' || c == '"' || c == '\n' || c == '\r') {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,111 @@
+package com.example.user.inventoryapp.csv;
+
+import android.content.ContentResolver;
+import android.database.Cursor;
+
+import com.example.user.inventoryapp.data.ProductContract.ProductEntry;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.charset.Charset;
+
+/**
+ * {@link ProductCsvExporter} writes the catalog of products to a CSV file.
+ * The products are read page by page and written as they are read, so the catalog
+ * is never held in memory and no read transaction stays open for the whole export.
+ * The file starts with a header of the column names and can be read by {@link ProductCsvImporter}.
+ * Call it on a background thread.
+ */
+public class ProductCsvExporter {
+
+    /**
+     * Listens for the progress of the export.
+     */
+    public interface Listener {
+        void onProductsExported(long count);
+    }
+
+    // The columns of the file, in the order they are written. The _id is not exported,
+    // because the imported products get new ids.
+    public static final String[] COLUMNS = {
+            ProductEntry.COLUMN_PRODUCT_NAME,
+            ProductEntry.COLUMN_PRODUCT_QUANTITY,
+            ProductEntry.COLUMN_PRODUCT_PRICE_CENTS,
+            ProductEntry.COLUMN_PRODUCT_CURRENCY,
+            ProductEntry.COLUMN_PRODUCT_PHOTO_URI,
+            ProductEntry.COLUMN_SUPPLIER_NAME,
+            ProductEntry.COLUMN_SUPPLIER_EMAIL,
+            ProductEntry.COLUMN_PRODUCT_SKU};
+
+    // The number of products read at once
+    private static final int PAGE_SIZE = 1000;
+
+    private final ContentResolver mResolver;
+
+    /**
+     * Constructs a new {@link ProductCsvExporter}.
+     */
+    public ProductCsvExporter(ContentResolver resolver) {
+        mResolver = resolver;
+    }
+
+    /**
+     * Writes all of the products to the stream, in the order they were added, and closes it.
+     *
+     * @param listener Called after every page of products, or null
+     * @return the number of products written
+     */
+    public long export(OutputStream out, Listener listener) throws IOException {
+
+        // The projection has the _id for the keyset of the pages, followed by the exported columns
+        String[] projection = new String[COLUMNS.length + 1];
+        projection[0] = ProductEntry._ID;
+        System.arraycopy(COLUMNS, 0, projection, 1, COLUMNS.length);
+
+        CsvWriter writer = new CsvWriter(new BufferedWriter(
+                new OutputStreamWriter(out, Charset.forName("UTF-8"))));
+        long count = 0;
+        try {
+            writer.writeRecord(COLUMNS);
+
+            String afterKey = null;
+            long afterId = 0;
+            while (true) {
+                Cursor page = mResolver.query(
+                        ProductEntry.buildPageUri(ProductEntry._ID, PAGE_SIZE, afterKey, afterId),
+                        projection, null, null, null);
+                if (page == null) {
+                    throw new IOException("The products can not be read");
+                }
+
+                int rows;
+                try {
+                    rows = page.getCount();
+                    while (page.moveToNext()) {
+                        for (int column = 1; column < projection.length; column++) {
+                            writer.writeField(page.getString(column));
+                        }
+                        writer.endRecord();
+                        afterId = page.getLong(0);
+                    }
+                } finally {
+                    page.close();
+                }
+
+                count += rows;
+                if (listener != null) {
+                    listener.onProductsExported(count);
+                }
+                if (rows < PAGE_SIZE) {
+                    break;
+                }
+                afterKey = String.valueOf(afterId);
+            }
+        } finally {
+            writer.close();
+        }
+        return count;
+    }
+}
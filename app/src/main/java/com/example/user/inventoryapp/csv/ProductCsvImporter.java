@@ -0,0 +1,279 @@
+package com.example.user.inventoryapp.csv;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.util.Log;
+
+import com.example.user.inventoryapp.data.Prices;
+import com.example.user.inventoryapp.data.ProductContract.ProductEntry;
+import com.example.user.inventoryapp.data.ProductValidator;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * {@link ProductCsvImporter} adds the products of a CSV file to the catalog.
+ * The file is read record by record, and the products are inserted in chunks of
+ * {@link #CHUNK_SIZE}, each in one transaction of the provider, so the memory used does not
+ * grow with the size of the file.
+ * <p>
+ * The first record must be a header with the names of the columns, like the one written by
+ * {@link ProductCsvExporter}. The name and the price columns are required, unknown columns
+ * are ignored. The price is either in cents, or a decimal number in the older "price" column.
+ * Every product is checked by the {@link ProductValidator}, like the provider does;
+ * the products that are not valid are skipped and counted. A product whose SKU is already
+ * in the catalog is not inserted by the provider, and is not counted as imported.
+ * <p>
+ * After every chunk the listener gets a {@link Progress}. If the import is stopped, it can be
+ * continued from the last progress, and the records that were already imported are skipped.
+ * Call it on a background thread.
+ */
+public class ProductCsvImporter {
+
+    // Tag for the log messages
+    private static final String LOG_TAG = ProductCsvImporter.class.getSimpleName();
+
+    // The number of products inserted in one transaction
+    public static final int CHUNK_SIZE = 1000;
+
+    // Only the first rejected records are logged, a broken file could have millions of them
+    private static final int MAX_LOGGED_REJECTIONS = 20;
+
+    // The column of the decimal prices of the files exported before the prices were stored
+    // in cents. It is read in the currency of the file, or of the device.
+    private static final String LEGACY_PRICE_COLUMN = "price";
+
+    /**
+     * How far an import got. All of the counts are of the committed chunks only.
+     */
+    public static final class Progress {
+
+        // The records read after the header, imported or rejected
+        public final long recordsRead;
+
+        public final long productsImported;
+
+        public final long recordsRejected;
+
+        // The bytes of the file read so far, for showing the progress
+        public final long bytesRead;
+
+        public Progress(long recordsRead, long productsImported, long recordsRejected, long bytesRead) {
+            this.recordsRead = recordsRead;
+            this.productsImported = productsImported;
+            this.recordsRejected = recordsRejected;
+            this.bytesRead = bytesRead;
+        }
+    }
+
+    /**
+     * Listens for the progress of the import.
+     */
+    public interface Listener {
+
+        // Called after every chunk was committed
+        void onChunkImported(Progress progress);
+    }
+
+    private final ContentResolver mResolver;
+
+    /**
+     * Constructs a new {@link ProductCsvImporter}.
+     */
+    public ProductCsvImporter(ContentResolver resolver) {
+        mResolver = resolver;
+    }
+
+    /**
+     * Imports the products of the stream and closes it.
+     *
+     * @param resumeFrom The progress of an import of the same file that was stopped, or null
+     * @param listener   Called after every chunk, or null
+     * @return the progress at the end of the file
+     * @throws IOException if the file can not be read, is not valid CSV or has no header
+     */
+    public Progress importFrom(InputStream in, Progress resumeFrom, Listener listener) throws IOException {
+        CountingInputStream countingIn = new CountingInputStream(in);
+        CsvReader reader = new CsvReader(new InputStreamReader(countingIn, Charset.forName("UTF-8")));
+        try {
+            List<String> fields = new ArrayList<>();
+            if (!reader.readRecord(fields)) {
+                throw new IOException("The file is empty");
+            }
+            int[] columnIndices = readHeader(fields);
+
+            long recordsRead = 0;
+            long productsImported = 0;
+            long recordsRejected = 0;
+
+            // Skip the records that were imported before the import was stopped
+            if (resumeFrom != null) {
+                while (recordsRead < resumeFrom.recordsRead && reader.readRecord(fields)) {
+                    recordsRead++;
+                }
+                productsImported = resumeFrom.productsImported;
+                recordsRejected = resumeFrom.recordsRejected;
+            }
+
+            // The values of the chunk are reused for every chunk
+            ContentValues[] chunk = new ContentValues[CHUNK_SIZE];
+            for (int i = 0; i < CHUNK_SIZE; i++) {
+                chunk[i] = new ContentValues();
+            }
+
+            int chunkSize = 0;
+            while (reader.readRecord(fields)) {
+                recordsRead++;
+                ContentValues values = chunk[chunkSize];
+                values.clear();
+                if (!toValues(fields, columnIndices, values, recordsRead, recordsRejected)) {
+                    recordsRejected++;
+                    continue;
+                }
+
+                chunkSize++;
+                if (chunkSize == CHUNK_SIZE) {
+                    productsImported += mResolver.bulkInsert(ProductEntry.CONTENT_URI, chunk);
+                    chunkSize = 0;
+
+                    // Every record read so far is committed or rejected,
+                    // so the import can be continued from here
+                    if (listener != null) {
+                        listener.onChunkImported(new Progress(recordsRead, productsImported,
+                                recordsRejected, countingIn.getCount()));
+                    }
+                }
+            }
+
+            // Insert the last chunk
+            if (chunkSize > 0) {
+                productsImported += mResolver.bulkInsert(ProductEntry.CONTENT_URI,
+                        Arrays.copyOf(chunk, chunkSize));
+            }
+
+            Progress progress = new Progress(recordsRead, productsImported, recordsRejected,
+                    countingIn.getCount());
+            if (listener != null) {
+                listener.onChunkImported(progress);
+            }
+            return progress;
+        } finally {
+            reader.close();
+        }
+    }
+
+    // Returns the index of every column of ProductCsvExporter.COLUMNS in the header, or -1,
+    // followed by the index of the legacy price column
+    private static int[] readHeader(List<String> header) throws IOException {
+        int columnCount = ProductCsvExporter.COLUMNS.length;
+        int[] indices = new int[columnCount + 1];
+        for (int i = 0; i < columnCount; i++) {
+            indices[i] = header.indexOf(ProductCsvExporter.COLUMNS[i]);
+        }
+        indices[columnCount] = header.indexOf(LEGACY_PRICE_COLUMN);
+
+        if (header.indexOf(ProductEntry.COLUMN_PRODUCT_NAME) == -1 ||
+                (header.indexOf(ProductEntry.COLUMN_PRODUCT_PRICE_CENTS) == -1 && indices[columnCount] == -1)) {
+            throw new IOException("The header must have the columns " +
+                    ProductEntry.COLUMN_PRODUCT_NAME + " and " + ProductEntry.COLUMN_PRODUCT_PRICE_CENTS);
+        }
+        return indices;
+    }
+
+    // Puts the fields of a record into the values.
+    // Returns false if the record is not a valid product.
+    private static boolean toValues(List<String> fields, int[] columnIndices, ContentValues values,
+                                    long recordNumber, long rejectedSoFar) {
+        try {
+            int columnCount = ProductCsvExporter.COLUMNS.length;
+            for (int i = 0; i < columnCount; i++) {
+                int index = columnIndices[i];
+                if (index == -1 || index >= fields.size()) {
+                    continue;
+                }
+
+                String column = ProductCsvExporter.COLUMNS[i];
+                String field = fields.get(index);
+
+                // Empty fields get the default values of their columns
+                if (field.length() == 0 && !column.equals(ProductEntry.COLUMN_PRODUCT_NAME)) {
+                    continue;
+                }
+
+                switch (column) {
+                    case ProductEntry.COLUMN_PRODUCT_QUANTITY:
+                        values.put(column, Integer.parseInt(field.trim()));
+                        break;
+                    case ProductEntry.COLUMN_PRODUCT_PRICE_CENTS:
+                        values.put(column, Long.parseLong(field.trim()));
+                        break;
+                    default:
+                        values.put(column, field);
+                        break;
+                }
+            }
+
+            // A decimal price of an older file
+            int legacyIndex = columnIndices[columnCount];
+            if (legacyIndex != -1 && legacyIndex < fields.size() && fields.get(legacyIndex).length() > 0 &&
+                    !values.containsKey(ProductEntry.COLUMN_PRODUCT_PRICE_CENTS)) {
+                String currency = values.getAsString(ProductEntry.COLUMN_PRODUCT_CURRENCY);
+                values.put(ProductEntry.COLUMN_PRODUCT_PRICE_CENTS, Prices.toMinorUnits(fields.get(legacyIndex),
+                        currency != null ? currency : Prices.defaultCurrency()));
+            }
+
+            ProductValidator.validateNewProduct(values);
+            return true;
+        } catch (IllegalArgumentException e) {
+            // NumberFormatException is an IllegalArgumentException too
+            if (rejectedSoFar < MAX_LOGGED_REJECTIONS) {
+                Log.w(LOG_TAG, "Skipped record " + recordNumber + ": " + e.getMessage());
+            }
+            return false;
+        }
+    }
+
+    // Counts the bytes read from the stream
+    private static class CountingInputStream extends FilterInputStream {
+        private long mCount;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) {
+                mCount++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int count = super.read(buffer, offset, length);
+            if (count > 0) {
+                mCount += count;
+            }
+            return count;
+        }
+
+        @Override
+        public long skip(long byteCount) throws IOException {
+            long skipped = super.skip(byteCount);
+            mCount += skipped;
+            return skipped;
+        }
+
+        long getCount() {
+            return mCount;
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package com.example.user.inventoryapp.data;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * {@link Migration} brings the database schema from one version to the next one,
+ * keeping the data of the user. The migrations are run in order by {@link ProductMigrations},
+ * each one in its own transaction.
+ * <p>
+ * A migration must never change after it has been released, because the databases in the field
+ * were upgraded by exactly that code. That is why the migrations use the names of the tables
+ * and columns as they were at their version, instead of the constants of {@link ProductContract}.
+ */
+public abstract class Migration {
+
+    // The version of the database this migration starts from
+    public final int startVersion;
+
+    // The version of the database after this migration
+    public final int endVersion;
+
+    /**
+     * Constructs a new {@link Migration}.
+     *
+     * @param startVersion The version of the database this migration starts from
+     * @param endVersion   The version of the database after this migration
+     */
+    public Migration(int startVersion, int endVersion) {
+        this.startVersion = startVersion;
+        this.endVersion = endVersion;
+    }
+
+    /**
+     * Changes the schema and moves the data. Runs inside a transaction, so if it throws,
+     * nothing of it is applied and the database stays at the start version.
+     */
+    public abstract void migrate(SQLiteDatabase db);
+
+    @Override
+    public String toString() {
+        return "Migration " + startVersion + "->" + endVersion;
+    }
+
+    /**
+     * Adds a column to a table. This is the cheapest change, because SQLite only rewrites
+     * the schema and not the rows. The column must be nullable or have a constant default value.
+     *
+     * @param table            The name of the table
+     * @param columnDefinition The name, type and constraints of the new column
+     */
+    protected static void addColumn(SQLiteDatabase db, String table, String columnDefinition) {
+        db.execSQL("ALTER TABLE " + table + " ADD COLUMN " + columnDefinition + ";");
+    }
+
+    /**
+     * Drops the indexes and triggers of a table, and the triggers of the other tables that read it,
+     * and returns their names and SQL, so a migration can recreate the table and then create
+     * them again. Newer SQLite versions refuse to rename a table while a trigger of another
+     * table refers to a table that does not exist, which is the case while it is recreated.
+     * A trigger is found by the name of the table in its SQL, so a few triggers that only
+     * mention a similar name may be dropped and created again too, which does not change them.
+     *
+     * @param table The name of the table
+     * @return the SQL of every dropped index and trigger by its name, in the order of the schema
+     */
+    protected static Map<String, String> dropDependents(SQLiteDatabase db, String table) {
+        Map<String, String> dependents = new LinkedHashMap<>();
+        Map<String, String> types = new LinkedHashMap<>();
+        Cursor cursor = db.rawQuery("SELECT type, name, sql FROM sqlite_master" +
+                " WHERE sql IS NOT NULL AND ((type = 'index' AND tbl_name = ?)" +
+                " OR (type = 'trigger' AND (tbl_name = ? OR sql LIKE ?)))",
+                new String[]{table, table, "%" + table + "%"});
+        try {
+            while (cursor.moveToNext()) {
+                types.put(cursor.getString(1), cursor.getString(0));
+                dependents.put(cursor.getString(1), cursor.getString(2));
+            }
+        } finally {
+            cursor.close();
+        }
+
+        // The schema is not changed while it is read
+        for (Map.Entry<String, String> type : types.entrySet()) {
+            db.execSQL("DROP " + type.getValue() + " " + type.getKey() + ";");
+        }
+        return dependents;
+    }
+
+    /**
+     * Recreates a table with new column definitions and copies its rows into it.
+     * Use it for the changes ALTER TABLE can not do, like removing a column or changing its type
+     * or its constraints. The rows are copied with one INSERT ... SELECT, so every row of the new
+     * table is computed from the old row by the source expressions.
+     * The indexes and triggers of the old table are dropped with it, so they have to be
+     * created again by the migration.
+     *
+     * @param table             The name of the table
+     * @param columnDefinitions The definitions of the columns of the new table, without the brackets
+     * @param targetColumns     The columns of the new table that are copied, separated by commas
+     * @param sourceExpressions The values for the target columns, computed from the columns
+     *                          of the old table, separated by commas
+     */
+    protected static void recreateTable(SQLiteDatabase db, String table, String columnDefinitions,
+                                        String targetColumns, String sourceExpressions) {
+        String newTable = table + "_new";
+
+        db.execSQL("DROP TABLE IF EXISTS " + newTable + ";");
+        db.execSQL("CREATE TABLE " + newTable + " (" + columnDefinitions + ");");
+        db.execSQL("INSERT INTO " + newTable + " (" + targetColumns + ") SELECT " +
+                sourceExpressions + " FROM " + table + ";");
+        db.execSQL("DROP TABLE " + table + ";");
+        db.execSQL("ALTER TABLE " + newTable + " RENAME TO " + table + ";");
+    }
+}
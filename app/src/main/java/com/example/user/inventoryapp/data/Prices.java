@@ -0,0 +1,64 @@
+package com.example.user.inventoryapp.data;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Currency;
+import java.util.Locale;
+
+/**
+ * {@link Prices} converts the prices between the decimal text the user types, like "7.50",
+ * and the whole number of the minor unit of the currency that is stored, like 750 cents.
+ * The number of decimals is the one of the currency, so 750 yen are written "750".
+ */
+public final class Prices {
+
+    // The currency used when the one of the device is not known
+    private static final String FALLBACK_CURRENCY = "USD";
+
+    // Preventing someone from accidentally instantiating this class
+    private Prices() {
+    }
+
+    /**
+     * Returns the ISO 4217 code of the currency of the device, like "EUR".
+     */
+    public static String defaultCurrency() {
+        try {
+            Currency currency = Currency.getInstance(Locale.getDefault());
+            return currency != null ? currency.getCurrencyCode() : FALLBACK_CURRENCY;
+        } catch (IllegalArgumentException e) {
+            // The locale has no country, so it has no currency
+            return FALLBACK_CURRENCY;
+        }
+    }
+
+    /**
+     * Returns the number of decimals of the currency, 2 for "EUR" and 0 for "JPY".
+     *
+     * @throws IllegalArgumentException if the code is not a known currency
+     */
+    public static int fractionDigits(String currencyCode) {
+        return Math.max(Currency.getInstance(currencyCode).getDefaultFractionDigits(), 0);
+    }
+
+    /**
+     * Converts a decimal price to the minor unit of the currency. More decimals than the currency
+     * has are rounded half up.
+     *
+     * @throws NumberFormatException if the text is not a decimal number
+     */
+    public static long toMinorUnits(String decimal, String currencyCode) {
+        return new BigDecimal(decimal.trim())
+                .movePointRight(fractionDigits(currencyCode))
+                .setScale(0, RoundingMode.HALF_UP)
+                .longValue();
+    }
+
+    /**
+     * Converts a price in the minor unit of the currency to decimal text without grouping,
+     * which can be edited and read back by {@link #toMinorUnits(String, String)}.
+     */
+    public static String toDecimalString(long minorUnits, String currencyCode) {
+        return BigDecimal.valueOf(minorUnits, fractionDigits(currencyCode)).toPlainString();
+    }
+}
@@ -1,6 +1,7 @@
 package com.example.user.inventoryapp.data;
 
 import android.content.ContentResolver;
+import android.content.ContentUris;
 import android.net.Uri;
 import android.provider.BaseColumns;
 
@@ -22,6 +23,42 @@ public class ProductContract {
     // Possible path (appended to base content URI for possible URI's)
     public static final String PATH_PRODUCTS = "products";
 
+    // Path appended to a single product URI to adjust its quantity: products/#/adjust
+    public static final String PATH_ADJUST = "adjust";
+
+    // Path for the change notifications of single rows: changes/products/#
+    public static final String PATH_CHANGES = "changes";
+
+    // Path appended to the products URI for the full-text search: products/search
+    public static final String PATH_SEARCH = "search";
+
+    // Path appended to the products URI for the units sold: products/sales
+    public static final String PATH_SALES = "sales";
+
+    // Path appended to the sales URI for the units sold per day: products/sales/daily
+    public static final String PATH_DAILY = "daily";
+
+    // Path appended to the products URI for the restock orders: products/restock
+    public static final String PATH_RESTOCK = "restock";
+
+    // Path appended to the products URI to find a product by its code: products/sku/<code>
+    public static final String PATH_SKU = "sku";
+
+    // Path of the summary of the inventory: summary
+    public static final String PATH_SUMMARY = "summary";
+
+    // Path of the suppliers: suppliers, suppliers/# and suppliers/#/products
+    public static final String PATH_SUPPLIERS = "suppliers";
+
+    // Path of the stockrooms: locations, locations/# and locations/#/stock
+    public static final String PATH_LOCATIONS = "locations";
+
+    // Path appended to a single product or location for its stock per location: products/#/stock
+    public static final String PATH_STOCK = "stock";
+
+    // Path appended to a single product to move units between locations: products/#/transfer
+    public static final String PATH_TRANSFER = "transfer";
+
     // Preventing someone from accidentally instantiating the contract class,
     // by giving it an empty constructor.
     private ProductContract() {
@@ -34,19 +71,209 @@ public class ProductContract {
          */
         public static final Uri CONTENT_URI = Uri.withAppendedPath(BASE_CONTENT_URI, PATH_PRODUCTS);
 
+        /**
+         * Notifications about a single product are sent to CHANGES_URI/<id>, with the kind of
+         * the change in the QUERY_PARAM_CHANGE parameter. This URI is not under CONTENT_URI,
+         * so changing one product does not make the whole list of products requery.
+         * CHANGES_URI = content://com.example.user.inventoryapp/changes/products
+         */
+        public static final Uri CHANGES_URI = BASE_CONTENT_URI.buildUpon()
+                .appendPath(PATH_CHANGES)
+                .appendPath(PATH_PRODUCTS)
+                .build();
+
+        // Query parameter of a change URI that describes what happened to the product
+        public static final String QUERY_PARAM_CHANGE = "change";
+
+        // Possible values of QUERY_PARAM_CHANGE
+        public static final String CHANGE_INSERT = "insert";
+        public static final String CHANGE_UPDATE = "update";
+        public static final String CHANGE_DELETE = "delete";
+
+        // Query parameters of CONTENT_URI for reading the products page by page (keyset pagination).
+        // The rows are sorted by QUERY_PARAM_SORT and then by _id. Only the rows that come
+        // after the row with QUERY_PARAM_AFTER_KEY and QUERY_PARAM_AFTER_ID are returned,
+        // and at most QUERY_PARAM_LIMIT of them.
+        public static final String QUERY_PARAM_LIMIT = "limit";
+        public static final String QUERY_PARAM_SORT = "sort";
+        public static final String QUERY_PARAM_AFTER_KEY = "after_key";
+        public static final String QUERY_PARAM_AFTER_ID = "after_id";
+
+        /**
+         * The content URI to search the products by name, supplier and supplier's e-mail.
+         * The text to search for is the QUERY_PARAM_SEARCH parameter.
+         * SEARCH_URI = content://com.example.user.inventoryapp/products/search
+         */
+        public static final Uri SEARCH_URI = Uri.withAppendedPath(CONTENT_URI, PATH_SEARCH);
+
+        // Query parameter of SEARCH_URI that holds the text to search for
+        public static final String QUERY_PARAM_SEARCH = "q";
+
+        /**
+         * The content URI of the units sold per product, read from the daily rollups
+         * instead of the whole ledger. Its rows have the _id of the product and
+         * DailyStockEntry.COLUMN_UNITS_SOLD. The number of days is the QUERY_PARAM_DAYS parameter.
+         * SALES_URI = content://com.example.user.inventoryapp/products/sales
+         */
+        public static final Uri SALES_URI = Uri.withAppendedPath(CONTENT_URI, PATH_SALES);
+
+        /**
+         * The content URI of the units sold by the whole store per day. Its rows have
+         * DailyStockEntry.COLUMN_DAY and DailyStockEntry.COLUMN_UNITS_SOLD.
+         * DAILY_SALES_URI = content://com.example.user.inventoryapp/products/sales/daily
+         */
+        public static final Uri DAILY_SALES_URI = Uri.withAppendedPath(SALES_URI, PATH_DAILY);
+
+        // Query parameter of the sales URIs with the number of days to count, including today
+        public static final String QUERY_PARAM_DAYS = "days";
+
+        /**
+         * The content URI of the restock orders, one row per supplier, with the products
+         * to order from that supplier. Its rows have COLUMN_SUPPLIER_NAME, COLUMN_SUPPLIER_EMAIL,
+         * COLUMN_PRODUCT_COUNT, COLUMN_ORDER_QUANTITY and COLUMN_ORDER_LINES.
+         * The products are the ones in the QUERY_PARAM_IDS parameter, or without it,
+         * the ones at or below their reorder threshold.
+         * RESTOCK_URI = content://com.example.user.inventoryapp/products/restock
+         */
+        public static final Uri RESTOCK_URI = Uri.withAppendedPath(CONTENT_URI, PATH_RESTOCK);
+
+        // Query parameter of RESTOCK_URI with the ids of the products, separated by commas
+        public static final String QUERY_PARAM_IDS = "ids";
+
+        // The columns of the restock orders: the number of products, the number of units
+        // and one line per product with its name and the suggested quantity
+        public static final String COLUMN_PRODUCT_COUNT = "product_count";
+        public static final String COLUMN_ORDER_QUANTITY = "order_quantity";
+        public static final String COLUMN_ORDER_LINES = "order_lines";
+
+        /**
+         * The base of the URIs that read a single product by its SKU or EAN code,
+         * which is found through the unique index of the code.
+         * SKU_URI = content://com.example.user.inventoryapp/products/sku
+         */
+        public static final Uri SKU_URI = Uri.withAppendedPath(CONTENT_URI, PATH_SKU);
+
+        // A restock fills a product up to twice its reorder threshold.
+        // Products without a reorder rule are filled up as if they had this threshold.
+        public static final int DEFAULT_REORDER_THRESHOLD = 5;
+
         // Name of database table for products
         public static final String TABLE_NAME = "products";
 
+        // Name of the full-text search table that indexes the products.
+        // Its docid is the _id of the product.
+        public static final String SEARCH_TABLE_NAME = "products_fts";
+
         // Unique ID number for the product (only for use in the database table).
         public static final String _ID = BaseColumns._ID;
 
         // Declare table rows name constants
         public static final String COLUMN_PRODUCT_NAME = "product_name";
         public static final String COLUMN_PRODUCT_QUANTITY = "quantity";
-        public static final String COLUMN_PRODUCT_PRICE = "price";
         public static final String COLUMN_PRODUCT_PHOTO_URI = "photo_uri";
-        public static final String COLUMN_SUPPLIER_NAME = "supplier_name";
-        public static final String COLUMN_SUPPLIER_EMAIL = "supplier_email";
+
+        // The price as a whole number of the minor unit of the currency, like cents,
+        // so totals are exact. See Prices for the conversions from and to decimal text.
+        public static final String COLUMN_PRODUCT_PRICE_CENTS = "price_cents";
+
+        // The ISO 4217 code of the currency of the price, like "EUR".
+        // A new product without it gets the currency of the device.
+        public static final String COLUMN_PRODUCT_CURRENCY = "currency";
+
+        // The SKU or EAN code printed on the product, or null. Two products can not have
+        // the same code. See ProductValidator.normalizeSku() for how it is stored.
+        public static final String COLUMN_PRODUCT_SKU = "sku";
+
+        // The _id of the supplier of the product in SupplierEntry, or null
+        public static final String COLUMN_SUPPLIER_ID = "supplier_id";
+
+        // When the product was deleted, in milliseconds since the epoch, or null. A delete
+        // only sets it, and the queries and updates skip the deleted products. They are
+        // removed for good by METHOD_PURGE_DELETED, after UNDO_WINDOW_MILLIS.
+        public static final String COLUMN_DELETED_AT = "deleted_at";
+
+        // The code of a deleted product. A delete moves the code here, so a new product can
+        // use it, and METHOD_UNDO_DELETE moves it back unless another product took it.
+        public static final String COLUMN_DELETED_SKU = "deleted_sku";
+
+        // How long a delete can be undone with METHOD_UNDO_DELETE
+        public static final long UNDO_WINDOW_MILLIS = 60 * 60 * 1000;
+
+        // The name and the e-mail of the supplier, read from SupplierEntry. They are not columns
+        // of the products table, but they can be read with the products and written with
+        // their values: the supplier with the same name and e-mail is used, or created.
+        // An update must put both of them. To rename a supplier, update SupplierEntry.
+        public static final String COLUMN_SUPPLIER_NAME = SupplierEntry.COLUMN_SUPPLIER_NAME;
+        public static final String COLUMN_SUPPLIER_EMAIL = SupplierEntry.COLUMN_SUPPLIER_EMAIL;
+
+        // The reorder threshold of the product, from ReorderRuleEntry. It is not a column of the
+        // products table, but it can be read with a single product and written with its values.
+        // A null value removes the rule.
+        public static final String COLUMN_REORDER_THRESHOLD = "reorder_threshold";
+
+        // Key for the amount (positive or negative) that is added to the quantity of a product.
+        // It is not a column, it is only used when adjusting the quantity.
+        public static final String KEY_QUANTITY_DELTA = "quantity_delta";
+
+        // Key for the reason of a quantity change, one of the REASON_ values of StockMovementEntry.
+        // If it is missing, a negative delta is a sale and a positive one is a restock.
+        public static final String KEY_REASON = "reason";
+
+        // Name of the provider method that adjusts the quantity of a single product
+        // and returns the new quantity, see ProductProvider.call()
+        public static final String METHOD_ADJUST_QUANTITY = "adjust_quantity";
+
+        // Name of the provider method that saves a quantity delta of a single product
+        // in the journal of the pending deltas, without changing the quantity yet
+        public static final String METHOD_JOURNAL_DELTA = "journal_delta";
+
+        // Name of the provider method that adds all of the journaled deltas to the quantities
+        // and empties the journal, in one transaction
+        public static final String METHOD_FLUSH_DELTAS = "flush_deltas";
+
+        // Keys of the result of METHOD_FLUSH_DELTAS: the ids of the changed products
+        // and their new quantities, in the same order
+        public static final String KEY_PRODUCT_IDS = "product_ids";
+        public static final String KEY_QUANTITIES = "quantities";
+
+        // Key of the result of METHOD_FLUSH_DELTAS: the number of sold units that were
+        // not on stock anymore, and were not taken from the quantities
+        public static final String KEY_REJECTED_UNITS = "rejected_units";
+
+        // Name of the provider method that returns the new low stock alerts and removes them,
+        // so every alert is shown once. The result holds KEY_PRODUCT_IDS, KEY_PRODUCT_NAMES,
+        // KEY_QUANTITIES and KEY_THRESHOLDS, in the same order.
+        public static final String METHOD_TAKE_LOW_STOCK_ALERTS = "take_low_stock_alerts";
+        public static final String KEY_PRODUCT_NAMES = "product_names";
+        public static final String KEY_THRESHOLDS = "thresholds";
+
+        // Name of the provider method that returns the counters of the cache of single products,
+        // for diagnostics: KEY_CACHE_HITS, KEY_CACHE_MISSES and KEY_CACHE_SIZE
+        public static final String METHOD_GET_CACHE_STATS = "get_cache_stats";
+        public static final String KEY_CACHE_HITS = "cache_hits";
+        public static final String KEY_CACHE_MISSES = "cache_misses";
+        public static final String KEY_CACHE_SIZE = "cache_size";
+
+        // Name of the provider method that sells the product with the code passed as "arg",
+        // like a scan at the till, in one call. KEY_QUANTITY_DELTA in the extras is the change
+        // of the quantity, -1 without it. The result holds KEY_PRODUCT_ID, which is -1 if no
+        // product has the code, COLUMN_PRODUCT_NAME, and COLUMN_PRODUCT_QUANTITY with the new
+        // quantity, or -1 if there was not enough quantity.
+        public static final String METHOD_SELL_BY_SKU = "sell_by_sku";
+        public static final String KEY_PRODUCT_ID = "product_id";
+
+        // Name of the provider method that restores the products of the last delete,
+        // if it was less than UNDO_WINDOW_MILLIS ago. The result holds KEY_RESTORED_COUNT.
+        public static final String METHOD_UNDO_DELETE = "undo_delete";
+        public static final String KEY_RESTORED_COUNT = "restored_count";
+
+        // Name of the provider method that removes the products deleted more than
+        // UNDO_WINDOW_MILLIS ago, a chunk per transaction, and gives the free pages of the file
+        // back. The result holds KEY_PURGED_COUNT and KEY_REMAINING_COUNT, the deleted products
+        // that are still in the undo window.
+        public static final String METHOD_PURGE_DELETED = "purge_deleted";
+        public static final String KEY_PURGED_COUNT = "purged_count";
+        public static final String KEY_REMAINING_COUNT = "remaining_count";
 
         // I do not have a column for the "Restock Quantity" because I assume
         // that the user will want a different restock quantity every time,
@@ -59,5 +286,440 @@ public class ProductContract {
         // The MIME type of the {@link #CONTENT_URI} for a single product.
         public static final String CONTENT_ITEM_TYPE =
                 ContentResolver.CURSOR_ITEM_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_PRODUCTS;
+
+        // The MIME type of the {@link #SALES_URI} and the {@link #DAILY_SALES_URI}.
+        public static final String CONTENT_SALES_TYPE =
+                ContentResolver.CURSOR_DIR_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_SALES;
+
+        // The MIME type of the {@link #RESTOCK_URI}.
+        public static final String CONTENT_RESTOCK_TYPE =
+                ContentResolver.CURSOR_DIR_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_RESTOCK;
+
+        /**
+         * Builds the URI that adjusts the quantity of a single product
+         * content://com.example.user.inventoryapp/products/5/adjust
+         */
+        public static Uri buildAdjustUri(long id) {
+            return ContentUris.withAppendedId(CONTENT_URI, id).buildUpon()
+                    .appendPath(PATH_ADJUST)
+                    .build();
+        }
+
+        /**
+         * Builds the URI of the stock of a single product at every location. Its rows have
+         * the _id and the LocationEntry.COLUMN_LOCATION_NAME of the location, and
+         * StockEntry.COLUMN_QUANTITY. An update with StockEntry.COLUMN_LOCATION_ID and
+         * KEY_QUANTITY_DELTA adjusts the quantity at that location, like the adjust URI does
+         * for the main location. The adjust URI takes the units of a sale from the other
+         * locations when the main location does not have them.
+         * content://com.example.user.inventoryapp/products/5/stock
+         */
+        public static Uri buildStockUri(long id) {
+            return ContentUris.withAppendedId(CONTENT_URI, id).buildUpon()
+                    .appendPath(PATH_STOCK)
+                    .build();
+        }
+
+        /**
+         * Builds the URI that moves units of a single product from one location to another.
+         * An update with StockEntry.KEY_FROM_LOCATION_ID, StockEntry.KEY_TO_LOCATION_ID and
+         * StockEntry.COLUMN_QUANTITY returns 1 if the units were moved, and 0 if the first
+         * location does not have them.
+         * content://com.example.user.inventoryapp/products/5/transfer
+         */
+        public static Uri buildTransferUri(long id) {
+            return ContentUris.withAppendedId(CONTENT_URI, id).buildUpon()
+                    .appendPath(PATH_TRANSFER)
+                    .build();
+        }
+
+        /**
+         * Builds the URI that reads one page of products sorted by the given column.
+         * For the first page afterKey should be null.
+         * content://com.example.user.inventoryapp/products?sort=product_name&limit=50&after_key=Apple&after_id=7
+         *
+         * @param sortColumn The column to sort by, one of _ID, COLUMN_PRODUCT_NAME,
+         *                   COLUMN_PRODUCT_QUANTITY or COLUMN_PRODUCT_PRICE_CENTS
+         * @param limit      The maximum number of rows in the page
+         * @param afterKey   The value of the sort column of the last row of the previous page
+         * @param afterId    The _id of the last row of the previous page
+         */
+        public static Uri buildPageUri(String sortColumn, int limit, String afterKey, long afterId) {
+            Uri.Builder builder = CONTENT_URI.buildUpon()
+                    .appendQueryParameter(QUERY_PARAM_SORT, sortColumn)
+                    .appendQueryParameter(QUERY_PARAM_LIMIT, String.valueOf(limit));
+
+            if (afterKey != null) {
+                builder.appendQueryParameter(QUERY_PARAM_AFTER_KEY, afterKey)
+                        .appendQueryParameter(QUERY_PARAM_AFTER_ID, String.valueOf(afterId));
+            }
+            return builder.build();
+        }
+
+        /**
+         * Builds the URI that searches for products, whose name, supplier or supplier's e-mail
+         * contain words starting with the words of the text
+         * content://com.example.user.inventoryapp/products/search?q=blue%20pen&limit=100
+         *
+         * @param text  The text to search for
+         * @param limit The maximum number of products to return
+         */
+        public static Uri buildSearchUri(String text, int limit) {
+            return SEARCH_URI.buildUpon()
+                    .appendQueryParameter(QUERY_PARAM_SEARCH, text)
+                    .appendQueryParameter(QUERY_PARAM_LIMIT, String.valueOf(limit))
+                    .build();
+        }
+
+        /**
+         * Builds the URI that reads the units sold per product in the last days
+         * content://com.example.user.inventoryapp/products/sales?days=30
+         *
+         * @param days The number of days, including today
+         */
+        public static Uri buildSalesUri(int days) {
+            return SALES_URI.buildUpon()
+                    .appendQueryParameter(QUERY_PARAM_DAYS, String.valueOf(days))
+                    .build();
+        }
+
+        /**
+         * Builds the URI that reads the product with the given SKU or EAN code
+         * content://com.example.user.inventoryapp/products/sku/4006381333931
+         */
+        public static Uri buildSkuUri(String sku) {
+            return SKU_URI.buildUpon().appendPath(sku).build();
+        }
+
+        /**
+         * Builds the URI that reads the restock orders of the given products, or of all of the
+         * products at or below their reorder threshold if ids is null
+         * content://com.example.user.inventoryapp/products/restock?ids=3,5,8
+         *
+         * @param ids The ids of the products to restock, or null
+         */
+        public static Uri buildRestockUri(long[] ids) {
+            if (ids == null) {
+                return RESTOCK_URI;
+            }
+            StringBuilder idList = new StringBuilder();
+            for (long id : ids) {
+                if (idList.length() > 0) {
+                    idList.append(',');
+                }
+                idList.append(id);
+            }
+            return RESTOCK_URI.buildUpon()
+                    .appendQueryParameter(QUERY_PARAM_IDS, idList.toString())
+                    .build();
+        }
+
+        /**
+         * Builds the URI to observe for changes of a single product
+         * content://com.example.user.inventoryapp/changes/products/5
+         */
+        public static Uri buildChangeUri(long id) {
+            return ContentUris.withAppendedId(CHANGES_URI, id);
+        }
+
+        /**
+         * Builds the URI that is notified when a single product changes
+         * content://com.example.user.inventoryapp/changes/products/5?change=update
+         */
+        public static Uri buildChangeUri(long id, String change) {
+            return buildChangeUri(id).buildUpon()
+                    .appendQueryParameter(QUERY_PARAM_CHANGE, change)
+                    .build();
+        }
+
+        /**
+         * Returns the id of the product from a change URI,
+         * or -1 if the change is not about a single product
+         */
+        public static long getChangedProductId(Uri changeUri) {
+            if (changeUri == null || changeUri.getPathSegments().size() != 3) {
+                return -1;
+            }
+            try {
+                return ContentUris.parseId(changeUri);
+            } catch (NumberFormatException e) {
+                return -1;
+            }
+        }
+    }
+
+    /**
+     * The suppliers of the products. Every product refers to one supplier by its _id,
+     * so the name and the e-mail of a supplier are stored once, and renaming a supplier
+     * changes a single row.
+     */
+    public static abstract class SupplierEntry implements BaseColumns {
+
+        /**
+         * The content URI of the suppliers
+         * CONTENT_URI = content://com.example.user.inventoryapp/suppliers
+         */
+        public static final Uri CONTENT_URI = Uri.withAppendedPath(BASE_CONTENT_URI, PATH_SUPPLIERS);
+
+        // Name of database table for suppliers
+        public static final String TABLE_NAME = "suppliers";
+
+        // Unique ID number for the supplier
+        public static final String _ID = BaseColumns._ID;
+
+        // The name and the e-mail of the supplier. Together they identify the supplier,
+        // so two suppliers can not have the same name and e-mail. They are never null.
+        public static final String COLUMN_SUPPLIER_NAME = "supplier_name";
+        public static final String COLUMN_SUPPLIER_EMAIL = "supplier_email";
+
+        // The MIME type of the {@link #CONTENT_URI} for a list of suppliers.
+        public static final String CONTENT_LIST_TYPE =
+                ContentResolver.CURSOR_DIR_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_SUPPLIERS;
+
+        // The MIME type of the {@link #CONTENT_URI} for a single supplier.
+        public static final String CONTENT_ITEM_TYPE =
+                ContentResolver.CURSOR_ITEM_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_SUPPLIERS;
+
+        /**
+         * Builds the URI of the products of a supplier, which has the same columns as
+         * the products URI
+         * content://com.example.user.inventoryapp/suppliers/3/products
+         */
+        public static Uri buildProductsUri(long supplierId) {
+            return ContentUris.withAppendedId(CONTENT_URI, supplierId).buildUpon()
+                    .appendPath(PATH_PRODUCTS)
+                    .build();
+        }
+    }
+
+    /**
+     * The stockrooms of the shop. The main location always exists and can not be deleted:
+     * new products, and the sales and restocks that do not name a location, are counted there.
+     */
+    public static abstract class LocationEntry implements BaseColumns {
+
+        /**
+         * The content URI of the locations
+         * CONTENT_URI = content://com.example.user.inventoryapp/locations
+         */
+        public static final Uri CONTENT_URI = Uri.withAppendedPath(BASE_CONTENT_URI, PATH_LOCATIONS);
+
+        // Name of database table for locations
+        public static final String TABLE_NAME = "locations";
+
+        // Unique ID number for the location
+        public static final String _ID = BaseColumns._ID;
+
+        // The name of the location, which is unique
+        public static final String COLUMN_LOCATION_NAME = "location_name";
+
+        // The _id of the main location
+        public static final long MAIN_LOCATION_ID = 1;
+
+        // The MIME type of the {@link #CONTENT_URI} for a list of locations.
+        public static final String CONTENT_LIST_TYPE =
+                ContentResolver.CURSOR_DIR_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_LOCATIONS;
+
+        // The MIME type of the {@link #CONTENT_URI} for a single location.
+        public static final String CONTENT_ITEM_TYPE =
+                ContentResolver.CURSOR_ITEM_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_LOCATIONS;
+
+        /**
+         * Builds the URI of the products on stock at a location. Its rows have the _id
+         * and the COLUMN_PRODUCT_NAME of the product, and StockEntry.COLUMN_QUANTITY.
+         * content://com.example.user.inventoryapp/locations/2/stock
+         */
+        public static Uri buildStockUri(long locationId) {
+            return ContentUris.withAppendedId(CONTENT_URI, locationId).buildUpon()
+                    .appendPath(PATH_STOCK)
+                    .build();
+        }
+    }
+
+    /**
+     * The quantity of every product at every location. The quantity of a product is the total
+     * of its locations, kept in the products table so that the list does not add them up.
+     * The triggers of the products count the changes of that total at the main location;
+     * moving units between locations changes only this table.
+     */
+    public static abstract class StockEntry {
+
+        // Name of database table for the stock per location
+        public static final String TABLE_NAME = "product_stock";
+
+        /**
+         * The content URI of the total stock of every product that is not deleted, read from
+         * TOTALS_VIEW. Its rows have COLUMN_PRODUCT_ID and COLUMN_TOTAL_QUANTITY.
+         * TOTALS_URI = content://com.example.user.inventoryapp/products/stock
+         */
+        public static final Uri TOTALS_URI = Uri.withAppendedPath(ProductEntry.CONTENT_URI, PATH_STOCK);
+
+        // Name of the view with the total of every product, added up from its locations
+        public static final String TOTALS_VIEW = "stock_totals";
+
+        // The product and the location, which are the primary key of the table together
+        public static final String COLUMN_PRODUCT_ID = "product_id";
+        public static final String COLUMN_LOCATION_ID = "location_id";
+
+        // The units of the product at the location, never negative
+        public static final String COLUMN_QUANTITY = "quantity";
+
+        // The units of the product at all of its locations, in TOTALS_VIEW
+        public static final String COLUMN_TOTAL_QUANTITY = "total_quantity";
+
+        // Keys of the values of a transfer: the locations the units are moved from and to
+        public static final String KEY_FROM_LOCATION_ID = "from_location_id";
+        public static final String KEY_TO_LOCATION_ID = "to_location_id";
+
+        // The MIME type of the stock URIs of a product and of a location.
+        public static final String CONTENT_LIST_TYPE =
+                ContentResolver.CURSOR_DIR_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_STOCK;
+    }
+
+    /**
+     * The summary of the inventory, one row per currency of the products. The triggers of
+     * the products and of the reorder rules add the change of every row to it, so reading
+     * the totals does not depend on the number of products. It is notified on its own
+     * CONTENT_URI, only by the writes that can change the totals.
+     */
+    public static abstract class SummaryEntry {
+
+        /**
+         * The content URI of the summary
+         * CONTENT_URI = content://com.example.user.inventoryapp/summary
+         */
+        public static final Uri CONTENT_URI = Uri.withAppendedPath(BASE_CONTENT_URI, PATH_SUMMARY);
+
+        // Name of database table for the summary
+        public static final String TABLE_NAME = "inventory_summary";
+
+        // The currency of the products that are counted in the row, the primary key of the table
+        public static final String COLUMN_CURRENCY = "currency";
+
+        // The number of products, the units on stock and their value in the minor unit
+        // of the currency
+        public static final String COLUMN_SKU_COUNT = "sku_count";
+        public static final String COLUMN_TOTAL_UNITS = "total_units";
+        public static final String COLUMN_TOTAL_VALUE_CENTS = "total_value_cents";
+
+        // The number of products with no quantity, and at or below their reorder threshold
+        public static final String COLUMN_OUT_OF_STOCK_COUNT = "out_of_stock_count";
+        public static final String COLUMN_LOW_STOCK_COUNT = "low_stock_count";
+
+        // The MIME type of the {@link #CONTENT_URI}.
+        public static final String CONTENT_LIST_TYPE =
+                ContentResolver.CURSOR_DIR_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_SUMMARY;
+    }
+
+    /**
+     * The journal of the quantity deltas that were accepted by the app, but not yet added
+     * to the quantities of the products. It survives a crash of the app,
+     * so the deltas are added the next time the journal is flushed.
+     */
+    public static abstract class PendingDeltaEntry implements BaseColumns {
+
+        // Name of database table for pending deltas
+        public static final String TABLE_NAME = "pending_deltas";
+
+        // The id of the product the delta belongs to
+        public static final String COLUMN_PRODUCT_ID = "product_id";
+
+        // The amount that is added to the quantity, negative for sales
+        public static final String COLUMN_DELTA = "delta";
+    }
+
+    /**
+     * The ledger of every change of the quantity of a product. Rows are only appended,
+     * in the same transaction as the change of the quantity, so the quantity of a product
+     * is always the sum of its movements.
+     */
+    public static abstract class StockMovementEntry implements BaseColumns {
+
+        // Name of database table for stock movements
+        public static final String TABLE_NAME = "stock_movements";
+
+        // The id of the product whose quantity changed
+        public static final String COLUMN_PRODUCT_ID = "product_id";
+
+        // The amount that was added to the quantity, negative when it was reduced
+        public static final String COLUMN_DELTA = "delta";
+
+        // Why the quantity changed, one of the REASON_ values
+        public static final String COLUMN_REASON = "reason";
+
+        // When the quantity changed, in milliseconds since the epoch
+        public static final String COLUMN_TIMESTAMP = "timestamp";
+
+        // Possible values of COLUMN_REASON
+        public static final String REASON_INITIAL = "initial";
+        public static final String REASON_SALE = "sale";
+        public static final String REASON_RESTOCK = "restock";
+        public static final String REASON_EDIT = "edit";
+    }
+
+    /**
+     * The rollups of the stock movements per day, kept up to date by a trigger
+     * on every new movement. The days are counted in UTC since the epoch.
+     */
+    public static abstract class DailyStockEntry {
+
+        // Name of database table with the totals of the whole store per day
+        public static final String TABLE_NAME = "daily_stock";
+
+        // Name of database table with the totals of every product per day
+        public static final String PRODUCT_TABLE_NAME = "product_daily_stock";
+
+        // The id of the product, only in PRODUCT_TABLE_NAME
+        public static final String COLUMN_PRODUCT_ID = "product_id";
+
+        // The number of the day: timestamp / MILLIS_PER_DAY
+        public static final String COLUMN_DAY = "day";
+
+        // The units sold and the units restocked on the day
+        public static final String COLUMN_UNITS_SOLD = "units_sold";
+        public static final String COLUMN_UNITS_RECEIVED = "units_received";
+
+        public static final long MILLIS_PER_DAY = 24 * 60 * 60 * 1000;
+    }
+
+    /**
+     * The reorder thresholds of the products. A product is low on stock when its quantity
+     * is at or below its threshold. Products without a rule are never low on stock.
+     */
+    public static abstract class ReorderRuleEntry {
+
+        // Name of database table for reorder rules
+        public static final String TABLE_NAME = "reorder_rules";
+
+        // The id of the product, the primary key of the table
+        public static final String COLUMN_PRODUCT_ID = "product_id";
+
+        // The quantity at which the product should be reordered
+        public static final String COLUMN_THRESHOLD = "threshold";
+
+        // A selection of the products that are at or below their threshold, like the summary,
+        // the alerts and the restock orders count them. Products without a rule are never low.
+        public static final String LOW_STOCK_SELECTION = ProductEntry.TABLE_NAME + "." +
+                ProductEntry.COLUMN_PRODUCT_QUANTITY + " <= (SELECT " + COLUMN_THRESHOLD + " FROM " +
+                TABLE_NAME + " WHERE " + COLUMN_PRODUCT_ID + " = " + ProductEntry.TABLE_NAME + "." +
+                ProductEntry._ID + ")";
+    }
+
+    /**
+     * The products that became low on stock and were not shown to the user yet.
+     * The triggers of the products and of the reorder rules add and remove them,
+     * looking only at the rule of the product that changed.
+     */
+    public static abstract class LowStockAlertEntry {
+
+        // Name of database table for low stock alerts
+        public static final String TABLE_NAME = "low_stock_alerts";
+
+        // The id of the product, the primary key of the table
+        public static final String COLUMN_PRODUCT_ID = "product_id";
+
+        // The quantity and the threshold of the product when it became low on stock
+        public static final String COLUMN_QUANTITY = "quantity";
+        public static final String COLUMN_THRESHOLD = "threshold";
     }
 }
@@ -1,10 +1,15 @@
 package com.example.user.inventoryapp.data;
 
 import android.content.Context;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.os.Build;
+import android.support.annotation.VisibleForTesting;
 
-import com.example.user.inventoryapp.data.ProductContract.ProductEntry;
+import java.util.Collections;
+import java.util.Map;
 
 /**
  * Created by Alexander Rashkov on 10.07.17.
@@ -12,35 +17,205 @@ import com.example.user.inventoryapp.data.ProductContract.ProductEntry;
 
 public class ProductDbHelper extends SQLiteOpenHelper {
 
-    // When changing the database schema, here the database version must be incremented.
-    public static final int DATABASE_VERSION = 1;
+    // When changing the database schema, add a Migration to ProductMigrations
+    // and increment the database version.
+    // Version 2 adds the full-text search table.
+    // Version 3 adds the indexes for sorting and filtering the list.
+    // Version 4 adds the journal of the pending quantity deltas.
+    // Version 5 adds the ledger of the stock movements and its daily rollups.
+    // Version 6 adds the reorder rules and the low stock alerts.
+    // Version 7 moves the suppliers into their own table.
+    // Version 8 stores the prices in the minor unit of their currency.
+    // Version 9 adds the summary of the inventory, kept up to date by triggers.
+    // Version 10 adds the SKU or EAN code of the products, with a unique index.
+    // Version 11 adds the locations and the stock of the products per location.
+    // Version 12 deletes the products softly, and purges them later.
+    // Version 13 frees the codes of the deleted products.
+    public static final int DATABASE_VERSION = 13;
     public static final String DATABASE_NAME = "inventory.db";
 
+    // The value of PRAGMA auto_vacuum when the free pages are given back by incremental_vacuum
+    private static final long AUTO_VACUUM_INCREMENTAL = 2;
+
+    // The number of free pages compact() gives back per step
+    private static final int VACUUM_PAGES = 256;
+
+    // How the connection to the database is tuned
+    private final Options mOptions;
+
+    // How long the last onCreate() or onUpgrade() of this helper took, per migration
+    private Map<String, Long> mMigrationTimings = Collections.emptyMap();
+
     // Construct the ProductDbHelper class
     public ProductDbHelper(Context context) {
-        super(context, DATABASE_NAME, null, DATABASE_VERSION);
+        this(context, DATABASE_NAME, Options.DEFAULT);
+    }
+
+    // Construct the ProductDbHelper class for the database with the given name
+    @VisibleForTesting
+    public ProductDbHelper(Context context, String name) {
+        this(context, name, Options.DEFAULT);
+    }
+
+    // Construct the ProductDbHelper class for the database with the given name and tuning
+    @VisibleForTesting
+    public ProductDbHelper(Context context, String name, Options options) {
+        super(context, name, null, DATABASE_VERSION);
+        mOptions = options;
+
+        // From API 16 the helper opens the database in WAL mode right away,
+        // and gives the readers their own connections
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+            setWriteAheadLoggingEnabled(options.writeAheadLogging);
+        }
+    }
+
+    // Tune the connection every time the database is opened
+    @Override
+    public void onOpen(SQLiteDatabase db) {
+        super.onOpen(db);
+
+        if (db.isReadOnly()) {
+            return;
+        }
+
+        // Before API 16 WAL can be enabled only on an open database
+        if (mOptions.writeAheadLogging && Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN) {
+            db.enableWriteAheadLogging();
+        }
+
+        // A negative cache size is in kilobytes instead of pages
+        db.execSQL("PRAGMA cache_size = -" + mOptions.cacheSizeKb);
+        db.execSQL("PRAGMA synchronous = " + mOptions.synchronous);
+
+        // Deleting a supplier clears the supplier of its products. The migrations run before this,
+        // with the foreign keys off, so they can replace the tables.
+        db.execSQL("PRAGMA foreign_keys = ON");
+
+        // This pragma returns the new value, so it has to be run as a query
+        if (mOptions.writeAheadLogging) {
+            DatabaseUtils.longForQuery(db,
+                    "PRAGMA wal_autocheckpoint = " + mOptions.walAutoCheckpointPages, null);
+        }
     }
 
-    // Create the database
+    /**
+     * Copies the changes from the write-ahead log into the database file, without waiting for
+     * the readers. Call it after big writes, so the log does not keep growing and the readers
+     * do not have to search through it.
+     */
+    public void checkpoint() {
+        if (mOptions.writeAheadLogging) {
+            DatabaseUtils.stringForQuery(getWritableDatabase(), "PRAGMA wal_checkpoint(PASSIVE)", null);
+        }
+    }
+
+    /**
+     * Gives the free pages of the database file back to the file system, a few at a time,
+     * so the writers are not blocked for long. The first call switches the database
+     * to incremental vacuum, which rewrites the whole file once. Must not be called
+     * inside a transaction. Call it in the background, after big deletes.
+     */
+    public void compact() {
+        SQLiteDatabase db = getWritableDatabase();
+
+        // auto_vacuum can only be changed by a VACUUM, and not inside the transaction of onCreate()
+        if (DatabaseUtils.longForQuery(db, "PRAGMA auto_vacuum", null) != AUTO_VACUUM_INCREMENTAL) {
+            db.execSQL("PRAGMA auto_vacuum = INCREMENTAL");
+            db.execSQL("VACUUM");
+        } else {
+            // The pragma returns no rows, but every step frees a page, so it has to be run
+            // as a query. Stop if a step did not free anything, for example while it was locked.
+            long freePages = DatabaseUtils.longForQuery(db, "PRAGMA freelist_count", null);
+            while (freePages > 0) {
+                Cursor cursor = db.rawQuery("PRAGMA incremental_vacuum(" + VACUUM_PAGES + ")", null);
+                try {
+                    cursor.getCount();
+                } finally {
+                    cursor.close();
+                }
+                long left = DatabaseUtils.longForQuery(db, "PRAGMA freelist_count", null);
+                if (left >= freePages) {
+                    break;
+                }
+                freePages = left;
+            }
+        }
+
+        // In WAL mode the file becomes smaller when the log is copied into it
+        checkpoint();
+    }
+
+    // Create the database at version 1, and bring it forward with the migrations
     @Override
     public void onCreate(SQLiteDatabase db) {
-        String SQL_CREATE_ENTRIES = "CREATE TABLE " + ProductEntry.TABLE_NAME + " (" +
-                ProductEntry._ID + " INTEGER PRIMARY KEY AUTOINCREMENT," +
-                ProductEntry.COLUMN_PRODUCT_NAME + " TEXT NOT NULL," +
-                ProductEntry.COLUMN_PRODUCT_QUANTITY + " INTEGER NOT NULL DEFAULT 0," +
-                ProductEntry.COLUMN_PRODUCT_PRICE + " REAL NOT NULL," +
-                ProductEntry.COLUMN_PRODUCT_PHOTO_URI + " TEXT NOT NULL DEFAULT 'no image'," +
-                ProductEntry.COLUMN_SUPPLIER_NAME + " TEXT," +
-                ProductEntry.COLUMN_SUPPLIER_EMAIL + " TEXT);";
+        // The schema of version 1. It must never change, later changes go into migrations.
+        String SQL_CREATE_ENTRIES = "CREATE TABLE products (" +
+                "_id INTEGER PRIMARY KEY AUTOINCREMENT," +
+                "product_name TEXT NOT NULL," +
+                "quantity INTEGER NOT NULL DEFAULT 0," +
+                "price REAL NOT NULL," +
+                "photo_uri TEXT NOT NULL DEFAULT 'no image'," +
+                "supplier_name TEXT," +
+                "supplier_email TEXT);";
 
         // Execute the database
         db.execSQL(SQL_CREATE_ENTRIES);
+
+        mMigrationTimings = ProductMigrations.migrate(db, 1, DATABASE_VERSION);
     }
 
     // This is called when the database needs to be updated.
+    // The migrations bring the schema forward one version at a time, keeping the data of the user.
     @Override
     public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
-        db.execSQL("DROP TABLE IF EXISTS " + ProductEntry.TABLE_NAME);
-        onCreate(db);
+        mMigrationTimings = ProductMigrations.migrate(db, oldVersion, newVersion);
+    }
+
+    /**
+     * Returns how long each migration of the last create or upgrade took, in milliseconds.
+     */
+    @VisibleForTesting
+    public Map<String, Long> getMigrationTimings() {
+        return mMigrationTimings;
+    }
+
+    /**
+     * {@link Options} tunes the connection to the database.
+     * <p>
+     * With write-ahead logging the writers append to a log instead of locking the database file,
+     * so the list can be queried while a sale is being saved and the other way around.
+     * The log is copied into the database file (checkpointed) every time it grows over
+     * the given number of pages. In WAL mode synchronous NORMAL is safe against corruption
+     * and only syncs to the disk on checkpoints, which makes every commit much cheaper.
+     * Secondary read connections opened by the framework keep their default cache size.
+     */
+    public static final class Options {
+
+        // The tuning used by the app
+        public static final Options DEFAULT = new Options(true, 2048, "NORMAL", 1000);
+
+        // True to use write-ahead logging instead of the rollback journal
+        public final boolean writeAheadLogging;
+
+        // The size of the page cache of the connection, in kilobytes
+        public final int cacheSizeKb;
+
+        // OFF, NORMAL or FULL
+        public final String synchronous;
+
+        // The size of the log, in pages, after which it is checkpointed automatically
+        public final int walAutoCheckpointPages;
+
+        public Options(boolean writeAheadLogging, int cacheSizeKb, String synchronous,
+                       int walAutoCheckpointPages) {
+            if (!synchronous.equals("OFF") && !synchronous.equals("NORMAL") && !synchronous.equals("FULL")) {
+                throw new IllegalArgumentException("Unknown synchronous level " + synchronous);
+            }
+            this.writeAheadLogging = writeAheadLogging;
+            this.cacheSizeKb = cacheSizeKb;
+            this.synchronous = synchronous;
+            this.walAutoCheckpointPages = walAutoCheckpointPages;
+        }
     }
 }
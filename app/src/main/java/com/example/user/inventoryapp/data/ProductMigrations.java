@@ -0,0 +1,564 @@
+package com.example.user.inventoryapp.data;
+
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * {@link ProductMigrations} holds every {@link Migration} of the inventory database, in order,
+ * and runs the ones needed to bring a database from its version to the current one.
+ * Fresh databases are created at version 1 and brought forward by the same migrations,
+ * so a new install and an upgraded install always end up with the same schema.
+ * <p>
+ * To change the schema, add a migration at the end of {@link #ALL} and increment
+ * {@link ProductDbHelper#DATABASE_VERSION}. Never edit a migration that was released.
+ */
+public final class ProductMigrations {
+
+    // Tag for the log messages
+    private static final String LOG_TAG = ProductMigrations.class.getSimpleName();
+
+    // The upgrade runs while the app is starting, so it should not take longer than this
+    public static final long STARTUP_BUDGET_MILLIS = 1000;
+
+    // Version 2 adds the full-text search table
+    static final Migration MIGRATION_1_2 = new Migration(1, 2) {
+        @Override
+        public void migrate(SQLiteDatabase db) {
+            db.execSQL("CREATE VIRTUAL TABLE products_fts USING fts4(" +
+                    "product_name, supplier_name, supplier_email);");
+
+            db.execSQL("CREATE TRIGGER products_fts_insert AFTER INSERT ON products" +
+                    " BEGIN INSERT INTO products_fts (docid, product_name, supplier_name, supplier_email)" +
+                    " VALUES (new._id, new.product_name, new.supplier_name, new.supplier_email); END;");
+
+            // Only changes of the indexed columns touch the search table, so sales do not
+            db.execSQL("CREATE TRIGGER products_fts_update" +
+                    " AFTER UPDATE OF product_name, supplier_name, supplier_email ON products" +
+                    " BEGIN UPDATE products_fts SET product_name = new.product_name," +
+                    " supplier_name = new.supplier_name, supplier_email = new.supplier_email" +
+                    " WHERE docid = old._id; END;");
+
+            db.execSQL("CREATE TRIGGER products_fts_delete AFTER DELETE ON products" +
+                    " BEGIN DELETE FROM products_fts WHERE docid = old._id; END;");
+
+            // Index the products that already exist
+            db.execSQL("INSERT INTO products_fts (docid, product_name, supplier_name, supplier_email)" +
+                    " SELECT _id, product_name, supplier_name, supplier_email FROM products;");
+        }
+    };
+
+    // Version 3 adds the indexes for sorting and filtering the list.
+    // The rowid (_id) is part of every index entry, so "ORDER BY column, _id" is read
+    // straight from the index without sorting. The name is sorted ignoring the case.
+    static final Migration MIGRATION_2_3 = new Migration(2, 3) {
+        @Override
+        public void migrate(SQLiteDatabase db) {
+            db.execSQL("CREATE INDEX products_name_index ON products (product_name COLLATE NOCASE);");
+            db.execSQL("CREATE INDEX products_quantity_index ON products (quantity);");
+            db.execSQL("CREATE INDEX products_price_index ON products (price);");
+            db.execSQL("CREATE INDEX products_supplier_index ON products (supplier_name);");
+        }
+    };
+
+    // Version 4 adds the journal of the quantity deltas that were not added to the products yet
+    static final Migration MIGRATION_3_4 = new Migration(3, 4) {
+        @Override
+        public void migrate(SQLiteDatabase db) {
+            db.execSQL("CREATE TABLE pending_deltas (_id INTEGER PRIMARY KEY AUTOINCREMENT," +
+                    "product_id INTEGER NOT NULL,delta INTEGER NOT NULL);");
+        }
+    };
+
+    // Version 5 adds the ledger of the stock movements and its daily rollups.
+    // The quantities that exist are recorded as initial movements, so every quantity
+    // is the sum of the movements of its product.
+    static final Migration MIGRATION_4_5 = new Migration(4, 5) {
+        @Override
+        public void migrate(SQLiteDatabase db) {
+            db.execSQL("CREATE TABLE stock_movements (_id INTEGER PRIMARY KEY AUTOINCREMENT," +
+                    "product_id INTEGER NOT NULL,delta INTEGER NOT NULL," +
+                    "reason TEXT NOT NULL,timestamp INTEGER NOT NULL);");
+            db.execSQL("CREATE INDEX stock_movements_product_index" +
+                    " ON stock_movements (product_id, timestamp);");
+
+            // The sales are read by ranges of days, through the primary keys and the index
+            // of the day, so the other days are not touched
+            db.execSQL("CREATE TABLE product_daily_stock (product_id INTEGER NOT NULL," +
+                    "day INTEGER NOT NULL,units_sold INTEGER NOT NULL DEFAULT 0," +
+                    "units_received INTEGER NOT NULL DEFAULT 0,PRIMARY KEY (product_id, day));");
+            db.execSQL("CREATE INDEX product_daily_stock_day_index ON product_daily_stock (day);");
+            db.execSQL("CREATE TABLE daily_stock (day INTEGER PRIMARY KEY," +
+                    "units_sold INTEGER NOT NULL DEFAULT 0,units_received INTEGER NOT NULL DEFAULT 0);");
+
+            db.execSQL("INSERT INTO stock_movements (product_id, delta, reason, timestamp)" +
+                    " SELECT _id, quantity, 'initial', " + System.currentTimeMillis() +
+                    " FROM products WHERE quantity != 0;");
+
+            // The ledger is append-only
+            db.execSQL("CREATE TRIGGER stock_movements_no_update BEFORE UPDATE ON stock_movements" +
+                    " BEGIN SELECT RAISE(ABORT, 'stock movements can not be changed'); END;");
+
+            // Add every new movement to the rollups of its day
+            db.execSQL("CREATE TRIGGER stock_movements_rollup AFTER INSERT ON stock_movements BEGIN" +
+                    " INSERT OR IGNORE INTO product_daily_stock (product_id, day)" +
+                    " VALUES (new.product_id, new.timestamp / 86400000);" +
+                    " UPDATE product_daily_stock SET" +
+                    " units_sold = units_sold + (CASE WHEN new.reason = 'sale' THEN -new.delta ELSE 0 END)," +
+                    " units_received = units_received + (CASE WHEN new.reason = 'restock' THEN new.delta ELSE 0 END)" +
+                    " WHERE product_id = new.product_id AND day = new.timestamp / 86400000;" +
+                    " INSERT OR IGNORE INTO daily_stock (day) VALUES (new.timestamp / 86400000);" +
+                    " UPDATE daily_stock SET" +
+                    " units_sold = units_sold + (CASE WHEN new.reason = 'sale' THEN -new.delta ELSE 0 END)," +
+                    " units_received = units_received + (CASE WHEN new.reason = 'restock' THEN new.delta ELSE 0 END)" +
+                    " WHERE day = new.timestamp / 86400000; END;");
+        }
+    };
+
+    // Version 6 adds the reorder rules and the low stock alerts. The triggers evaluate only
+    // the rule of the product that changed, with a lookup of its primary key,
+    // so the alerts cost the same no matter how many products there are.
+    static final Migration MIGRATION_5_6 = new Migration(5, 6) {
+        @Override
+        public void migrate(SQLiteDatabase db) {
+            db.execSQL("CREATE TABLE reorder_rules (product_id INTEGER PRIMARY KEY," +
+                    "threshold INTEGER NOT NULL);");
+            db.execSQL("CREATE TABLE low_stock_alerts (product_id INTEGER PRIMARY KEY," +
+                    "quantity INTEGER NOT NULL,threshold INTEGER NOT NULL);");
+
+            // The quantity fell to the threshold: add an alert.
+            // It fell further while the alert was waiting: update it. It rose above: remove it.
+            db.execSQL("CREATE TRIGGER low_stock_quantity AFTER UPDATE OF quantity ON products" +
+                    " WHEN new.quantity != old.quantity BEGIN" +
+                    " UPDATE low_stock_alerts SET quantity = new.quantity WHERE product_id = new._id;" +
+                    " INSERT OR IGNORE INTO low_stock_alerts (product_id, quantity, threshold)" +
+                    " SELECT new._id, new.quantity, threshold FROM reorder_rules" +
+                    " WHERE product_id = new._id AND new.quantity <= threshold AND old.quantity > threshold;" +
+                    " DELETE FROM low_stock_alerts WHERE product_id = new._id AND new.quantity > threshold;" +
+                    " END;");
+
+            // A new rule of a product that is already low on stock
+            db.execSQL("CREATE TRIGGER low_stock_rule_insert AFTER INSERT ON reorder_rules BEGIN" +
+                    " INSERT OR IGNORE INTO low_stock_alerts (product_id, quantity, threshold)" +
+                    " SELECT _id, quantity, new.threshold FROM products" +
+                    " WHERE _id = new.product_id AND quantity <= new.threshold; END;");
+
+            // A threshold that was raised above the quantity, or lowered below it
+            db.execSQL("CREATE TRIGGER low_stock_rule_update AFTER UPDATE OF threshold ON reorder_rules" +
+                    " BEGIN UPDATE low_stock_alerts SET threshold = new.threshold" +
+                    " WHERE product_id = new.product_id;" +
+                    " INSERT OR IGNORE INTO low_stock_alerts (product_id, quantity, threshold)" +
+                    " SELECT _id, quantity, new.threshold FROM products WHERE _id = new.product_id" +
+                    " AND quantity <= new.threshold AND quantity > old.threshold;" +
+                    " DELETE FROM low_stock_alerts WHERE product_id = new.product_id" +
+                    " AND quantity > new.threshold; END;");
+
+            db.execSQL("CREATE TRIGGER low_stock_rule_delete AFTER DELETE ON reorder_rules" +
+                    " BEGIN DELETE FROM low_stock_alerts WHERE product_id = old.product_id; END;");
+
+            // The rule and the alert of a product are deleted with it
+            db.execSQL("CREATE TRIGGER low_stock_product_delete AFTER DELETE ON products" +
+                    " BEGIN DELETE FROM reorder_rules WHERE product_id = old._id; END;");
+        }
+    };
+
+    // Version 7 moves the suppliers into their own table. Every distinct pair of supplier name
+    // and e-mail becomes one supplier, and the products refer to it by supplier_id, which is
+    // indexed, so the products of a supplier are found without comparing strings.
+    static final Migration MIGRATION_6_7 = new Migration(6, 7) {
+        @Override
+        public void migrate(SQLiteDatabase db) {
+            db.execSQL("CREATE TABLE suppliers (_id INTEGER PRIMARY KEY AUTOINCREMENT," +
+                    "supplier_name TEXT NOT NULL DEFAULT '',supplier_email TEXT NOT NULL DEFAULT '');");
+            db.execSQL("CREATE UNIQUE INDEX suppliers_identity_index" +
+                    " ON suppliers (supplier_name, supplier_email);");
+            db.execSQL("INSERT OR IGNORE INTO suppliers (supplier_name, supplier_email)" +
+                    " SELECT IFNULL(supplier_name, ''), IFNULL(supplier_email, '') FROM products" +
+                    " WHERE IFNULL(supplier_name, '') != '' OR IFNULL(supplier_email, '') != '';");
+
+            // These triggers of the reorder rules read the products, so they can not exist
+            // while the products table is replaced
+            db.execSQL("DROP TRIGGER low_stock_rule_insert;");
+            db.execSQL("DROP TRIGGER low_stock_rule_update;");
+
+            // Keep the sequence of the ids, so the ids of deleted products are not given again
+            // to new products, which would inherit their movements in the ledger
+            long lastId = DatabaseUtils.longForQuery(db,
+                    "SELECT IFNULL(MAX(seq), 0) FROM sqlite_sequence WHERE name = 'products'", null);
+
+            // The supplier of every product is found through the index of the suppliers
+            recreateTable(db, "products",
+                    "_id INTEGER PRIMARY KEY AUTOINCREMENT,product_name TEXT NOT NULL," +
+                            "quantity INTEGER NOT NULL DEFAULT 0,price REAL NOT NULL," +
+                            "photo_uri TEXT NOT NULL DEFAULT 'no image'," +
+                            "supplier_id INTEGER REFERENCES suppliers (_id) ON DELETE SET NULL",
+                    "_id, product_name, quantity, price, photo_uri, supplier_id",
+                    "_id, product_name, quantity, price, photo_uri," +
+                            " (SELECT _id FROM suppliers WHERE supplier_name = IFNULL(products.supplier_name, '')" +
+                            " AND supplier_email = IFNULL(products.supplier_email, ''))");
+
+            db.execSQL("DELETE FROM sqlite_sequence WHERE name = 'products';");
+            db.execSQL("INSERT INTO sqlite_sequence (name, seq)" +
+                    " SELECT 'products', MAX(" + lastId + ", IFNULL(MAX(_id), 0)) FROM products;");
+
+            db.execSQL("CREATE INDEX products_name_index ON products (product_name COLLATE NOCASE);");
+            db.execSQL("CREATE INDEX products_quantity_index ON products (quantity);");
+            db.execSQL("CREATE INDEX products_price_index ON products (price);");
+            db.execSQL("CREATE INDEX products_supplier_index ON products (supplier_id);");
+
+            // The search table keeps the names and e-mails of the suppliers, so the search
+            // does not join the suppliers. A renamed supplier changes the rows of its products.
+            db.execSQL("CREATE TRIGGER products_fts_insert AFTER INSERT ON products" +
+                    " BEGIN INSERT INTO products_fts (docid, product_name, supplier_name, supplier_email)" +
+                    " VALUES (new._id, new.product_name," +
+                    " (SELECT supplier_name FROM suppliers WHERE _id = new.supplier_id)," +
+                    " (SELECT supplier_email FROM suppliers WHERE _id = new.supplier_id)); END;");
+            db.execSQL("CREATE TRIGGER products_fts_update AFTER UPDATE OF product_name, supplier_id ON products" +
+                    " BEGIN UPDATE products_fts SET product_name = new.product_name," +
+                    " supplier_name = (SELECT supplier_name FROM suppliers WHERE _id = new.supplier_id)," +
+                    " supplier_email = (SELECT supplier_email FROM suppliers WHERE _id = new.supplier_id)" +
+                    " WHERE docid = old._id; END;");
+            db.execSQL("CREATE TRIGGER products_fts_delete AFTER DELETE ON products" +
+                    " BEGIN DELETE FROM products_fts WHERE docid = old._id; END;");
+            db.execSQL("CREATE TRIGGER suppliers_fts_update" +
+                    " AFTER UPDATE OF supplier_name, supplier_email ON suppliers" +
+                    " BEGIN UPDATE products_fts SET supplier_name = new.supplier_name," +
+                    " supplier_email = new.supplier_email" +
+                    " WHERE docid IN (SELECT _id FROM products WHERE supplier_id = new._id); END;");
+
+            // The triggers of the low stock alerts, as they were in version 6
+            db.execSQL("CREATE TRIGGER low_stock_quantity AFTER UPDATE OF quantity ON products" +
+                    " WHEN new.quantity != old.quantity BEGIN" +
+                    " UPDATE low_stock_alerts SET quantity = new.quantity WHERE product_id = new._id;" +
+                    " INSERT OR IGNORE INTO low_stock_alerts (product_id, quantity, threshold)" +
+                    " SELECT new._id, new.quantity, threshold FROM reorder_rules" +
+                    " WHERE product_id = new._id AND new.quantity <= threshold AND old.quantity > threshold;" +
+                    " DELETE FROM low_stock_alerts WHERE product_id = new._id AND new.quantity > threshold;" +
+                    " END;");
+            db.execSQL("CREATE TRIGGER low_stock_rule_insert AFTER INSERT ON reorder_rules BEGIN" +
+                    " INSERT OR IGNORE INTO low_stock_alerts (product_id, quantity, threshold)" +
+                    " SELECT _id, quantity, new.threshold FROM products" +
+                    " WHERE _id = new.product_id AND quantity <= new.threshold; END;");
+            db.execSQL("CREATE TRIGGER low_stock_rule_update AFTER UPDATE OF threshold ON reorder_rules" +
+                    " BEGIN UPDATE low_stock_alerts SET threshold = new.threshold" +
+                    " WHERE product_id = new.product_id;" +
+                    " INSERT OR IGNORE INTO low_stock_alerts (product_id, quantity, threshold)" +
+                    " SELECT _id, quantity, new.threshold FROM products WHERE _id = new.product_id" +
+                    " AND quantity <= new.threshold AND quantity > old.threshold;" +
+                    " DELETE FROM low_stock_alerts WHERE product_id = new.product_id" +
+                    " AND quantity > new.threshold; END;");
+            db.execSQL("CREATE TRIGGER low_stock_product_delete AFTER DELETE ON products" +
+                    " BEGIN DELETE FROM reorder_rules WHERE product_id = old._id; END;");
+        }
+    };
+
+    // Version 8 stores the prices as whole numbers of the minor unit of their currency, like cents,
+    // so the totals of the stock are exact. The old prices were typed in the currency of the device.
+    static final Migration MIGRATION_7_8 = new Migration(7, 8) {
+        @Override
+        public void migrate(SQLiteDatabase db) {
+            String currency = Prices.defaultCurrency();
+            long factor = 1;
+            for (int i = 0; i < Prices.fractionDigits(currency); i++) {
+                factor *= 10;
+            }
+
+            Map<String, String> dependents = dropDependents(db, "products");
+            long lastId = DatabaseUtils.longForQuery(db,
+                    "SELECT IFNULL(MAX(seq), 0) FROM sqlite_sequence WHERE name = 'products'", null);
+
+            recreateTable(db, "products",
+                    "_id INTEGER PRIMARY KEY AUTOINCREMENT,product_name TEXT NOT NULL," +
+                            "quantity INTEGER NOT NULL DEFAULT 0,price_cents INTEGER NOT NULL," +
+                            "currency TEXT NOT NULL,photo_uri TEXT NOT NULL DEFAULT 'no image'," +
+                            "supplier_id INTEGER REFERENCES suppliers (_id) ON DELETE SET NULL",
+                    "_id, product_name, quantity, price_cents, currency, photo_uri, supplier_id",
+                    "_id, product_name, quantity, CAST(ROUND(price * " + factor + ") AS INTEGER), " +
+                            DatabaseUtils.sqlEscapeString(currency) + ", photo_uri, supplier_id");
+
+            db.execSQL("DELETE FROM sqlite_sequence WHERE name = 'products';");
+            db.execSQL("INSERT INTO sqlite_sequence (name, seq)" +
+                    " SELECT 'products', MAX(" + lastId + ", IFNULL(MAX(_id), 0)) FROM products;");
+
+            // Everything else is the same as in version 7, except the index of the price
+            dependents.remove("products_price_index");
+            for (String sql : dependents.values()) {
+                db.execSQL(sql);
+            }
+            db.execSQL("CREATE INDEX products_price_index ON products (price_cents);");
+        }
+    };
+
+    // Version 9 adds the summary of the inventory, one row per currency. The triggers add the
+    // difference of the row that changed, with lookups of primary keys, so keeping the totals
+    // costs the same no matter how many products there are.
+    static final Migration MIGRATION_8_9 = new Migration(8, 9) {
+        @Override
+        public void migrate(SQLiteDatabase db) {
+            db.execSQL("CREATE TABLE inventory_summary (currency TEXT PRIMARY KEY," +
+                    "sku_count INTEGER NOT NULL DEFAULT 0,total_units INTEGER NOT NULL DEFAULT 0," +
+                    "total_value_cents INTEGER NOT NULL DEFAULT 0," +
+                    "out_of_stock_count INTEGER NOT NULL DEFAULT 0," +
+                    "low_stock_count INTEGER NOT NULL DEFAULT 0);");
+            db.execSQL("INSERT INTO inventory_summary (currency, sku_count, total_units," +
+                    " total_value_cents, out_of_stock_count, low_stock_count)" +
+                    " SELECT currency, COUNT(*), SUM(quantity), SUM(quantity * price_cents)," +
+                    " SUM(quantity = 0), SUM(IFNULL(quantity <= threshold, 0))" +
+                    " FROM products LEFT JOIN reorder_rules ON product_id = products._id" +
+                    " GROUP BY currency;");
+
+            db.execSQL("CREATE TRIGGER inventory_summary_insert AFTER INSERT ON products BEGIN" +
+                    " INSERT OR IGNORE INTO inventory_summary (currency) VALUES (new.currency);" +
+                    " UPDATE inventory_summary SET sku_count = sku_count + 1," +
+                    " total_units = total_units + new.quantity," +
+                    " total_value_cents = total_value_cents + new.quantity * new.price_cents," +
+                    " out_of_stock_count = out_of_stock_count + (new.quantity = 0)," +
+                    " low_stock_count = low_stock_count + EXISTS (SELECT 1 FROM reorder_rules" +
+                    " WHERE product_id = new._id AND new.quantity <= threshold)" +
+                    " WHERE currency = new.currency; END;");
+
+            // The old row is taken out of the totals of its currency and the new one is added,
+            // which also moves a product whose currency changed. Other columns do not count.
+            db.execSQL("CREATE TRIGGER inventory_summary_update" +
+                    " AFTER UPDATE OF quantity, price_cents, currency ON products" +
+                    " WHEN new.quantity != old.quantity OR new.price_cents != old.price_cents" +
+                    " OR new.currency != old.currency BEGIN" +
+                    " UPDATE inventory_summary SET sku_count = sku_count - 1," +
+                    " total_units = total_units - old.quantity," +
+                    " total_value_cents = total_value_cents - old.quantity * old.price_cents," +
+                    " out_of_stock_count = out_of_stock_count - (old.quantity = 0)," +
+                    " low_stock_count = low_stock_count - EXISTS (SELECT 1 FROM reorder_rules" +
+                    " WHERE product_id = old._id AND old.quantity <= threshold)" +
+                    " WHERE currency = old.currency;" +
+                    " INSERT OR IGNORE INTO inventory_summary (currency) VALUES (new.currency);" +
+                    " UPDATE inventory_summary SET sku_count = sku_count + 1," +
+                    " total_units = total_units + new.quantity," +
+                    " total_value_cents = total_value_cents + new.quantity * new.price_cents," +
+                    " out_of_stock_count = out_of_stock_count + (new.quantity = 0)," +
+                    " low_stock_count = low_stock_count + EXISTS (SELECT 1 FROM reorder_rules" +
+                    " WHERE product_id = new._id AND new.quantity <= threshold)" +
+                    " WHERE currency = new.currency;" +
+                    " DELETE FROM inventory_summary WHERE currency = old.currency AND sku_count = 0;" +
+                    " END;");
+
+            // Before the delete, because low_stock_product_delete removes the rule of the product
+            // after it. The rule trigger below then finds no product and changes nothing.
+            db.execSQL("CREATE TRIGGER inventory_summary_delete BEFORE DELETE ON products BEGIN" +
+                    " UPDATE inventory_summary SET sku_count = sku_count - 1," +
+                    " total_units = total_units - old.quantity," +
+                    " total_value_cents = total_value_cents - old.quantity * old.price_cents," +
+                    " out_of_stock_count = out_of_stock_count - (old.quantity = 0)," +
+                    " low_stock_count = low_stock_count - EXISTS (SELECT 1 FROM reorder_rules" +
+                    " WHERE product_id = old._id AND old.quantity <= threshold)" +
+                    " WHERE currency = old.currency;" +
+                    " DELETE FROM inventory_summary WHERE currency = old.currency AND sku_count = 0;" +
+                    " END;");
+
+            // A rule that was added, changed or removed can make its product low on stock or not
+            db.execSQL("CREATE TRIGGER inventory_summary_rule_insert AFTER INSERT ON reorder_rules BEGIN" +
+                    " UPDATE inventory_summary SET low_stock_count = low_stock_count + 1" +
+                    " WHERE currency = (SELECT currency FROM products" +
+                    " WHERE _id = new.product_id AND quantity <= new.threshold); END;");
+            db.execSQL("CREATE TRIGGER inventory_summary_rule_update AFTER UPDATE OF threshold ON reorder_rules" +
+                    " BEGIN UPDATE inventory_summary SET low_stock_count = low_stock_count +" +
+                    " (SELECT (quantity <= new.threshold) - (quantity <= old.threshold) FROM products" +
+                    " WHERE _id = new.product_id)" +
+                    " WHERE currency = (SELECT currency FROM products WHERE _id = new.product_id); END;");
+            db.execSQL("CREATE TRIGGER inventory_summary_rule_delete AFTER DELETE ON reorder_rules BEGIN" +
+                    " UPDATE inventory_summary SET low_stock_count = low_stock_count - 1" +
+                    " WHERE currency = (SELECT currency FROM products" +
+                    " WHERE _id = old.product_id AND quantity <= old.threshold); END;");
+        }
+    };
+
+    // Version 10 adds the SKU or EAN code of the products. The unique index finds a product
+    // by its code with one lookup, and makes sure two products can not have the same code.
+    // Products without a code have null, which the unique index allows more than once.
+    static final Migration MIGRATION_9_10 = new Migration(9, 10) {
+        @Override
+        public void migrate(SQLiteDatabase db) {
+            addColumn(db, "products", "sku TEXT");
+            db.execSQL("CREATE UNIQUE INDEX products_sku_index ON products (sku);");
+        }
+    };
+
+    // Version 11 adds the locations and the stock of every product per location. The quantity
+    // of the product stays the total, so the list reads one column instead of adding up the
+    // locations. The triggers count every change of that total at the main location, so the
+    // writes that do not know about locations keep both in step; transfers change only the stock.
+    // The check of the stock makes a change fail if the main location does not have the units.
+    static final Migration MIGRATION_10_11 = new Migration(10, 11) {
+        @Override
+        public void migrate(SQLiteDatabase db) {
+            db.execSQL("CREATE TABLE locations (_id INTEGER PRIMARY KEY AUTOINCREMENT," +
+                    "location_name TEXT NOT NULL UNIQUE);");
+            db.execSQL("INSERT INTO locations (_id, location_name) VALUES (1, 'Main stockroom');");
+
+            // The primary key finds the stock of a product, the second index the stock of a location
+            db.execSQL("CREATE TABLE product_stock (" +
+                    "product_id INTEGER NOT NULL REFERENCES products (_id) ON DELETE CASCADE," +
+                    "location_id INTEGER NOT NULL REFERENCES locations (_id)," +
+                    "quantity INTEGER NOT NULL DEFAULT 0 CHECK (quantity >= 0)," +
+                    "PRIMARY KEY (product_id, location_id));");
+            db.execSQL("CREATE INDEX product_stock_location_index ON product_stock (location_id, product_id);");
+            db.execSQL("INSERT INTO product_stock (product_id, location_id, quantity)" +
+                    " SELECT _id, 1, quantity FROM products;");
+
+            db.execSQL("CREATE TRIGGER product_stock_insert AFTER INSERT ON products BEGIN" +
+                    " INSERT INTO product_stock (product_id, location_id, quantity)" +
+                    " VALUES (new._id, 1, new.quantity); END;");
+            db.execSQL("CREATE TRIGGER product_stock_update AFTER UPDATE OF quantity ON products" +
+                    " WHEN new.quantity != old.quantity BEGIN" +
+                    " UPDATE product_stock SET quantity = quantity + new.quantity - old.quantity" +
+                    " WHERE product_id = new._id AND location_id = 1; END;");
+
+            db.execSQL("CREATE VIEW stock_totals AS SELECT product_id, SUM(quantity) AS total_quantity" +
+                    " FROM product_stock GROUP BY product_id;");
+        }
+    };
+
+    // Version 12 deletes the products softly: a delete only sets deleted_at, which is one write
+    // per product without touching the search table, the stock or the ledger, and can be undone.
+    // The purge removes the rows later, in the background. A product that is deleted softly
+    // leaves the summary and its alert, and comes back to them when it is restored,
+    // so the purge does not take it out of the summary a second time.
+    static final Migration MIGRATION_11_12 = new Migration(11, 12) {
+        @Override
+        public void migrate(SQLiteDatabase db) {
+            addColumn(db, "products", "deleted_at INTEGER");
+
+            // The purge finds the old deleted products through the index. SQLite of API 15
+            // has no partial indexes, so the products that are not deleted are in it too.
+            db.execSQL("CREATE INDEX products_deleted_index ON products (deleted_at);");
+
+            db.execSQL("DROP TRIGGER inventory_summary_delete;");
+            db.execSQL("CREATE TRIGGER inventory_summary_delete BEFORE DELETE ON products" +
+                    " WHEN old.deleted_at IS NULL BEGIN" +
+                    " UPDATE inventory_summary SET sku_count = sku_count - 1," +
+                    " total_units = total_units - old.quantity," +
+                    " total_value_cents = total_value_cents - old.quantity * old.price_cents," +
+                    " out_of_stock_count = out_of_stock_count - (old.quantity = 0)," +
+                    " low_stock_count = low_stock_count - EXISTS (SELECT 1 FROM reorder_rules" +
+                    " WHERE product_id = old._id AND old.quantity <= threshold)" +
+                    " WHERE currency = old.currency;" +
+                    " DELETE FROM inventory_summary WHERE currency = old.currency AND sku_count = 0;" +
+                    " END;");
+
+            db.execSQL("CREATE TRIGGER inventory_summary_soft_delete AFTER UPDATE OF deleted_at ON products" +
+                    " WHEN old.deleted_at IS NULL AND new.deleted_at IS NOT NULL BEGIN" +
+                    " UPDATE inventory_summary SET sku_count = sku_count - 1," +
+                    " total_units = total_units - old.quantity," +
+                    " total_value_cents = total_value_cents - old.quantity * old.price_cents," +
+                    " out_of_stock_count = out_of_stock_count - (old.quantity = 0)," +
+                    " low_stock_count = low_stock_count - EXISTS (SELECT 1 FROM reorder_rules" +
+                    " WHERE product_id = old._id AND old.quantity <= threshold)" +
+                    " WHERE currency = old.currency;" +
+                    " DELETE FROM inventory_summary WHERE currency = old.currency AND sku_count = 0;" +
+                    " DELETE FROM low_stock_alerts WHERE product_id = old._id;" +
+                    " END;");
+            db.execSQL("CREATE TRIGGER inventory_summary_restore AFTER UPDATE OF deleted_at ON products" +
+                    " WHEN old.deleted_at IS NOT NULL AND new.deleted_at IS NULL BEGIN" +
+                    " INSERT OR IGNORE INTO inventory_summary (currency) VALUES (new.currency);" +
+                    " UPDATE inventory_summary SET sku_count = sku_count + 1," +
+                    " total_units = total_units + new.quantity," +
+                    " total_value_cents = total_value_cents + new.quantity * new.price_cents," +
+                    " out_of_stock_count = out_of_stock_count + (new.quantity = 0)," +
+                    " low_stock_count = low_stock_count + EXISTS (SELECT 1 FROM reorder_rules" +
+                    " WHERE product_id = new._id AND new.quantity <= threshold)" +
+                    " WHERE currency = new.currency;" +
+                    " INSERT OR IGNORE INTO low_stock_alerts (product_id, quantity, threshold)" +
+                    " SELECT new._id, new.quantity, threshold FROM reorder_rules" +
+                    " WHERE product_id = new._id AND new.quantity <= threshold;" +
+                    " END;");
+        }
+    };
+
+    // Version 13 frees the codes of the deleted products, so new products can use them.
+    // SQLite of API 15 has no partial indexes, so the unique index can not skip the deleted
+    // products: their codes are moved into deleted_sku instead, until they are restored.
+    static final Migration MIGRATION_12_13 = new Migration(12, 13) {
+        @Override
+        public void migrate(SQLiteDatabase db) {
+            addColumn(db, "products", "deleted_sku TEXT");
+            db.execSQL("UPDATE products SET deleted_sku = sku, sku = NULL" +
+                    " WHERE deleted_at IS NOT NULL AND sku IS NOT NULL;");
+        }
+    };
+
+    // All of the migrations, in order of their versions
+    static final Migration[] ALL = {
+            MIGRATION_1_2,
+            MIGRATION_2_3,
+            MIGRATION_3_4,
+            MIGRATION_4_5,
+            MIGRATION_5_6,
+            MIGRATION_6_7,
+            MIGRATION_7_8,
+            MIGRATION_8_9,
+            MIGRATION_9_10,
+            MIGRATION_10_11,
+            MIGRATION_11_12,
+            MIGRATION_12_13
+    };
+
+    // Preventing someone from accidentally instantiating this class
+    private ProductMigrations() {
+    }
+
+    /**
+     * Runs the migrations from the old version to the new version, each in a transaction nested
+     * in the transaction of the upgrade. If a migration fails, the whole upgrade is rolled back
+     * and the database keeps its old version and its data.
+     *
+     * @return how long each migration took in milliseconds, in the order they were run
+     * @throws IllegalStateException if there is no migration for one of the versions
+     */
+    public static Map<String, Long> migrate(SQLiteDatabase db, int oldVersion, int newVersion) {
+        Map<String, Long> timings = new LinkedHashMap<>();
+        long upgradeStart = SystemClock.elapsedRealtime();
+
+        int version = oldVersion;
+        while (version < newVersion) {
+            Migration migration = find(version);
+            if (migration == null || migration.endVersion > newVersion) {
+                throw new IllegalStateException("No migration from version " + version +
+                        " to " + newVersion + " of the database");
+            }
+
+            long start = SystemClock.elapsedRealtime();
+            db.beginTransaction();
+            try {
+                migration.migrate(db);
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+            long duration = SystemClock.elapsedRealtime() - start;
+
+            timings.put(migration.toString(), duration);
+            Log.i(LOG_TAG, migration + " took " + duration + " ms");
+            version = migration.endVersion;
+        }
+
+        long total = SystemClock.elapsedRealtime() - upgradeStart;
+        if (total > STARTUP_BUDGET_MILLIS) {
+            Log.w(LOG_TAG, "Upgrade from version " + oldVersion + " to " + newVersion + " took " +
+                    total + " ms, over the startup budget of " + STARTUP_BUDGET_MILLIS + " ms");
+        }
+        return timings;
+    }
+
+    // Returns the migration that starts from the version, or null if there is none
+    private static Migration find(int startVersion) {
+        for (Migration migration : ALL) {
+            if (migration.startVersion == startVersion) {
+                return migration;
+            }
+        }
+        return null;
+    }
+}
@@ -1,17 +1,45 @@
 package com.example.user.inventoryapp.data;
 
 import android.content.ContentProvider;
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
 import android.content.ContentUris;
 import android.content.ContentValues;
+import android.content.OperationApplicationException;
 import android.content.UriMatcher;
 import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.MatrixCursor;
+import android.database.sqlite.SQLiteConstraintException;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteQueryBuilder;
+import android.database.sqlite.SQLiteStatement;
 import android.net.Uri;
-
+import android.os.Bundle;
+import android.support.annotation.VisibleForTesting;
+
+import com.example.user.inventoryapp.alerts.LowStockAlerts;
+import com.example.user.inventoryapp.data.ProductContract.DailyStockEntry;
+import com.example.user.inventoryapp.data.ProductContract.LocationEntry;
+import com.example.user.inventoryapp.data.ProductContract.LowStockAlertEntry;
+import com.example.user.inventoryapp.data.ProductContract.PendingDeltaEntry;
 import com.example.user.inventoryapp.data.ProductContract.ProductEntry;
-
+import com.example.user.inventoryapp.data.ProductContract.ReorderRuleEntry;
+import com.example.user.inventoryapp.data.ProductContract.StockEntry;
+import com.example.user.inventoryapp.data.ProductContract.StockMovementEntry;
+import com.example.user.inventoryapp.data.ProductContract.SummaryEntry;
+import com.example.user.inventoryapp.data.ProductContract.SupplierEntry;
+import com.example.user.inventoryapp.purge.ProductPurge;
+
+import android.text.TextUtils;
 import android.util.Log;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+
 /**
  * Created by Alexander Rashkov on 10.07.17.
  */
@@ -21,12 +49,54 @@ public class ProductProvider extends ContentProvider {
     // Tag for the log messages
     public static final String LOG_TAG = ProductProvider.class.getSimpleName();
 
+    // A batch that changed more URIs than this notifies only the list and all of the products
+    private static final int MAX_BATCH_NOTIFICATIONS = 100;
+
     // URI matcher code for the content URI for the products table
     private static final int PRODUCTS = 100;
 
     // URI matcher code for the content URI for a single product in the products table
     private static final int PRODUCT_ID = 101;
 
+    // URI matcher code for the content URI that adjusts the quantity of a single product
+    private static final int PRODUCT_ADJUST = 102;
+
+    // URI matcher code for the content URI that searches the products
+    private static final int PRODUCT_SEARCH = 103;
+
+    // URI matcher code for the content URI of the units sold per product
+    private static final int PRODUCT_SALES = 104;
+
+    // URI matcher code for the content URI of the units sold per day
+    private static final int DAILY_SALES = 105;
+
+    // URI matcher code for the content URI of the restock orders
+    private static final int PRODUCT_RESTOCK = 106;
+
+    // URI matcher code for the content URI of a single product found by its code
+    private static final int PRODUCT_SKU = 107;
+
+    // URI matcher codes for the stock of a single product per location,
+    // and for moving units of a single product between locations
+    private static final int PRODUCT_STOCK = 108;
+    private static final int PRODUCT_TRANSFER = 109;
+
+    // URI matcher code for the total stock of every product, added up from its locations
+    private static final int PRODUCT_TOTALS = 110;
+
+    // URI matcher codes for the suppliers, a single supplier and the products of a supplier
+    private static final int SUPPLIERS = 200;
+    private static final int SUPPLIER_ID = 201;
+    private static final int SUPPLIER_PRODUCTS = 202;
+
+    // URI matcher code for the summary of the inventory
+    private static final int SUMMARY = 300;
+
+    // URI matcher codes for the locations, a single location and the stock at a location
+    private static final int LOCATIONS = 400;
+    private static final int LOCATION_ID = 401;
+    private static final int LOCATION_STOCK = 402;
+
     /**
      * UriMatcher object to match a content URI to a corresponding code.
      * The input passed into the constructor represents the code to return for the root URI.
@@ -42,13 +112,121 @@ public class ProductProvider extends ContentProvider {
         // Code for the whole table selected
         sUriMatcher.addURI(ProductContract.CONTENT_AUTHORITY, ProductContract.PATH_PRODUCTS, PRODUCTS);
 
+        // Code for the full-text search of the products
+        sUriMatcher.addURI(ProductContract.CONTENT_AUTHORITY,
+                ProductContract.PATH_PRODUCTS + "/" + ProductContract.PATH_SEARCH, PRODUCT_SEARCH);
+
+        // Codes for the units sold, per product and per day
+        sUriMatcher.addURI(ProductContract.CONTENT_AUTHORITY,
+                ProductContract.PATH_PRODUCTS + "/" + ProductContract.PATH_SALES, PRODUCT_SALES);
+        sUriMatcher.addURI(ProductContract.CONTENT_AUTHORITY,
+                ProductContract.PATH_PRODUCTS + "/" + ProductContract.PATH_SALES + "/" +
+                        ProductContract.PATH_DAILY, DAILY_SALES);
+
+        // Code for the restock orders, grouped by supplier
+        sUriMatcher.addURI(ProductContract.CONTENT_AUTHORITY,
+                ProductContract.PATH_PRODUCTS + "/" + ProductContract.PATH_RESTOCK, PRODUCT_RESTOCK);
+
+        // Code for a single product found by its SKU or EAN code
+        sUriMatcher.addURI(ProductContract.CONTENT_AUTHORITY,
+                ProductContract.PATH_PRODUCTS + "/" + ProductContract.PATH_SKU + "/*", PRODUCT_SKU);
+
         // Code for a single product (row) selected
         sUriMatcher.addURI(ProductContract.CONTENT_AUTHORITY, ProductContract.PATH_PRODUCTS + "/#", PRODUCT_ID);
+
+        // Code for adjusting the quantity of a single product
+        sUriMatcher.addURI(ProductContract.CONTENT_AUTHORITY,
+                ProductContract.PATH_PRODUCTS + "/#/" + ProductContract.PATH_ADJUST, PRODUCT_ADJUST);
+
+        // Codes for the stock of a single product per location, and for moving it between them
+        sUriMatcher.addURI(ProductContract.CONTENT_AUTHORITY,
+                ProductContract.PATH_PRODUCTS + "/#/" + ProductContract.PATH_STOCK, PRODUCT_STOCK);
+        sUriMatcher.addURI(ProductContract.CONTENT_AUTHORITY,
+                ProductContract.PATH_PRODUCTS + "/#/" + ProductContract.PATH_TRANSFER, PRODUCT_TRANSFER);
+
+        // Code for the total stock of every product
+        sUriMatcher.addURI(ProductContract.CONTENT_AUTHORITY,
+                ProductContract.PATH_PRODUCTS + "/" + ProductContract.PATH_STOCK, PRODUCT_TOTALS);
+
+        // Codes for the suppliers, a single supplier and the products of a single supplier
+        sUriMatcher.addURI(ProductContract.CONTENT_AUTHORITY, ProductContract.PATH_SUPPLIERS, SUPPLIERS);
+        sUriMatcher.addURI(ProductContract.CONTENT_AUTHORITY, ProductContract.PATH_SUPPLIERS + "/#", SUPPLIER_ID);
+        sUriMatcher.addURI(ProductContract.CONTENT_AUTHORITY,
+                ProductContract.PATH_SUPPLIERS + "/#/" + ProductContract.PATH_PRODUCTS, SUPPLIER_PRODUCTS);
+
+        // Code for the summary of the inventory
+        sUriMatcher.addURI(ProductContract.CONTENT_AUTHORITY, ProductContract.PATH_SUMMARY, SUMMARY);
+
+        // Codes for the locations, a single location and the products on stock at a location
+        sUriMatcher.addURI(ProductContract.CONTENT_AUTHORITY, ProductContract.PATH_LOCATIONS, LOCATIONS);
+        sUriMatcher.addURI(ProductContract.CONTENT_AUTHORITY, ProductContract.PATH_LOCATIONS + "/#", LOCATION_ID);
+        sUriMatcher.addURI(ProductContract.CONTENT_AUTHORITY,
+                ProductContract.PATH_LOCATIONS + "/#/" + ProductContract.PATH_STOCK, LOCATION_STOCK);
+    }
+
+    // The columns of the products table
+    private static final String[] PRODUCT_COLUMNS = {
+            ProductEntry._ID,
+            ProductEntry.COLUMN_PRODUCT_NAME,
+            ProductEntry.COLUMN_PRODUCT_QUANTITY,
+            ProductEntry.COLUMN_PRODUCT_PRICE_CENTS,
+            ProductEntry.COLUMN_PRODUCT_CURRENCY,
+            ProductEntry.COLUMN_PRODUCT_PHOTO_URI,
+            ProductEntry.COLUMN_PRODUCT_SKU,
+            ProductEntry.COLUMN_SUPPLIER_ID};
+
+    // Maps the columns of the products to the products table, and the name and the e-mail
+    // of the supplier to the suppliers table, which is joined with the products
+    private static final HashMap<String, String> sProductProjectionMap = new HashMap<>();
+
+    // Maps the columns of the products for the search query, which joins the products with
+    // the search table. The search table already has the name and the e-mail of the supplier.
+    private static final HashMap<String, String> sSearchProjectionMap = new HashMap<>();
+
+    // Maps the columns of a single product, which is also joined with its reorder rule
+    private static final HashMap<String, String> sProductDetailProjectionMap = new HashMap<>();
+
+    // The most products that are kept in the cache of single products
+    private static final int MAX_CACHED_PRODUCTS = 64;
+
+    // The products that were not deleted. The queries and the updates of the products see only them.
+    private static final String NOT_DELETED =
+            ProductEntry.TABLE_NAME + "." + ProductEntry.COLUMN_DELETED_AT + " IS NULL";
+
+    // The number of deleted products the purge removes per transaction
+    private static final int PURGE_CHUNK_SIZE = 500;
+
+    static {
+        for (String column : PRODUCT_COLUMNS) {
+            sProductProjectionMap.put(column, ProductEntry.TABLE_NAME + "." + column + " AS " + column);
+        }
+        sSearchProjectionMap.putAll(sProductProjectionMap);
+        for (String column : new String[]{ProductEntry.COLUMN_SUPPLIER_NAME, ProductEntry.COLUMN_SUPPLIER_EMAIL}) {
+            sProductProjectionMap.put(column, SupplierEntry.TABLE_NAME + "." + column + " AS " + column);
+            sSearchProjectionMap.put(column, ProductEntry.SEARCH_TABLE_NAME + "." + column + " AS " + column);
+        }
+
+        sProductDetailProjectionMap.putAll(sProductProjectionMap);
+        sProductDetailProjectionMap.put(ProductEntry.COLUMN_REORDER_THRESHOLD, ReorderRuleEntry.TABLE_NAME + "." +
+                ReorderRuleEntry.COLUMN_THRESHOLD + " AS " + ProductEntry.COLUMN_REORDER_THRESHOLD);
     }
 
     // Database helper that will provide us access to the database
     private ProductDbHelper mDbHelper;
 
+    // While a batch (bulkInsert or applyBatch) is running on a thread, the change notifications
+    // are collected here and sent once after the transaction is committed, instead of once per row
+    private final ThreadLocal<Set<Uri>> mBatchNotifications = new ThreadLocal<>();
+
+    // True while a check of the low stock alerts is scheduled and has not taken them yet,
+    // so a burst of sales schedules it only once
+    private final AtomicBoolean mLowStockCheckScheduled = new AtomicBoolean();
+
+    // The single products that were read last, with all of their columns
+    private final ProductRowCache mRowCache = new ProductRowCache(
+            sProductDetailProjectionMap.keySet().toArray(new String[sProductDetailProjectionMap.size()]),
+            MAX_CACHED_PRODUCTS);
+
     /**
      * Initialize the provider and the database helper object.
      */
@@ -59,6 +237,15 @@ public class ProductProvider extends ContentProvider {
         return true;
     }
 
+    /**
+     * Replaces the database helper, so that tests can run the provider against their own database.
+     */
+    @VisibleForTesting
+    public void setDbHelper(ProductDbHelper dbHelper) {
+        mDbHelper = dbHelper;
+        mRowCache.clear();
+    }
+
     /**
      * Perform the query for the given URI. Use the given projection, selection, selection arguments, and sort order.
      */
@@ -80,20 +267,187 @@ public class ProductProvider extends ContentProvider {
             // If the passed Uri matches the PRODUCTS int, then query all items from the database
             // Perform the query for the whole table and return the cursor object containing the data
             case PRODUCTS:
-                cursor = database.query(ProductEntry.TABLE_NAME, projection, selection, selectionArgs,
-                        null, null, sortOrder);
+                // If a limit is given, read only one page of the products
+                if (uri.getQueryParameter(ProductEntry.QUERY_PARAM_LIMIT) != null) {
+                    cursor = queryPage(database, uri, projection, selection, selectionArgs);
+                    break;
+                }
+
+                cursor = productQuery(projection, selection, false)
+                        .query(database, projection, selection, selectionArgs, null, null, sortOrder);
                 break;
 
             // If the passed Uri matches the PRODUCT_ID int, then query only a single row from the database
             case PRODUCT_ID:
 
                 // Extract out the ID of the requested row from the URI
-                selection = ProductEntry._ID + "=?";
-                selectionArgs = new String[]{String.valueOf(ContentUris.parseId(uri))};
+                long productId = ContentUris.parseId(uri);
+                selection = ProductEntry.TABLE_NAME + "." + ProductEntry._ID + "=?";
+                selectionArgs = new String[]{String.valueOf(productId)};
+
+                // Perform the query on the table where "selection" contains the ID of the row requested.
+                // The product is joined with its supplier and its reorder rule, if it has them.
+                // The columns of a single product are cached, so only the first read goes to the database.
+                if (mRowCache.hasColumns(projection)) {
+                    cursor = queryCachedProduct(database, productId, projection, selection, selectionArgs);
+                } else {
+                    cursor = productQuery(projection, selection, true)
+                            .query(database, projection, selection, selectionArgs, null, null, sortOrder);
+                }
+
+                // A single product is notified through its own change URI
+                uri = ProductEntry.buildChangeUri(productId);
+                break;
+
+            // If the passed Uri matches PRODUCT_SKU, then find the product through the unique
+            // index of the codes, and read it like a single product, from the cache if it is there
+            case PRODUCT_SKU:
+                String sku = ProductValidator.normalizeSku(uri.getLastPathSegment());
+                long skuProductId = sku == null ? -1 : findProductBySku(database, sku);
+                if (skuProductId == -1) {
+                    // A product with the code may be added or given the code later
+                    cursor = new MatrixCursor(projection != null ? projection : mRowCache.getColumns(), 0);
+                    uri = ProductEntry.CHANGES_URI;
+                    break;
+                }
+
+                selection = ProductEntry.TABLE_NAME + "." + ProductEntry._ID + "=?";
+                selectionArgs = new String[]{String.valueOf(skuProductId)};
+                if (mRowCache.hasColumns(projection)) {
+                    cursor = queryCachedProduct(database, skuProductId, projection, selection, selectionArgs);
+                } else {
+                    cursor = productQuery(projection, selection, true)
+                            .query(database, projection, selection, selectionArgs, null, null, sortOrder);
+                }
+                uri = ProductEntry.buildChangeUri(skuProductId);
+                break;
+
+            // If the passed Uri matches the PRODUCT_SEARCH int, then query the products
+            // that contain the searched words, using the full-text index
+            case PRODUCT_SEARCH:
+                cursor = querySearch(database, uri, projection);
+
+                // The results change when any product is inserted, updated or deleted
+                uri = ProductEntry.CONTENT_URI;
+                break;
+
+            // If the passed Uri matches PRODUCT_SALES or DAILY_SALES, then sum the units sold
+            // from the daily rollups, which has one row per day instead of one per sale
+            case PRODUCT_SALES:
+            case DAILY_SALES:
+                cursor = querySales(database, uri, match == PRODUCT_SALES, selection, selectionArgs);
+
+                // Every sale is notified on the change URI of its product
+                uri = ProductEntry.CHANGES_URI;
+                break;
+
+            // If the passed Uri matches PRODUCT_RESTOCK, then group the products to restock
+            // by their supplier, so there is one order per supplier
+            case PRODUCT_RESTOCK:
+                cursor = queryRestock(database, uri);
+
+                // Every change of a quantity or of a threshold is notified on the change URI
+                // of its product, and inserts and deletes too
+                uri = ProductEntry.CHANGES_URI;
+                break;
+
+            // If the passed Uri matches SUPPLIERS, then query the suppliers, sorted by name
+            case SUPPLIERS:
+                cursor = database.query(SupplierEntry.TABLE_NAME, projection, selection, selectionArgs,
+                        null, null, sortOrder != null ? sortOrder :
+                                SupplierEntry.COLUMN_SUPPLIER_NAME + " COLLATE NOCASE");
+                uri = SupplierEntry.CONTENT_URI;
+                break;
+
+            // If the passed Uri matches SUPPLIER_ID, then query only a single supplier
+            case SUPPLIER_ID:
+                cursor = database.query(SupplierEntry.TABLE_NAME, projection, SupplierEntry._ID + "=?",
+                        new String[]{String.valueOf(ContentUris.parseId(uri))}, null, null, sortOrder);
+                uri = SupplierEntry.CONTENT_URI;
+                break;
+
+            // If the passed Uri matches SUPPLIER_PRODUCTS, then query the products of the supplier,
+            // which are found through the index of supplier_id
+            case SUPPLIER_PRODUCTS:
+                selection = DatabaseUtils.concatenateWhere(
+                        ProductEntry.TABLE_NAME + "." + ProductEntry.COLUMN_SUPPLIER_ID + " = ?", selection);
+                selectionArgs = DatabaseUtils.appendSelectionArgs(
+                        new String[]{uri.getPathSegments().get(1)}, selectionArgs);
+                cursor = productQuery(projection, selection, false)
+                        .query(database, projection, selection, selectionArgs, null, null, sortOrder);
+
+                // The products of the supplier change with any product
+                uri = ProductEntry.CHANGES_URI;
+                break;
+
+            // If the passed Uri matches SUMMARY, then read the totals that the triggers keep,
+            // one row per currency, instead of adding up the products
+            case SUMMARY:
+                cursor = database.query(SummaryEntry.TABLE_NAME, projection, selection, selectionArgs,
+                        null, null, sortOrder != null ? sortOrder : SummaryEntry.COLUMN_CURRENCY);
+
+                // The summary is notified on its own, only by the writes that change the totals
+                uri = SummaryEntry.CONTENT_URI;
+                break;
 
-                // Perform the query on the table where "selection" contains the ID of the row requested
-                cursor = database.query(ProductEntry.TABLE_NAME, projection, selection, selectionArgs,
-                        null, null, sortOrder);
+            // If the passed Uri matches PRODUCT_STOCK, then read the stock of the product
+            // at every location, through the primary key of the stock
+            case PRODUCT_STOCK:
+                long stockProductId = Long.parseLong(uri.getPathSegments().get(1));
+                cursor = database.rawQuery("SELECT " + LocationEntry.TABLE_NAME + "." + LocationEntry._ID + ", " +
+                        LocationEntry.COLUMN_LOCATION_NAME + ", IFNULL(" + StockEntry.TABLE_NAME + "." +
+                        StockEntry.COLUMN_QUANTITY + ", 0) AS " + StockEntry.COLUMN_QUANTITY +
+                        " FROM " + LocationEntry.TABLE_NAME + " LEFT JOIN " + StockEntry.TABLE_NAME +
+                        " ON " + StockEntry.COLUMN_LOCATION_ID + " = " + LocationEntry.TABLE_NAME + "." +
+                        LocationEntry._ID + " AND " + StockEntry.COLUMN_PRODUCT_ID + " = ?" +
+                        " ORDER BY " + LocationEntry.TABLE_NAME + "." + LocationEntry._ID,
+                        new String[]{String.valueOf(stockProductId)});
+
+                // Every change of the stock of the product is notified on its change URI
+                uri = ProductEntry.buildChangeUri(stockProductId);
+                break;
+
+            // If the passed Uri matches PRODUCT_TOTALS, then read the totals of the products
+            // that are not deleted from the view over the stock per location
+            case PRODUCT_TOTALS:
+                cursor = database.query(StockEntry.TOTALS_VIEW, projection,
+                        DatabaseUtils.concatenateWhere(selection, StockEntry.COLUMN_PRODUCT_ID + " IN (SELECT " +
+                                ProductEntry._ID + " FROM " + ProductEntry.TABLE_NAME + " WHERE " + NOT_DELETED + ")"),
+                        selectionArgs, null, null, sortOrder);
+
+                // The stock of any product could have changed
+                uri = ProductEntry.CHANGES_URI;
+                break;
+
+            // If the passed Uri matches LOCATION_STOCK, then read the products that are on stock
+            // at the location, through the index of the locations of the stock
+            case LOCATION_STOCK:
+                cursor = database.rawQuery("SELECT " + ProductEntry.TABLE_NAME + "." + ProductEntry._ID + ", " +
+                        ProductEntry.COLUMN_PRODUCT_NAME + ", " + StockEntry.TABLE_NAME + "." +
+                        StockEntry.COLUMN_QUANTITY + " FROM " + StockEntry.TABLE_NAME +
+                        " JOIN " + ProductEntry.TABLE_NAME + " ON " + ProductEntry.TABLE_NAME + "." +
+                        ProductEntry._ID + " = " + StockEntry.COLUMN_PRODUCT_ID +
+                        " WHERE " + StockEntry.COLUMN_LOCATION_ID + " = ? AND " + StockEntry.TABLE_NAME + "." +
+                        StockEntry.COLUMN_QUANTITY + " > 0 AND " + NOT_DELETED +
+                        " ORDER BY " + ProductEntry.COLUMN_PRODUCT_NAME + " COLLATE NOCASE",
+                        new String[]{uri.getPathSegments().get(1)});
+
+                // The stock of any product could have changed
+                uri = ProductEntry.CHANGES_URI;
+                break;
+
+            // If the passed Uri matches LOCATIONS, then query the locations, the main one first
+            case LOCATIONS:
+                cursor = database.query(LocationEntry.TABLE_NAME, projection, selection, selectionArgs,
+                        null, null, sortOrder != null ? sortOrder : LocationEntry._ID);
+                uri = LocationEntry.CONTENT_URI;
+                break;
+
+            // If the passed Uri matches LOCATION_ID, then query only a single location
+            case LOCATION_ID:
+                cursor = database.query(LocationEntry.TABLE_NAME, projection, LocationEntry._ID + "=?",
+                        new String[]{String.valueOf(ContentUris.parseId(uri))}, null, null, sortOrder);
+                uri = LocationEntry.CONTENT_URI;
                 break;
 
             // If the Uri do not match the templates throw an exception
@@ -110,6 +464,348 @@ public class ProductProvider extends ContentProvider {
         return cursor;
     }
 
+    /**
+     * Helper method that reads a single product from the cache, or from the database
+     * if it is not cached, and caches it. A product that does not exist is not cached.
+     */
+    private Cursor queryCachedProduct(SQLiteDatabase database, long id, String[] projection,
+                                      String selection, String[] selectionArgs) {
+        Cursor cached = mRowCache.get(id, projection);
+        if (cached != null) {
+            return cached;
+        }
+
+        // Read all of the cached columns, so any projection can be served next time
+        long generation = mRowCache.getGeneration();
+        String[] columns = mRowCache.getColumns();
+        Cursor cursor = productQuery(columns, selection, true)
+                .query(database, columns, selection, selectionArgs, null, null, null);
+        try {
+            if (cursor.moveToFirst()) {
+                return mRowCache.put(id, cursor, generation, projection);
+            }
+        } finally {
+            cursor.close();
+        }
+        return new MatrixCursor(projection != null ? projection : columns, 0);
+    }
+
+    // Returns the id of the product with the normalized code, which is found through
+    // the unique index of the codes, or -1 if no product has it
+    private static long findProductBySku(SQLiteDatabase database, String sku) {
+        Cursor cursor = database.query(ProductEntry.TABLE_NAME, new String[]{ProductEntry._ID},
+                ProductEntry.COLUMN_PRODUCT_SKU + "=? AND " + NOT_DELETED, new String[]{sku}, null, null, null);
+        try {
+            return cursor.moveToFirst() ? cursor.getLong(0) : -1;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Helper method that reads one page of products, using the keyset of the last row of the
+     * previous page instead of an OFFSET. This way every page costs the same,
+     * no matter how deep in the list it is, and rows are not skipped or repeated
+     * when other rows are inserted or deleted in the meantime.
+     * The sort order of the caller is ignored, the rows are sorted by the "sort" parameter and _id.
+     */
+    private Cursor queryPage(SQLiteDatabase database, Uri uri, String[] projection,
+                             String selection, String[] selectionArgs) {
+
+        // Check that the limit is a positive number
+        String limit = uri.getQueryParameter(ProductEntry.QUERY_PARAM_LIMIT);
+        try {
+            if (Integer.parseInt(limit) <= 0) {
+                throw new IllegalArgumentException("Query Exception! The limit must be positive: " + uri);
+            }
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Query Exception! The limit must be a number: " + uri);
+        }
+
+        // Sort by _id if no column is given, otherwise check that the column can be sorted by
+        String sortColumn = uri.getQueryParameter(ProductEntry.QUERY_PARAM_SORT);
+        if (sortColumn == null) {
+            sortColumn = ProductEntry._ID;
+        } else if (!isSortColumn(sortColumn)) {
+            throw new IllegalArgumentException("Query Exception! Cannot sort by " + sortColumn);
+        }
+
+        // The rows with the same value of the sort column are ordered by _id.
+        // The expression matches the index of the column, so the rows are read in index order.
+        // The columns are named with their table, because the suppliers may be joined.
+        String idColumn = ProductEntry.TABLE_NAME + "." + ProductEntry._ID;
+        String sortKey = sortExpression(sortColumn);
+        String sortOrder = sortColumn.equals(ProductEntry._ID)
+                ? idColumn
+                : sortKey + ", " + idColumn;
+
+        // Keep only the rows after the last row of the previous page
+        String afterKey = uri.getQueryParameter(ProductEntry.QUERY_PARAM_AFTER_KEY);
+        String afterId = uri.getQueryParameter(ProductEntry.QUERY_PARAM_AFTER_ID);
+        if (afterKey != null && afterId != null) {
+            if (sortColumn.equals(ProductEntry._ID)) {
+                selection = DatabaseUtils.concatenateWhere(selection, idColumn + " > ?");
+                selectionArgs = DatabaseUtils.appendSelectionArgs(selectionArgs, new String[]{afterId});
+            } else {
+                selection = DatabaseUtils.concatenateWhere(selection,
+                        sortKey + " > ? OR (" + sortKey + " = ? AND " + idColumn + " > ?)");
+                selectionArgs = DatabaseUtils.appendSelectionArgs(selectionArgs,
+                        new String[]{afterKey, afterKey, afterId});
+            }
+        }
+
+        return productQuery(projection, selection, false)
+                .query(database, projection, selection, selectionArgs, null, null, sortOrder, limit);
+    }
+
+    /**
+     * Helper method that prepares a query of the products. The suppliers are joined only
+     * if the name or the e-mail of the supplier is read or filtered by, so the list of the
+     * products does not pay for the join. Every supplier is found by its primary key.
+     *
+     * @param withReorderRules True to join the reorder rules too, for a single product
+     */
+    private static SQLiteQueryBuilder productQuery(String[] projection, String selection,
+                                                   boolean withReorderRules) {
+        String tables = ProductEntry.TABLE_NAME;
+        if (readsSupplier(projection, selection)) {
+            tables += " LEFT JOIN " + SupplierEntry.TABLE_NAME + " ON " + SupplierEntry.TABLE_NAME + "." +
+                    SupplierEntry._ID + " = " + ProductEntry.TABLE_NAME + "." + ProductEntry.COLUMN_SUPPLIER_ID;
+        }
+        if (withReorderRules) {
+            tables += " LEFT JOIN " + ReorderRuleEntry.TABLE_NAME + " ON " + ReorderRuleEntry.TABLE_NAME + "." +
+                    ReorderRuleEntry.COLUMN_PRODUCT_ID + " = " + ProductEntry.TABLE_NAME + "." + ProductEntry._ID;
+        }
+
+        SQLiteQueryBuilder builder = new SQLiteQueryBuilder();
+        builder.setTables(tables);
+        builder.setProjectionMap(withReorderRules ? sProductDetailProjectionMap : sProductProjectionMap);
+        builder.appendWhere(NOT_DELETED);
+        return builder;
+    }
+
+    // Returns true if the projection or the selection uses the name or the e-mail of the supplier.
+    // A null projection reads every column.
+    private static boolean readsSupplier(String[] projection, String selection) {
+        if (projection == null) {
+            return true;
+        }
+        for (String column : projection) {
+            if (column.equals(ProductEntry.COLUMN_SUPPLIER_NAME) || column.equals(ProductEntry.COLUMN_SUPPLIER_EMAIL)) {
+                return true;
+            }
+        }
+        return selection != null && (selection.contains(ProductEntry.COLUMN_SUPPLIER_NAME) ||
+                selection.contains(ProductEntry.COLUMN_SUPPLIER_EMAIL));
+    }
+
+    /**
+     * Helper method that searches the products through the full-text search table,
+     * so the search does not have to scan every row like LIKE '%text%' would.
+     * Every word of the text matches the words of the name, supplier or supplier's e-mail
+     * that start with it. The products whose name starts with the first word come first,
+     * then the ones whose name contains it, then the rest, each group sorted by name.
+     * The selection and sort order of the caller are ignored.
+     */
+    private Cursor querySearch(SQLiteDatabase database, Uri uri, String[] projection) {
+
+        String text = uri.getQueryParameter(ProductEntry.QUERY_PARAM_SEARCH);
+        if (text == null) {
+            throw new IllegalArgumentException("Query Exception! The search requires a text: " + uri);
+        }
+
+        String limit = uri.getQueryParameter(ProductEntry.QUERY_PARAM_LIMIT);
+        if (limit != null) {
+            try {
+                if (Integer.parseInt(limit) <= 0) {
+                    throw new IllegalArgumentException("Query Exception! The limit must be positive: " + uri);
+                }
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Query Exception! The limit must be a number: " + uri);
+            }
+        }
+
+        // Keep only letters and digits, so the text of the user can not break the MATCH syntax,
+        // and turn every word into a prefix query
+        String[] words = text.toLowerCase().split("[^\\p{L}\\p{N}]+");
+        StringBuilder match = new StringBuilder();
+        String firstWord = null;
+        for (String word : words) {
+            if (word.length() == 0) {
+                continue;
+            }
+            if (firstWord == null) {
+                firstWord = word;
+            }
+            if (match.length() > 0) {
+                match.append(' ');
+            }
+            match.append(word).append('*');
+        }
+
+        // Nothing to search for, so nothing is found
+        if (firstWord == null) {
+            return new MatrixCursor(projection != null ? projection : sSearchProjectionMap.keySet()
+                    .toArray(new String[sSearchProjectionMap.size()]));
+        }
+
+        SQLiteQueryBuilder builder = new SQLiteQueryBuilder();
+        builder.setTables(ProductEntry.TABLE_NAME + " JOIN " + ProductEntry.SEARCH_TABLE_NAME +
+                " ON " + ProductEntry.SEARCH_TABLE_NAME + ".docid = " +
+                ProductEntry.TABLE_NAME + "." + ProductEntry._ID);
+        builder.setProjectionMap(sSearchProjectionMap);
+        builder.appendWhere(NOT_DELETED);
+
+        String nameColumn = ProductEntry.TABLE_NAME + "." + ProductEntry.COLUMN_PRODUCT_NAME;
+        String sortOrder = "CASE WHEN " + nameColumn + " LIKE " +
+                DatabaseUtils.sqlEscapeString(firstWord + "%") + " THEN 0 WHEN " + nameColumn + " LIKE " +
+                DatabaseUtils.sqlEscapeString("%" + firstWord + "%") + " THEN 1 ELSE 2 END, " +
+                nameColumn + ", " + ProductEntry.TABLE_NAME + "." + ProductEntry._ID;
+
+        return builder.query(database, projection,
+                ProductEntry.SEARCH_TABLE_NAME + " MATCH ?", new String[]{match.toString()},
+                null, null, sortOrder, limit);
+    }
+
+    /**
+     * Helper method that sums the units sold in the last days, per product or per day,
+     * from the rollup tables. It reads one row per product and day, so the cost depends on
+     * the number of days and not on the number of sales in the ledger.
+     * The selection of the caller can filter the products, for example by product_id.
+     * The sales of the deleted products that can still be restored are left out.
+     */
+    private Cursor querySales(SQLiteDatabase database, Uri uri, boolean perProduct,
+                              String selection, String[] selectionArgs) {
+
+        // Check that the number of days is a positive number
+        String daysParameter = uri.getQueryParameter(ProductEntry.QUERY_PARAM_DAYS);
+        int days;
+        try {
+            days = Integer.parseInt(daysParameter);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Query Exception! The days must be a number: " + uri);
+        }
+        if (days <= 0) {
+            throw new IllegalArgumentException("Query Exception! The days must be positive: " + uri);
+        }
+
+        // The first day that is counted, today included
+        long today = System.currentTimeMillis() / DailyStockEntry.MILLIS_PER_DAY;
+        selection = DatabaseUtils.concatenateWhere(DailyStockEntry.COLUMN_DAY + " > ?", selection);
+        selectionArgs = DatabaseUtils.appendSelectionArgs(
+                new String[]{String.valueOf(today - days)}, selectionArgs);
+
+        if (perProduct) {
+            selection = DatabaseUtils.concatenateWhere(selection, DailyStockEntry.COLUMN_PRODUCT_ID +
+                    " IN (SELECT " + ProductEntry._ID + " FROM " + ProductEntry.TABLE_NAME +
+                    " WHERE " + NOT_DELETED + ")");
+            return database.query(DailyStockEntry.PRODUCT_TABLE_NAME,
+                    new String[]{DailyStockEntry.COLUMN_PRODUCT_ID + " AS " + ProductEntry._ID,
+                            "SUM(" + DailyStockEntry.COLUMN_UNITS_SOLD + ") AS " +
+                                    DailyStockEntry.COLUMN_UNITS_SOLD},
+                    selection, selectionArgs, DailyStockEntry.COLUMN_PRODUCT_ID, null,
+                    DailyStockEntry.COLUMN_UNITS_SOLD + " DESC");
+        }
+
+        // The totals of the store include every product, so the sales of the deleted products
+        // are taken out of them. There are only a few of those, found through their index,
+        // until they are purged and their sales stay part of the history of the store.
+        String deletedSales = "IFNULL((SELECT SUM(" + DailyStockEntry.PRODUCT_TABLE_NAME + "." +
+                DailyStockEntry.COLUMN_UNITS_SOLD + ") FROM " + ProductEntry.TABLE_NAME +
+                " JOIN " + DailyStockEntry.PRODUCT_TABLE_NAME + " ON " + DailyStockEntry.PRODUCT_TABLE_NAME +
+                "." + DailyStockEntry.COLUMN_PRODUCT_ID + " = " + ProductEntry.TABLE_NAME + "." +
+                ProductEntry._ID + " WHERE " + ProductEntry.TABLE_NAME + "." + ProductEntry.COLUMN_DELETED_AT +
+                " IS NOT NULL AND " + DailyStockEntry.PRODUCT_TABLE_NAME + "." + DailyStockEntry.COLUMN_DAY +
+                " = " + DailyStockEntry.TABLE_NAME + "." + DailyStockEntry.COLUMN_DAY + "), 0)";
+        return database.query(DailyStockEntry.TABLE_NAME,
+                new String[]{DailyStockEntry.COLUMN_DAY, DailyStockEntry.TABLE_NAME + "." +
+                        DailyStockEntry.COLUMN_UNITS_SOLD + " - " + deletedSales + " AS " +
+                        DailyStockEntry.COLUMN_UNITS_SOLD},
+                selection, selectionArgs, null, null, DailyStockEntry.COLUMN_DAY);
+    }
+
+    /**
+     * Helper method that computes the restock orders with one GROUP BY query: one row per
+     * supplier, with the number of products, the number of units and the order lines.
+     * Every product is filled up to twice its reorder threshold, and at least one unit is ordered.
+     * The products are the ones with the ids of the URI, or without ids, the ones at or below
+     * their reorder threshold, found through the reorder rules instead of scanning the products.
+     */
+    private Cursor queryRestock(SQLiteDatabase database, Uri uri) {
+
+        String products = ProductEntry.TABLE_NAME;
+        String rules = ReorderRuleEntry.TABLE_NAME;
+        String suppliers = SupplierEntry.TABLE_NAME;
+        String quantity = products + "." + ProductEntry.COLUMN_PRODUCT_QUANTITY;
+        String threshold = rules + "." + ReorderRuleEntry.COLUMN_THRESHOLD;
+
+        // The ids are parsed as numbers, so they can be part of the SQL
+        String selection;
+        String ids = uri.getQueryParameter(ProductEntry.QUERY_PARAM_IDS);
+        if (ids != null) {
+            StringBuilder idList = new StringBuilder();
+            for (String id : ids.split(",")) {
+                try {
+                    long productId = Long.parseLong(id.trim());
+                    if (idList.length() > 0) {
+                        idList.append(',');
+                    }
+                    idList.append(productId);
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("Query Exception! The ids must be numbers: " + uri);
+                }
+            }
+            selection = products + "." + ProductEntry._ID + " IN (" + idList + ")";
+        } else {
+            selection = quantity + " <= " + threshold;
+        }
+        selection = DatabaseUtils.concatenateWhere(selection, NOT_DELETED);
+
+        String suggested = "MAX(2 * IFNULL(" + threshold + ", " + ProductEntry.DEFAULT_REORDER_THRESHOLD +
+                ") - " + quantity + ", 1)";
+
+        SQLiteQueryBuilder builder = new SQLiteQueryBuilder();
+        builder.setTables(products + (ids != null ? " LEFT JOIN " : " JOIN ") + rules +
+                " ON " + rules + "." + ReorderRuleEntry.COLUMN_PRODUCT_ID + " = " +
+                products + "." + ProductEntry._ID + " LEFT JOIN " + suppliers +
+                " ON " + suppliers + "." + SupplierEntry._ID + " = " +
+                products + "." + ProductEntry.COLUMN_SUPPLIER_ID);
+
+        // The products without a supplier are one order, without a name and an e-mail
+        String[] columns = {
+                "MIN(" + products + "." + ProductEntry._ID + ") AS " + ProductEntry._ID,
+                "IFNULL(" + suppliers + "." + SupplierEntry.COLUMN_SUPPLIER_NAME + ", '') AS " +
+                        ProductEntry.COLUMN_SUPPLIER_NAME,
+                "IFNULL(" + suppliers + "." + SupplierEntry.COLUMN_SUPPLIER_EMAIL + ", '') AS " +
+                        ProductEntry.COLUMN_SUPPLIER_EMAIL,
+                "COUNT(*) AS " + ProductEntry.COLUMN_PRODUCT_COUNT,
+                "SUM(" + suggested + ") AS " + ProductEntry.COLUMN_ORDER_QUANTITY,
+                "GROUP_CONCAT(" + suggested + " || ' x ' || " + products + "." +
+                        ProductEntry.COLUMN_PRODUCT_NAME + ", '\n') AS " + ProductEntry.COLUMN_ORDER_LINES};
+
+        return builder.query(database, columns, selection, null,
+                products + "." + ProductEntry.COLUMN_SUPPLIER_ID, null,
+                ProductEntry.COLUMN_SUPPLIER_NAME + ", " + ProductEntry.COLUMN_SUPPLIER_EMAIL);
+    }
+
+    // Returns the expression the products are sorted by for the given column.
+    // Names are compared ignoring the case, like in the index of the name.
+    private static String sortExpression(String column) {
+        String tableColumn = ProductEntry.TABLE_NAME + "." + column;
+        if (column.equals(ProductEntry.COLUMN_PRODUCT_NAME)) {
+            return tableColumn + " COLLATE NOCASE";
+        }
+        return tableColumn;
+    }
+
+    // Returns true if the products can be sorted by the given column
+    private static boolean isSortColumn(String column) {
+        return column.equals(ProductEntry._ID) ||
+                column.equals(ProductEntry.COLUMN_PRODUCT_NAME) ||
+                column.equals(ProductEntry.COLUMN_PRODUCT_QUANTITY) ||
+                column.equals(ProductEntry.COLUMN_PRODUCT_PRICE_CENTS);
+    }
+
     /**
      * Insert data into the database
      */
@@ -124,6 +820,12 @@ public class ProductProvider extends ContentProvider {
                 // Calls the insertProduct helper method to insert data into the database
                 return insertProduct(uri, contentValues);
 
+            case SUPPLIERS:
+                return insertSupplier(contentValues);
+
+            case LOCATIONS:
+                return insertLocation(contentValues);
+
             // Or throw Illegal Exception
             default:
                 throw new IllegalArgumentException("Insertion is not supported for " + uri);
@@ -135,29 +837,58 @@ public class ProductProvider extends ContentProvider {
      */
     private Uri insertProduct(Uri uri, ContentValues values) {
 
-        // Check that the product name is not null. I think that extraction data from the input may result in
-        // inserting an "empty" string, which is different from null.
-        // That is why I also check for an "empty" string: length() == 0
-        String productName = values.getAsString(ProductEntry.COLUMN_PRODUCT_NAME);
-        if (productName == null || productName.length() == 0) {
-            throw new IllegalArgumentException("Insert Exception! Product requires a product name!");
+        // Check the name and the price, the other inputs have default values or can be empty
+        ProductValidator.validateNewProduct(values);
+
+        // The reorder threshold and the supplier are stored in their own tables
+        Integer threshold = values.getAsInteger(ProductEntry.COLUMN_REORDER_THRESHOLD);
+        String supplierName = values.getAsString(ProductEntry.COLUMN_SUPPLIER_NAME);
+        String supplierEmail = values.getAsString(ProductEntry.COLUMN_SUPPLIER_EMAIL);
+        values = new ContentValues(values);
+        values.remove(ProductEntry.COLUMN_REORDER_THRESHOLD);
+        values.remove(ProductEntry.COLUMN_SUPPLIER_NAME);
+        values.remove(ProductEntry.COLUMN_SUPPLIER_EMAIL);
+
+        // The price is in the currency of the device, if no other one was given
+        if (values.getAsString(ProductEntry.COLUMN_PRODUCT_CURRENCY) == null) {
+            values.put(ProductEntry.COLUMN_PRODUCT_CURRENCY, Prices.defaultCurrency());
         }
 
-        // Check that the price is not null or not a negative number
-        Float price = values.getAsFloat(ProductEntry.COLUMN_PRODUCT_PRICE);
-        if (price == null || price < 0) {
-            throw new IllegalArgumentException("Insert Exception! Product requires a price or a positive value!");
+        // The code is stored the way it is looked up. A code that another product already has
+        // fails the unique index, so the product is not inserted.
+        if (values.containsKey(ProductEntry.COLUMN_PRODUCT_SKU)) {
+            values.put(ProductEntry.COLUMN_PRODUCT_SKU,
+                    ProductValidator.normalizeSku(values.getAsString(ProductEntry.COLUMN_PRODUCT_SKU)));
         }
 
-        // No need to check other inputs because they have default values and
-        // "supplier name" and "suppliers e-mail" can have no values
-
         // Get writable database
         SQLiteDatabase database = mDbHelper.getWritableDatabase();
 
-        // Insert the new product with the given values
-        // Return long with the primary key value of the new row
-        long id = database.insert(ProductEntry.TABLE_NAME, null, values);
+        // Find or add the supplier, insert the new product, record its first quantity
+        // in the ledger and add its reorder rule, in one transaction
+        long id;
+        database.beginTransaction();
+        try {
+            if (supplierName != null || supplierEmail != null) {
+                putSupplierId(database, values, supplierName, supplierEmail);
+            }
+
+            // Insert the new product with the given values
+            // Return long with the primary key value of the new row
+            id = database.insert(ProductEntry.TABLE_NAME, null, values);
+
+            Integer quantity = values.getAsInteger(ProductEntry.COLUMN_PRODUCT_QUANTITY);
+            if (id != -1 && quantity != null && quantity != 0) {
+                recordMovement(database, id, quantity, StockMovementEntry.REASON_INITIAL);
+            }
+            if (id != -1 && threshold != null) {
+                writeReorderThreshold(database, threshold, ProductEntry._ID + "=?",
+                        new String[]{String.valueOf(id)});
+            }
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+        }
 
         // If the the primary key value is -1,
         // then the insertion failed. Log an error and return null.
@@ -166,8 +897,14 @@ public class ProductProvider extends ContentProvider {
             return null;
         }
 
-        // Notify all listeners that the data has changed for the product content URI
-        getContext().getContentResolver().notifyChange(uri, null);
+        // Notify all listeners that the data has changed for the product content URI,
+        // and that this product was inserted
+        notifyChange(uri);
+        notifyChange(ProductEntry.buildChangeUri(id, ProductEntry.CHANGE_INSERT));
+        notifyChange(SummaryEntry.CONTENT_URI);
+        if (threshold != null) {
+            scheduleLowStockCheck(database);
+        }
 
         // Once we know the primary key value (id) of the new row in the table,
         // append it to the uri argument and assign the appended uri to a new Uri variable
@@ -176,6 +913,140 @@ public class ProductProvider extends ContentProvider {
         return returnedUri;
     }
 
+    /**
+     * Insert many products at once. All rows are inserted in a single transaction,
+     * every row goes through the same validation as insertProduct(),
+     * and the listeners are notified only once at the end.
+     * If one of the rows is not valid, none of the rows are inserted.
+     */
+    @Override
+    public int bulkInsert(Uri uri, ContentValues[] valuesArray) {
+        final int match = sUriMatcher.match(uri);
+
+        // Bulk insert should work only for Uri prompting selection on the whole database
+        if (match != PRODUCTS) {
+            throw new IllegalArgumentException("Insertion is not supported for " + uri);
+        }
+
+        // Get writable database
+        SQLiteDatabase database = mDbHelper.getWritableDatabase();
+
+        // Count the rows that were inserted successfully
+        int rowsInserted = 0;
+
+        // Stays false if the transaction is rolled back, so that no one is notified
+        boolean successful = false;
+
+        beginBatch();
+        database.beginTransaction();
+        try {
+            for (ContentValues values : valuesArray) {
+                if (insertProduct(uri, values) != null) {
+                    rowsInserted++;
+                }
+            }
+            database.setTransactionSuccessful();
+            successful = true;
+        } finally {
+            database.endTransaction();
+            endBatch(successful);
+        }
+
+        // Do not let the big write stay in the log, where every reader has to look for it
+        mDbHelper.checkpoint();
+
+        return rowsInserted;
+    }
+
+    /**
+     * Apply a list of operations in a single transaction.
+     * Either all of the operations are applied, or none of them: an update that breaks
+     * a constraint fails the batch with an {@link OperationApplicationException}.
+     * Each changed Uri is notified only once, after the transaction is committed.
+     */
+    @Override
+    public ContentProviderResult[] applyBatch(ArrayList<ContentProviderOperation> operations)
+            throws OperationApplicationException {
+
+        // Get writable database
+        SQLiteDatabase database = mDbHelper.getWritableDatabase();
+
+        // Stays false if the transaction is rolled back, so that no one is notified
+        boolean successful = false;
+
+        beginBatch();
+        database.beginTransaction();
+        try {
+            // Every operation calls insert(), update() or delete() of this provider,
+            // which run inside the transaction started above
+            ContentProviderResult[] results = super.applyBatch(operations);
+            database.setTransactionSuccessful();
+            successful = true;
+            return results;
+        } catch (SQLiteConstraintException e) {
+            throw new OperationApplicationException("Failed to apply the operations: " + e.getMessage(), e);
+        } finally {
+            database.endTransaction();
+            endBatch(successful);
+        }
+    }
+
+    // Start collecting the change notifications of the current thread
+    private void beginBatch() {
+        mBatchNotifications.set(new LinkedHashSet<Uri>());
+    }
+
+    // Stop collecting the change notifications of the current thread
+    // and send each of them once, but only if the batch was committed
+    private void endBatch(boolean successful) {
+        Set<Uri> pendingNotifications = mBatchNotifications.get();
+        mBatchNotifications.remove();
+
+        if (successful && pendingNotifications != null) {
+            // After a large batch, like an import, the listeners query everything again anyway,
+            // so tell them once that everything changed, instead of once per row
+            if (pendingNotifications.size() > MAX_BATCH_NOTIFICATIONS) {
+                boolean summaryChanged = pendingNotifications.contains(SummaryEntry.CONTENT_URI);
+                pendingNotifications.clear();
+                pendingNotifications.add(ProductEntry.CONTENT_URI);
+                pendingNotifications.add(ProductEntry.CHANGES_URI);
+                if (summaryChanged) {
+                    pendingNotifications.add(SummaryEntry.CONTENT_URI);
+                }
+            }
+            for (Uri uri : pendingNotifications) {
+                invalidateCache(uri);
+                getContext().getContentResolver().notifyChange(uri, null);
+            }
+        }
+    }
+
+    // Notify all listeners that the data at the given URI has changed.
+    // If a batch is running, the notification is postponed until the end of the batch.
+    private void notifyChange(Uri uri) {
+        Set<Uri> pendingNotifications = mBatchNotifications.get();
+
+        // The cache is invalidated again when the batch is committed, so a row read by
+        // another thread before the commit does not stay in it
+        invalidateCache(uri);
+        if (pendingNotifications != null) {
+            pendingNotifications.add(uri);
+        } else {
+            getContext().getContentResolver().notifyChange(uri, null);
+        }
+    }
+
+    // Removes the products that changed from the cache: the product of a change URI,
+    // or all of them if any product could have changed
+    private void invalidateCache(Uri uri) {
+        long id = ProductEntry.getChangedProductId(uri);
+        if (id != -1) {
+            mRowCache.remove(id);
+        } else if (uri.equals(ProductEntry.CONTENT_URI) || uri.equals(ProductEntry.CHANGES_URI)) {
+            mRowCache.clear();
+        }
+    }
+
     /**
      * Updates the database
      */
@@ -190,17 +1061,70 @@ public class ProductProvider extends ContentProvider {
 
             // If it matches the int for the whole database, do not modify selection & selectionArgs
             // and call helper method updateProduct()
+            // Any row could have changed, so notify the lists and all the single products
             case PRODUCTS:
-                return updateProduct(uri, contentValues, selection, selectionArgs);
+                return updateProduct(contentValues, selection, selectionArgs,
+                        uri, ProductEntry.CHANGES_URI);
 
             // It it matches the int for a single row, provide a selection & selectionArgs
             // Extract out the ID of the requested row from the URI
             case PRODUCT_ID:
+                long productId = ContentUris.parseId(uri);
                 selection = ProductEntry._ID + "=?";
-                selectionArgs = new String[]{String.valueOf(ContentUris.parseId(uri))};
+                selectionArgs = new String[]{String.valueOf(productId)};
 
                 // Now call helper method updateProduct()
-                return updateProduct(uri, contentValues, selection, selectionArgs);
+                // Only this row has changed, so notify only its change URI.
+                // The lists can update this row in memory, instead of querying all of the rows again.
+                return updateProduct(contentValues, selection, selectionArgs,
+                        ProductEntry.buildChangeUri(productId, ProductEntry.CHANGE_UPDATE));
+
+            // If it matches the int for adjusting the quantity, add the delta to the current quantity
+            // Returns 1 if the quantity was changed and 0 if it would have become negative
+            case PRODUCT_ADJUST:
+                Integer delta = contentValues.getAsInteger(ProductEntry.KEY_QUANTITY_DELTA);
+                if (delta == null) {
+                    throw new IllegalArgumentException("Update Exception! Adjusting requires a quantity delta!");
+                }
+
+                // The id is the segment before "adjust"
+                long id = Long.parseLong(uri.getPathSegments().get(1));
+                String reason = contentValues.getAsString(ProductEntry.KEY_REASON);
+                return adjustQuantity(id, delta, reasonOf(reason, delta)) < 0 ? 0 : 1;
+
+            // If it matches the int for the stock of a product, add the delta to the quantity
+            // at the location. Returns 1 if the quantity was changed and 0 if the location
+            // does not have enough units.
+            case PRODUCT_STOCK:
+                Integer locationDelta = contentValues.getAsInteger(ProductEntry.KEY_QUANTITY_DELTA);
+                Long locationId = contentValues.getAsLong(StockEntry.COLUMN_LOCATION_ID);
+                if (locationDelta == null || locationId == null) {
+                    throw new IllegalArgumentException(
+                            "Update Exception! Adjusting the stock requires a location and a quantity delta!");
+                }
+                String locationReason = contentValues.getAsString(ProductEntry.KEY_REASON);
+                return adjustLocationQuantity(Long.parseLong(uri.getPathSegments().get(1)), locationId,
+                        locationDelta, reasonOf(locationReason, locationDelta)) < 0 ? 0 : 1;
+
+            // If it matches the int for a transfer, move the units between the locations.
+            // Returns 1 if they were moved and 0 if the first location does not have them.
+            case PRODUCT_TRANSFER:
+                Long fromId = contentValues.getAsLong(StockEntry.KEY_FROM_LOCATION_ID);
+                Long toId = contentValues.getAsLong(StockEntry.KEY_TO_LOCATION_ID);
+                Integer units = contentValues.getAsInteger(StockEntry.COLUMN_QUANTITY);
+                if (fromId == null || toId == null || units == null || units <= 0 || fromId.equals(toId)) {
+                    throw new IllegalArgumentException(
+                            "Update Exception! A transfer requires two locations and a positive quantity!");
+                }
+                return transferStock(Long.parseLong(uri.getPathSegments().get(1)), fromId, toId, units) ? 1 : 0;
+
+            // If it matches the int for a single supplier, rename the supplier
+            case SUPPLIER_ID:
+                return updateSupplier(ContentUris.parseId(uri), contentValues);
+
+            // If it matches the int for a single location, rename the location
+            case LOCATION_ID:
+                return updateLocation(ContentUris.parseId(uri), contentValues);
 
             default:
 
@@ -211,7 +1135,9 @@ public class ProductProvider extends ContentProvider {
 
     // Helper method that sends SQL command to the database to perform an update.
     // Returns the number of rows that have been updated.
-    private int updateProduct(Uri uri, ContentValues values, String selection, String[] selectionArgs) {
+    // The given URIs are notified if any of the rows was updated.
+    private int updateProduct(ContentValues values, String selection, String[] selectionArgs,
+                              Uri... notifyUris) {
 
         // Check if product_name column key is present,
         // and that its value is not null. I think that extraction data from the input may result in
@@ -226,12 +1152,12 @@ public class ProductProvider extends ContentProvider {
             }
         }
 
-        // Check if product_price column key is present,
+        // Check if price_cents column key is present,
         // and that its value is not null or negative
-        if (values.containsKey(ProductEntry.COLUMN_PRODUCT_PRICE)) {
+        if (values.containsKey(ProductEntry.COLUMN_PRODUCT_PRICE_CENTS)) {
 
             // Check that the price is not null or not a negative number
-            Float price = values.getAsFloat(ProductEntry.COLUMN_PRODUCT_PRICE);
+            Long price = values.getAsLong(ProductEntry.COLUMN_PRODUCT_PRICE_CENTS);
 
             // If there is no price for the product or it is a negative value, do not try to update database
             if (price == null || price < 0) {
@@ -239,29 +1165,885 @@ public class ProductProvider extends ContentProvider {
             }
         }
 
-        // No need to check other inputs because "supplier" and "suppliers e-mail" can have no values
+        // The currency must be a known one
+        if (values.containsKey(ProductEntry.COLUMN_PRODUCT_CURRENCY) &&
+                !ProductValidator.isCurrency(values.getAsString(ProductEntry.COLUMN_PRODUCT_CURRENCY))) {
+            return 0;
+        }
+
+        // The code can be removed with null, but a new one must be usable
+        if (values.containsKey(ProductEntry.COLUMN_PRODUCT_SKU) &&
+                values.getAsString(ProductEntry.COLUMN_PRODUCT_SKU) != null) {
+            String sku = ProductValidator.normalizeSku(values.getAsString(ProductEntry.COLUMN_PRODUCT_SKU));
+            if (sku == null) {
+                return 0;
+            }
+            values = new ContentValues(values);
+            values.put(ProductEntry.COLUMN_PRODUCT_SKU, sku);
+        }
+
+        // No need to check other inputs because "supplier" and "suppliers e-mail" can have no values.
+        // They are stored in the suppliers table, so they are changed together: the product
+        // is moved to the supplier with the new name and e-mail.
+        boolean hasSupplier = values.containsKey(ProductEntry.COLUMN_SUPPLIER_NAME) ||
+                values.containsKey(ProductEntry.COLUMN_SUPPLIER_EMAIL);
+        String supplierName = values.getAsString(ProductEntry.COLUMN_SUPPLIER_NAME);
+        String supplierEmail = values.getAsString(ProductEntry.COLUMN_SUPPLIER_EMAIL);
+        if (hasSupplier) {
+            if (!values.containsKey(ProductEntry.COLUMN_SUPPLIER_NAME) ||
+                    !values.containsKey(ProductEntry.COLUMN_SUPPLIER_EMAIL)) {
+                return 0;
+            }
+            values = new ContentValues(values);
+            values.remove(ProductEntry.COLUMN_SUPPLIER_NAME);
+            values.remove(ProductEntry.COLUMN_SUPPLIER_EMAIL);
+        }
+
+        // The reorder threshold is stored in its own table. Null removes the rule,
+        // but a negative threshold is not valid.
+        boolean hasThreshold = values.containsKey(ProductEntry.COLUMN_REORDER_THRESHOLD);
+        Integer threshold = values.getAsInteger(ProductEntry.COLUMN_REORDER_THRESHOLD);
+        if (hasThreshold) {
+            if (threshold != null && threshold < 0) {
+                return 0;
+            }
+            values = new ContentValues(values);
+            values.remove(ProductEntry.COLUMN_REORDER_THRESHOLD);
+        }
 
         // If there are no values to update, then don't try to update the database
-        if (values.size() == 0) {
+        if (values.size() == 0 && !hasThreshold && !hasSupplier) {
             return 0;
         }
 
+        // The deleted products can only be restored, not changed
+        selection = DatabaseUtils.concatenateWhere(selection, NOT_DELETED);
+
         // Otherwise, get writable database to update the data
         SQLiteDatabase database = mDbHelper.getWritableDatabase();
 
-        // Perform the update on the database and get the number of rows affected
-        int rowsUpdated = database.update(ProductEntry.TABLE_NAME, values, selection, selectionArgs);
+        // Perform the update on the database and get the number of rows affected.
+        // A new quantity is recorded in the ledger as an edit, and the reorder rule is written,
+        // in the same transaction.
+        int rowsUpdated;
+        Integer quantity = values.getAsInteger(ProductEntry.COLUMN_PRODUCT_QUANTITY);
+        database.beginTransaction();
+        try {
+            if (hasSupplier) {
+                putSupplierId(database, values, supplierName, supplierEmail);
+            }
+            if (quantity != null) {
+                takeEditsToMainLocation(database, quantity, selection, selectionArgs);
+                recordEdits(database, quantity, selection, selectionArgs);
+            }
+            if (values.size() != 0) {
+                rowsUpdated = database.update(ProductEntry.TABLE_NAME, values, selection, selectionArgs);
+            } else {
+                // Only the threshold changed, so count the products it was written for
+                rowsUpdated = (int) DatabaseUtils.queryNumEntries(database, ProductEntry.TABLE_NAME,
+                        selection, selectionArgs);
+            }
+            if (hasThreshold) {
+                writeReorderThreshold(database, threshold, selection, selectionArgs);
+            }
+            database.setTransactionSuccessful();
+        } catch (SQLiteConstraintException e) {
+            // Inside a batch the failed transaction rolls back the whole batch,
+            // so the batch has to fail too instead of reporting the other operations as done
+            if (mBatchNotifications.get() != null) {
+                throw e;
+            }
+
+            // Another product already has the code, so nothing was changed
+            Log.e(LOG_TAG, "Failed to update the products: " + e.getMessage());
+            return 0;
+        } finally {
+            database.endTransaction();
+        }
 
         // If 1 or more rows were updated, then notify all listeners that the data at the
-        // given URI has changed
+        // given URIs has changed
         if (rowsUpdated != 0) {
-            getContext().getContentResolver().notifyChange(uri, null);
+            for (Uri notifyUri : notifyUris) {
+                notifyChange(notifyUri);
+            }
+
+            // A new name or supplier does not change the totals
+            if (quantity != null || hasThreshold ||
+                    values.containsKey(ProductEntry.COLUMN_PRODUCT_PRICE_CENTS) ||
+                    values.containsKey(ProductEntry.COLUMN_PRODUCT_CURRENCY)) {
+                notifyChange(SummaryEntry.CONTENT_URI);
+            }
+            if (quantity != null || hasThreshold) {
+                scheduleLowStockCheck(database);
+            }
         }
 
         // Return the number of rows updated
         return rowsUpdated;
     }
 
+    /**
+     * Helper method that inserts a supplier, or finds the supplier with the same name
+     * and e-mail, and returns the URI of the supplier.
+     */
+    private Uri insertSupplier(ContentValues values) {
+        String name = values.getAsString(SupplierEntry.COLUMN_SUPPLIER_NAME);
+        String email = values.getAsString(SupplierEntry.COLUMN_SUPPLIER_EMAIL);
+        if (TextUtils.isEmpty(name) && TextUtils.isEmpty(email)) {
+            throw new IllegalArgumentException("Insert Exception! The supplier requires a name or an e-mail!");
+        }
+
+        SQLiteDatabase database = mDbHelper.getWritableDatabase();
+        long id;
+        database.beginTransaction();
+        try {
+            id = findOrInsertSupplier(database, name, email);
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+        }
+
+        notifyChange(SupplierEntry.CONTENT_URI);
+        return ContentUris.withAppendedId(SupplierEntry.CONTENT_URI, id);
+    }
+
+    // Helper method that renames a supplier. All of its products show the new name and e-mail,
+    // but only the row of the supplier is written. Returns 0 if the supplier does not exist,
+    // or another supplier already has the new name and e-mail.
+    private int updateSupplier(long id, ContentValues values) {
+        ContentValues supplierValues = new ContentValues();
+        for (String column : new String[]{SupplierEntry.COLUMN_SUPPLIER_NAME, SupplierEntry.COLUMN_SUPPLIER_EMAIL}) {
+            if (values.containsKey(column)) {
+                String value = values.getAsString(column);
+                supplierValues.put(column, value == null ? "" : value);
+            }
+        }
+        if (supplierValues.size() != values.size()) {
+            throw new IllegalArgumentException("Update Exception! A supplier has only a name and an e-mail!");
+        }
+        if (supplierValues.size() == 0) {
+            return 0;
+        }
+
+        SQLiteDatabase database = mDbHelper.getWritableDatabase();
+        int rowsUpdated = database.updateWithOnConflict(SupplierEntry.TABLE_NAME, supplierValues,
+                SupplierEntry._ID + "=?", new String[]{String.valueOf(id)}, SQLiteDatabase.CONFLICT_IGNORE);
+
+        // The products of the supplier changed too
+        if (rowsUpdated > 0) {
+            notifyChange(SupplierEntry.CONTENT_URI);
+            notifyChange(ProductEntry.CONTENT_URI);
+            notifyChange(ProductEntry.CHANGES_URI);
+        }
+        return Math.max(rowsUpdated, 0);
+    }
+
+    // Puts the id of the supplier with the name and the e-mail into the values of a product,
+    // or null if both of them are empty. Must run inside the transaction of the write.
+    private static void putSupplierId(SQLiteDatabase database, ContentValues values,
+                                      String name, String email) {
+        if (TextUtils.isEmpty(name) && TextUtils.isEmpty(email)) {
+            values.putNull(ProductEntry.COLUMN_SUPPLIER_ID);
+        } else {
+            values.put(ProductEntry.COLUMN_SUPPLIER_ID, findOrInsertSupplier(database, name, email));
+        }
+    }
+
+    // Returns the id of the supplier with the name and the e-mail, which is found through
+    // the unique index of the suppliers, or inserted if there is none
+    private static long findOrInsertSupplier(SQLiteDatabase database, String name, String email) {
+        name = name == null ? "" : name;
+        email = email == null ? "" : email;
+        String[] args = {name, email};
+        Cursor cursor = database.query(SupplierEntry.TABLE_NAME, new String[]{SupplierEntry._ID},
+                SupplierEntry.COLUMN_SUPPLIER_NAME + "=? AND " + SupplierEntry.COLUMN_SUPPLIER_EMAIL + "=?",
+                args, null, null, null);
+        try {
+            if (cursor.moveToFirst()) {
+                return cursor.getLong(0);
+            }
+        } finally {
+            cursor.close();
+        }
+
+        ContentValues values = new ContentValues();
+        values.put(SupplierEntry.COLUMN_SUPPLIER_NAME, name);
+        values.put(SupplierEntry.COLUMN_SUPPLIER_EMAIL, email);
+        return database.insertOrThrow(SupplierEntry.TABLE_NAME, null, values);
+    }
+
+    /**
+     * Helper method that inserts a location and returns its URI,
+     * or null if another location already has the name.
+     */
+    private Uri insertLocation(ContentValues values) {
+        String name = values.getAsString(LocationEntry.COLUMN_LOCATION_NAME);
+        if (TextUtils.isEmpty(name)) {
+            throw new IllegalArgumentException("Insert Exception! The location requires a name!");
+        }
+
+        ContentValues locationValues = new ContentValues();
+        locationValues.put(LocationEntry.COLUMN_LOCATION_NAME, name);
+        long id = mDbHelper.getWritableDatabase().insert(LocationEntry.TABLE_NAME, null, locationValues);
+        if (id == -1) {
+            Log.e(LOG_TAG, "Failed to insert the location " + name);
+            return null;
+        }
+
+        notifyChange(LocationEntry.CONTENT_URI);
+        return ContentUris.withAppendedId(LocationEntry.CONTENT_URI, id);
+    }
+
+    // Helper method that renames a location. Returns 0 if the location does not exist,
+    // or another location already has the new name.
+    private int updateLocation(long id, ContentValues values) {
+        String name = values.getAsString(LocationEntry.COLUMN_LOCATION_NAME);
+        if (values.size() != 1 || TextUtils.isEmpty(name)) {
+            throw new IllegalArgumentException("Update Exception! A location has only a name!");
+        }
+
+        ContentValues locationValues = new ContentValues();
+        locationValues.put(LocationEntry.COLUMN_LOCATION_NAME, name);
+        int rowsUpdated = mDbHelper.getWritableDatabase().updateWithOnConflict(LocationEntry.TABLE_NAME,
+                locationValues, LocationEntry._ID + "=?", new String[]{String.valueOf(id)},
+                SQLiteDatabase.CONFLICT_IGNORE);
+
+        // The stock of the products shows the new name
+        if (rowsUpdated > 0) {
+            notifyChange(LocationEntry.CONTENT_URI);
+            notifyChange(ProductEntry.CHANGES_URI);
+        }
+        return Math.max(rowsUpdated, 0);
+    }
+
+    // Helper method that deletes a location, after adding its stock to the stock of the main
+    // location in the same transaction, so no unit is lost. The quantities of the products
+    // stay the same. Returns the number of deleted locations.
+    private int deleteLocation(long id) {
+        if (id == LocationEntry.MAIN_LOCATION_ID) {
+            throw new IllegalArgumentException("Deletion Exception! The main location can not be deleted!");
+        }
+
+        SQLiteDatabase database = mDbHelper.getWritableDatabase();
+        String[] args = {String.valueOf(id)};
+        int rowsDeleted;
+        database.beginTransaction();
+        try {
+            database.execSQL("UPDATE " + StockEntry.TABLE_NAME + " SET " + StockEntry.COLUMN_QUANTITY + " = " +
+                    StockEntry.COLUMN_QUANTITY + " + (SELECT " + StockEntry.COLUMN_QUANTITY + " FROM " +
+                    StockEntry.TABLE_NAME + " AS moved WHERE moved." + StockEntry.COLUMN_PRODUCT_ID + " = " +
+                    StockEntry.TABLE_NAME + "." + StockEntry.COLUMN_PRODUCT_ID + " AND moved." +
+                    StockEntry.COLUMN_LOCATION_ID + " = ?)" +
+                    " WHERE " + StockEntry.COLUMN_LOCATION_ID + " = " + LocationEntry.MAIN_LOCATION_ID +
+                    " AND " + StockEntry.COLUMN_PRODUCT_ID + " IN (SELECT " + StockEntry.COLUMN_PRODUCT_ID +
+                    " FROM " + StockEntry.TABLE_NAME + " WHERE " + StockEntry.COLUMN_LOCATION_ID + " = ?)",
+                    new String[]{args[0], args[0]});
+            database.delete(StockEntry.TABLE_NAME, StockEntry.COLUMN_LOCATION_ID + "=?", args);
+            rowsDeleted = database.delete(LocationEntry.TABLE_NAME, LocationEntry._ID + "=?", args);
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+        }
+
+        if (rowsDeleted != 0) {
+            notifyChange(LocationEntry.CONTENT_URI);
+            notifyChange(ProductEntry.CHANGES_URI);
+        }
+        return rowsDeleted;
+    }
+
+    /**
+     * Adds the delta to the quantity of a product at a location. The total of the product
+     * changes at the main location, through {@link #adjustQuantity}, and the units are moved
+     * between the main location and the given one, all in one transaction. So a restock of
+     * a stockroom is one change of the total, recorded in the ledger, and one transfer.
+     *
+     * @return the new total quantity, or -1 if the location does not have enough units
+     */
+    private int adjustLocationQuantity(long id, long locationId, int delta, String reason) {
+        if (locationId == LocationEntry.MAIN_LOCATION_ID) {
+            return adjustQuantity(id, delta, reason);
+        }
+
+        // Get writable database
+        SQLiteDatabase database = mDbHelper.getWritableDatabase();
+
+        int newQuantity = -1;
+
+        // Stays false if the transaction is rolled back, so that no one is notified.
+        // Inside applyBatch() the notifications are collected by its batch already.
+        boolean successful = false;
+        boolean ownBatch = mBatchNotifications.get() == null;
+
+        if (ownBatch) {
+            beginBatch();
+        }
+        database.beginTransaction();
+        try {
+            // The units that are sold are taken to the main location first, and the units
+            // that arrive are taken from there after they were counted
+            if (delta >= 0 || moveStock(database, id, locationId, LocationEntry.MAIN_LOCATION_ID, -delta)) {
+                newQuantity = adjustQuantity(id, delta, reason);
+                if (newQuantity >= 0 && delta > 0 &&
+                        !moveStock(database, id, LocationEntry.MAIN_LOCATION_ID, locationId, delta)) {
+                    newQuantity = -1;
+                }
+            }
+            if (newQuantity >= 0) {
+                database.setTransactionSuccessful();
+                successful = true;
+            }
+        } finally {
+            database.endTransaction();
+            if (ownBatch) {
+                endBatch(successful);
+            }
+        }
+        return newQuantity;
+    }
+
+    /**
+     * Moves units of a product from one location to another in one transaction.
+     * The total quantity of the product does not change, so only the stock is written.
+     *
+     * @return true if the units were moved, false if the first location does not have them
+     * or the second location does not exist
+     */
+    private boolean transferStock(long id, long fromLocationId, long toLocationId, int quantity) {
+
+        // Get writable database
+        SQLiteDatabase database = mDbHelper.getWritableDatabase();
+
+        boolean moved;
+        database.beginTransaction();
+        try {
+            moved = moveStock(database, id, fromLocationId, toLocationId, quantity);
+            if (moved) {
+                database.setTransactionSuccessful();
+            }
+        } finally {
+            database.endTransaction();
+        }
+
+        // The stock of the product is read through its change URI
+        if (moved) {
+            notifyChange(ProductEntry.buildChangeUri(id, ProductEntry.CHANGE_UPDATE));
+        }
+        return moved;
+    }
+
+    // Takes the units from the stock of the product at one location and adds them to another,
+    // through the primary key of the stock. Returns false, without changing anything,
+    // if the first location does not have the units or the second one does not exist.
+    // Must run inside a transaction.
+    private static boolean moveStock(SQLiteDatabase database, long id, long fromLocationId,
+                                     long toLocationId, int quantity) {
+        if (quantity == 0) {
+            return true;
+        }
+        if (DatabaseUtils.queryNumEntries(database, LocationEntry.TABLE_NAME,
+                LocationEntry._ID + "=?", new String[]{String.valueOf(toLocationId)}) == 0) {
+            return false;
+        }
+
+        SQLiteStatement take = database.compileStatement(
+                "UPDATE " + StockEntry.TABLE_NAME +
+                        " SET " + StockEntry.COLUMN_QUANTITY + " = " + StockEntry.COLUMN_QUANTITY + " - ?" +
+                        " WHERE " + StockEntry.COLUMN_PRODUCT_ID + " = ?" +
+                        " AND " + StockEntry.COLUMN_LOCATION_ID + " = ?" +
+                        " AND " + StockEntry.COLUMN_QUANTITY + " >= ?");
+        take.bindLong(1, quantity);
+        take.bindLong(2, id);
+        take.bindLong(3, fromLocationId);
+        take.bindLong(4, quantity);
+        int rowsUpdated = take.executeUpdateDelete();
+        take.close();
+        if (rowsUpdated == 0) {
+            return false;
+        }
+
+        // The product gets a row at the location the first time units are moved there
+        database.execSQL("INSERT OR IGNORE INTO " + StockEntry.TABLE_NAME + " (" +
+                StockEntry.COLUMN_PRODUCT_ID + ", " + StockEntry.COLUMN_LOCATION_ID + ") VALUES (?, ?)",
+                new Object[]{id, toLocationId});
+        database.execSQL("UPDATE " + StockEntry.TABLE_NAME + " SET " + StockEntry.COLUMN_QUANTITY + " = " +
+                StockEntry.COLUMN_QUANTITY + " + ? WHERE " + StockEntry.COLUMN_PRODUCT_ID + " = ?" +
+                " AND " + StockEntry.COLUMN_LOCATION_ID + " = ?", new Object[]{quantity, id, toLocationId});
+        return true;
+    }
+
+    // Returns true if the product exists and is not deleted
+    private static boolean isNotDeleted(SQLiteDatabase database, long id) {
+        return DatabaseUtils.queryNumEntries(database, ProductEntry.TABLE_NAME,
+                ProductEntry._ID + " = ? AND " + NOT_DELETED, new String[]{String.valueOf(id)}) != 0;
+    }
+
+    // Moves units of the product to the main location from the other locations, the ones with
+    // the most units first, until the main location has the given number of units.
+    // Returns false, without moving anything, if all of the locations together do not have them.
+    // Must run inside a transaction.
+    private static boolean takeToMainLocation(SQLiteDatabase database, long id, int units) {
+        String[] args = {String.valueOf(id)};
+        if (DatabaseUtils.longForQuery(database, "SELECT IFNULL(SUM(" + StockEntry.COLUMN_QUANTITY +
+                "), 0) FROM " + StockEntry.TABLE_NAME + " WHERE " + StockEntry.COLUMN_PRODUCT_ID + " = ?",
+                args) < units) {
+            return false;
+        }
+
+        long missing = units - DatabaseUtils.longForQuery(database, "SELECT IFNULL((SELECT " +
+                StockEntry.COLUMN_QUANTITY + " FROM " + StockEntry.TABLE_NAME + " WHERE " +
+                StockEntry.COLUMN_PRODUCT_ID + " = ? AND " + StockEntry.COLUMN_LOCATION_ID + " = " +
+                LocationEntry.MAIN_LOCATION_ID + "), 0)", args);
+        if (missing <= 0) {
+            return true;
+        }
+
+        Cursor stock = database.query(StockEntry.TABLE_NAME,
+                new String[]{StockEntry.COLUMN_LOCATION_ID, StockEntry.COLUMN_QUANTITY},
+                StockEntry.COLUMN_PRODUCT_ID + " = ? AND " + StockEntry.COLUMN_LOCATION_ID + " != " +
+                        LocationEntry.MAIN_LOCATION_ID + " AND " + StockEntry.COLUMN_QUANTITY + " > 0",
+                args, null, null, StockEntry.COLUMN_QUANTITY + " DESC");
+        try {
+            while (missing > 0 && stock.moveToNext()) {
+                int moved = (int) Math.min(missing, stock.getInt(1));
+                moveStock(database, id, stock.getLong(0), LocationEntry.MAIN_LOCATION_ID, moved);
+                missing -= moved;
+            }
+        } finally {
+            stock.close();
+        }
+        return true;
+    }
+
+    /**
+     * Adds the delta to the quantity of a single product with one SQL statement,
+     * so that concurrent sales can not overwrite each other.
+     * The total is never allowed to become negative. The change is counted at the main location,
+     * so the units of a sale that the main location does not have are first moved there
+     * from the other locations, in the same transaction.
+     *
+     * The change is recorded in the ledger with the reason, in the same transaction.
+     *
+     * @param reason One of the REASON_ values of StockMovementEntry
+     * @return the new quantity, or -1 if the product does not exist or does not have
+     * enough quantity
+     */
+    private int adjustQuantity(long id, int delta, String reason) {
+
+        // Get writable database
+        SQLiteDatabase database = mDbHelper.getWritableDatabase();
+
+        // Stores the quantity after the change
+        int newQuantity = -1;
+
+        database.beginTransaction();
+        try {
+            // Add the delta only if the total does not become negative. The change is counted
+            // at the main location, so it is the one that must have the units of a sale.
+            // The units are moved only for a product that is not deleted: the transaction
+            // may be nested in a flush, so it is committed even if nothing is updated.
+            int rowsUpdated = 0;
+            if (delta >= 0 || (isNotDeleted(database, id) && takeToMainLocation(database, id, -delta))) {
+                SQLiteStatement statement = database.compileStatement(
+                        "UPDATE " + ProductEntry.TABLE_NAME +
+                                " SET " + ProductEntry.COLUMN_PRODUCT_QUANTITY + " = " +
+                                ProductEntry.COLUMN_PRODUCT_QUANTITY + " + ?" +
+                                " WHERE " + ProductEntry._ID + " = ? AND " + NOT_DELETED +
+                                " AND " + ProductEntry.COLUMN_PRODUCT_QUANTITY + " + ? >= 0");
+                statement.bindLong(1, delta);
+                statement.bindLong(2, id);
+                statement.bindLong(3, delta);
+                rowsUpdated = statement.executeUpdateDelete();
+                statement.close();
+            }
+
+            // Record the change and read back the new value inside the same transaction
+            if (rowsUpdated != 0) {
+                recordMovement(database, id, delta, reason);
+                newQuantity = (int) DatabaseUtils.longForQuery(database,
+                        "SELECT " + ProductEntry.COLUMN_PRODUCT_QUANTITY +
+                                " FROM " + ProductEntry.TABLE_NAME +
+                                " WHERE " + ProductEntry._ID + " = ?",
+                        new String[]{String.valueOf(id)});
+            }
+
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+        }
+
+        // Notify all listeners that this product has changed,
+        // and check if it became low on stock
+        if (newQuantity >= 0) {
+            notifyChange(ProductEntry.buildChangeUri(id, ProductEntry.CHANGE_UPDATE));
+            notifyChange(SummaryEntry.CONTENT_URI);
+            if (delta < 0) {
+                scheduleLowStockCheck(database);
+            }
+        }
+
+        return newQuantity;
+    }
+
+    // Appends a change of the quantity of a product to the ledger.
+    // The trigger of the ledger adds it to the daily rollups.
+    private static void recordMovement(SQLiteDatabase database, long id, int delta, String reason) {
+        ContentValues movement = new ContentValues();
+        movement.put(StockMovementEntry.COLUMN_PRODUCT_ID, id);
+        movement.put(StockMovementEntry.COLUMN_DELTA, delta);
+        movement.put(StockMovementEntry.COLUMN_REASON, reason);
+        movement.put(StockMovementEntry.COLUMN_TIMESTAMP, System.currentTimeMillis());
+        database.insert(StockMovementEntry.TABLE_NAME, null, movement);
+    }
+
+    // Moves the units removed by an edit to the main location, where the triggers count
+    // the change, for every selected product whose quantity is set to a smaller value.
+    // Its locations always have the units, because they add up to the old quantity.
+    private static void takeEditsToMainLocation(SQLiteDatabase database, int quantity,
+                                                String selection, String[] selectionArgs) {
+        Cursor products = database.query(ProductEntry.TABLE_NAME,
+                new String[]{ProductEntry._ID, ProductEntry.COLUMN_PRODUCT_QUANTITY},
+                DatabaseUtils.concatenateWhere(selection, ProductEntry.COLUMN_PRODUCT_QUANTITY + " > " + quantity),
+                selectionArgs, null, null, null);
+        try {
+            while (products.moveToNext()) {
+                takeToMainLocation(database, products.getLong(0), products.getInt(1) - quantity);
+            }
+        } finally {
+            products.close();
+        }
+    }
+
+    // Appends an edit to the ledger for every selected product whose quantity is set
+    // to a different value, with one statement for all of them
+    private static void recordEdits(SQLiteDatabase database, int quantity,
+                                    String selection, String[] selectionArgs) {
+        String where = DatabaseUtils.concatenateWhere(selection,
+                ProductEntry.COLUMN_PRODUCT_QUANTITY + " != " + quantity);
+        String[] args = DatabaseUtils.appendSelectionArgs(
+                new String[]{String.valueOf(System.currentTimeMillis())}, selectionArgs);
+        database.execSQL("INSERT INTO " + StockMovementEntry.TABLE_NAME + " (" +
+                StockMovementEntry.COLUMN_PRODUCT_ID + ", " + StockMovementEntry.COLUMN_DELTA + ", " +
+                StockMovementEntry.COLUMN_REASON + ", " + StockMovementEntry.COLUMN_TIMESTAMP + ")" +
+                " SELECT " + ProductEntry._ID + ", " + quantity + " - " + ProductEntry.COLUMN_PRODUCT_QUANTITY +
+                ", '" + StockMovementEntry.REASON_EDIT + "', ? FROM " + ProductEntry.TABLE_NAME +
+                " WHERE " + where, args);
+    }
+
+    // Sets the reorder threshold of the selected products, or removes their rules if it is null.
+    // The triggers of the rules add or remove the low stock alerts.
+    private static void writeReorderThreshold(SQLiteDatabase database, Integer threshold,
+                                              String selection, String[] selectionArgs) {
+        String products = ReorderRuleEntry.COLUMN_PRODUCT_ID + " IN (SELECT " + ProductEntry._ID +
+                " FROM " + ProductEntry.TABLE_NAME +
+                (selection == null ? "" : " WHERE " + selection) + ")";
+
+        if (threshold == null) {
+            database.delete(ReorderRuleEntry.TABLE_NAME, products, selectionArgs);
+            return;
+        }
+
+        // Change the rules that exist, then add the missing ones
+        ContentValues rule = new ContentValues();
+        rule.put(ReorderRuleEntry.COLUMN_THRESHOLD, threshold);
+        database.update(ReorderRuleEntry.TABLE_NAME, rule, products, selectionArgs);
+        database.execSQL("INSERT OR IGNORE INTO " + ReorderRuleEntry.TABLE_NAME + " (" +
+                ReorderRuleEntry.COLUMN_PRODUCT_ID + ", " + ReorderRuleEntry.COLUMN_THRESHOLD + ")" +
+                " SELECT " + ProductEntry._ID + ", " + threshold + " FROM " + ProductEntry.TABLE_NAME +
+                (selection == null ? "" : " WHERE " + selection),
+                selectionArgs == null ? new String[0] : selectionArgs);
+    }
+
+    // Schedules the check of the low stock alerts, if there are alerts and no check is scheduled yet.
+    // The triggers already decided which products are low, so this only counts the alerts.
+    private void scheduleLowStockCheck(SQLiteDatabase database) {
+        if (mLowStockCheckScheduled.get() ||
+                DatabaseUtils.queryNumEntries(database, LowStockAlertEntry.TABLE_NAME) == 0) {
+            return;
+        }
+        if (mLowStockCheckScheduled.compareAndSet(false, true)) {
+            LowStockAlerts.schedule(getContext());
+        }
+    }
+
+    // Returns the given reason, or the reason of a delta without one:
+    // a sale when it is negative and a restock when it is positive
+    private static String reasonOf(String reason, int delta) {
+        if (reason != null) {
+            return reason;
+        }
+        return delta < 0 ? StockMovementEntry.REASON_SALE : StockMovementEntry.REASON_RESTOCK;
+    }
+
+    /**
+     * Provider methods that are not covered by insert, query, update and delete.
+     * METHOD_ADJUST_QUANTITY adds KEY_QUANTITY_DELTA from the extras to the quantity of the product
+     * with the id passed as "arg". The returned bundle holds the new quantity under
+     * COLUMN_PRODUCT_QUANTITY, or -1 if the quantity was not changed. KEY_REASON in the extras
+     * is recorded in the ledger; without it the change is a sale or a restock.
+     * METHOD_TAKE_LOW_STOCK_ALERTS returns the products that became low on stock and
+     * removes their alerts. METHOD_GET_CACHE_STATS returns the counters of the cache of
+     * single products. METHOD_SELL_BY_SKU finds a product by its code and sells it.
+     * METHOD_UNDO_DELETE restores the products of the last delete, and METHOD_PURGE_DELETED
+     * removes the deleted products whose undo window has passed.
+     */
+    @Override
+    public Bundle call(String method, String arg, Bundle extras) {
+        if (ProductEntry.METHOD_ADJUST_QUANTITY.equals(method)) {
+            if (arg == null || extras == null || !extras.containsKey(ProductEntry.KEY_QUANTITY_DELTA)) {
+                throw new IllegalArgumentException("Adjusting requires a product id and a quantity delta!");
+            }
+
+            int delta = extras.getInt(ProductEntry.KEY_QUANTITY_DELTA);
+            String reason = reasonOf(extras.getString(ProductEntry.KEY_REASON), delta);
+            int newQuantity = adjustQuantity(Long.parseLong(arg), delta, reason);
+
+            Bundle result = new Bundle();
+            result.putInt(ProductEntry.COLUMN_PRODUCT_QUANTITY, newQuantity);
+            return result;
+        }
+
+        if (ProductEntry.METHOD_JOURNAL_DELTA.equals(method)) {
+            if (arg == null || extras == null || !extras.containsKey(ProductEntry.KEY_QUANTITY_DELTA)) {
+                throw new IllegalArgumentException("Journaling requires a product id and a quantity delta!");
+            }
+
+            // Only the journal is written, so no one has to be notified
+            ContentValues values = new ContentValues();
+            values.put(PendingDeltaEntry.COLUMN_PRODUCT_ID, Long.parseLong(arg));
+            values.put(PendingDeltaEntry.COLUMN_DELTA, extras.getInt(ProductEntry.KEY_QUANTITY_DELTA));
+            mDbHelper.getWritableDatabase().insert(PendingDeltaEntry.TABLE_NAME, null, values);
+            return null;
+        }
+
+        if (ProductEntry.METHOD_FLUSH_DELTAS.equals(method)) {
+            return flushPendingDeltas();
+        }
+
+        if (ProductEntry.METHOD_TAKE_LOW_STOCK_ALERTS.equals(method)) {
+            return takeLowStockAlerts();
+        }
+
+        if (ProductEntry.METHOD_SELL_BY_SKU.equals(method)) {
+            if (arg == null) {
+                throw new IllegalArgumentException("Selling by code requires a code!");
+            }
+            int delta = extras == null ? -1 : extras.getInt(ProductEntry.KEY_QUANTITY_DELTA, -1);
+            return sellBySku(arg, delta);
+        }
+
+        if (ProductEntry.METHOD_UNDO_DELETE.equals(method)) {
+            return undoDelete();
+        }
+
+        if (ProductEntry.METHOD_PURGE_DELETED.equals(method)) {
+            return purgeDeleted();
+        }
+
+        if (ProductEntry.METHOD_GET_CACHE_STATS.equals(method)) {
+            Bundle result = new Bundle();
+            result.putInt(ProductEntry.KEY_CACHE_HITS, mRowCache.hitCount());
+            result.putInt(ProductEntry.KEY_CACHE_MISSES, mRowCache.missCount());
+            result.putInt(ProductEntry.KEY_CACHE_SIZE, mRowCache.size());
+            return result;
+        }
+
+        return super.call(method, arg, extras);
+    }
+
+    /**
+     * Finds the product with the code and adds the delta to its quantity, in one transaction,
+     * so a scan at the till is one call: one lookup in the unique index of the codes
+     * and one update of the product.
+     *
+     * @return the id of the product, or -1 if no product has the code, its name,
+     * and its new quantity, or -1 if the quantity was not changed
+     */
+    private Bundle sellBySku(String code, int delta) {
+        Bundle result = new Bundle();
+        result.putLong(ProductEntry.KEY_PRODUCT_ID, -1);
+        result.putInt(ProductEntry.COLUMN_PRODUCT_QUANTITY, -1);
+
+        String sku = ProductValidator.normalizeSku(code);
+        if (sku == null) {
+            return result;
+        }
+
+        // Get writable database
+        SQLiteDatabase database = mDbHelper.getWritableDatabase();
+
+        // Stays false if the transaction is rolled back, so that no one is notified
+        boolean successful = false;
+
+        beginBatch();
+        database.beginTransaction();
+        try {
+            long id = findProductBySku(database, sku);
+            if (id != -1) {
+                result.putLong(ProductEntry.KEY_PRODUCT_ID, id);
+                result.putString(ProductEntry.COLUMN_PRODUCT_NAME, DatabaseUtils.stringForQuery(database,
+                        "SELECT " + ProductEntry.COLUMN_PRODUCT_NAME + " FROM " + ProductEntry.TABLE_NAME +
+                                " WHERE " + ProductEntry._ID + " = ?", new String[]{String.valueOf(id)}));
+                result.putInt(ProductEntry.COLUMN_PRODUCT_QUANTITY,
+                        adjustQuantity(id, delta, reasonOf(null, delta)));
+            }
+            database.setTransactionSuccessful();
+            successful = true;
+        } finally {
+            database.endTransaction();
+            endBatch(successful);
+        }
+        return result;
+    }
+
+    /**
+     * Adds the journaled deltas of every product to its quantity and empties the journal,
+     * in one transaction, so every delta is added exactly once even if the app crashes.
+     * The deltas of a product are summed first, so a hundred sales are one update.
+     * A sum of sales that is more than the quantity sells only the units that are on stock,
+     * so the sales that were made before it ran out are kept.
+     *
+     * @return the ids of the changed products and their new quantities,
+     * and the number of sold units that were not on stock
+     */
+    private Bundle flushPendingDeltas() {
+
+        // Get writable database
+        SQLiteDatabase database = mDbHelper.getWritableDatabase();
+
+        ArrayList<Long> ids = new ArrayList<>();
+        ArrayList<Integer> quantities = new ArrayList<>();
+
+        // The units that were sold, but were not on stock anymore when the sales were flushed
+        int rejectedUnits = 0;
+
+        // Stays false if the transaction is rolled back, so that no one is notified
+        boolean successful = false;
+
+        beginBatch();
+        database.beginTransaction();
+        try {
+            Cursor deltas = database.query(PendingDeltaEntry.TABLE_NAME,
+                    new String[]{PendingDeltaEntry.COLUMN_PRODUCT_ID,
+                            "SUM(" + PendingDeltaEntry.COLUMN_DELTA + ")"},
+                    null, null, PendingDeltaEntry.COLUMN_PRODUCT_ID, null, null);
+            try {
+                while (deltas.moveToNext()) {
+                    long id = deltas.getLong(0);
+                    int delta = deltas.getInt(1);
+                    if (delta == 0) {
+                        continue;
+                    }
+
+                    int newQuantity = adjustQuantity(id, delta, reasonOf(null, delta));
+
+                    // Too many units were sold: sell the ones that are left, and reject the rest
+                    if (newQuantity < 0 && delta < 0) {
+                        int available = (int) DatabaseUtils.longForQuery(database,
+                                "SELECT IFNULL((SELECT " + ProductEntry.COLUMN_PRODUCT_QUANTITY +
+                                        " FROM " + ProductEntry.TABLE_NAME + " WHERE " + ProductEntry._ID +
+                                        " = ? AND " + NOT_DELETED + "), 0)",
+                                new String[]{String.valueOf(id)});
+                        rejectedUnits += -delta - available;
+                        if (available > 0) {
+                            newQuantity = adjustQuantity(id, -available, reasonOf(null, -available));
+                        }
+                    }
+                    if (newQuantity < 0) {
+                        Log.w(LOG_TAG, "Dropped the pending delta " + delta + " of product " + id);
+                        continue;
+                    }
+                    ids.add(id);
+                    quantities.add(newQuantity);
+                }
+            } finally {
+                deltas.close();
+            }
+
+            database.delete(PendingDeltaEntry.TABLE_NAME, null, null);
+            database.setTransactionSuccessful();
+            successful = true;
+        } finally {
+            database.endTransaction();
+            endBatch(successful);
+        }
+
+        long[] idArray = new long[ids.size()];
+        int[] quantityArray = new int[ids.size()];
+        for (int i = 0; i < idArray.length; i++) {
+            idArray[i] = ids.get(i);
+            quantityArray[i] = quantities.get(i);
+        }
+
+        Bundle result = new Bundle();
+        result.putLongArray(ProductEntry.KEY_PRODUCT_IDS, idArray);
+        result.putIntArray(ProductEntry.KEY_QUANTITIES, quantityArray);
+        result.putInt(ProductEntry.KEY_REJECTED_UNITS, rejectedUnits);
+        return result;
+    }
+
+    /**
+     * Reads the low stock alerts with the names of their products and deletes them,
+     * in one transaction, so every alert is returned once.
+     * The products that become low on stock after this schedule a new check.
+     *
+     * @return the ids, names, quantities and thresholds of the products, in the same order
+     */
+    private Bundle takeLowStockAlerts() {
+
+        // Alerts added from now on need a new check
+        mLowStockCheckScheduled.set(false);
+
+        // Get writable database
+        SQLiteDatabase database = mDbHelper.getWritableDatabase();
+
+        long[] ids;
+        String[] names;
+        int[] quantities;
+        int[] thresholds;
+
+        database.beginTransaction();
+        try {
+            Cursor alerts = database.rawQuery("SELECT " +
+                    LowStockAlertEntry.TABLE_NAME + "." + LowStockAlertEntry.COLUMN_PRODUCT_ID + ", " +
+                    ProductEntry.TABLE_NAME + "." + ProductEntry.COLUMN_PRODUCT_NAME + ", " +
+                    LowStockAlertEntry.TABLE_NAME + "." + LowStockAlertEntry.COLUMN_QUANTITY + ", " +
+                    LowStockAlertEntry.TABLE_NAME + "." + LowStockAlertEntry.COLUMN_THRESHOLD +
+                    " FROM " + LowStockAlertEntry.TABLE_NAME + " JOIN " + ProductEntry.TABLE_NAME +
+                    " ON " + ProductEntry.TABLE_NAME + "." + ProductEntry._ID + " = " +
+                    LowStockAlertEntry.TABLE_NAME + "." + LowStockAlertEntry.COLUMN_PRODUCT_ID +
+                    " ORDER BY " + LowStockAlertEntry.TABLE_NAME + "." + LowStockAlertEntry.COLUMN_QUANTITY, null);
+            try {
+                int count = alerts.getCount();
+                ids = new long[count];
+                names = new String[count];
+                quantities = new int[count];
+                thresholds = new int[count];
+                for (int i = 0; alerts.moveToNext(); i++) {
+                    ids[i] = alerts.getLong(0);
+                    names[i] = alerts.getString(1);
+                    quantities[i] = alerts.getInt(2);
+                    thresholds[i] = alerts.getInt(3);
+                }
+            } finally {
+                alerts.close();
+            }
+
+            database.delete(LowStockAlertEntry.TABLE_NAME, null, null);
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+        }
+
+        Bundle result = new Bundle();
+        result.putLongArray(ProductEntry.KEY_PRODUCT_IDS, ids);
+        result.putStringArray(ProductEntry.KEY_PRODUCT_NAMES, names);
+        result.putIntArray(ProductEntry.KEY_QUANTITIES, quantities);
+        result.putIntArray(ProductEntry.KEY_THRESHOLDS, thresholds);
+        return result;
+    }
+
     // Delete the data at the given selection and selection arguments.
     @Override
     public int delete(Uri uri, String selection, String[] selectionArgs) {
@@ -272,43 +2054,186 @@ public class ProductProvider extends ContentProvider {
         // Track the number of rows that were deleted
         int rowsDeleted;
 
+        // The change URI of the deleted rows
+        Uri changeUri;
+
         // Figure out if the URI matcher can match the URI to a specific code
         final int match = sUriMatcher.match(uri);
 
         switch (match) {
 
             // If it matches the int for the whole database, do not modify selection & selectionArgs
-            // Execute an SQLite command to delete the whole database rows
+            // Mark the selected products as deleted, so they can be restored for a while
             case PRODUCTS:
-                rowsDeleted = database.delete(ProductEntry.TABLE_NAME, selection, selectionArgs);
+                rowsDeleted = softDelete(database, selection, selectionArgs);
+                changeUri = ProductEntry.CHANGES_URI;
+                if (rowsDeleted != 0) {
+                    notifyChange(SummaryEntry.CONTENT_URI);
+                }
                 break;
 
             // If it matches the int for a single row or rows,
             // modify selection & selectionArgs to get the id of the row
             // Extract out the ID of the requested row from the URI
             case PRODUCT_ID:
+                long productId = ContentUris.parseId(uri);
                 selection = ProductEntry._ID + "=?";
-                selectionArgs = new String[]{String.valueOf(ContentUris.parseId(uri))};
+                selectionArgs = new String[]{String.valueOf(productId)};
+
+                // Mark the selected row as deleted
+                rowsDeleted = softDelete(database, selection, selectionArgs);
+                changeUri = ProductEntry.buildChangeUri(productId, ProductEntry.CHANGE_DELETE);
+                if (rowsDeleted != 0) {
+                    notifyChange(SummaryEntry.CONTENT_URI);
+                }
+                break;
 
-                // Execute an SQLite command to delete the selected row from database
-                rowsDeleted = database.delete(ProductEntry.TABLE_NAME, selection, selectionArgs);
+            // If it matches the int for a single supplier, delete the supplier.
+            // Its products stay, without a supplier, because of the foreign key.
+            case SUPPLIER_ID:
+                rowsDeleted = database.delete(SupplierEntry.TABLE_NAME, SupplierEntry._ID + "=?",
+                        new String[]{String.valueOf(ContentUris.parseId(uri))});
+                if (rowsDeleted != 0) {
+                    notifyChange(SupplierEntry.CONTENT_URI);
+                }
+                changeUri = ProductEntry.CHANGES_URI;
                 break;
 
+            // If it matches the int for a single location, move its stock to the main location
+            // and delete it. The quantities of the products do not change, so the lists stay.
+            case LOCATION_ID:
+                return deleteLocation(ContentUris.parseId(uri));
+
             // If the pass Uri do not match any of the int values, throw an exception
             default:
                 throw new IllegalArgumentException("Deletion is not supported for " + uri);
         }
 
         // If 1 or more rows were deleted, then notify all listeners that the data at the
-        // given URI has changed
+        // given URI has changed. The lists of products have to requery, because rows are gone.
         if (rowsDeleted != 0) {
-            getContext().getContentResolver().notifyChange(uri, null);
+            notifyChange(ProductEntry.CONTENT_URI);
+            notifyChange(changeUri);
         }
 
         // Return the number of rows deleted
         return rowsDeleted;
     }
 
+    /**
+     * Helper method that deletes the selected products softly: it only sets their deleted_at,
+     * with one UPDATE and the same time for all of them, so the products of one delete
+     * are restored together. The purge that removes them for good is scheduled.
+     * A delete of all of the products writes a few columns per row, instead of removing
+     * every row from the table, its indexes, the search table and the stock.
+     * The codes of the products are moved aside, so new products can use them.
+     */
+    private int softDelete(SQLiteDatabase database, String selection, String[] selectionArgs) {
+        SQLiteStatement statement = database.compileStatement(
+                "UPDATE " + ProductEntry.TABLE_NAME + " SET " + ProductEntry.COLUMN_DELETED_AT + " = ?, " +
+                        ProductEntry.COLUMN_DELETED_SKU + " = " + ProductEntry.COLUMN_PRODUCT_SKU + ", " +
+                        ProductEntry.COLUMN_PRODUCT_SKU + " = NULL WHERE " +
+                        DatabaseUtils.concatenateWhere(selection, NOT_DELETED));
+        statement.bindAllArgsAsStrings(DatabaseUtils.appendSelectionArgs(
+                new String[]{String.valueOf(System.currentTimeMillis())}, selectionArgs));
+        int rowsDeleted;
+        try {
+            rowsDeleted = statement.executeUpdateDelete();
+        } finally {
+            statement.close();
+        }
+        if (rowsDeleted != 0) {
+            ProductPurge.schedule(getContext());
+        }
+        return rowsDeleted;
+    }
+
+    /**
+     * Restores the products of the last delete, if it is still in the undo window.
+     * The triggers put them back into the summary and their alerts back.
+     * A product gets its code back, or no code if another product took it in the meantime.
+     *
+     * @return the number of restored products under KEY_RESTORED_COUNT
+     */
+    private Bundle undoDelete() {
+        SQLiteDatabase database = mDbHelper.getWritableDatabase();
+
+        String lastDelete = ProductEntry.COLUMN_DELETED_AT + " = (SELECT MAX(" + ProductEntry.COLUMN_DELETED_AT +
+                ") FROM " + ProductEntry.TABLE_NAME + ") AND " + ProductEntry.COLUMN_DELETED_AT + " > ?";
+        String[] lastDeleteArgs = {String.valueOf(System.currentTimeMillis() - ProductEntry.UNDO_WINDOW_MILLIS)};
+
+        int rowsRestored;
+        database.beginTransaction();
+        try {
+            // The unique index skips the codes that are taken, and those products stay without one
+            SQLiteStatement statement = database.compileStatement(
+                    "UPDATE OR IGNORE " + ProductEntry.TABLE_NAME + " SET " + ProductEntry.COLUMN_PRODUCT_SKU +
+                            " = " + ProductEntry.COLUMN_DELETED_SKU + " WHERE " + lastDelete + " AND " +
+                            ProductEntry.COLUMN_DELETED_SKU + " IS NOT NULL");
+            statement.bindAllArgsAsStrings(lastDeleteArgs);
+            try {
+                statement.executeUpdateDelete();
+            } finally {
+                statement.close();
+            }
+
+            ContentValues values = new ContentValues();
+            values.putNull(ProductEntry.COLUMN_DELETED_AT);
+            values.putNull(ProductEntry.COLUMN_DELETED_SKU);
+            rowsRestored = database.update(ProductEntry.TABLE_NAME, values, lastDelete, lastDeleteArgs);
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+        }
+
+        // The lists of products have to requery, because rows came back
+        if (rowsRestored != 0) {
+            notifyChange(ProductEntry.CONTENT_URI);
+            notifyChange(ProductEntry.CHANGES_URI);
+            notifyChange(SummaryEntry.CONTENT_URI);
+            scheduleLowStockCheck(database);
+        }
+
+        Bundle result = new Bundle();
+        result.putInt(ProductEntry.KEY_RESTORED_COUNT, rowsRestored);
+        return result;
+    }
+
+    /**
+     * Removes the products that were deleted before the undo window, PURGE_CHUNK_SIZE of them
+     * per transaction, found through the index of deleted_at. Between the chunks the other
+     * writers can run, so a big purge does not hold the database for long. Then the free pages
+     * are given back to the file system. No one is notified, the products were not shown anymore.
+     *
+     * @return KEY_PURGED_COUNT and KEY_REMAINING_COUNT, the deleted products that can still
+     * be restored
+     */
+    private Bundle purgeDeleted() {
+        SQLiteDatabase database = mDbHelper.getWritableDatabase();
+        String[] cutoff = {String.valueOf(System.currentTimeMillis() - ProductEntry.UNDO_WINDOW_MILLIS)};
+
+        int purged = 0;
+        int rowsDeleted;
+        do {
+            // The triggers remove the search rows and the reorder rules, and the foreign key
+            // the stock, in the same transaction as the products
+            rowsDeleted = database.delete(ProductEntry.TABLE_NAME, ProductEntry._ID + " IN (SELECT " +
+                    ProductEntry._ID + " FROM " + ProductEntry.TABLE_NAME + " WHERE " +
+                    ProductEntry.COLUMN_DELETED_AT + " <= ? LIMIT " + PURGE_CHUNK_SIZE + ")", cutoff);
+            purged += rowsDeleted;
+        } while (rowsDeleted == PURGE_CHUNK_SIZE);
+
+        if (purged != 0) {
+            mDbHelper.compact();
+        }
+
+        Bundle result = new Bundle();
+        result.putInt(ProductEntry.KEY_PURGED_COUNT, purged);
+        result.putInt(ProductEntry.KEY_REMAINING_COUNT, (int) DatabaseUtils.queryNumEntries(database,
+                ProductEntry.TABLE_NAME, ProductEntry.COLUMN_DELETED_AT + " IS NOT NULL"));
+        return result;
+    }
+
     /**
      * The purpose of this method is to return a String,
      * that describes the type of the data stored at the input Uri.
@@ -322,9 +2247,35 @@ public class ProductProvider extends ContentProvider {
 
         switch (match) {
             case PRODUCTS:
+            case PRODUCT_SEARCH:
                 return ProductEntry.CONTENT_LIST_TYPE;
             case PRODUCT_ID:
+            case PRODUCT_ADJUST:
+            case PRODUCT_SKU:
+                return ProductEntry.CONTENT_ITEM_TYPE;
+            case PRODUCT_SALES:
+            case DAILY_SALES:
+                return ProductEntry.CONTENT_SALES_TYPE;
+            case PRODUCT_RESTOCK:
+                return ProductEntry.CONTENT_RESTOCK_TYPE;
+            case SUPPLIERS:
+                return SupplierEntry.CONTENT_LIST_TYPE;
+            case SUPPLIER_ID:
+                return SupplierEntry.CONTENT_ITEM_TYPE;
+            case SUPPLIER_PRODUCTS:
+                return ProductEntry.CONTENT_LIST_TYPE;
+            case SUMMARY:
+                return SummaryEntry.CONTENT_LIST_TYPE;
+            case PRODUCT_STOCK:
+            case PRODUCT_TOTALS:
+            case LOCATION_STOCK:
+                return StockEntry.CONTENT_LIST_TYPE;
+            case PRODUCT_TRANSFER:
                 return ProductEntry.CONTENT_ITEM_TYPE;
+            case LOCATIONS:
+                return LocationEntry.CONTENT_LIST_TYPE;
+            case LOCATION_ID:
+                return LocationEntry.CONTENT_ITEM_TYPE;
             default:
                 throw new IllegalStateException("Unknown URI " + uri + " with match " + match);
         }
@@ -0,0 +1,165 @@
+package com.example.user.inventoryapp.data;
+
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.util.LruCache;
+
+import java.util.HashMap;
+
+/**
+ * {@link ProductRowCache} keeps the most recently opened products in memory, with all of the
+ * columns of a single product, so opening the same product again, like scanning the same item
+ * at the till, does not query the database.
+ * <p>
+ * The provider removes a product when its change is notified, and everything when the change
+ * can not be tied to one product. Every removal starts a new generation: a row read from the
+ * database is only added if no removal happened while it was read, so a row that was read
+ * just before a write was committed can not stay in the cache after it.
+ * All methods are thread safe.
+ */
+class ProductRowCache {
+
+    // The columns of every row, in the order of the values
+    private final String[] mColumns;
+
+    // The index of every column in the values
+    private final HashMap<String, Integer> mColumnIndexes = new HashMap<>();
+
+    // The values of the products, by _id
+    private final LruCache<Long, Object[]> mRows;
+
+    // Increased by every removal
+    private long mGeneration;
+
+    /**
+     * Constructs a new {@link ProductRowCache}.
+     *
+     * @param columns The columns of a product that are cached
+     * @param maxSize The maximum number of products
+     */
+    ProductRowCache(String[] columns, int maxSize) {
+        mColumns = columns;
+        for (int i = 0; i < columns.length; i++) {
+            mColumnIndexes.put(columns[i], i);
+        }
+        mRows = new LruCache<>(maxSize);
+    }
+
+    /**
+     * Returns the columns of the cached rows.
+     */
+    String[] getColumns() {
+        return mColumns;
+    }
+
+    /**
+     * Returns true if every column of the projection is cached. A null projection reads all of them.
+     */
+    boolean hasColumns(String[] projection) {
+        if (projection == null) {
+            return true;
+        }
+        for (String column : projection) {
+            if (!mColumnIndexes.containsKey(column)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the generation to pass to {@link #put(long, Cursor, long)}.
+     * Call it before the row is read from the database.
+     */
+    synchronized long getGeneration() {
+        return mGeneration;
+    }
+
+    /**
+     * Returns a cursor with the cached product and the columns of the projection,
+     * or null if the product is not cached.
+     */
+    Cursor get(long id, String[] projection) {
+        Object[] row = mRows.get(id);
+        return row == null ? null : toCursor(row, projection);
+    }
+
+    /**
+     * Caches the product in the current row of the cursor, which has the cached columns,
+     * unless it was removed since the generation. Returns a cursor with the product and
+     * the columns of the projection.
+     */
+    Cursor put(long id, Cursor cursor, long generation, String[] projection) {
+        Object[] row = new Object[mColumns.length];
+        for (int i = 0; i < row.length; i++) {
+            switch (cursor.getType(i)) {
+                case Cursor.FIELD_TYPE_INTEGER:
+                    row[i] = cursor.getLong(i);
+                    break;
+                case Cursor.FIELD_TYPE_FLOAT:
+                    row[i] = cursor.getDouble(i);
+                    break;
+                case Cursor.FIELD_TYPE_STRING:
+                    row[i] = cursor.getString(i);
+                    break;
+                case Cursor.FIELD_TYPE_BLOB:
+                    row[i] = cursor.getBlob(i);
+                    break;
+                default:
+                    row[i] = null;
+            }
+        }
+
+        synchronized (this) {
+            if (generation == mGeneration) {
+                mRows.put(id, row);
+            }
+        }
+        return toCursor(row, projection);
+    }
+
+    /**
+     * Removes the product, after it was changed or deleted.
+     */
+    synchronized void remove(long id) {
+        mGeneration++;
+        mRows.remove(id);
+    }
+
+    /**
+     * Removes all of the products, after a change that could touch any of them.
+     */
+    synchronized void clear() {
+        mGeneration++;
+        mRows.evictAll();
+    }
+
+    // The number of products found in the cache, and not found
+    int hitCount() {
+        return mRows.hitCount();
+    }
+
+    int missCount() {
+        return mRows.missCount();
+    }
+
+    // The number of products in the cache
+    int size() {
+        return mRows.size();
+    }
+
+    // Returns a cursor with the values of the row for the columns of the projection
+    private MatrixCursor toCursor(Object[] row, String[] projection) {
+        if (projection == null) {
+            projection = mColumns;
+        }
+        Object[] values = new Object[projection.length];
+        for (int i = 0; i < projection.length; i++) {
+            values[i] = row[mColumnIndexes.get(projection[i])];
+        }
+
+        MatrixCursor cursor = new MatrixCursor(projection, 1);
+        cursor.addRow(values);
+        return cursor;
+    }
+}
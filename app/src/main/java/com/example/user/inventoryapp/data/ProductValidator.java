@@ -0,0 +1,104 @@
+package com.example.user.inventoryapp.data;
+
+import android.content.ContentValues;
+
+import com.example.user.inventoryapp.data.ProductContract.ProductEntry;
+
+import java.util.Currency;
+import java.util.Locale;
+
+/**
+ * {@link ProductValidator} holds the rules a new product must follow, so that the provider
+ * and the importer of the catalog accept exactly the same products.
+ */
+public final class ProductValidator {
+
+    // The longest SKU or EAN code that is accepted
+    public static final int MAX_SKU_LENGTH = 64;
+
+    // Preventing someone from accidentally instantiating this class
+    private ProductValidator() {
+    }
+
+    /**
+     * Checks the values of a new product.
+     *
+     * @throws IllegalArgumentException if the product has no name, or no price or a negative one,
+     *                                  or an unknown currency, or a negative reorder threshold,
+     *                                  or an invalid SKU
+     */
+    public static void validateNewProduct(ContentValues values) {
+
+        // Check that the product name is not null. I think that extraction data from the input may result in
+        // inserting an "empty" string, which is different from null.
+        // That is why I also check for an "empty" string: length() == 0
+        String productName = values.getAsString(ProductEntry.COLUMN_PRODUCT_NAME);
+        if (productName == null || productName.length() == 0) {
+            throw new IllegalArgumentException("Insert Exception! Product requires a product name!");
+        }
+
+        // Check that the price is not null or not a negative number
+        Long price = values.getAsLong(ProductEntry.COLUMN_PRODUCT_PRICE_CENTS);
+        if (price == null || price < 0) {
+            throw new IllegalArgumentException("Insert Exception! Product requires a price or a positive value!");
+        }
+
+        // The currency is optional, but it must be a known one
+        String currency = values.getAsString(ProductEntry.COLUMN_PRODUCT_CURRENCY);
+        if (currency != null && !isCurrency(currency)) {
+            throw new IllegalArgumentException("Insert Exception! Unknown currency " + currency);
+        }
+
+        // The reorder threshold is optional, but it can not be negative
+        Integer threshold = values.getAsInteger(ProductEntry.COLUMN_REORDER_THRESHOLD);
+        if (threshold != null && threshold < 0) {
+            throw new IllegalArgumentException("Insert Exception! The reorder threshold can not be negative!");
+        }
+
+        // The code is optional, but it must be a usable one
+        String sku = values.getAsString(ProductEntry.COLUMN_PRODUCT_SKU);
+        if (sku != null && normalizeSku(sku) == null) {
+            throw new IllegalArgumentException("Insert Exception! Invalid SKU " + sku);
+        }
+
+        // No need to check other inputs because they have default values and
+        // "supplier name" and "suppliers e-mail" can have no values
+    }
+
+    /**
+     * Returns the SKU or EAN code the way it is stored: without the spaces a scanner or
+     * the user may add around it, and in upper case, so a typed code finds a scanned one.
+     * Returns null if the code is empty, longer than {@link #MAX_SKU_LENGTH} or has spaces
+     * or other control characters inside.
+     */
+    public static String normalizeSku(String sku) {
+        if (sku == null) {
+            return null;
+        }
+        String normalized = sku.trim().toUpperCase(Locale.ROOT);
+        if (normalized.length() == 0 || normalized.length() > MAX_SKU_LENGTH) {
+            return null;
+        }
+        for (int i = 0; i < normalized.length(); i++) {
+            if (normalized.charAt(i) <= ' ') {
+                return null;
+            }
+        }
+        return normalized;
+    }
+
+    /**
+     * Returns true if the code is the ISO 4217 code of a known currency, like "EUR".
+     */
+    public static boolean isCurrency(String code) {
+        if (code == null) {
+            return false;
+        }
+        try {
+            Currency.getInstance(code);
+            return true;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,251 @@
+package com.example.user.inventoryapp.data;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+
+import com.example.user.inventoryapp.data.ProductContract.ProductEntry;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * {@link StockWriteQueue} accepts sales and restocks without waiting for the database.
+ * A change is added to the in-memory deltas at once, so the list can show the new quantity,
+ * and written to the journal of the provider on a background thread right after, so it is
+ * not lost if the app is killed. The journal is written before any flush, which the screens
+ * also ask for when they are paused. Every {@link #FLUSH_INTERVAL_MILLIS} the journal is flushed:
+ * the deltas of each product are summed and added to its quantity in one transaction,
+ * so ten quick taps on "Sale" are one update instead of ten.
+ * A journal that was not flushed before the app was killed is flushed the next time
+ * the queue is used.
+ * All public methods must be called from the main thread.
+ */
+public class StockWriteQueue {
+
+    /**
+     * Listens for the changes of the deltas that are not written to the products yet.
+     */
+    public interface Listener {
+
+        // Called when a delta of the product was added
+        void onPendingDeltaChanged(long id);
+
+        // Called when the deltas were added to the products, with their new quantities
+        // and the number of sold units that were not on stock anymore
+        void onStockFlushed(long[] ids, int[] quantities, int rejectedUnits);
+    }
+
+    /**
+     * Receives the result of {@link #sellBySku(String, SaleCallback)}, on the main thread.
+     */
+    public interface SaleCallback {
+
+        /**
+         * @param id       The id of the product with the code, or -1 if there is none
+         * @param name     The name of the product, or null if there is none
+         * @param quantity The new quantity of the product, or -1 if it was not sold
+         */
+        void onSold(long id, String name, int quantity);
+    }
+
+    // How long the changes are collected before they are written to the products
+    public static final long FLUSH_INTERVAL_MILLIS = 1000;
+
+    private static StockWriteQueue sInstance;
+
+    private final ContentResolver mResolver;
+
+    // One thread, so the journal entries and the flushes are done in the order they were asked for
+    private final ExecutorService mExecutor = Executors.newSingleThreadExecutor();
+
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    // The sum of the deltas of every product that are not written to the product yet
+    private final HashMap<Long, Integer> mPendingDeltas = new HashMap<>();
+
+    // The deltas that are journaled but not flushed yet. Used only on the thread of mExecutor.
+    private final HashMap<Long, Integer> mJournaledDeltas = new HashMap<>();
+
+    private final List<Listener> mListeners = new ArrayList<>();
+
+    // True if a flush is posted to the main handler
+    private boolean mFlushScheduled;
+
+    private final Runnable mFlushRunnable = new Runnable() {
+        @Override
+        public void run() {
+            flush();
+        }
+    };
+
+    private StockWriteQueue(Context context) {
+        mResolver = context.getContentResolver();
+    }
+
+    /**
+     * Returns the queue shared by the whole app.
+     */
+    public static synchronized StockWriteQueue getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new StockWriteQueue(context.getApplicationContext());
+
+            // Add the deltas that were journaled before the app was killed
+            sInstance.flush();
+        }
+        return sInstance;
+    }
+
+    /**
+     * Adds a delta to the quantity of a product. The delta is shown at once
+     * by {@link #getPendingDelta(long)}, and written to the product within
+     * {@link #FLUSH_INTERVAL_MILLIS}.
+     *
+     * @param id    The id of the product
+     * @param delta The change of the quantity, negative for a sale
+     */
+    public void add(final long id, final int delta) {
+        addDelta(mPendingDeltas, id, delta);
+
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                Bundle extras = new Bundle();
+                extras.putInt(ProductEntry.KEY_QUANTITY_DELTA, delta);
+                mResolver.call(ProductEntry.CONTENT_URI, ProductEntry.METHOD_JOURNAL_DELTA,
+                        String.valueOf(id), extras);
+                addDelta(mJournaledDeltas, id, delta);
+            }
+        });
+
+        // Flush after the interval from the first change, not from the last one,
+        // so a user who keeps tapping still sees the database catch up
+        if (!mFlushScheduled) {
+            mFlushScheduled = true;
+            mMainHandler.postDelayed(mFlushRunnable, FLUSH_INTERVAL_MILLIS);
+        }
+
+        for (Listener listener : new ArrayList<>(mListeners)) {
+            listener.onPendingDeltaChanged(id);
+        }
+    }
+
+    // Adds the delta of the product to the sums, removing the sums that become 0
+    private static void addDelta(Map<Long, Integer> deltas, long id, int delta) {
+        Integer sum = deltas.get(id);
+        int newSum = sum == null ? delta : sum + delta;
+        if (newSum == 0) {
+            deltas.remove(id);
+        } else {
+            deltas.put(id, newSum);
+        }
+    }
+
+    /**
+     * Sells one unit of the product with the SKU or EAN code. The product is found and sold
+     * by one call to the provider, after the changes that are queued before it.
+     *
+     * @param code     The code that was typed or scanned
+     * @param callback Receives the product and its new quantity on the main thread
+     */
+    public void sellBySku(final String code, final SaleCallback callback) {
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final Bundle result = mResolver.call(ProductEntry.CONTENT_URI,
+                        ProductEntry.METHOD_SELL_BY_SKU, code, null);
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        callback.onSold(result.getLong(ProductEntry.KEY_PRODUCT_ID),
+                                result.getString(ProductEntry.COLUMN_PRODUCT_NAME),
+                                result.getInt(ProductEntry.COLUMN_PRODUCT_QUANTITY));
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Returns the sum of the deltas of the product that are not written to it yet, or 0.
+     */
+    public int getPendingDelta(long id) {
+        Integer pending = mPendingDeltas.get(id);
+        return pending == null ? 0 : pending;
+    }
+
+    /**
+     * Writes the journaled deltas to the products now, for example when the app goes
+     * to the background.
+     */
+    public void flush() {
+        mMainHandler.removeCallbacks(mFlushRunnable);
+        mFlushScheduled = false;
+
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                // The flush includes exactly the deltas journaled before it, because it runs after them
+                final Map<Long, Integer> flushed = new HashMap<>(mJournaledDeltas);
+                mJournaledDeltas.clear();
+
+                final Bundle result = mResolver.call(ProductEntry.CONTENT_URI,
+                        ProductEntry.METHOD_FLUSH_DELTAS, null, null);
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        onFlushed(flushed, result);
+                    }
+                });
+            }
+        });
+    }
+
+    // Runs on the main thread, after the flush of the deltas
+    private void onFlushed(Map<Long, Integer> flushed, Bundle result) {
+
+        // The flushed deltas are part of the quantities now, or were rejected
+        for (Map.Entry<Long, Integer> entry : flushed.entrySet()) {
+            addDelta(mPendingDeltas, entry.getKey(), -entry.getValue());
+        }
+
+        long[] ids = result == null ? new long[0] : result.getLongArray(ProductEntry.KEY_PRODUCT_IDS);
+        int[] quantities = result == null ? new int[0] : result.getIntArray(ProductEntry.KEY_QUANTITIES);
+        int rejectedUnits = result == null ? 0 : result.getInt(ProductEntry.KEY_REJECTED_UNITS);
+
+        for (Listener listener : new ArrayList<>(mListeners)) {
+            listener.onStockFlushed(ids, quantities, rejectedUnits);
+        }
+
+        // The deltas that were dropped, because their products were deleted,
+        // are not shown anymore
+        for (long id : ids) {
+            flushed.remove(id);
+        }
+        for (long id : flushed.keySet()) {
+            for (Listener listener : new ArrayList<>(mListeners)) {
+                listener.onPendingDeltaChanged(id);
+            }
+        }
+    }
+
+    /**
+     * Registers a listener for the changes of the deltas.
+     */
+    public void addListener(Listener listener) {
+        mListeners.add(listener);
+    }
+
+    /**
+     * Unregisters a listener added with {@link #addListener(Listener)}.
+     */
+    public void removeListener(Listener listener) {
+        mListeners.remove(listener);
+    }
+}
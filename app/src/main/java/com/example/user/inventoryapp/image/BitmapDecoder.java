@@ -0,0 +1,149 @@
+package com.example.user.inventoryapp.image;
+
+import android.content.ContentResolver;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.net.Uri;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * {@link BitmapDecoder} decodes images downsampled to the size they are displayed at,
+ * so that a big photo from the gallery does not have to be decoded in full resolution.
+ * The methods are blocking, so they should be called from a background thread.
+ */
+public final class BitmapDecoder {
+
+    // Tag for the log messages
+    private static final String LOG_TAG = BitmapDecoder.class.getSimpleName();
+
+    // Size of the buffer of the stream of the image
+    private static final int BUFFER_SIZE = 16 * 1024;
+
+    // How many bytes of the header of the image can be read and then rewound
+    private static final int MARK_LIMIT = 256 * 1024;
+
+    // Preventing someone from accidentally instantiating this class
+    private BitmapDecoder() {
+    }
+
+    /**
+     * Decodes the image at the given uri, downsampled so that it is not smaller
+     * than the requested size.
+     *
+     * @param resolver  The content resolver used to open the image
+     * @param uri       The uri of the image
+     * @param reqWidth  The width the image will be displayed at, in pixels
+     * @param reqHeight The height the image will be displayed at, in pixels
+     * @return the decoded bitmap, or null if the image could not be decoded
+     */
+    public static Bitmap decodeSampled(ContentResolver resolver, Uri uri, int reqWidth, int reqHeight) {
+        return decodeSampled(resolver, uri, reqWidth, reqHeight, null);
+    }
+
+    /**
+     * Decodes the image at the given uri, downsampled so that it is not smaller
+     * than the requested size. The size of the image and its pixels are read from the same
+     * stream, which is opened a second time only if the header of the image is very big.
+     *
+     * @param resolver  The content resolver used to open the image
+     * @param uri       The uri of the image
+     * @param reqWidth  The width the image will be displayed at, in pixels
+     * @param reqHeight The height the image will be displayed at, in pixels
+     * @param pool      The pool to take the memory of the bitmap from, or null to allocate it.
+     *                  The returned bitmap is mutable, so it can be given back to the pool.
+     * @return the decoded bitmap, or null if the image could not be decoded
+     */
+    public static Bitmap decodeSampled(ContentResolver resolver, Uri uri, int reqWidth, int reqHeight,
+                                       BitmapPool pool) {
+        InputStream input = null;
+        try {
+            // First decode only the dimensions of the image,
+            // marking the stream so it can be rewound for decoding the pixels
+            input = new BufferedInputStream(resolver.openInputStream(uri), BUFFER_SIZE);
+            input.mark(MARK_LIMIT);
+
+            BitmapFactory.Options options = new BitmapFactory.Options();
+            options.inJustDecodeBounds = true;
+            BitmapFactory.decodeStream(input, null, options);
+
+            if (options.outWidth <= 0 || options.outHeight <= 0) {
+                Log.e(LOG_TAG, "Failed to read the size of the image " + uri);
+                return null;
+            }
+
+            // Rewind the stream, or open it again if the header did not fit into the mark
+            try {
+                input.reset();
+            } catch (IOException e) {
+                closeQuietly(input);
+                input = resolver.openInputStream(uri);
+            }
+
+            // Then decode the pixels at the smallest size that still fills the requested size
+            options.inSampleSize = calculateInSampleSize(options.outWidth, options.outHeight,
+                    reqWidth, reqHeight);
+            options.inJustDecodeBounds = false;
+
+            if (pool == null) {
+                return BitmapFactory.decodeStream(input, null, options);
+            }
+
+            // Reuse the memory of a bitmap from the pool, if there is one that fits
+            options.inMutable = true;
+            options.inBitmap = pool.get(options.outWidth, options.outHeight,
+                    options.inSampleSize, options.inPreferredConfig);
+            try {
+                return BitmapFactory.decodeStream(input, null, options);
+            } catch (IllegalArgumentException e) {
+                // The bitmap from the pool could not be reused, so decode without it
+                if (options.inBitmap == null) {
+                    throw e;
+                }
+                Log.w(LOG_TAG, "Failed to reuse a bitmap for " + uri, e);
+                options.inBitmap = null;
+                closeQuietly(input);
+                input = resolver.openInputStream(uri);
+                return BitmapFactory.decodeStream(input, null, options);
+            }
+
+        } catch (IOException | SecurityException e) {
+            Log.e(LOG_TAG, "Failed to load image " + uri, e);
+            return null;
+        } finally {
+            closeQuietly(input);
+        }
+    }
+
+    /**
+     * Returns the largest power of two sample size, that keeps both sides of the decoded image
+     * at least as big as the requested ones. A requested side of 0 or less is ignored.
+     */
+    public static int calculateInSampleSize(int width, int height, int reqWidth, int reqHeight) {
+        int inSampleSize = 1;
+
+        if (reqWidth <= 0 && reqHeight <= 0) {
+            return inSampleSize;
+        }
+
+        while ((reqWidth <= 0 || width / (inSampleSize * 2) >= reqWidth) &&
+                (reqHeight <= 0 || height / (inSampleSize * 2) >= reqHeight)) {
+            inSampleSize *= 2;
+        }
+        return inSampleSize;
+    }
+
+    // Closes the stream, ignoring the errors
+    static void closeQuietly(InputStream input) {
+        if (input == null) {
+            return;
+        }
+        try {
+            input.close();
+        } catch (IOException ignored) {
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package com.example.user.inventoryapp.image;
+
+import android.annotation.TargetApi;
+import android.graphics.Bitmap;
+import android.os.Build;
+
+import java.util.Iterator;
+import java.util.LinkedList;
+
+/**
+ * {@link BitmapPool} keeps bitmaps that are not displayed anymore, so that their memory can be
+ * reused for decoding the next image (BitmapFactory.Options.inBitmap), instead of allocating
+ * a new bitmap and leaving the old one to the garbage collector.
+ * The methods can be called from any thread.
+ */
+public class BitmapPool {
+
+    // The part of the app's memory the pool can hold
+    private static final int MAX_SIZE_FRACTION = 16;
+
+    private static BitmapPool sInstance;
+
+    // The maximum number of bytes of all of the bitmaps together
+    private final long mMaxSize;
+
+    // The bitmaps that can be reused, the most recently added last
+    private final LinkedList<Bitmap> mBitmaps = new LinkedList<>();
+
+    // The number of bytes of all of the bitmaps together
+    private long mSize;
+
+    private BitmapPool(long maxSize) {
+        mMaxSize = maxSize;
+    }
+
+    /**
+     * Returns the pool shared by the whole app.
+     */
+    public static synchronized BitmapPool getInstance() {
+        if (sInstance == null) {
+            sInstance = new BitmapPool(Runtime.getRuntime().maxMemory() / MAX_SIZE_FRACTION);
+        }
+        return sInstance;
+    }
+
+    /**
+     * Removes and returns a bitmap that can be used as inBitmap for decoding an image of the
+     * given size with the given sample size, or null if there is none.
+     */
+    public synchronized Bitmap get(int width, int height, int inSampleSize, Bitmap.Config config) {
+        Iterator<Bitmap> iterator = mBitmaps.descendingIterator();
+        while (iterator.hasNext()) {
+            Bitmap bitmap = iterator.next();
+            if (canUseForInBitmap(bitmap, width, height, inSampleSize, config)) {
+                iterator.remove();
+                mSize -= byteCount(bitmap);
+                return bitmap;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Gives a bitmap that is not displayed anymore to the pool.
+     * Only mutable bitmaps can be reused, the others are ignored.
+     */
+    public synchronized void put(Bitmap bitmap) {
+        if (bitmap == null || bitmap.isRecycled() || !bitmap.isMutable() ||
+                byteCount(bitmap) > mMaxSize || mBitmaps.contains(bitmap)) {
+            return;
+        }
+
+        mBitmaps.addLast(bitmap);
+        mSize += byteCount(bitmap);
+
+        // Drop the oldest bitmaps until the pool fits into its size
+        while (mSize > mMaxSize) {
+            mSize -= byteCount(mBitmaps.removeFirst());
+        }
+    }
+
+    // Returns true if an image of the given size can be decoded into the bitmap
+    private static boolean canUseForInBitmap(Bitmap bitmap, int width, int height,
+                                             int inSampleSize, Bitmap.Config config) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+            // From KitKat any bitmap that is big enough can be reused.
+            // Round the decoded size up, because the decoder may do the same.
+            int decodedWidth = (width + inSampleSize - 1) / inSampleSize;
+            int decodedHeight = (height + inSampleSize - 1) / inSampleSize;
+            long byteCount = (long) decodedWidth * decodedHeight * bytesPerPixel(config);
+            return byteCount <= byteCount(bitmap);
+        }
+
+        // Before KitKat the bitmap must have exactly the same size and the image must not be sampled
+        return inSampleSize == 1 && bitmap.getWidth() == width && bitmap.getHeight() == height &&
+                bitmap.getConfig() == config;
+    }
+
+    // Returns the number of bytes of memory the bitmap holds
+    @TargetApi(Build.VERSION_CODES.KITKAT)
+    private static long byteCount(Bitmap bitmap) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+            return bitmap.getAllocationByteCount();
+        }
+        return bitmap.getByteCount();
+    }
+
+    // Returns the number of bytes one pixel takes in the given configuration
+    private static int bytesPerPixel(Bitmap.Config config) {
+        if (config == Bitmap.Config.RGB_565 || config == Bitmap.Config.ARGB_4444) {
+            return 2;
+        } else if (config == Bitmap.Config.ALPHA_8) {
+            return 1;
+        }
+        return 4;
+    }
+}
@@ -0,0 +1,155 @@
+package com.example.user.inventoryapp.image;
+
+import android.content.ContentResolver;
+import android.graphics.Bitmap;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.view.ViewTreeObserver;
+import android.widget.ImageView;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * {@link PhotoDecoder} shows a photo in one ImageView of a screen, decoding it on a background
+ * thread at the size of the ImageView. The memory of the photo that is replaced is given to a
+ * {@link BitmapPool} and reused for the next decode.
+ * The screen must call {@link #release()} when it is destroyed, which cancels the pending decode,
+ * so a finished decode never touches a destroyed screen.
+ * All public methods must be called from the main thread.
+ */
+public class PhotoDecoder {
+
+    // One thread is enough, because only one photo per screen is decoded at a time
+    private static final ExecutorService sExecutor = Executors.newSingleThreadExecutor();
+
+    private final ContentResolver mResolver;
+
+    private final ImageView mImageView;
+
+    private final BitmapPool mPool = BitmapPool.getInstance();
+
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    // The decode that is running, or null
+    private Future<?> mPendingDecode;
+
+    // Incremented on every request, so the result of an older request is ignored
+    private int mGeneration;
+
+    // The bitmap decoded by this decoder that the ImageView is showing, or null
+    private Bitmap mCurrentBitmap;
+
+    // Waits for the ImageView to be measured before decoding
+    private ViewTreeObserver.OnPreDrawListener mPendingLayoutListener;
+
+    /**
+     * Constructs a new {@link PhotoDecoder}.
+     *
+     * @param resolver  The content resolver used to open the photos
+     * @param imageView The ImageView that shows the photos
+     */
+    public PhotoDecoder(ContentResolver resolver, ImageView imageView) {
+        mResolver = resolver;
+        mImageView = imageView;
+    }
+
+    /**
+     * Decodes the photo on a background thread and shows it in the ImageView.
+     * The request replaces the previous one, if it has not finished yet.
+     *
+     * @param uri The uri of the photo
+     */
+    public void load(final Uri uri) {
+        cancelPending();
+        final int generation = ++mGeneration;
+
+        // The size of the ImageView is known only after it has been measured
+        if (mImageView.getWidth() == 0 || mImageView.getHeight() == 0) {
+            mPendingLayoutListener = new ViewTreeObserver.OnPreDrawListener() {
+                @Override
+                public boolean onPreDraw() {
+                    mImageView.getViewTreeObserver().removeOnPreDrawListener(this);
+                    mPendingLayoutListener = null;
+                    startDecode(uri, generation);
+                    return true;
+                }
+            };
+            mImageView.getViewTreeObserver().addOnPreDrawListener(mPendingLayoutListener);
+            return;
+        }
+
+        startDecode(uri, generation);
+    }
+
+    /**
+     * Cancels the pending decode and gives the memory of the shown photo back to the pool.
+     * Call it when the screen is destroyed.
+     */
+    public void release() {
+        cancelPending();
+        mGeneration++;
+
+        if (mCurrentBitmap != null) {
+            mImageView.setImageDrawable(null);
+            mPool.put(mCurrentBitmap);
+            mCurrentBitmap = null;
+        }
+    }
+
+    // Starts decoding the photo on the background thread
+    private void startDecode(final Uri uri, final int generation) {
+        final int width = mImageView.getWidth();
+        final int height = mImageView.getHeight();
+
+        mPendingDecode = sExecutor.submit(new Runnable() {
+            @Override
+            public void run() {
+                final Bitmap bitmap = BitmapDecoder.decodeSampled(mResolver, uri, width, height, mPool);
+
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        onDecoded(bitmap, generation);
+                    }
+                });
+            }
+        });
+    }
+
+    // Called on the main thread when a photo has been decoded
+    private void onDecoded(Bitmap bitmap, int generation) {
+        if (bitmap == null) {
+            return;
+        }
+
+        // The request was replaced or cancelled, so the bitmap is not needed
+        if (generation != mGeneration) {
+            mPool.put(bitmap);
+            return;
+        }
+        mPendingDecode = null;
+
+        // Show the new photo, then give the memory of the old one to the pool
+        Bitmap oldBitmap = mCurrentBitmap;
+        mCurrentBitmap = bitmap;
+        mImageView.setImageBitmap(bitmap);
+        if (oldBitmap != null && oldBitmap != bitmap) {
+            mPool.put(oldBitmap);
+        }
+    }
+
+    // Cancels the decode that has not finished yet
+    private void cancelPending() {
+        if (mPendingLayoutListener != null) {
+            mImageView.getViewTreeObserver().removeOnPreDrawListener(mPendingLayoutListener);
+            mPendingLayoutListener = null;
+        }
+        if (mPendingDecode != null) {
+            mPendingDecode.cancel(true);
+            mPendingDecode = null;
+        }
+    }
+}
@@ -0,0 +1,226 @@
+package com.example.user.inventoryapp.image;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.net.Uri;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * {@link ThumbnailDiskCache} keeps small, already scaled copies of the product photos
+ * in the cache directory of the app. Reading such a file takes a few milliseconds,
+ * while decoding the original photo from the gallery can take hundreds.
+ * The files are evicted in least recently used order when the cache grows over its size.
+ * The methods do disk I/O, so they should be called from a background thread.
+ */
+public class ThumbnailDiskCache {
+
+    // Tag for the log messages
+    private static final String LOG_TAG = ThumbnailDiskCache.class.getSimpleName();
+
+    // Name of the directory in the cache directory of the app
+    private static final String DIRECTORY_NAME = "thumbnails";
+
+    // The maximum size of all of the files together
+    private static final long MAX_SIZE_BYTES = 20 * 1024 * 1024;
+
+    // Quality of the JPEG compression of the thumbnails
+    private static final int JPEG_QUALITY = 85;
+
+    // Suffix of the files a thumbnail is written to, before it is renamed to its own name
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private static ThumbnailDiskCache sInstance;
+
+    private final File mDirectory;
+
+    // The files of the cache with their sizes, in least recently used order
+    private final LinkedHashMap<String, Long> mEntries = new LinkedHashMap<>(16, 0.75f, true);
+
+    // The size of all of the files together
+    private long mSize;
+
+    private ThumbnailDiskCache(File directory) {
+        mDirectory = directory;
+        if (!mDirectory.exists() && !mDirectory.mkdirs()) {
+            Log.e(LOG_TAG, "Failed to create the thumbnail directory " + mDirectory);
+        }
+
+        // Start with the files that are already there, the oldest first
+        File[] files = mDirectory.listFiles();
+        if (files != null) {
+            Arrays.sort(files, new Comparator<File>() {
+                @Override
+                public int compare(File first, File second) {
+                    long difference = first.lastModified() - second.lastModified();
+                    return difference < 0 ? -1 : (difference > 0 ? 1 : 0);
+                }
+            });
+            for (File file : files) {
+                // A thumbnail that was being written when the app was killed
+                if (file.getName().endsWith(TEMP_SUFFIX)) {
+                    file.delete();
+                    continue;
+                }
+                mEntries.put(file.getName(), file.length());
+                mSize += file.length();
+            }
+        }
+    }
+
+    /**
+     * Returns the disk cache shared by the whole app.
+     */
+    public static synchronized ThumbnailDiskCache getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new ThumbnailDiskCache(new File(context.getCacheDir(), DIRECTORY_NAME));
+        }
+        return sInstance;
+    }
+
+    /**
+     * Returns the cached thumbnail of the photo, or null if it is not cached.
+     */
+    public Bitmap get(Uri photoUri, int width, int height) {
+        String name = fileName(photoUri, width, height);
+        synchronized (this) {
+            // get() also moves the entry to the end of the least recently used order
+            if (mEntries.get(name) == null) {
+                return null;
+            }
+        }
+
+        // Decode outside of the lock, so other threads can use the cache in the meantime
+        File file = new File(mDirectory, name);
+        Bitmap bitmap = BitmapFactory.decodeFile(file.getPath());
+        if (bitmap == null) {
+            // The file is broken or was deleted, so forget about it
+            synchronized (this) {
+                removeEntry(name);
+            }
+            return null;
+        }
+
+        // Remember the access time, so the order survives a restart of the app
+        file.setLastModified(System.currentTimeMillis());
+        return bitmap;
+    }
+
+    /**
+     * Saves the thumbnail of the photo, evicting the least recently used ones if needed.
+     * The thumbnail is written to a file of its own and then renamed, so get() never
+     * decodes a file that is only half written.
+     */
+    public void put(Uri photoUri, int width, int height, Bitmap bitmap) {
+        String name = fileName(photoUri, width, height);
+        File file = new File(mDirectory, name);
+
+        // Compress outside of the lock, into a file no other thread reads
+        File tempFile = null;
+        OutputStream output = null;
+        try {
+            tempFile = File.createTempFile(name, TEMP_SUFFIX, mDirectory);
+            output = new FileOutputStream(tempFile);
+            bitmap.compress(Bitmap.CompressFormat.JPEG, JPEG_QUALITY, output);
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Failed to save the thumbnail of " + photoUri, e);
+            closeQuietly(output);
+            if (tempFile != null) {
+                tempFile.delete();
+            }
+            return;
+        }
+        closeQuietly(output);
+
+        // The rename replaces an older file of the thumbnail at once, so a reader
+        // decodes either the old file or the new one
+        synchronized (this) {
+            if (!tempFile.renameTo(file)) {
+                Log.e(LOG_TAG, "Failed to save the thumbnail of " + photoUri);
+                tempFile.delete();
+                return;
+            }
+            Long oldSize = mEntries.remove(name);
+            if (oldSize != null) {
+                mSize -= oldSize;
+            }
+            mEntries.put(name, file.length());
+            mSize += file.length();
+            trimToSize();
+        }
+    }
+
+    /**
+     * Deletes all of the cached thumbnails of the photo, for example when a product
+     * gets a new photo and the old one is not used anymore.
+     */
+    public synchronized void remove(Uri photoUri) {
+        String prefix = hash(photoUri.toString()) + "_";
+        for (String name : mEntries.keySet().toArray(new String[mEntries.size()])) {
+            if (name.startsWith(prefix)) {
+                removeEntry(name);
+            }
+        }
+    }
+
+    // Deletes the least recently used files until the cache fits into its size
+    private void trimToSize() {
+        while (mSize > MAX_SIZE_BYTES && !mEntries.isEmpty()) {
+            Map.Entry<String, Long> eldest = mEntries.entrySet().iterator().next();
+            removeEntry(eldest.getKey());
+        }
+    }
+
+    // Deletes the file and forgets about it
+    private void removeEntry(String name) {
+        Long size = mEntries.remove(name);
+        if (size != null) {
+            mSize -= size;
+        }
+        new File(mDirectory, name).delete();
+    }
+
+    // The name of the file is the hash of the photo uri plus the size of the thumbnail
+    private static String fileName(Uri photoUri, int width, int height) {
+        return hash(photoUri.toString()) + "_" + width + "x" + height + ".jpg";
+    }
+
+    // Returns the SHA-1 hash of the text as a hex string
+    private static String hash(String text) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            byte[] bytes = digest.digest(text.getBytes("UTF-8"));
+            StringBuilder builder = new StringBuilder(bytes.length * 2);
+            for (byte b : bytes) {
+                builder.append(String.format("%02x", b & 0xff));
+            }
+            return builder.toString();
+        } catch (NoSuchAlgorithmException | UnsupportedEncodingException e) {
+            // Every Android device supports SHA-1 and UTF-8
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // Closes the stream, ignoring the errors
+    private static void closeQuietly(OutputStream output) {
+        if (output == null) {
+            return;
+        }
+        try {
+            output.close();
+        } catch (IOException ignored) {
+        }
+    }
+}
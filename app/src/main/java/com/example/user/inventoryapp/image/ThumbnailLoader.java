@@ -0,0 +1,255 @@
+package com.example.user.inventoryapp.image;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.LruCache;
+import android.widget.ImageView;
+
+import com.example.user.inventoryapp.R;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * {@link ThumbnailLoader} shows product photos in ImageViews without blocking the UI thread.
+ * The photos are decoded on background threads, downsampled to the size of the ImageView,
+ * and kept in a memory cache and in a {@link ThumbnailDiskCache}.
+ * Several ImageViews asking for the same photo share one decode, and the request of an ImageView is cancelled when the ImageView is given another photo,
+ * so a recycled list row never shows the photo of the product it displayed before.
+ * All public methods must be called from the main thread.
+ */
+public class ThumbnailLoader {
+
+    // The part of the app's memory the cache of thumbnails can use
+    private static final int MEMORY_CACHE_FRACTION = 8;
+
+    // The number of photos that are decoded at the same time
+    private static final int DECODE_THREADS = 2;
+
+    // The tag of the ImageView that holds the key of its pending request
+    private static final int TAG_REQUEST_KEY = R.id.thumbnail_request_key;
+
+    private static ThumbnailLoader sInstance;
+
+    private final ContentResolver mResolver;
+
+    // Scaled thumbnails saved on the disk, so they survive a restart of the app
+    private final ThumbnailDiskCache mDiskCache;
+
+    // Decoded thumbnails, keyed by photo uri and size
+    private final LruCache<String, Bitmap> mMemoryCache;
+
+    // The requests that are being decoded, keyed by photo uri and size
+    private final HashMap<String, Request> mRequests = new HashMap<>();
+
+    private final ExecutorService mExecutor = Executors.newFixedThreadPool(DECODE_THREADS);
+
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    private ThumbnailLoader(Context context) {
+        mResolver = context.getContentResolver();
+        mDiskCache = ThumbnailDiskCache.getInstance(context);
+
+        // Size the cache in kilobytes, as a fraction of the memory available to the app
+        int cacheSizeKb = (int) (Runtime.getRuntime().maxMemory() / 1024 / MEMORY_CACHE_FRACTION);
+        mMemoryCache = new LruCache<String, Bitmap>(cacheSizeKb) {
+            @Override
+            protected int sizeOf(String key, Bitmap bitmap) {
+                return bitmap.getByteCount() / 1024;
+            }
+        };
+    }
+
+    /**
+     * Returns the loader shared by the whole app.
+     */
+    public static synchronized ThumbnailLoader getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new ThumbnailLoader(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    /**
+     * Shows the photo at the given uri in the ImageView. If the thumbnail is in the memory cache
+     * it is shown right away, otherwise the placeholder is shown until the photo is decoded.
+     *
+     * @param uri         The uri of the photo
+     * @param imageView   The ImageView that will show the photo
+     * @param width       The width of the thumbnail, in pixels
+     * @param height      The height of the thumbnail, in pixels
+     * @param placeholder The drawable resource shown while the photo is loading
+     */
+    public void load(Uri uri, ImageView imageView, int width, int height, int placeholder) {
+        String key = uri.toString() + "@" + width + "x" + height;
+
+        // Nothing to do if the ImageView is already waiting for this photo
+        if (key.equals(imageView.getTag(TAG_REQUEST_KEY))) {
+            return;
+        }
+
+        // The ImageView does not need the photo it was waiting for anymore
+        cancel(imageView);
+
+        Bitmap bitmap = mMemoryCache.get(key);
+        if (bitmap != null) {
+            imageView.setImageBitmap(bitmap);
+            return;
+        }
+
+        imageView.setImageResource(placeholder);
+        imageView.setTag(TAG_REQUEST_KEY, key);
+
+        // Join the request for the same photo, or start a new one
+        Request request = mRequests.get(key);
+        if (request == null) {
+            request = new Request(key, uri, width, height);
+            mRequests.put(key, request);
+            request.mFuture = mExecutor.submit(request);
+        }
+        request.mTargets.add(imageView);
+    }
+
+    /**
+     * Cancels the pending request of the ImageView. The decode itself is cancelled
+     * only if no other ImageView is waiting for the same photo.
+     */
+    public void cancel(ImageView imageView) {
+        String key = (String) imageView.getTag(TAG_REQUEST_KEY);
+        if (key == null) {
+            return;
+        }
+        imageView.setTag(TAG_REQUEST_KEY, null);
+
+        Request request = mRequests.get(key);
+        if (request == null) {
+            return;
+        }
+        request.mTargets.remove(imageView);
+        if (request.mTargets.isEmpty()) {
+            mRequests.remove(key);
+            request.mFuture.cancel(true);
+        }
+    }
+
+    /**
+     * Saves the thumbnail of the photo in the disk cache on a background thread,
+     * so that it is ready when the photo is displayed for the first time.
+     *
+     * @param uri    The uri of the photo
+     * @param width  The width of the thumbnail, in pixels
+     * @param height The height of the thumbnail, in pixels
+     */
+    public void prefetch(final Uri uri, final int width, final int height) {
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                loadThumbnail(uri, width, height);
+            }
+        });
+    }
+
+    /**
+     * Forgets all of the thumbnails of the photo, in memory and on the disk.
+     * Call it when a product does not use the photo anymore.
+     *
+     * @param uri The uri of the photo
+     */
+    public void evict(final Uri uri) {
+        String prefix = uri.toString() + "@";
+        for (String key : mMemoryCache.snapshot().keySet()) {
+            if (key.startsWith(prefix)) {
+                mMemoryCache.remove(key);
+            }
+        }
+
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                mDiskCache.remove(uri);
+            }
+        });
+    }
+
+    // Returns the thumbnail from the disk cache, or decodes it from the photo and saves it there.
+    // Runs on a background thread.
+    private Bitmap loadThumbnail(Uri uri, int width, int height) {
+        Bitmap bitmap = mDiskCache.get(uri, width, height);
+        if (bitmap != null) {
+            return bitmap;
+        }
+
+        bitmap = BitmapDecoder.decodeSampled(mResolver, uri, width, height);
+        if (bitmap != null) {
+            mDiskCache.put(uri, width, height, bitmap);
+        }
+        return bitmap;
+    }
+
+    // Called on the main thread when a photo has been decoded
+    private void onDecoded(Request request, Bitmap bitmap) {
+        // Ignore the result if the request was cancelled in the meantime
+        if (mRequests.get(request.mKey) != request) {
+            return;
+        }
+        mRequests.remove(request.mKey);
+
+        if (bitmap == null) {
+            return;
+        }
+        mMemoryCache.put(request.mKey, bitmap);
+
+        // Show the photo in the ImageViews that are still waiting for it
+        for (ImageView imageView : request.mTargets) {
+            if (request.mKey.equals(imageView.getTag(TAG_REQUEST_KEY))) {
+                imageView.setTag(TAG_REQUEST_KEY, null);
+                imageView.setImageBitmap(bitmap);
+            }
+        }
+    }
+
+    // A photo that is decoded on a background thread for one or more ImageViews
+    private class Request implements Runnable {
+        final String mKey;
+        final Uri mUri;
+        final int mWidth;
+        final int mHeight;
+
+        // The ImageViews waiting for the photo. Only touched on the main thread.
+        final List<ImageView> mTargets = new ArrayList<>();
+
+        Future<?> mFuture;
+
+        Request(String key, Uri uri, int width, int height) {
+            mKey = key;
+            mUri = uri;
+            mWidth = width;
+            mHeight = height;
+        }
+
+        // Runs on a background thread
+        @Override
+        public void run() {
+            final Bitmap bitmap = loadThumbnail(mUri, mWidth, mHeight);
+
+            if (Thread.currentThread().isInterrupted()) {
+                return;
+            }
+
+            mMainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    onDecoded(Request.this, bitmap);
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package com.example.user.inventoryapp.purge;
+
+import android.app.AlarmManager;
+import android.app.PendingIntent;
+import android.app.job.JobInfo;
+import android.app.job.JobScheduler;
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.Intent;
+import android.os.Build;
+import android.os.Bundle;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.example.user.inventoryapp.data.ProductContract.ProductEntry;
+
+/**
+ * {@link ProductPurge} removes the deleted products from the database for good, once they
+ * can not be restored anymore. A delete only marks the products, so it is fast and can be
+ * undone, and the provider schedules the purge after the undo window has passed.
+ * The purge runs in a {@link ProductPurgeJobService} from API 21, while the device is idle,
+ * and in a {@link ProductPurgeService} started by an alarm on older devices.
+ */
+public final class ProductPurge {
+
+    // Tag for the log messages
+    private static final String LOG_TAG = ProductPurge.class.getSimpleName();
+
+    // The id of the job of the purge
+    private static final int JOB_ID = 18;
+
+    // The system may wait for the device to be idle, but not for longer than this
+    private static final long MAX_DELAY_MILLIS = 24 * 60 * 60 * 1000;
+
+    // Preventing someone from accidentally instantiating this class
+    private ProductPurge() {
+    }
+
+    /**
+     * Schedules the purge after the undo window. A purge that is already scheduled is replaced,
+     * so a burst of deletes is purged once.
+     */
+    public static void schedule(Context context) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+            JobScheduler scheduler = (JobScheduler) context.getSystemService(Context.JOB_SCHEDULER_SERVICE);
+            scheduler.schedule(new JobInfo.Builder(JOB_ID,
+                    new ComponentName(context, ProductPurgeJobService.class))
+                    .setMinimumLatency(ProductEntry.UNDO_WINDOW_MILLIS)
+                    .setRequiresDeviceIdle(true)
+                    .setOverrideDeadline(MAX_DELAY_MILLIS)
+                    .build());
+        } else {
+            AlarmManager alarmManager = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
+            PendingIntent purge = PendingIntent.getService(context, JOB_ID,
+                    new Intent(context, ProductPurgeService.class), PendingIntent.FLAG_UPDATE_CURRENT);
+            alarmManager.set(AlarmManager.ELAPSED_REALTIME,
+                    SystemClock.elapsedRealtime() + ProductEntry.UNDO_WINDOW_MILLIS, purge);
+        }
+    }
+
+    /**
+     * Purges the products whose undo window has passed. Runs on a background thread.
+     *
+     * @return true if there are deleted products left that are still in their undo window,
+     * so the purge has to be scheduled again
+     */
+    static boolean purge(Context context) {
+        Bundle result = context.getContentResolver().call(ProductEntry.CONTENT_URI,
+                ProductEntry.METHOD_PURGE_DELETED, null, null);
+        if (result == null) {
+            return false;
+        }
+
+        Log.i(LOG_TAG, "Purged " + result.getInt(ProductEntry.KEY_PURGED_COUNT) + " deleted products");
+        return result.getInt(ProductEntry.KEY_REMAINING_COUNT) > 0;
+    }
+}
@@ -0,0 +1,40 @@
+package com.example.user.inventoryapp.purge;
+
+import android.annotation.TargetApi;
+import android.app.job.JobParameters;
+import android.app.job.JobService;
+import android.os.Build;
+
+/**
+ * {@link ProductPurgeJobService} runs the purge of the deleted products scheduled by
+ * {@link ProductPurge} on API 21 and newer. The job is called on the main thread,
+ * so the purge runs on its own thread.
+ */
+@TargetApi(Build.VERSION_CODES.LOLLIPOP)
+public class ProductPurgeJobService extends JobService {
+
+    @Override
+    public boolean onStartJob(final JobParameters params) {
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                boolean remaining = ProductPurge.purge(getApplicationContext());
+                jobFinished(params, false);
+
+                // Scheduled after the job finished, because scheduling a running job stops it
+                if (remaining) {
+                    ProductPurge.schedule(getApplicationContext());
+                }
+            }
+        }, ProductPurgeJobService.class.getSimpleName()).start();
+
+        // The job is still running on the thread
+        return true;
+    }
+
+    @Override
+    public boolean onStopJob(JobParameters params) {
+        // Every chunk that was purged is committed, the rest is purged the next time
+        return true;
+    }
+}
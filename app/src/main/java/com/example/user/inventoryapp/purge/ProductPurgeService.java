@@ -0,0 +1,23 @@
+package com.example.user.inventoryapp.purge;
+
+import android.app.IntentService;
+import android.content.Intent;
+
+/**
+ * {@link ProductPurgeService} runs the purge of the deleted products scheduled by
+ * {@link ProductPurge} with an alarm, on devices older than API 21.
+ */
+public class ProductPurgeService extends IntentService {
+
+    public ProductPurgeService() {
+        super(ProductPurgeService.class.getSimpleName());
+    }
+
+    // Runs on a background thread
+    @Override
+    protected void onHandleIntent(Intent intent) {
+        if (ProductPurge.purge(getApplicationContext())) {
+            ProductPurge.schedule(getApplicationContext());
+        }
+    }
+}
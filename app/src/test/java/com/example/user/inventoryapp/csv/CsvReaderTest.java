@@ -0,0 +1,84 @@
+package com.example.user.inventoryapp.csv;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that {@link CsvReader} reads what {@link CsvWriter} writes, including the fields
+ * that have to be quoted, and that broken files are rejected.
+ */
+public class CsvReaderTest {
+
+    @Test
+    public void readsWhatIsWritten() throws IOException {
+        String[][] records = {
+                {"product_name", "quantity", "price"},
+                {"Pen, blue", "10", "1.5"},
+                {"12\" ruler", "", "3"},
+                {"Two\r\nlines", "0", "0"},
+                {"", "", ""}};
+
+        StringWriter out = new StringWriter();
+        CsvWriter writer = new CsvWriter(out);
+        for (String[] record : records) {
+            writer.writeRecord(record);
+        }
+        writer.close();
+
+        CsvReader reader = new CsvReader(new StringReader(out.toString()));
+        List<String> fields = new ArrayList<>();
+        for (String[] record : records) {
+            assertTrue(reader.readRecord(fields));
+            assertEquals(Arrays.asList(record), fields);
+        }
+        assertFalse(reader.readRecord(fields));
+        assertEquals(records.length, reader.getRecordCount());
+    }
+
+    @Test
+    public void skipsEmptyLinesAndTheByteOrderMark() throws IOException {
+        CsvReader reader = new CsvReader(new StringReader("\uFEFFa,b\n\n\r\nc,d"));
+        List<String> fields = new ArrayList<>();
+
+        assertTrue(reader.readRecord(fields));
+        assertEquals(Arrays.asList("a", "b"), fields);
+        assertTrue(reader.readRecord(fields));
+        assertEquals(Arrays.asList("c", "d"), fields);
+        assertFalse(reader.readRecord(fields));
+    }
+
+    @Test
+    public void readsRecordsLongerThanTheBuffer() throws IOException {
+        StringBuilder field = new StringBuilder();
+        for (int i = 0; i < 40000; i++) {
+            field.append((char) ('a' + i % 26));
+        }
+
+        CsvReader reader = new CsvReader(new StringReader("\"" + field + "\",x\n"));
+        List<String> fields = new ArrayList<>();
+        assertTrue(reader.readRecord(fields));
+        assertEquals(Arrays.asList(field.toString(), "x"), fields);
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsAnUnterminatedQuote() throws IOException {
+        new CsvReader(new StringReader("\"never closed,1\n")).readRecord(new ArrayList<String>());
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsAFieldLongerThanTheLimit() throws IOException {
+        char[] field = new char[CsvReader.MAX_FIELD_LENGTH + 1];
+        Arrays.fill(field, 'a');
+        new CsvReader(new StringReader(new String(field))).readRecord(new ArrayList<String>());
+    }
+}